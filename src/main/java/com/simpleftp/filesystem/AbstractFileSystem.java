@@ -17,12 +17,14 @@
 
 package com.simpleftp.filesystem;
 
+import com.simpleftp.filesystem.events.FileSystemEvent;
+import com.simpleftp.filesystem.events.FileSystemEventBus;
+import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.interfaces.FileSystem;
+import com.simpleftp.filesystem.journal.TransferJournal;
 import com.simpleftp.ftp.FTPSystem;
 import com.simpleftp.ftp.connection.FTPConnection;
 
-import java.util.LinkedList;
-import java.util.Queue;
 
 /**
  * This is an abstract file system class to keep track of the temporaryFileSystem variable and also ensuring the rule that if true,
@@ -36,19 +38,27 @@ public abstract class AbstractFileSystem implements FileSystem {
      */
     protected FTPConnection ftpConnection;
     /**
-     * The list of CopyMoveErrors produced by the FileSystem
+     * The bus the errors, progress and completion of operations are published on
      */
-    protected final Queue<FileOperationError> fileOperationErrors;
+    protected final FileSystemEventBus eventBus;
     /**
      * A boolean flag to specify that the filesystem was created using the constructor taking a connection
      */
     private final boolean temporaryFileSystem;
+    /**
+     * Flag set by cancel() to stop the operation being carried out
+     */
+    private volatile boolean cancelled;
+    /**
+     * The journal recording the operation being carried out, null if not journaled
+     */
+    private volatile TransferJournal journal;
 
     /**
      * Constructs an AbstractFileSystem with temporaryFileSystem set to false.
      */
     protected AbstractFileSystem() {
-        fileOperationErrors = new LinkedList<>(); // a LinkedList implements Deque which extends Queue
+        eventBus = new FileSystemEventBus();
         temporaryFileSystem = false;
     }
 
@@ -60,9 +70,12 @@ public abstract class AbstractFileSystem implements FileSystem {
         FTPConnection systemConnection = FTPSystem.getConnection();
         if (systemConnection != null && ftpConnection == systemConnection)
             throw new IllegalArgumentException("The connection provided to this constructor cannot be the same as the FTPSystem connection, use FTPConnection.createTemporaryConnection(FTPSystem.getConnection())");
-        fileOperationErrors = new LinkedList<>(); // a LinkedList implements Deque which extends Queue
+        eventBus = new FileSystemEventBus();
         temporaryFileSystem = true;
         this.ftpConnection = ftpConnection;
+
+        if (ftpConnection != null) // the connection is used by this file system only, so its stalled transfers are this file system's
+            ftpConnection.setTransferStallListener((path, retry, restartOffset) -> eventBus.publish(FileSystemEvent.retrying(path, retry, restartOffset)));
     }
 
     /**
@@ -89,23 +102,126 @@ public abstract class AbstractFileSystem implements FileSystem {
     }
 
     /**
-     * Retrieves the next copy move error if there is one available. These errors are non-fatal errors produced by copyFiles or
-     * moveFiles if source file is a directory.
+     * Returns the bus this file system publishes events on while carrying out copyFiles, moveFiles and removeFile.
      *
-     * @return the next FileOperationError if available, null if not
+     * @return the event bus of this file system
      */
     @Override
-    public FileOperationError getNextFileOperationError() {
-        return fileOperationErrors.poll();
+    public FileSystemEventBus getEventBus() {
+        return eventBus;
     }
 
     /**
-     * Returns true if there is a copy move error available to retrieve
-     *
-     * @return true if there is a FileOperationError, false if not
+     * Cancels the operation being carried out by this file system. Recursive operations stop before the next file and the transfer in progress on the connection is aborted
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+        FTPConnection connection = getFTPConnection();
+
+        if (connection != null)
+            connection.abortTransfer();
+    }
+
+    /**
+     * Determines if cancel() has been called on this file system
+     * @return true if cancelled
      */
     @Override
-    public boolean hasNextFileOperationError() {
-        return !fileOperationErrors.isEmpty();
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Checks if this file system has been cancelled, throwing an exception to stop the operation if it has. Recursive operations should call this
+     * before each file
+     * @throws FileSystemException if the file system has been cancelled
+     */
+    protected void checkCancelled() throws FileSystemException {
+        if (cancelled)
+            throw new FileSystemException("The operation was cancelled");
+    }
+
+    /**
+     * Sets the journal the operation carried out by this file system is recorded in
+     * @param journal the journal to record the operation in, null to not journal it
+     */
+    @Override
+    public void setJournal(TransferJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Determines if the operation is being resumed from a journal, in which case the destination of the operation may already exist
+     * @return true if resuming
+     */
+    protected boolean isResuming() {
+        TransferJournal journal = this.journal;
+        return journal != null && journal.isResumed();
+    }
+
+    /**
+     * Determines if the journal records the file as transferred already, so it can be skipped
+     * @param sourcePath the path of the file to transfer
+     * @return true if already transferred
+     */
+    protected boolean isTransferred(String sourcePath) {
+        TransferJournal journal = this.journal;
+        return journal != null && journal.isCompleted(sourcePath);
+    }
+
+    /**
+     * Records in the journal that a file is about to be transferred and determines if the transfer should carry on from a partial copy at the destination
+     * @param sourcePath the path of the file being transferred
+     * @param destinationPath the path it is being transferred to
+     * @return true if the journal records that the file was partially transferred before, so the transfer should be resumed
+     */
+    protected boolean beginTransfer(String sourcePath, String destinationPath) {
+        TransferJournal journal = this.journal;
+
+        if (journal == null) {
+            return false;
+        } else {
+            boolean partial = journal.isPartial(sourcePath);
+            journal.planned(sourcePath, destinationPath);
+
+            return partial;
+        }
+    }
+
+    /**
+     * Publishes a non-fatal error that occurred on a file
+     * @param errorMessage the error message to display
+     * @param sourcePath the path of the file being operated on
+     * @param destinationPath the destination the file was being copied or moved to, null for removals
+     */
+    protected void reportError(String errorMessage, String sourcePath, String destinationPath) {
+        eventBus.publish(FileSystemEvent.error(new FileOperationError(errorMessage, sourcePath, destinationPath)));
+    }
+
+    /**
+     * Publishes that a single file has been transferred, recording it as completed in the journal if there is one
+     * @param sourcePath the path of the file transferred
+     * @param destinationPath the path it was transferred to
+     * @param bytes the number of bytes transferred
+     */
+    protected void reportProgress(String sourcePath, String destinationPath, long bytes) {
+        TransferJournal journal = this.journal;
+        if (journal != null)
+            journal.completed(sourcePath);
+
+        eventBus.publish(FileSystemEvent.progress(sourcePath, destinationPath, bytes));
+    }
+
+    /**
+     * Publishes that an operation has finished and returns the result so it can be used in a return statement
+     * @param sourcePath the path of the file the operation was carried out on
+     * @param destinationPath the directory the file was copied/moved to, null for removals
+     * @param succeeded true if the operation succeeded
+     * @return succeeded
+     */
+    protected boolean reportCompleted(String sourcePath, String destinationPath, boolean succeeded) {
+        eventBus.publish(FileSystemEvent.completed(sourcePath, destinationPath, succeeded));
+        return succeeded;
     }
 }
@@ -0,0 +1,145 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem;
+
+import com.simpleftp.filesystem.exceptions.FileSystemException;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.connection.Server;
+import com.simpleftp.ftp.exceptions.FTPException;
+import org.apache.tika.Tika;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class detects the content type of files from only the first few KB of their contents, using a single shared Tika instance.
+ * The detected types are cached by the path, size and modification time of the file, so a file that hasn't changed isn't read again.
+ * For remote files, only the first bytes are downloaded, so a large file can be rejected without transferring it.
+ *
+ * This class is thread-safe
+ */
+public final class ContentTypeDetector {
+    /**
+     * The number of bytes the type is detected from
+     */
+    public static final int HEADER_LENGTH = 8192;
+    /**
+     * The maximum number of detected types kept in the cache
+     */
+    private static final int CACHE_SIZE = 1024;
+    /**
+     * The shared Tika instance, which is thread-safe
+     */
+    private static final Tika tika = new Tika();
+    /**
+     * The cache of detected types, keyed by the locality, path, size and modification time of the file. The least recently used type is removed when full
+     */
+    private static final Map<String, String> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Prevent instantiation
+     */
+    private ContentTypeDetector() {}
+
+    /**
+     * Detects the type of the local file from its first bytes
+     * @param file the file to detect the type of
+     * @return the detected type
+     * @throws IOException if the file can't be read
+     */
+    public static String detect(LocalFile file) throws IOException {
+        String key = "local\n" + file.getFilePath() + "\n" + file.length() + "\n" + file.lastModified();
+        String type = getCached(key);
+
+        if (type == null) {
+            byte[] header;
+            try (InputStream inputStream = new FileInputStream(file)) {
+                header = inputStream.readNBytes(HEADER_LENGTH);
+            }
+
+            type = detect(header, file.getName());
+            putCached(key, type);
+        }
+
+        return type;
+    }
+
+    /**
+     * Detects the type of the remote file, downloading only its first bytes
+     * @param file the file to detect the type of
+     * @param connection the connection to download the first bytes with
+     * @return the detected type, null if the file couldn't be read
+     * @throws FTPException if an error occurs downloading the first bytes
+     * @throws FileSystemException if the size of the file can't be determined
+     */
+    public static String detect(RemoteFile file, FTPConnection connection) throws FTPException, FileSystemException {
+        String path = file.isSymbolicLink() ? file.getSymbolicLinkTarget():file.getFilePath();
+        Server server = connection.getServer();
+        String serverKey = server == null ? "":server.getUser() + "@" + server.getServer() + ":" + server.getPort();
+        String key = "remote\n" + serverKey + "\n" + path + "\n" + file.getSize() + "\n" + file.getModificationTimeMillis();
+        String type = getCached(key);
+
+        if (type == null) {
+            byte[] header = connection.readFileHead(path, HEADER_LENGTH);
+
+            if (header == null)
+                return null;
+
+            type = detect(header, file.getName());
+            putCached(key, type);
+        }
+
+        return type;
+    }
+
+    /**
+     * Detects the type from the first bytes of a file. The result is not cached
+     * @param header the first bytes of the file
+     * @param name the name of the file, used as a hint
+     * @return the detected type
+     */
+    public static String detect(byte[] header, String name) {
+        return tika.detect(header, name);
+    }
+
+    /**
+     * Gets the cached type for the key
+     * @param key the key of the file
+     * @return the cached type, null if not cached
+     */
+    private static synchronized String getCached(String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Caches the type for the key
+     * @param key the key of the file
+     * @param type the detected type
+     */
+    private static synchronized void putCached(String key, String type) {
+        cache.put(key, type);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem;
+
+import java.util.ArrayList;
+
+/**
+ * This class represents a compiled file mask used to filter file names. A mask is made up of one or more glob patterns separated by ;
+ * where * matches zero or more characters and ? matches exactly one character. A pattern beginning with ! excludes the names it matches.
+ * For example, *.txt;*.log;!debug* matches all txt and log files except those beginning with debug.
+ * If a mask only contains exclude patterns, all names not excluded match.
+ *
+ * The patterns are compiled once and matched without any allocation, so a mask can be checked against every entry of a large listing cheaply
+ */
+public final class FileMask {
+    /**
+     * The character separating patterns in a mask
+     */
+    public static final char PATTERN_SEPARATOR = ';';
+    /**
+     * The character prefixing an exclude pattern
+     */
+    public static final char EXCLUDE_PREFIX = '!';
+    /**
+     * The characters a pattern can contain to be sent to the server as a LIST argument. Anything else may be interpreted by the server's
+     * shell-like globbing or option parsing, so it is filtered on the client
+     */
+    private static final String SERVER_PATTERN_CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789._-*?";
+    /**
+     * The mask these patterns were compiled from
+     */
+    private final String mask;
+    /**
+     * The compiled include patterns. If empty, all names not excluded are matched
+     */
+    private final char[][] includes;
+    /**
+     * The compiled exclude patterns
+     */
+    private final char[][] excludes;
+
+    /**
+     * Constructs a file mask from the compiled patterns
+     * @param mask the mask the patterns were compiled from
+     * @param includes the include patterns
+     * @param excludes the exclude patterns
+     */
+    private FileMask(String mask, char[][] includes, char[][] excludes) {
+        this.mask = mask;
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * Compiles the provided mask
+     * @param mask the mask to compile
+     * @return the compiled mask, or null if the mask is null or contains no patterns
+     */
+    public static FileMask compile(String mask) {
+        if (mask == null)
+            return null;
+
+        ArrayList<char[]> includes = new ArrayList<>();
+        ArrayList<char[]> excludes = new ArrayList<>();
+
+        for (String pattern : mask.split(String.valueOf(PATTERN_SEPARATOR))) {
+            pattern = pattern.trim();
+
+            if (!pattern.isEmpty() && pattern.charAt(0) == EXCLUDE_PREFIX) {
+                pattern = pattern.substring(1).trim();
+
+                if (!pattern.isEmpty())
+                    excludes.add(pattern.toCharArray());
+            } else if (!pattern.isEmpty()) {
+                includes.add(pattern.toCharArray());
+            }
+        }
+
+        if (includes.isEmpty() && excludes.isEmpty())
+            return null;
+
+        return new FileMask(mask, includes.toArray(new char[0][]), excludes.toArray(new char[0][]));
+    }
+
+    /**
+     * Checks if the provided name matches this mask
+     * @param name the name to check
+     * @return true if it matches
+     */
+    public boolean matches(CharSequence name) {
+        return matches(name, 0, name.length());
+    }
+
+    /**
+     * Checks if the name between start and end of the provided sequence matches this mask, so a name can be matched where it is stored
+     * without creating a String for it
+     * @param chars the sequence containing the name
+     * @param start the start index of the name (inclusive)
+     * @param end the end index of the name (exclusive)
+     * @return true if it matches
+     */
+    public boolean matches(CharSequence chars, int start, int end) {
+        boolean included = includes.length == 0;
+
+        for (int i = 0; i < includes.length && !included; i++)
+            included = matchGlob(includes[i], chars, start, end);
+
+        if (!included)
+            return false;
+
+        for (char[] exclude : excludes) {
+            if (matchGlob(exclude, chars, start, end))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Matches the name against the glob pattern. When a mismatch occurs after a *, the match is retried with the * consuming one more
+     * character, so no recursion or allocation is needed
+     * @param pattern the compiled pattern
+     * @param chars the sequence containing the name
+     * @param start the start index of the name
+     * @param end the end index of the name
+     * @return true if the whole name matches the pattern
+     */
+    private static boolean matchGlob(char[] pattern, CharSequence chars, int start, int end) {
+        int p = 0;
+        int n = start;
+        int starPattern = -1;
+        int starName = -1;
+
+        while (n < end) {
+            if (p < pattern.length) {
+                char c = pattern[p];
+
+                if (c == '*') {
+                    starPattern = p++;
+                    starName = n;
+                    continue;
+                } else if (c == '?' || c == chars.charAt(n)) {
+                    p++;
+                    n++;
+                    continue;
+                }
+            }
+
+            if (starPattern == -1)
+                return false;
+
+            p = starPattern + 1;
+            n = ++starName;
+        }
+
+        while (p < pattern.length && pattern[p] == '*')
+            p++;
+
+        return p == pattern.length;
+    }
+
+    /**
+     * Gets the pattern that can be sent to the server to list only matching files. This is only possible if the mask is a single include
+     * pattern with a wildcard made up of characters servers treat the same way as this mask does
+     * @return the pattern to send to the server, or null if the mask has to be applied on the client
+     */
+    public String getServerPattern() {
+        if (includes.length != 1 || excludes.length != 0)
+            return null;
+
+        char[] pattern = includes[0];
+        boolean wildcard = false;
+
+        for (char c : pattern) {
+            if (SERVER_PATTERN_CHARACTERS.indexOf(c) == -1)
+                return null;
+
+            wildcard = wildcard || c == '*' || c == '?';
+        }
+
+        return wildcard && pattern[0] != '-' ? new String(pattern):null;
+    }
+
+    /**
+     * Returns the mask this file mask was compiled from
+     * @return the mask string
+     */
+    @Override
+    public String toString() {
+        return mask;
+    }
+}
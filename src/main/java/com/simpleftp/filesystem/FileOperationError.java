@@ -23,8 +23,8 @@ import lombok.Getter;
  * This class represents a non-fatal error that occurred during an extensive operation like recursive copy/move/removal.
  *
  * If you need a fatal error, a FileSystemException should be thrown.
- * Can only be constructed inside the filesystem package. To retrieve the next error message,
- * call FileSystem.getNextFileOperationError().
+ * Can only be constructed inside the filesystem package. Errors are published as FileSystemEvents of type ERROR,
+ * so to receive them, subscribe a FileSystemEventListener to FileSystem.getEventBus().
  */
 public class FileOperationError {
     /**
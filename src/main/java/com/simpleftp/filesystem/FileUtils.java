@@ -17,14 +17,13 @@
 
 package com.simpleftp.filesystem;
 
-import com.simpleftp.filesystem.exceptions.PathResolverException;
-import com.simpleftp.filesystem.paths.PathResolverFactory;
-import com.simpleftp.ftp.FTPSystem;
+import com.simpleftp.filesystem.paths.FilePath;
+import com.simpleftp.filesystem.paths.LocalPath;
+import com.simpleftp.filesystem.paths.RemotePath;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * This class provides utility methods to the filesystem package
@@ -127,26 +126,12 @@ public final class FileUtils {
      * @return the parent path
      */
     public static String getParentPath(String path, boolean local) {
-        if (local) {
-            String parentPath = new LocalFile(path).getParent();
-            parentPath = parentPath == null ? getRootPath(true):parentPath; // if windows, find the root
+        FilePath<?> parentPath = parsePath(path, local).getParent();
 
-            return parentPath;
-        } else {
-            String fileSeparator = "/";
-            if (path.equals(fileSeparator)) {
-                return path;
-            }
-
-            path = path.endsWith(fileSeparator) ? path.substring(0, path.length() - 1):path;
-
-            int lastSepIndex = path.lastIndexOf(fileSeparator);
-            if (lastSepIndex != -1 && lastSepIndex != 0) {
-                return path.substring(0, lastSepIndex);
-            } else {
-                return fileSeparator;
-            }
-        }
+        if (!parentPath.isAbsolute() && parentPath.getNameCount() == 0)
+            return getRootPath(local); // a single relative name has no parent, so use root as if it was absolute
+        else
+            return parentPath.toString();
     }
 
     /**
@@ -156,42 +141,17 @@ public final class FileUtils {
      * @return the list of the path components
      */
     public static List<String> splitPath(String path, boolean local) {
-        String separator = local ? FileUtils.PATH_SEPARATOR:"/";
-        String root = FileUtils.getRootPath(local);
-        int rootLength = root.length();
-
-        if (path.contains(root))
-            path = path.substring(rootLength) + separator;
-
-        String[] pathSplit = path.split(separator);
-
-        return Arrays.stream(pathSplit)
-                .filter(s -> !s.isEmpty())
-                .collect(Collectors.toCollection(ArrayList::new));
+        return new ArrayList<>(parsePath(path, local).getComponents());
     }
 
     /**
-     * Attempts to resolve the given path if it is absolute. This gets rid of "." or ".." characters
-     * @param path the path to resolve
-     * @param local true if local, false if not
-     * @return the resolved path, or path if not absolute or an error occurs
+     * Parses the path into a LocalPath or RemotePath. Use the parsed path when the same path is compared or split more than once
+     * @param path the path to parse
+     * @param local true if a local path, false if remote
+     * @return the parsed path
      */
-    private static String resolvePath(String path, boolean local) {
-        boolean absolute = local ? new LocalFile(path).isAbsolute():path.startsWith("/");
-
-        if (absolute) {
-            try {
-                path = PathResolverFactory.newInstance()
-                        .setSymbolic(local ? FileUtils.PATH_SEPARATOR : "/", getRootPath(local))
-                        .build()
-                        .resolvePath(path);
-            } catch (PathResolverException ex) {
-                if (FTPSystem.isDebugEnabled())
-                    ex.printStackTrace();
-            }
-        }
-
-        return path;
+    public static FilePath<?> parsePath(String path, boolean local) {
+        return local ? LocalPath.of(path):RemotePath.of(path);
     }
 
     /**
@@ -199,9 +159,8 @@ public final class FileUtils {
      * the parent path. E.g. the path /path/to/file starts with or is a child of /path while /test/path is not a child or
      * doesn't start with /path.
      *
-     * If the path is absolute and contains "." or "..", it will be passed into a SymbolicPathResolver. Otherwise,
-     * since a current working directory cannot be derived from this method, any relative path can't be made absolute,
-     * and SymbolicPathResolver requires an absolute path.
+     * Any "." or ".." in the paths are removed "symbolically" before comparing, i.e. without following links, as a SymbolicPathResolver would.
+     * A relative path is never a child of an absolute path.
      *
      * @param path the path to check
      * @param parentPath the parent path
@@ -209,30 +168,10 @@ public final class FileUtils {
      * @return true if the parentPath is a parent of path
      */
     public static boolean startsWith(String path, String parentPath, boolean local) {
-        String separator = local ? FileUtils.PATH_SEPARATOR:"/";
-
-        path = FileUtils.appendPath(resolvePath(path, local), "", local); // append file separator to the end of it if not already there
-        parentPath = FileUtils.appendPath(resolvePath(parentPath, local), "", local);
-
-        List<String> pathSplit = splitPath(path, local), parentPathSplit = splitPath(parentPath, local);
-
-        int pathLength = pathSplit.size(), parentPathLength = parentPathSplit.size();
-
-        StringBuilder stringBuilder = new StringBuilder(FileUtils.getRootPath(local));
-        if (pathLength >= parentPathLength) { // if the length of the path split is greater than or equal to the parent path split, we have a candidate for a child path
-            for (int i = 0; i < pathLength; i++) {
-                String pathComponent = pathSplit.get(i);
-                stringBuilder.append(pathComponent).append(separator);
-                if (stringBuilder.toString().equals(parentPath)) {
-                    return true; // if the path being built so far matches parent, we have a child path
-                } else if (i < parentPathLength && !pathComponent.equals(parentPathSplit.get(i))) {
-                    // if an element of the path does not match an element at the same index of the parent path, this is not a child path
-                    return false;
-                }
-            }
-        }
-
-        return false;
+        if (local)
+            return LocalPath.of(path).normalize().startsWith(LocalPath.of(parentPath).normalize());
+        else
+            return RemotePath.of(path).normalize().startsWith(RemotePath.of(parentPath).normalize());
     }
 
     /**
@@ -250,17 +189,17 @@ public final class FileUtils {
     }
 
     /**
-     * Returns whether this path is absolute or not (on Windows, we only support SystemDrive, so has to start with system drive
+     * Returns whether this path is absolute or not. On Windows, a local path is absolute if it starts with a drive, e.g. C:\ or D:\
      * @param path the path to check if absolute
      * @param local true if a local path, false if remote
      * @return true if absolute, false if not
      */
     public static boolean isPathAbsolute(String path, boolean local) {
-        return path.startsWith(getRootPath(local));
+        return parsePath(path, local).isAbsolute();
     }
 
     /**
-     * Returns true if path1 equals path2. Paths are equal if they are equal without file separators if remote, or if LocalFile instances are equal.
+     * Returns true if path1 equals path2. Paths are equal if they have the same components, ignoring case on Windows for local paths.
      * This should be called instead of calling .equals on the paths as if one path has an extra separator on the end, .equals will return false.
      * E.g. /path/to/file is the same path as /path/to/file/ but String .equals will return false due to the last / in the second path
      * @param path1 the first path to compare
@@ -269,14 +208,7 @@ public final class FileUtils {
      * @return true if equals, false if not
      */
     public static boolean pathEquals(String path1, String path2, boolean local) {
-        if (local) {
-            return new LocalFile(path1).equals(new LocalFile(path2));
-        } else {
-            path1 = path1.replaceAll("/", "");
-            path2 = path2.replaceAll("/", "");
-
-            return path1.equals(path2);
-        }
+        return path1.equals(path2) || parsePath(path1, local).equals(parsePath(path2, local));
     }
 
     /**
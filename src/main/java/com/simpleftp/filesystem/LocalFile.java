@@ -21,23 +21,28 @@ import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.exceptions.PathResolverException;
 import com.simpleftp.filesystem.interfaces.CommonFile;
 import com.simpleftp.filesystem.paths.PathResolverFactory;
-import com.simpleftp.ftp.FTPSystem;
 import com.simpleftp.properties.Properties;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.LinkOption;
-import java.nio.file.Path;
-import java.nio.file.attribute.PosixFilePermission;
 import java.text.SimpleDateFormat;
-import java.util.Set;
 
 /**
  * A file representing a local file. While the interfaces specifies that some methods return a FileSystemException, that
- * doesn't occur in LocalFile, more so RemoteFile
+ * doesn't occur in LocalFile, more so RemoteFile.
+ *
+ * The attributes of the file are read once into a snapshot, which the accessors are served from until refresh() or exists() is called
  */
 public class LocalFile extends File implements CommonFile {
+    /**
+     * The snapshot of this file's attributes. Lazily read on first access, and cleared by refresh()
+     */
+    private LocalFileAttributes attributes;
+    /**
+     * The resolved target if this file is a symbolic link. Lazily resolved, and cleared by refresh()
+     */
+    private String symbolicLinkTarget;
 
     /**
      * Constructs a LocalFile with the specified pathname
@@ -47,6 +52,31 @@ public class LocalFile extends File implements CommonFile {
         super(pathname);
     }
 
+    /**
+     * Constructs a LocalFile with the specified pathname and the snapshot of its attributes already read, e.g. when listing a directory
+     * @param pathname the pathname of the file (has to be absolute)
+     * @param attributes the snapshot of the file's attributes
+     */
+    LocalFile(String pathname, LocalFileAttributes attributes) {
+        super(pathname);
+        this.attributes = attributes;
+    }
+
+    /**
+     * Gets the snapshot of this file's attributes, reading it if it has not been read yet
+     * @return the snapshot of the attributes
+     */
+    private LocalFileAttributes getAttributes() {
+        LocalFileAttributes attributes = this.attributes;
+
+        if (attributes == null) {
+            attributes = LocalFileAttributes.read(toPath());
+            this.attributes = attributes;
+        }
+
+        return attributes;
+    }
+
     /**
      * Returns absolute path to the file
      * @return absolute path
@@ -56,14 +86,34 @@ public class LocalFile extends File implements CommonFile {
         return super.getAbsolutePath();
     }
 
+    /**
+     * Checks if this file exists, following symbolic links. This reads a new snapshot of the file's attributes, in the same way
+     * that RemoteFile.exists() syncs up its cached information
+     * @return true if it exists, false if not
+     */
+    @Override
+    public boolean exists() {
+        refresh();
+        return getAttributes().exists;
+    }
+
     @Override
     public boolean isADirectory() {
-        return isSymbolicLink() ? super.isDirectory():Files.isDirectory(toPath());
+        return getAttributes().directory;
     }
 
     @Override
     public boolean isNormalFile() {
-        return super.isFile();
+        return getAttributes().regularFile;
+    }
+
+    /**
+     * Checks if this file is hidden. Served from the snapshot of the file's attributes
+     * @return true if hidden
+     */
+    @Override
+    public boolean isHidden() {
+        return getAttributes().hidden;
     }
 
     /**
@@ -95,158 +145,102 @@ public class LocalFile extends File implements CommonFile {
     }
 
     /**
-     * Returns the size in bytes of the file
+     * Returns the size in bytes of the file. If it is a symbolic link, the size of the target is returned if FILE_SIZE_FOLLOW_LINK is true,
+     * otherwise the size of the link
      *
      * @return size in bytes of the file
      */
     @Override
     public long getSize() throws FileSystemException {
-        if (!isSymbolicLink() || !Properties.FILE_SIZE_FOLLOW_LINK.getValue()) {
-            return length();
-        } else {
-            return new LocalFile(getSymbolicLinkTarget()).getSize();
-        }
+        LocalFileAttributes attributes = getAttributes();
+
+        if (attributes.symbolicLink && !Properties.FILE_SIZE_FOLLOW_LINK.getValue())
+            return attributes.linkSize;
+        else
+            return attributes.size;
     }
 
     /**
-     * Checks if POSIX permissions are supported
-     * @return the permissions, null if posix permissions are not supported
+     * Gets the permissions as a string in the unix form of ls command. For Non-posix systems, this just displays the permissions for the user running the program.
+     * If this file is a symbolic link and FILE_PERMS_FOLLOW_LINK is true, the permissions of the target are returned if it exists
+     *
+     * @return the permissions as a string
      */
-    private String resolvePosixPermissions() {
-        Path path = toPath();
-
-        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
-            try {
-                Set<PosixFilePermission> permissionsSet = Properties.FILE_PERMS_FOLLOW_LINK.getValue() ? Files.getPosixFilePermissions(path):Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
-                String[] permissionsStringArr = new String[9]; // first 3 indices, owner rwx, next 3, group, last 3 others
-                for (int i = 0; i < 9; i++)
-                    permissionsStringArr[i] = "-";
-
-                for (PosixFilePermission permission : permissionsSet) {
-                    switch (permission) {
-                        case OWNER_READ: permissionsStringArr[0] = "r"; break;
-                        case OWNER_WRITE: permissionsStringArr[1] = "w"; break;
-                        case OWNER_EXECUTE: permissionsStringArr[2] = "x"; break;
-                        case GROUP_READ: permissionsStringArr[3] = "r"; break;
-                        case GROUP_WRITE: permissionsStringArr[4] = "w"; break;
-                        case GROUP_EXECUTE: permissionsStringArr[5] = "x"; break;
-                        case OTHERS_READ: permissionsStringArr[6] = "r"; break;
-                        case OTHERS_WRITE: permissionsStringArr[7] = "w"; break;
-                        case OTHERS_EXECUTE: permissionsStringArr[8] = "x"; break;
-                    }
-                }
-
-                StringBuilder permissions = new StringBuilder();
-
-                for (String s : permissionsStringArr)
-                    permissions.append(s);
+    @Override
+    public String getPermissions() {
+        LocalFileAttributes attributes = getAttributes();
 
-                return permissions.toString();
-            } catch (IOException e) {
-                return null;
-            }
-        } else {
+        if (attributes.symbolicLink && Properties.FILE_PERMS_FOLLOW_LINK.getValue() && attributes.exists) {
+            return (attributes.directory ? "d":"-") + attributes.permissions;
+        } else if (attributes.linkPermissions == null) {
             return null;
+        } else {
+            String type = attributes.symbolicLink ? "l":attributes.directory ? "d":"-";
+
+            return type + attributes.linkPermissions;
         }
     }
 
     /**
-     * Resolves permissions on systems that aren't posix standard. This can only return permissions for current user
-     * @return the permissions string
+     * Gets the modification time as a formatted String in the form of Month Day Hour:Minute, e.g Jan 01 12:50
+     *
+     * @return the formatted modification time String, can be null if can't be determined.
      */
-    private String resolveNonPosixPermissions() {
-        if (Properties.FILE_PERMS_FOLLOW_LINK.getValue()) {
-            try {
-                return new LocalFile(getSymbolicLinkTarget()).resolveNonPosixPermissions();
-            } catch (FileSystemException ex) {
-                if (FTPSystem.isDebugEnabled())
-                    ex.printStackTrace();
-                // if an exception occurs finding target, just display the link's permissions
-                return resolveNonPosixPermissions();
-            }
-        } else {
-            String permissions = "";
-
-            if (canRead()) {
-                permissions += "r";
-            } else {
-                permissions += "-";
-            }
-
-            if (canWrite()) {
-                permissions += "-w";
-            } else {
-                permissions += "--";
-            }
-
-            if (canExecute()) {
-                permissions += "-x";
-            } else {
-                permissions += "--";
-            }
+    @Override
+    public String getModificationTime() {
+        long lastModified = getAttributes().lastModified;
 
-            return permissions;
-        }
+        return new SimpleDateFormat(FileUtils.FILE_DATETIME_FORMAT).format(lastModified);
     }
 
     /**
-     * Calculates the permissions for a local file
-     * @return the permissions
+     * Gets the modification time as milliseconds since the epoch
+     *
+     * @return the modification time in milliseconds, 0 if the file does not exist
      */
-    private String calculateLocalPermissions() {
-        String permissions = resolvePosixPermissions();
-        if (permissions == null)
-            permissions = resolveNonPosixPermissions();
-
-        if (Files.isSymbolicLink(toPath())) {
-            permissions = "l" + permissions;
-        } else if (isDirectory()) {
-            permissions = "d" + permissions;
-        } else {
-            permissions = "-" + permissions;
-        }
-
-        return permissions;
+    @Override
+    public long getModificationTimeMillis() {
+        return getAttributes().lastModified;
     }
 
     /**
-     * Gets the permissions as a string in the unix form of ls command. For Non-posix systems, this just displays the permissions for the user running the program
-     *
-     * @return the permissions as a string
+     * Refreshes the file by discarding the snapshot of its attributes, so they are read again on next access
      */
     @Override
-    public String getPermissions() {
-        if (isSymbolicLink() && Properties.FILE_PERMS_FOLLOW_LINK.getValue()) {
-            try {
-                return new LocalFile(getSymbolicLinkTarget()).getPermissions();
-            } catch (FileSystemException ex) {
-                if (FTPSystem.isDebugEnabled())
-                    ex.printStackTrace();
-                // if an exception occurs finding target, just display the link's permissions
-            }
-        }
-        return calculateLocalPermissions();
+    public void refresh() {
+        attributes = null;
+        symbolicLinkTarget = null;
     }
 
     /**
-     * Gets the modification time as a formatted String in the form of Month Day Hour:Minute, e.g Jan 01 12:50
-     *
-     * @return the formatted modification time String, can be null if can't be determined.
+     * Creates the directory named by this file, discarding the snapshot of its attributes
+     * @return true if the directory was created
      */
     @Override
-    public String getModificationTime() {
-        long lastModified = lastModified();
+    public boolean mkdir() {
+        refresh();
+        return super.mkdir();
+    }
 
-        return new SimpleDateFormat(FileUtils.FILE_DATETIME_FORMAT).format(lastModified);
+    /**
+     * Creates the file named by this file if it does not exist, discarding the snapshot of its attributes
+     * @return true if the file was created
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public boolean createNewFile() throws IOException {
+        refresh();
+        return super.createNewFile();
     }
 
     /**
-     * Refreshes the file if the file implementation caches certain info. E.g a remote file may rather than making multiple calls to the server
-     * No-op for a LocalFile
+     * Deletes this file, discarding the snapshot of its attributes
+     * @return true if deleted
      */
     @Override
-    public void refresh() {
-        // no-op for LocalFile
+    public boolean delete() {
+        refresh();
+        return super.delete();
     }
 
     /**
@@ -256,11 +250,11 @@ public class LocalFile extends File implements CommonFile {
      */
     @Override
     public boolean isSymbolicLink() {
-        return Files.isSymbolicLink(toPath());
+        return getAttributes().symbolicLink;
     }
 
     /**
-     * Gets the target of the symbolic link.
+     * Gets the target of the symbolic link. The target is resolved once and kept until the file is refreshed
      *
      * @return the symbolic link target, null if not symbolic link
      * @throws FileSystemException if an error occurs
@@ -268,16 +262,23 @@ public class LocalFile extends File implements CommonFile {
     @Override
     public String getSymbolicLinkTarget() throws FileSystemException {
         if (isSymbolicLink()) {
-            try {
-                String path = Files.readSymbolicLink(toPath()).toString();
-
-                return PathResolverFactory.newInstance()
-                        .setLocal(FileUtils.getParentPath(getFilePath(), true)) // a symbolic link may be relative to the directory it's inside
-                        .build()
-                        .resolvePath(path);
-            } catch (IOException | PathResolverException ex) {
-                throw new FileSystemException("Failed to read symbolic link target");
+            String symbolicLinkTarget = this.symbolicLinkTarget;
+
+            if (symbolicLinkTarget == null) {
+                try {
+                    String path = Files.readSymbolicLink(toPath()).toString();
+
+                    symbolicLinkTarget = PathResolverFactory.newInstance()
+                            .setLocal(FileUtils.getParentPath(getFilePath(), true)) // a symbolic link may be relative to the directory it's inside
+                            .build()
+                            .resolvePath(path);
+                    this.symbolicLinkTarget = symbolicLinkTarget;
+                } catch (IOException | PathResolverException ex) {
+                    throw new FileSystemException("Failed to read symbolic link target");
+                }
             }
+
+            return symbolicLinkTarget;
         } else {
             return null;
         }
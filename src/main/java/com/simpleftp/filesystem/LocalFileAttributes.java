@@ -0,0 +1,193 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+/**
+ * This class represents an immutable snapshot of the attributes of a local file, read in bulk with one NIO call for the file itself
+ * and, if it is a symbolic link, one for its target. A LocalFile serves its accessors from a snapshot until it is refreshed.
+ *
+ * On Windows, the attributes of files listed with a DirectoryStream are already held by the listed paths, so reading the snapshot
+ * does not touch the disk again
+ */
+final class LocalFileAttributes {
+    /**
+     * True if the file, or the target if it is a symbolic link, exists
+     */
+    final boolean exists;
+    /**
+     * True if the file itself is a symbolic link
+     */
+    final boolean symbolicLink;
+    /**
+     * True if the file is a directory, following symbolic links
+     */
+    final boolean directory;
+    /**
+     * True if the file is a regular file, following symbolic links
+     */
+    final boolean regularFile;
+    /**
+     * True if the file is hidden
+     */
+    final boolean hidden;
+    /**
+     * The size of the file itself, i.e. of the link if a symbolic link
+     */
+    final long linkSize;
+    /**
+     * The size of the file, following symbolic links. 0 if the target does not exist
+     */
+    final long size;
+    /**
+     * The modification time of the file in epoch milliseconds, following symbolic links. 0 if the target does not exist
+     */
+    final long lastModified;
+    /**
+     * The rwx permissions of the file itself, without the type character
+     */
+    final String linkPermissions;
+    /**
+     * The rwx permissions of the file following symbolic links, without the type character. Null if the target does not exist
+     */
+    final String permissions;
+
+    /**
+     * Constructs the snapshot from the attributes read
+     * @param path the path the attributes were read for
+     * @param linkAttributes the attributes of the file itself, null if it does not exist
+     * @param attributes the attributes following symbolic links, null if the target does not exist
+     */
+    private LocalFileAttributes(Path path, BasicFileAttributes linkAttributes, BasicFileAttributes attributes) {
+        exists = attributes != null;
+        symbolicLink = linkAttributes != null && linkAttributes.isSymbolicLink();
+        directory = exists && attributes.isDirectory();
+        regularFile = exists && attributes.isRegularFile();
+        linkSize = linkAttributes == null ? 0:linkAttributes.size();
+        size = exists ? attributes.size():0;
+        lastModified = exists ? attributes.lastModifiedTime().toMillis():0;
+        hidden = isHidden(path, linkAttributes);
+        linkPermissions = linkAttributes == null ? null:toPermissions(path, linkAttributes);
+        permissions = !exists ? null:attributes == linkAttributes ? linkPermissions:toPermissions(path, attributes);
+    }
+
+    /**
+     * Reads a snapshot of the attributes of the provided path. If the file does not exist, the snapshot says so rather than failing
+     * @param path the path to read
+     * @return the snapshot of the attributes
+     */
+    static LocalFileAttributes read(Path path) {
+        Class<? extends BasicFileAttributes> type = getAttributesType(path);
+        BasicFileAttributes linkAttributes = readAttributes(path, type, LinkOption.NOFOLLOW_LINKS);
+        BasicFileAttributes attributes = linkAttributes;
+
+        if (linkAttributes != null && linkAttributes.isSymbolicLink())
+            attributes = readAttributes(path, type);
+
+        return new LocalFileAttributes(path, linkAttributes, attributes);
+    }
+
+    /**
+     * Reads the attributes of the path
+     * @param path the path to read
+     * @param type the type of attributes to read
+     * @param options the link options
+     * @return the attributes, null if they could not be read
+     */
+    private static BasicFileAttributes readAttributes(Path path, Class<? extends BasicFileAttributes> type, LinkOption... options) {
+        try {
+            return Files.readAttributes(path, type, options);
+        } catch (IOException | UnsupportedOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Determines the most detailed attributes the file system of the path supports
+     * @param path the path being read
+     * @return the attributes class to read
+     */
+    private static Class<? extends BasicFileAttributes> getAttributesType(Path path) {
+        Set<String> views = path.getFileSystem().supportedFileAttributeViews();
+
+        if (views.contains("posix"))
+            return PosixFileAttributes.class;
+        else if (views.contains("dos"))
+            return DosFileAttributes.class;
+        else
+            return BasicFileAttributes.class;
+    }
+
+    /**
+     * Determines if the file is hidden. On posix systems, a file is hidden if its name starts with a dot
+     * @param path the path of the file
+     * @param attributes the attributes of the file itself
+     * @return true if hidden
+     */
+    private static boolean isHidden(Path path, BasicFileAttributes attributes) {
+        if (attributes instanceof DosFileAttributes) {
+            return ((DosFileAttributes)attributes).isHidden();
+        } else {
+            Path name = path.getFileName();
+
+            return name != null && name.toString().startsWith(".");
+        }
+    }
+
+    /**
+     * Converts the attributes to a permissions string. For posix attributes, this is in the form rwxrwxrwx. Otherwise,
+     * only the permissions of the user running the program can be determined, in the form r-w-x
+     * @param path the path of the file
+     * @param attributes the attributes to convert
+     * @return the permissions string
+     */
+    private static String toPermissions(Path path, BasicFileAttributes attributes) {
+        if (attributes instanceof PosixFileAttributes) {
+            char[] permissions = "---------".toCharArray(); // first 3 indices, owner rwx, next 3, group, last 3 others
+
+            for (PosixFilePermission permission : ((PosixFileAttributes)attributes).permissions()) {
+                switch (permission) {
+                    case OWNER_READ: permissions[0] = 'r'; break;
+                    case OWNER_WRITE: permissions[1] = 'w'; break;
+                    case OWNER_EXECUTE: permissions[2] = 'x'; break;
+                    case GROUP_READ: permissions[3] = 'r'; break;
+                    case GROUP_WRITE: permissions[4] = 'w'; break;
+                    case GROUP_EXECUTE: permissions[5] = 'x'; break;
+                    case OTHERS_READ: permissions[6] = 'r'; break;
+                    case OTHERS_WRITE: permissions[7] = 'w'; break;
+                    case OTHERS_EXECUTE: permissions[8] = 'x'; break;
+                }
+            }
+
+            return new String(permissions);
+        } else {
+            return (Files.isReadable(path) ? "r":"-")
+                    + (Files.isWritable(path) ? "-w":"--")
+                    + (Files.isExecutable(path) ? "-x":"--");
+        }
+    }
+}
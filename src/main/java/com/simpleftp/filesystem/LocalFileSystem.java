@@ -19,6 +19,8 @@ package com.simpleftp.filesystem;
 
 import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.interfaces.CommonFile;
+import com.simpleftp.filesystem.paths.LocalPath;
+import com.simpleftp.filesystem.paths.RemotePath;
 import com.simpleftp.ftp.FTPSystem;
 import com.simpleftp.ftp.connection.FTPConnection;
 import com.simpleftp.ftp.exceptions.FTPException;
@@ -26,10 +28,8 @@ import org.apache.commons.net.ftp.FTPFile;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileVisitOption;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.concurrent.atomic.AtomicReference;
+import java.nio.file.*;
+import java.util.ArrayList;
 
 /**
  * Represents a local file system "linked" to a remote FTP Connection
@@ -78,6 +78,7 @@ public class LocalFileSystem extends AbstractFileSystem {
      * @throws FileSystemException if an error occurs causing the deletion to fail
      */
     private void deleteDirectoryRecursively(String directory) throws FileSystemException {
+        checkCancelled();
         LocalFile file = new LocalFile(directory);
         File[] listings = file.listFiles();
         if (listings != null) {
@@ -101,13 +102,19 @@ public class LocalFileSystem extends AbstractFileSystem {
         if (!(file instanceof LocalFile))
             throw new FileSystemException("Cannot remove a remote file from the LocalFileSystem");
 
-        if (!file.isSymbolicLink() && file.isADirectory()) { // if file is a symbolic link just delete the link, not the target directory
-            deleteDirectoryRecursively(file.getFilePath());
-            return !file.exists();
-        } else if (file.isNormalFile()) {
-            return ((LocalFile) file).delete();
-        } else {
-            return false;
+        boolean succeeded = false;
+
+        try {
+            if (!file.isSymbolicLink() && file.isADirectory()) { // if file is a symbolic link just delete the link, not the target directory
+                deleteDirectoryRecursively(file.getFilePath());
+                succeeded = !file.exists();
+            } else if (file.isNormalFile()) {
+                succeeded = ((LocalFile) file).delete();
+            }
+
+            return succeeded;
+        } finally {
+            reportCompleted(file.getFilePath(), null, succeeded);
         }
     }
 
@@ -145,23 +152,25 @@ public class LocalFileSystem extends AbstractFileSystem {
      */
     @Override
     public LocalFile[] listFiles(String dir) {
-        File file = new File(dir);
-
-        if (file.isDirectory()) {
-            File[] files = file.listFiles();
+        Path path = Paths.get(dir);
 
-            if (files != null) {
-                LocalFile[] localFiles = new LocalFile[files.length];
+        if (Files.isDirectory(path)) {
+            ArrayList<LocalFile> localFiles = new ArrayList<>();
 
-                int i = 0;
-                for (File f : files) {
-                    localFiles[i++] = new LocalFile(f.getAbsolutePath());
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path entry : stream) {
+                    Path absolute = entry.toAbsolutePath();
+                    localFiles.add(new LocalFile(absolute.toString(), LocalFileAttributes.read(entry))); // read from the listed entry so cached attributes can be reused
                 }
-
-                return localFiles;
+            } catch (IOException | DirectoryIteratorException ex) {
+                if (FTPSystem.isDebugEnabled())
+                    ex.printStackTrace();
+                return null;
             }
 
+            return localFiles.toArray(new LocalFile[0]);
         }
+
         return null;
     }
 
@@ -200,49 +209,20 @@ public class LocalFileSystem extends AbstractFileSystem {
         String destinationDir = destination.getAbsolutePath();
         String destinationPath = FileUtils.appendPath(destinationDir, sourceName, true);
 
-        if (fileExists(destinationPath))
+        if (fileExists(destinationPath) && !isResuming())
             return false;
 
         Path sourcePath = source.toPath();
-        Path destinationNioPath = destination.toPath();
-        AtomicReference<Boolean> fatalException = new AtomicReference<>(false);
+        Path targetPath = destination.toPath().resolve(sourcePath.getFileName());
 
         try {
-            if (copy && source.isADirectory()) {
-                final Path finalDestinationNioPath = destinationNioPath.resolve(sourcePath.getFileName());
-                AtomicReference<IOException> thrownException = new AtomicReference<>(null);
-
-                Files.walk(sourcePath, FileVisitOption.FOLLOW_LINKS)
-                        .forEach(source1 -> {
-                            if (Files.exists(source1) && !fatalException.get()) {
-                                Path targetPath = null;
-                                try {
-                                    targetPath = finalDestinationNioPath.resolve(sourcePath.relativize(source1));
-                                    Files.copy(source1, targetPath);
-                                } catch (IOException ex) {
-                                    boolean fatal = Files.isDirectory(source1);
-
-                                    if (fatal) {
-                                        fatalException.set(true);
-                                        thrownException.set(ex);
-                                    } else {
-                                        fileOperationErrors.add(new FileOperationError("Failed to copy a file to destination directory",
-                                                source1.toAbsolutePath().toString(),
-                                                targetPath.toAbsolutePath().toString()));
-                                    }
-                                }
-                            }
-                        });
-
-                IOException thrown = thrownException.get();
-                if (thrown != null)
-                    throw thrown;
+            if (copy) {
+                new LocalTreeCopier(this, sourcePath, targetPath, isResuming()).copy();
             } else {
-                if (copy) {
-                    Files.copy(sourcePath, destinationNioPath.resolve(sourcePath.getFileName()));
-                } else {
-                    Files.move(sourcePath, destinationNioPath.resolve(sourcePath.getFileName()));
-                }
+                Files.move(sourcePath, targetPath);
+
+                if (Files.isRegularFile(targetPath))
+                    reportProgress(sourcePath.toAbsolutePath().toString(), targetPath.toAbsolutePath().toString(), Files.size(targetPath));
             }
 
             return Files.exists(Path.of(destinationPath));
@@ -255,20 +235,19 @@ public class LocalFileSystem extends AbstractFileSystem {
      * Recursively downloads an entire directory to the destination directory path.
      *
      * Package accessible as RemoteFileSystem remote to remote copy requires download of directories to temp folder
-     * @param sourceDirectory the source directory to download
-     * @param destDirectory the destination directory to download to
-     * @param currentDirectory the current directory traversed, leave null for initial state
+     * @param sourceDirectory the parsed path of the source directory to download
+     * @param destDirectory the parsed path of the destination directory to download to
      * @param ftpConnection the connection to use
      * @param fileSystem the file system calling this method
      * @param copy if false, the files will be deleted from the server as they are copied
+     * @param reportProgress true to publish a progress event for each file downloaded, false if the download is only an intermediate step, i.e. a temp copy
      * @throws FTPException if an error occurs related to the FTP connection
      */
-    static void recursivelyDownloadDirectory(String sourceDirectory, String destDirectory, String currentDirectory, FTPConnection ftpConnection, AbstractFileSystem fileSystem, boolean copy) throws FTPException, FileSystemException {
-        String listPath = sourceDirectory;
-        if (currentDirectory != null)
-            listPath = FileUtils.appendPath(listPath, currentDirectory, false); // here this is appending a remote path
-
-        String destPath = FileUtils.appendPath(destDirectory, RemoteFile.getName(listPath), true);
+    static void recursivelyDownloadDirectory(RemotePath sourceDirectory, LocalPath destDirectory, FTPConnection ftpConnection, AbstractFileSystem fileSystem, boolean copy, boolean reportProgress) throws FTPException, FileSystemException {
+        String listPath = sourceDirectory.toString();
+        String name = sourceDirectory.getFileName();
+        LocalPath destination = name.isEmpty() ? destDirectory:destDirectory.resolveName(name); // the root has no name, so is downloaded into the destination
+        String destPath = destination.toString();
 
         LocalFile file = new LocalFile(destPath);
         if (!file.exists())
@@ -286,12 +265,10 @@ public class LocalFileSystem extends AbstractFileSystem {
                 if (currName.equals(".") || currName.equals(".."))
                     continue;
 
-                String filePath;
-                if (currentDirectory == null) {
-                    filePath = FileUtils.appendPath(sourceDirectory, currName, false);
-                } else {
-                    filePath = FileUtils.appendPath(FileUtils.appendPath(sourceDirectory, currentDirectory, false), currName, false);
-                }
+                fileSystem.checkCancelled();
+
+                RemotePath path = sourceDirectory.resolveName(currName);
+                String filePath = path.toString();
 
                 RemoteFile file2 =  tempFilesystem ? new RemoteFile(filePath, ftpConnection, file1):new RemoteFile(filePath, file1);
                 boolean symLink = file1.isSymbolicLink();
@@ -299,19 +276,24 @@ public class LocalFileSystem extends AbstractFileSystem {
                 boolean isFile = symLink ? file2.isNormalFile():file1.isFile();
 
                 if (directory) {
-                    recursivelyDownloadDirectory(listPath, destPath, currName, ftpConnection, fileSystem, copy);
+                    recursivelyDownloadDirectory(path, destination, ftpConnection, fileSystem, copy, reportProgress);
                 } else if (isFile) {
-                    LocalFile downloaded = ftpConnection.downloadFile(filePath, destPath);
-                    if (downloaded == null || !downloaded.exists())
-                        fileSystem.fileOperationErrors.add(new FileOperationError("Failed to download file", filePath, destPath));
+                    if (!fileSystem.isTransferred(filePath)) { // a file transferred before a resumed move was interrupted only needs to be removed
+                        boolean resume = fileSystem.beginTransfer(filePath, destination.resolveName(currName).toString());
+                        LocalFile downloaded = ftpConnection.downloadFile(filePath, destPath, resume);
+                        if (downloaded == null || !downloaded.exists())
+                            fileSystem.reportError("Failed to download file", filePath, destPath);
+                        else if (reportProgress)
+                            fileSystem.reportProgress(filePath, downloaded.getFilePath(), downloaded.length());
+                    }
 
                     if (!copy && !ftpConnection.removeFile(filePath))
-                        fileSystem.fileOperationErrors.add(new FileOperationError("Failed to remove file from remote filesystem", filePath, destPath));
+                        fileSystem.reportError("Failed to remove file from remote filesystem", filePath, destPath);
                 }
             }
 
             if (!copy && !ftpConnection.removeDirectory(listPath))
-                fileSystem.fileOperationErrors.add(new FileOperationError("Failed to remove file from remote filesystem", listPath, destPath));
+                fileSystem.reportError("Failed to remove file from remote filesystem", listPath, destPath);
         }
     }
 
@@ -335,7 +317,7 @@ public class LocalFileSystem extends AbstractFileSystem {
         if (!destination.isADirectory())
             throw new FileSystemException("The destination file " + destinationDir + " is either not a directory or it doesn't exist");
 
-        if (fileExists(destinationPath))
+        if (fileExists(destinationPath) && !isResuming())
             return false;
 
         boolean sourceDir = source.isADirectory();
@@ -344,11 +326,13 @@ public class LocalFileSystem extends AbstractFileSystem {
             FTPConnection ftpConnection = getFTPConnection();
 
             if (sourceDir) {
-                recursivelyDownloadDirectory(sourcePath, destinationDir, null, ftpConnection, this, copy);
+                recursivelyDownloadDirectory(RemotePath.of(sourcePath), LocalPath.of(destinationDir), ftpConnection, this, copy, true);
                 return fileExists(destinationPath);
             } else {
-                LocalFile downloaded = ftpConnection.downloadFile(sourcePath, destinationDir);
+                boolean resume = beginTransfer(sourcePath, destinationPath);
+                LocalFile downloaded = ftpConnection.downloadFile(sourcePath, destinationDir, resume);
                 if (downloaded != null && downloaded.exists()) {
+                    reportProgress(sourcePath, downloaded.getFilePath(), downloaded.length());
                     return copy || ftpConnection.removeFile(sourcePath);
                 } else {
                     return false;
@@ -383,12 +367,20 @@ public class LocalFileSystem extends AbstractFileSystem {
     @Override
     public boolean copyFiles(CommonFile source, CommonFile destination) throws FileSystemException {
         CopyMoveOperation copyMoveOperation = determineCopyMoveOperation(source, destination);
-        if (copyMoveOperation == CopyMoveOperation.LOCAL_TO_LOCAL) {
-            return localToLocalOperation((LocalFile)source, (LocalFile)destination, true);
-        } else if (copyMoveOperation == CopyMoveOperation.REMOTE_TO_LOCAL) {
-            return remoteToLocalOperation((RemoteFile)source, (LocalFile)destination, true);
-        } else {
-            throw new UnsupportedOperationException("Unsupported copy operation for LocalFileSystem encountered: " + copyMoveOperation);
+        boolean succeeded = false;
+
+        try {
+            if (copyMoveOperation == CopyMoveOperation.LOCAL_TO_LOCAL) {
+                succeeded = localToLocalOperation((LocalFile)source, (LocalFile)destination, true);
+            } else if (copyMoveOperation == CopyMoveOperation.REMOTE_TO_LOCAL) {
+                succeeded = remoteToLocalOperation((RemoteFile)source, (LocalFile)destination, true);
+            } else {
+                throw new UnsupportedOperationException("Unsupported copy operation for LocalFileSystem encountered: " + copyMoveOperation);
+            }
+
+            return succeeded;
+        } finally {
+            reportCompleted(source.getFilePath(), destination.getFilePath(), succeeded); // published even if an exception is thrown so subscribers know the operation has finished
         }
     }
 
@@ -417,12 +409,20 @@ public class LocalFileSystem extends AbstractFileSystem {
     @Override
     public boolean moveFiles(CommonFile source, CommonFile destination) throws FileSystemException {
         CopyMoveOperation copyMoveOperation = determineCopyMoveOperation(source, destination);
-        if (copyMoveOperation == CopyMoveOperation.LOCAL_TO_LOCAL) {
-            return localToLocalOperation((LocalFile)source, (LocalFile)destination, false);
-        } else if (copyMoveOperation == CopyMoveOperation.REMOTE_TO_LOCAL) {
-            return remoteToLocalOperation((RemoteFile)source, (LocalFile)destination, false);
-        } else {
-            throw new UnsupportedOperationException("Unsupported move operation for LocalFileSystem encountered: " + copyMoveOperation);
+        boolean succeeded = false;
+
+        try {
+            if (copyMoveOperation == CopyMoveOperation.LOCAL_TO_LOCAL) {
+                succeeded = localToLocalOperation((LocalFile)source, (LocalFile)destination, false);
+            } else if (copyMoveOperation == CopyMoveOperation.REMOTE_TO_LOCAL) {
+                succeeded = remoteToLocalOperation((RemoteFile)source, (LocalFile)destination, false);
+            } else {
+                throw new UnsupportedOperationException("Unsupported move operation for LocalFileSystem encountered: " + copyMoveOperation);
+            }
+
+            return succeeded;
+        } finally {
+            reportCompleted(source.getFilePath(), destination.getFilePath(), succeeded); // published even if an exception is thrown so subscribers know the operation has finished
         }
     }
 }
@@ -0,0 +1,300 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem;
+
+import com.simpleftp.filesystem.exceptions.FileSystemException;
+import com.simpleftp.properties.Properties;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class copies a local file or directory tree to a local destination for a LocalFileSystem.
+ *
+ * The tree is walked once, creating the destination directories in order, and the files found are then copied in parallel on a ForkJoinPool
+ * using FileChannel.transferTo, which lets the operating system copy the data without passing it through the JVM. The number of files copied
+ * at the same time is LOCAL_COPY_PARALLELISM, or LOCAL_COPY_HDD_PARALLELISM if the source or destination is detected to be on a rotational disk.
+ *
+ * Progress and non-fatal errors are reported through the file system's event bus and journal, in the same way as remote operations
+ */
+final class LocalTreeCopier {
+    /**
+     * The number of bytes transferred at a time, after which the copy checks if it has been cancelled
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 16 * 1024 * 1024;
+    /**
+     * The file system carrying out the copy, used to report on and check for cancellation
+     */
+    private final AbstractFileSystem fileSystem;
+    /**
+     * The source file or directory to copy
+     */
+    private final Path source;
+    /**
+     * The path the source is copied to
+     */
+    private final Path target;
+    /**
+     * True if the copy is being resumed from a journal, in which case existing files at the destination may be partial and are replaced
+     */
+    private final boolean resuming;
+
+    /**
+     * Constructs a copier for the given source and target
+     * @param fileSystem the file system carrying out the copy
+     * @param source the source file or directory to copy
+     * @param target the path to copy the source to, i.e. including the source's name
+     * @param resuming true if the copy is being resumed from a journal
+     */
+    LocalTreeCopier(AbstractFileSystem fileSystem, Path source, Path target, boolean resuming) {
+        this.fileSystem = fileSystem;
+        this.source = source;
+        this.target = target;
+        this.resuming = resuming;
+    }
+
+    /**
+     * Copies the source to the target. If the source is a directory, its directory structure is created first, failing if any directory
+     * cannot be created, and the files are then copied in parallel. Failures on single files are reported as errors, not thrown
+     * @throws IOException if the source is a single file and fails to copy, or a directory fails to be created
+     * @throws FileSystemException if the copy is cancelled
+     */
+    void copy() throws IOException, FileSystemException {
+        if (Files.isDirectory(source)) {
+            List<Path> files = createDirectories();
+            fileSystem.checkCancelled();
+
+            if (!files.isEmpty()) {
+                ForkJoinPool pool = new ForkJoinPool(getParallelism());
+
+                try {
+                    pool.invoke(new CopyFilesAction(files, 0, files.size()));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+
+            fileSystem.checkCancelled();
+        } else {
+            String sourceFile = source.toAbsolutePath().toString(), targetFile = target.toAbsolutePath().toString();
+            fileSystem.beginTransfer(sourceFile, targetFile);
+            long size = copyFile(source, target);
+            fileSystem.checkCancelled();
+            fileSystem.reportProgress(sourceFile, targetFile, size);
+        }
+    }
+
+    /**
+     * Walks the source tree, following symbolic links, creating each directory at the destination
+     * @return the files found in the tree, to be copied
+     * @throws IOException if a directory fails to be created
+     */
+    private List<Path> createDirectories() throws IOException {
+        List<Path> files = new ArrayList<>();
+
+        Files.walkFileTree(source, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (fileSystem.isCancelled())
+                    return FileVisitResult.TERMINATE;
+
+                Path targetDir = resolveTarget(dir);
+                if (!(resuming && Files.isDirectory(targetDir)))
+                    Files.createDirectory(targetDir);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile())
+                    files.add(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                fileSystem.reportError("Failed to read a file to copy to destination directory: " + exc.getMessage(),
+                        file.toAbsolutePath().toString(), resolveTarget(file).toAbsolutePath().toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return files;
+    }
+
+    /**
+     * Resolves the path that a path in the source tree is copied to
+     * @param path the path inside the source tree
+     * @return the path at the destination
+     */
+    private Path resolveTarget(Path path) {
+        return target.resolve(source.relativize(path).toString());
+    }
+
+    /**
+     * Copies a single file from the tree, skipping it if the journal records it as copied already and reporting an error if it fails.
+     * A file stopped part way through because the copy was cancelled is neither reported as copied nor as an error
+     * @param file the file to copy
+     */
+    private void copyTreeFile(Path file) {
+        Path targetFile = resolveTarget(file);
+        String sourcePath = file.toAbsolutePath().toString(), targetPath = targetFile.toAbsolutePath().toString();
+
+        if (fileSystem.isTransferred(sourcePath))
+            return;
+
+        try {
+            fileSystem.beginTransfer(sourcePath, targetPath);
+            long size = copyFile(file, targetFile);
+
+            if (!fileSystem.isCancelled())
+                fileSystem.reportProgress(sourcePath, targetPath, size);
+        } catch (IOException ex) {
+            if (!fileSystem.isCancelled()) // e.g. the channel was closed by the interrupted thread
+                fileSystem.reportError("Failed to copy a file to destination directory", sourcePath, targetPath);
+        }
+    }
+
+    /**
+     * Copies the contents of the source file to the target file with FileChannel.transferTo. The target must not exist unless resuming,
+     * in which case it is truncated since it may have been left partial by the interrupted copy
+     * @param sourceFile the file to copy
+     * @param targetFile the file to copy to
+     * @return the number of bytes copied, which is less than the size of the file if the copy was cancelled part way through
+     * @throws IOException if the copy fails
+     */
+    private long copyFile(Path sourceFile, Path targetFile) throws IOException {
+        Set<StandardOpenOption> targetOptions = resuming ?
+                EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+                :EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+
+        try (FileChannel in = FileChannel.open(sourceFile, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(targetFile, targetOptions)) {
+            long size = in.size();
+            long position = 0;
+
+            while (position < size) {
+                if (fileSystem.isCancelled())
+                    break;
+
+                long transferred = in.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position), out);
+                if (transferred <= 0)
+                    break; // the file was truncated while copying
+
+                position += transferred;
+            }
+
+            return position;
+        }
+    }
+
+    /**
+     * Gets the number of files to copy at the same time, depending on whether the source or target is on a rotational disk
+     * @return the parallelism to use
+     */
+    private int getParallelism() {
+        boolean rotational = isRotational(source) || isRotational(target);
+        return rotational ? Properties.LOCAL_COPY_HDD_PARALLELISM.getValue():Properties.LOCAL_COPY_PARALLELISM.getValue();
+    }
+
+    /**
+     * Determines if the given path is stored on a rotational disk. This can only be detected on Linux, where the block device backing the
+     * path's file store reports it under /sys/class/block. Anywhere else, or if the device can't be found, the disk is assumed not to be rotational
+     * @param path the path to check
+     * @return true if detected to be on a rotational disk
+     */
+    static boolean isRotational(Path path) {
+        try {
+            String name = Files.getFileStore(path).name();
+
+            if (name.startsWith("/dev/")) {
+                Path device = Paths.get("/sys/class/block", Paths.get(name).getFileName().toString());
+
+                if (Files.exists(device)) {
+                    device = device.toRealPath();
+                    Path rotational = device.resolve("queue/rotational");
+
+                    if (!Files.exists(rotational))
+                        rotational = device.getParent().resolve("queue/rotational"); // a partition, so check the disk it is on
+
+                    return Files.exists(rotational) && Files.readString(rotational).trim().equals("1");
+                }
+            }
+        } catch (IOException | InvalidPathException ex) {
+            // can't be determined, so fall through
+        }
+
+        return false;
+    }
+
+    /**
+     * This action copies a range of the files found in the tree, splitting the range in two until it is small enough to copy directly
+     */
+    private class CopyFilesAction extends RecursiveAction {
+        /**
+         * The files found in the tree
+         */
+        private final List<Path> files;
+        /**
+         * The index of the first file in the range to copy
+         */
+        private final int start;
+        /**
+         * The index after the last file in the range to copy
+         */
+        private final int end;
+
+        /**
+         * Constructs an action to copy the given range of files
+         * @param files the files found in the tree
+         * @param start the index of the first file in the range
+         * @param end the index after the last file in the range
+         */
+        private CopyFilesAction(List<Path> files, int start, int end) {
+            this.files = files;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Copies the range of files, forking two actions for each half of the range if it holds more than one file
+         */
+        @Override
+        protected void compute() {
+            if (fileSystem.isCancelled())
+                return;
+
+            if (end - start == 1) {
+                copyTreeFile(files.get(start));
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new CopyFilesAction(files, start, middle), new CopyFilesAction(files, middle, end));
+            }
+        }
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * This class gives read-only, memory-bounded access to the lines of a text file of any size, for viewing files too large to load into an editor.
+ *
+ * The file is memory-mapped in segments, so its contents are paged in by the operating system as they are read rather than held on the heap.
+ * The start offsets of the lines are found by buildIndex, which is intended to run in the background while the lines already indexed are viewed.
+ * A line is only decoded when it is retrieved, so only the lines on screen are ever held as Strings.
+ *
+ * The charset can be detected from the start of the file in the same way as TextDecodingOutputStream does. Lines are split on the line feed as encoded
+ * in the charset, matched only at the boundaries of the charset's code units, so files in charsets wider than a byte, e.g. UTF-16, are split correctly.
+ * A charset that doesn't encode a line feed as a single code unit can't be indexed and is rejected.
+ *
+ * Indexing is carried out by one thread, while any number of threads can retrieve lines and search at the same time
+ */
+public final class MappedTextFile implements Closeable {
+    /**
+     * The number of bytes mapped by each segment. Mapping in segments allows files over 2GB, the limit of a single mapping
+     */
+    private static final long SEGMENT_SIZE = 256L * 1024 * 1024;
+    /**
+     * The maximum number of bytes of a line that are decoded, so a file with very long lines (e.g. a binary file) can't use up the heap
+     */
+    public static final int MAX_LINE_LENGTH = 8192;
+    /**
+     * The number of lines found before the index is published to readers and the progress consumer
+     */
+    private static final int PUBLISH_INTERVAL = 65536;
+    /**
+     * The channel the file is mapped with
+     */
+    private final FileChannel channel;
+    /**
+     * The size of the file in bytes
+     */
+    private final long size;
+    /**
+     * The charset used to decode lines and encode search text
+     */
+    private final Charset charset;
+    /**
+     * The line feed as encoded in the charset
+     */
+    private final byte[] lineFeed;
+    /**
+     * The offset of the first line, i.e. after any byte order mark
+     */
+    private final long textStart;
+    /**
+     * The mapped segments of the file, mapped the first time they are accessed
+     */
+    private final MappedByteBuffer[] segments;
+    /**
+     * The start offsets of the lines indexed so far. Only the first lineCount are valid
+     */
+    private long[] lineOffsets = new long[1024];
+    /**
+     * The number of lines indexed so far
+     */
+    private int lineCount;
+    /**
+     * The offset of the end of the last line indexed, excluding its line ending
+     */
+    private long lastLineEnd;
+    /**
+     * True once the whole file has been indexed
+     */
+    private volatile boolean indexed;
+
+    /**
+     * Opens the file to be read, detecting its charset from a byte order mark or whether it is valid UTF-8, else using the platform's charset
+     * @param path the path of the file
+     * @throws IOException if the file can't be opened or its charset can't be indexed
+     */
+    public MappedTextFile(Path path) throws IOException {
+        this(path, null);
+    }
+
+    /**
+     * Opens the file to be read
+     * @param path the path of the file
+     * @param charset the charset the file is encoded in, null to detect it
+     * @throws IOException if the file can't be opened or the charset can't be indexed
+     */
+    public MappedTextFile(Path path, Charset charset) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            this.size = channel.size();
+            this.segments = new MappedByteBuffer[(int)((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+
+            byte[] header = new byte[(int)Math.min(size, TextDecodingOutputStream.DETECTION_LENGTH)];
+            readBytes(0, header.length).get(header);
+            int bomLength = TextDecodingOutputStream.getByteOrderMarkLength(header);
+
+            if (charset == null)
+                charset = TextDecodingOutputStream.detectCharset(header, header.length == size, Charset.defaultCharset());
+
+            this.charset = charset;
+            this.lineFeed = encodeLineFeed(charset);
+            this.textStart = bomLength > 0 && TextDecodingOutputStream.detectCharset(header, false, null).equals(charset) ? bomLength:0;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Encodes the line feed in the charset, checking that it is a single code unit. Encoding two line feeds must give the same bytes twice, which rules out
+     * charsets that write a byte order mark or shift state
+     * @param charset the charset to encode in
+     * @return the encoded line feed
+     * @throws IOException if the charset can't be indexed
+     */
+    private static byte[] encodeLineFeed(Charset charset) throws IOException {
+        try {
+            ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap("\n\n"));
+            int length = encoded.remaining() / 2;
+            byte[] lineFeed = new byte[length];
+            byte[] second = new byte[length];
+            encoded.get(lineFeed).get(second);
+
+            if (length == 0 || encoded.hasRemaining() || !Arrays.equals(lineFeed, second) || SEGMENT_SIZE % length != 0)
+                throw new IOException("Files in the charset " + charset + " can't be viewed");
+
+            return lineFeed;
+        } catch (CharacterCodingException | UnsupportedOperationException ex) {
+            throw new IOException("Files in the charset " + charset + " can't be viewed", ex);
+        }
+    }
+
+    /**
+     * Gets the charset the file is decoded with
+     * @return the charset
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Gets the size of the file
+     * @return size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Determines if the whole file has been indexed
+     * @return true if all the lines are available
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Gets the number of lines indexed so far. Once the file is indexed, this is the number of lines in the file
+     * @return the number of lines available
+     */
+    public synchronized int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Gets the segment containing the given offset, mapping it if it has not been mapped yet
+     * @param segment the index of the segment
+     * @return the mapped segment
+     * @throws IOException if it fails to be mapped
+     */
+    private MappedByteBuffer getSegment(int segment) throws IOException {
+        MappedByteBuffer buffer;
+
+        synchronized (segments) {
+            buffer = segments[segment];
+
+            if (buffer == null) {
+                long start = segment * SEGMENT_SIZE;
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+                segments[segment] = buffer;
+            }
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Copies the bytes between the two offsets into the buffer, which may cross segments
+     * @param start the offset of the first byte
+     * @param end the offset after the last byte
+     * @return the bytes in a buffer ready to be read
+     * @throws IOException if the file can't be read
+     */
+    private ByteBuffer readBytes(long start, long end) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int)(end - start));
+
+        while (start < end) {
+            int segment = (int)(start / SEGMENT_SIZE);
+            int position = (int)(start % SEGMENT_SIZE);
+            ByteBuffer buffer = getSegment(segment).duplicate(); // duplicate so threads don't share the position
+            int length = (int)Math.min(end - start, buffer.limit() - position);
+
+            buffer.position(position).limit(position + length);
+            bytes.put(buffer);
+            start += length;
+        }
+
+        return bytes.flip();
+    }
+
+    /**
+     * Adds the offsets found to the index, making them visible to readers
+     * @param offsets the offsets found
+     * @param count the number of offsets found
+     * @param lastLineEnd the end of the last line found, excluding its line ending
+     */
+    private synchronized void publish(long[] offsets, int count, long lastLineEnd) {
+        if (lineCount + count > lineOffsets.length)
+            lineOffsets = Arrays.copyOf(lineOffsets, Math.max(lineOffsets.length * 2, lineCount + count));
+
+        System.arraycopy(offsets, 0, lineOffsets, lineCount, count);
+        lineCount += count;
+        this.lastLineEnd = lastLineEnd;
+    }
+
+    /**
+     * Builds the index of line offsets, publishing the lines found every so often so they can be viewed while the rest of the file is indexed.
+     * A line is only published once the line ending after it is found, or the end of the file is reached. Line feeds are only matched at the start of a
+     * code unit, so the byte of a line feed can't be matched inside another character of a wider charset
+     * @param cancelled checked between segments, indexing stops if it returns true
+     * @param progress called with the number of lines indexed each time lines are published, may be null
+     * @throws IOException if the file can't be read
+     */
+    public void buildIndex(BooleanSupplier cancelled, IntConsumer progress) throws IOException {
+        long[] batch = new long[PUBLISH_INTERVAL];
+        int batchCount = 0;
+        int width = lineFeed.length;
+        long lineStart = textStart;
+        long lineEnd = textStart;
+
+        for (int segment = 0; segment < segments.length && !cancelled.getAsBoolean(); segment++) {
+            ByteBuffer buffer = getSegment(segment).duplicate();
+            long segmentStart = segment * SEGMENT_SIZE;
+            int limit = buffer.limit() - width + 1; // segments hold whole code units as the segment size is a multiple of the width
+            int first = (int)Math.max(0, textStart - segmentStart);
+
+            for (int i = first; i < limit; i += width) {
+                if (isLineFeed(buffer, i)) {
+                    batch[batchCount++] = lineStart;
+                    lineEnd = segmentStart + i;
+                    lineStart = lineEnd + width;
+
+                    if (batchCount == batch.length) {
+                        publish(batch, batchCount, lineEnd);
+                        batchCount = 0;
+
+                        if (progress != null)
+                            progress.accept(getLineCount());
+                    }
+                }
+            }
+        }
+
+        if (cancelled.getAsBoolean())
+            return;
+
+        if (lineStart < size) {
+            batch[batchCount++] = lineStart; // the last line has no line ending
+            lineEnd = size;
+        }
+
+        publish(batch, batchCount, lineEnd);
+        indexed = true;
+
+        if (progress != null)
+            progress.accept(getLineCount());
+    }
+
+    /**
+     * Checks if the code unit at the index of the buffer is a line feed
+     * @param buffer the buffer to check
+     * @param index the index of the code unit
+     * @return true if a line feed
+     */
+    private boolean isLineFeed(ByteBuffer buffer, int index) {
+        for (int i = 0; i < lineFeed.length; i++)
+            if (buffer.get(index + i) != lineFeed[i])
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Gets the offset of the end of the line, excluding the line ending. Must be called with the lock held
+     * @param line the index of the line
+     * @return the end offset
+     */
+    private long getLineEnd(int line) {
+        return line + 1 < lineCount ? lineOffsets[line + 1] - lineFeed.length:lastLineEnd;
+    }
+
+    /**
+     * Retrieves the line with the given index, decoded with the file's charset. Lines longer than MAX_LINE_LENGTH bytes are truncated
+     * @param line the index of the line, less than getLineCount()
+     * @return the line without its line ending
+     * @throws IOException if the file can't be read
+     * @throws IndexOutOfBoundsException if the line has not been indexed
+     */
+    public String getLine(int line) throws IOException {
+        long start, end;
+
+        synchronized (this) {
+            if (line < 0 || line >= lineCount)
+                throw new IndexOutOfBoundsException("Line " + line + " has not been indexed");
+
+            start = lineOffsets[line];
+            end = getLineEnd(line);
+        }
+
+        boolean truncated = end - start > MAX_LINE_LENGTH;
+        if (truncated)
+            end = start + MAX_LINE_LENGTH;
+
+        String text = charset.decode(readBytes(start, end)).toString();
+
+        if (!truncated && text.endsWith("\r"))
+            text = text.substring(0, text.length() - 1);
+
+        return truncated ? text + "...":text;
+    }
+
+    /**
+     * Finds the index of the line containing the given offset among the indexed lines
+     * @param offset the offset in the file
+     * @return the index of the line
+     */
+    private synchronized int getLineAt(long offset) {
+        int index = Arrays.binarySearch(lineOffsets, 0, lineCount, offset);
+
+        return index >= 0 ? index:-index - 2;
+    }
+
+    /**
+     * Searches the indexed lines for the text, starting at the given line. The search is done on the encoded bytes of the file, so no lines are decoded.
+     * Matches are only found at the start of a code unit
+     * @param text the text to search for
+     * @param fromLine the index of the line to start searching from
+     * @param cancelled checked every so often, the search stops if it returns true
+     * @return the index of the first line at or after fromLine containing the text, -1 if not found or cancelled
+     * @throws IOException if the file can't be read
+     */
+    public int find(String text, int fromLine, BooleanSupplier cancelled) throws IOException {
+        byte[] pattern = text.getBytes(charset);
+        long start, end;
+
+        synchronized (this) {
+            if (pattern.length == 0 || fromLine < 0 || fromLine >= lineCount)
+                return -1;
+
+            start = lineOffsets[fromLine];
+            end = lastLineEnd; // don't match in a line that has not been indexed yet
+        }
+
+        byte first = pattern[0];
+        int width = lineFeed.length;
+        long lastStart = end - pattern.length; // the last position a match can start at
+        long position = start; // line offsets are always at the start of a code unit
+
+        while (position <= lastStart) {
+            int segment = (int)(position / SEGMENT_SIZE);
+            ByteBuffer buffer = getSegment(segment);
+            long segmentStart = segment * SEGMENT_SIZE;
+            long segmentEnd = Math.min(segmentStart + buffer.limit() - 1, lastStart);
+
+            for (; position <= segmentEnd; position += width) {
+                if ((position & 0xFFFFF) == 0 && cancelled.getAsBoolean()) // positions are aligned to the width, so this is still reached every 1MB
+                    return -1;
+
+                if (buffer.get((int)(position - segmentStart)) == first && matches(pattern, position))
+                    return getLineAt(position);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks if the pattern matches the bytes at the position
+     * @param pattern the bytes to match
+     * @param position the position in the file
+     * @return true if they match
+     * @throws IOException if the file can't be read
+     */
+    private boolean matches(byte[] pattern, long position) throws IOException {
+        ByteBuffer bytes = readBytes(position, position + pattern.length);
+
+        for (byte b : pattern)
+            if (bytes.get() != b)
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Closes the file. The mappings are released once they are garbage collected
+     * @throws IOException if the file fails to close
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
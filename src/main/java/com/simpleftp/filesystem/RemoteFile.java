@@ -19,6 +19,7 @@ package com.simpleftp.filesystem;
 
 import com.simpleftp.filesystem.exceptions.PathResolverException;
 import com.simpleftp.filesystem.paths.PathResolverFactory;
+import com.simpleftp.filesystem.paths.RemotePath;
 import com.simpleftp.ftp.FTPSystem;
 import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.interfaces.CommonFile;
@@ -27,7 +28,6 @@ import com.simpleftp.ftp.exceptions.*;
 import com.simpleftp.properties.Properties;
 import com.simpleftp.ui.UI;
 import lombok.AllArgsConstructor;
-import lombok.Getter;
 import org.apache.commons.net.ftp.FTPFile;
 
 import java.time.LocalDateTime;
@@ -44,10 +44,17 @@ public class RemoteFile implements CommonFile {
      */
     private FTPConnection connection;
     /**
-     * The FTPFile backing this remote file
+     * The FTPFile backing this remote file. Null while this file reads its attributes from a listing
      */
-    @Getter
     private FTPFile ftpFile;
+    /**
+     * The listing this file reads its attributes from instead of an FTPFile. Null if not created from a listing or once refreshed
+     */
+    private RemoteListing listing;
+    /**
+     * The index of this file in listing
+     */
+    private int listingIndex;
     /**
      * The ftp file representing the target if this is a symbolic link
      */
@@ -56,6 +63,10 @@ public class RemoteFile implements CommonFile {
      * The absolute path for this remote file
      */
     private final String absolutePath;
+    /**
+     * The parsed form of absolutePath, lazily initialised by getRemotePath()
+     */
+    private RemotePath remotePath;
     /**
      * Tracks if this file exists. Calling the exists() method updates it
      */
@@ -128,6 +139,30 @@ public class RemoteFile implements CommonFile {
         initSymlinkProperties();
     }
 
+    /**
+     * Creates a RemoteFile for the entry at the index of the listing. If the entry is valid and not a symbolic link, this file reads
+     * its attributes from the listing rather than holding an FTPFile. Otherwise, an FTPFile is re-created for it.
+     * Use RemoteListing.getFile to create one
+     * @param listing the listing the file was listed in
+     * @param index the index of the file in the listing
+     * @throws FileSystemException if an error occurs
+     */
+    RemoteFile(RemoteListing listing, int index) throws FileSystemException {
+        connection = listing.getConnection();
+        temporaryFile = connection != null;
+        absolutePath = listing.getFilePath(index);
+
+        if (listing.isValid(index) && !listing.isSymbolicLink(index)) {
+            this.listing = listing;
+            listingIndex = index;
+            exists = true;
+        } else {
+            validateConnection(getConnection());
+            initialiseFTPFile(listing.isValid(index) ? listing.toFTPFile(index):null);
+            initSymlinkProperties();
+        }
+    }
+
     /**
      * Validates that the file path is absolute and throws an IllegalArgumentException if not
       * @param filePath the file path to validate
@@ -148,6 +183,16 @@ public class RemoteFile implements CommonFile {
         }
     }
 
+    /**
+     * Gets the FTPFile backing this remote file. If this file reads its attributes from a listing, an FTPFile is re-created from it
+     * @return the FTPFile backing this file
+     */
+    public FTPFile getFtpFile() {
+        RemoteListing listing = this.listing;
+
+        return listing != null ? listing.toFTPFile(listingIndex):ftpFile;
+    }
+
     /**
      * Returns the connection to use for the remote file. FTPSystem if this file is not a temporary file, the provided connection if temporary file
      * @return connection to use for this remote file
@@ -322,8 +367,12 @@ public class RemoteFile implements CommonFile {
      */
     @Override
     public boolean isADirectory() throws FileSystemException {
+        RemoteListing listing = this.listing;
+
         if (!exists) {
             return false;
+        } else if (listing != null) {
+            return listing.isDirectory(listingIndex);
         } else if (ftpFile.isValid() && !ftpFile.isSymbolicLink()) {
             return ftpFile.isDirectory();
         } else if (isSymbolicLink() && targetFile.isValid()) {
@@ -348,8 +397,12 @@ public class RemoteFile implements CommonFile {
      */
     @Override
     public boolean isNormalFile() throws FileSystemException {
+        RemoteListing listing = this.listing;
+
         if (!exists) {
             return false;
+        } else if (listing != null) {
+            return listing.isFile(listingIndex);
         } else if (ftpFile.isValid() && !ftpFile.isSymbolicLink()) {
             return ftpFile.isFile();
         } else if (isSymbolicLink() && (targetFile != null && targetFile.isValid())) {
@@ -375,9 +428,12 @@ public class RemoteFile implements CommonFile {
     @Override
     public long getSize() throws FileSystemException {
         if (size == null) {
-            boolean getTargetSize = ftpFile.isSymbolicLink() && Properties.FILE_SIZE_FOLLOW_LINK.getValue();
+            RemoteListing listing = this.listing;
+            boolean getTargetSize = isSymbolicLink() && Properties.FILE_SIZE_FOLLOW_LINK.getValue();
             if (!exists) {
                 size = -1L;
+            } else if (listing != null) {
+                size = listing.getSize(listingIndex);
             } else if (ftpFile.isValid() && !getTargetSize) {
                 size = ftpFile.getSize();
             } else if (getTargetSize && targetFile.isValid()) {
@@ -402,12 +458,19 @@ public class RemoteFile implements CommonFile {
     }
 
     /**
-     * Returns the path without separators (if a path is equal to another path without separators, that means that it would be equal with the separator.
-     * This is used for hashcode also
-     * @return path without separators
+     * Returns the parsed path of this file, which is used for equals and hashCode. It is parsed once and cached,
+     * so a path equal to another path with extra separators is still equal
+     * @return the parsed path
      */
-    private String getPathWithoutSeparators() {
-        return absolutePath.replaceAll("/", "");
+    public RemotePath getRemotePath() {
+        RemotePath remotePath = this.remotePath;
+
+        if (remotePath == null) {
+            remotePath = RemotePath.of(absolutePath);
+            this.remotePath = remotePath;
+        }
+
+        return remotePath;
     }
 
     /**
@@ -416,7 +479,7 @@ public class RemoteFile implements CommonFile {
      */
     @Override
     public int hashCode() {
-        return getPathWithoutSeparators().hashCode() + 1;
+        return getRemotePath().hashCode() + 1;
     }
 
     /**
@@ -433,7 +496,7 @@ public class RemoteFile implements CommonFile {
         } else {
             RemoteFile remoteFile = (RemoteFile)obj;
 
-            return this.getPathWithoutSeparators().equals(remoteFile.getPathWithoutSeparators());
+            return getRemotePath().equals(remoteFile.getRemotePath());
         }
     }
 
@@ -521,7 +584,11 @@ public class RemoteFile implements CommonFile {
     @Override
     public String getPermissions() {
         if (permissions == null) {
-            if (isSymbolicLink() && Properties.FILE_PERMS_FOLLOW_LINK.getValue()) {
+            RemoteListing listing = this.listing;
+
+            if (listing != null) {
+                permissions = listing.getPermissions(listingIndex);
+            } else if (isSymbolicLink() && Properties.FILE_PERMS_FOLLOW_LINK.getValue()) {
                 permissions = getPermissions(targetFile);
             } else {
                 permissions = getPermissions(ftpFile);
@@ -541,12 +608,19 @@ public class RemoteFile implements CommonFile {
     public String getModificationTime() throws FileSystemException {
         if (this.modificationTime == null) {
             try {
-                FTPFile ftpFile = getFtpFile();
+                RemoteListing listing = this.listing;
+                FTPFile ftpFile = this.ftpFile;
                 String filePath = getFilePath();
-                String fileModTime = Properties.SERVER_REMOTE_MODIFICATION_TIME.getValue() ? getConnection().getModificationTime(filePath):null;
+                boolean exactTime = listing != null && listing.hasExactModificationTime(listingIndex);
+                String fileModTime = !exactTime && Properties.SERVER_REMOTE_MODIFICATION_TIME.getValue() ? getConnection().getModificationTime(filePath):null;
                 if (fileModTime != null) {
                     LocalDateTime dateTime = LocalDateTime.parse(fileModTime, DateTimeFormatter.ofPattern("HH:mm:ss dd/MM/yyyy"));
                     modificationTime = dateTime.format(DateTimeFormatter.ofPattern(UI.FILE_DATETIME_FORMAT));
+
+                    if (listing != null)
+                        listing.setExactModificationTime(listingIndex, dateTime); // so a cached listing doesn't need to ask the server again
+                } else if (listing != null) {
+                    modificationTime = listing.getModificationTime(listingIndex);
                 } else {
                     ftpFile = isSymbolicLink() ? targetFile:ftpFile;
                     modificationTime = ftpFile.isValid() ? FileUtils.parseCalendarToFormattedDate(ftpFile.getTimestamp()) : null;
@@ -559,6 +633,26 @@ public class RemoteFile implements CommonFile {
         return modificationTime;
     }
 
+    /**
+     * Gets the modification time as milliseconds since the epoch from the listing or FTPFile of this file. Unlike getModificationTime,
+     * the server is never asked for the time
+     *
+     * @return the modification time in milliseconds, -1 if it could not be determined
+     */
+    @Override
+    public long getModificationTimeMillis() {
+        RemoteListing listing = this.listing;
+
+        if (listing != null) {
+            long modified = listing.getModified(listingIndex);
+            return modified == RemoteListing.UNKNOWN_TIME ? -1:modified;
+        }
+
+        FTPFile file = isSymbolicLink() && targetFile != null ? targetFile:ftpFile;
+
+        return file != null && file.getTimestamp() != null ? file.getTimestamp().getTimeInMillis():-1;
+    }
+
     /**
      * This method resets any cached variables since the last call to exists()
      */
@@ -575,6 +669,7 @@ public class RemoteFile implements CommonFile {
     @Override
     public void refresh() throws FileSystemException {
         resetCachedVariables();
+        listing = null; // the listing is a snapshot, so look the file up on the server from now on
         initialiseFTPFile(null);
         if (isSymbolicLink()) {
             try {
@@ -18,15 +18,19 @@
 package com.simpleftp.filesystem;
 
 import com.simpleftp.ftp.FTPSystem;
+import com.simpleftp.filesystem.cache.RemoteFileCache;
 import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.interfaces.CommonFile;
+import com.simpleftp.filesystem.paths.LocalPath;
+import com.simpleftp.filesystem.paths.RemotePath;
 import com.simpleftp.ftp.connection.FTPConnection;
 import com.simpleftp.ftp.exceptions.*;
+import com.simpleftp.properties.Properties;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.net.ftp.FTPFile;
 
 import java.io.File;
-import java.util.Arrays;
+import java.io.IOException;
 
 /**
  * Represents a remote file system "linked" to a remote FTP Connection.
@@ -98,17 +102,13 @@ public class RemoteFileSystem extends AbstractFileSystem {
 
     /**
      * Recursively deletes the directory from the remote server
-     * @param directory the directory to remove recursively
-     * @param currentDirectory the current directory in the recursive step, null for initial step
+     * @param directory the parsed path of the directory to remove recursively, which the paths of its files are appended onto
      * @param connection the connection to use for removal
      * @throws FTPException if a FTP Exception occurs
      * @throws FileSystemException if an error occurs causing the deletion to fail
      */
-    private void deleteDirectoryRecursively(String directory, String currentDirectory, FTPConnection connection) throws FTPException, FileSystemException {
-        String listPath = directory;
-        if (currentDirectory != null)
-            listPath = FileUtils.appendPath(listPath, currentDirectory, false);
-
+    private void deleteDirectoryRecursively(RemotePath directory, FTPConnection connection) throws FTPException, FileSystemException {
+        String listPath = directory.toString();
         FTPFile[] files = connection.listFiles(listPath);
 
         if (files != null && files.length > 0) {
@@ -118,16 +118,14 @@ public class RemoteFileSystem extends AbstractFileSystem {
                 if (name.equals(".") || name.equals(".."))
                     continue;
 
-                String filePath;
-                if (currentDirectory == null) {
-                    filePath = FileUtils.appendPath(directory, name, false);
-                } else {
-                    filePath = FileUtils.appendPath(FileUtils.appendPath(directory, currentDirectory, false), name, false);
-                }
+                checkCancelled();
+
+                RemotePath path = directory.resolveName(name);
 
                 if (file.isDirectory()) {
-                    deleteDirectoryRecursively(listPath, name, connection);
+                    deleteDirectoryRecursively(path, connection);
                 } else {
+                    String filePath = path.toString();
                     if (!connection.removeFile(filePath))
                         throw new FileSystemException("Failed to remove a file in the directory tree with path: " + filePath);
                 }
@@ -151,20 +149,23 @@ public class RemoteFileSystem extends AbstractFileSystem {
             throw new FileSystemException("Cannot remove a Local File from a remote file system");
 
         String filePath = file.getFilePath();
+        boolean succeeded = false;
 
         try {
             FTPConnection connection = getFTPConnection();
 
             if (file.isNormalFile() || file.isSymbolicLink()) { // if file is a symbolic link just delete the link, not the target directory
-                return connection.removeFile(filePath);
+                succeeded = connection.removeFile(filePath);
             } else if (file.isADirectory()){
-                deleteDirectoryRecursively(filePath, null, connection);
-                return !connection.remotePathExists(filePath, true);
-            } else {
-                return false;
+                deleteDirectoryRecursively(RemotePath.of(filePath), connection);
+                succeeded = !connection.remotePathExists(filePath, true);
             }
+
+            return succeeded;
         } catch (FTPException ex) {
             throw new FileSystemException("A FTP Exception occurred when removing the specified file", ex);
+        } finally {
+            reportCompleted(filePath, null, succeeded);
         }
     }
 
@@ -206,7 +207,8 @@ public class RemoteFileSystem extends AbstractFileSystem {
     }
 
     /**
-     * List the files in the specified dir in the file system
+     * List the files in the specified dir in the file system.
+     * The files returned read their attributes from a compact RemoteListing rather than each keeping an FTPFile
      *
      * @param dir the directory path
      * @return an array of files if found, null if not
@@ -214,35 +216,56 @@ public class RemoteFileSystem extends AbstractFileSystem {
      */
     @Override
     public RemoteFile[] listFiles(String dir) throws FileSystemException {
+        RemoteListing listing = listDirectory(dir);
+
+        return listing == null ? null:listing.getFiles();
+    }
+
+    /**
+     * Lists the specified directory into a compact RemoteListing. Unlike listFiles, no file objects are created for the entries
+     * until they are retrieved from the listing, and each listed FTPFile is copied into the listing as it is parsed rather than kept
+     * @param dir the directory path
+     * @return the listing of the directory, empty if the directory is empty, null if the server refused to list it, e.g. it doesn't exist
+     * @throws FileSystemException if an error occurs
+     */
+    public RemoteListing listDirectory(String dir) throws FileSystemException {
         try {
             FTPConnection connection = getFTPConnection();
+            RemoteListing.Builder builder = RemoteListing.builder(dir, isTemporaryFileSystem() ? connection:null, null);
 
-            FTPFile[] files = connection.listFiles(dir);
-            if (files != null) {
-                RemoteFile[] remoteFiles = new RemoteFile[files.length];
-                boolean tempFileSystem = isTemporaryFileSystem();
-
-                int i = 0;
-                for (FTPFile f : files) {
-                    if (!f.getName().equals(".") && !f.getName().equals("..")) {
-                        String path = FileUtils.appendPath(dir, f.getName(), false);
-                        if (tempFileSystem)
-                            remoteFiles[i++] = new RemoteFile(path, connection, f);
-                        else
-                            remoteFiles[i++] = new RemoteFile(path, f); // not a temp file system, don't create a temp file
-                    }
-                }
+            return connection.listFiles(dir, null, builder::add) ? builder.build():null;
+        } catch (FTPException ex) {
+            throw new FileSystemException("A FTP Exception occurred when listing files", ex);
+        }
+    }
 
-                if (i < files.length)
-                    remoteFiles = Arrays.copyOf(remoteFiles, i);
+    /**
+     * Lists the specified directory into a compact RemoteListing for display with the given mask. If REMOTE_MASK_PUSHDOWN is enabled and
+     * the mask can be sent to the server, only the matching files are listed. The whole directory is only listed instead if the server refuses the pattern.
+     * The names in the listing should still be checked against the mask, as servers differ in how they match patterns
+     * @param dir the directory path
+     * @param mask the mask the files will be filtered with, null if none
+     * @return the listing of the directory if found, null if not
+     * @throws FileSystemException if an error occurs
+     */
+    public RemoteListing listDirectory(String dir, FileMask mask) throws FileSystemException {
+        String pattern = mask != null && Properties.REMOTE_MASK_PUSHDOWN.getValue() ? mask.getServerPattern():null;
 
-                return remoteFiles;
-            } else {
-                return null;
+        if (pattern != null) {
+            try {
+                FTPConnection connection = getFTPConnection();
+                RemoteListing.Builder builder = RemoteListing.builder(dir, isTemporaryFileSystem() ? connection:null, pattern);
+
+                if (connection.listFiles(dir, pattern, builder::add))
+                    return builder.build(); // no files matching is a valid result, so only a refused pattern is retried without it
+
+                log.debug("The server refused to list {} matching {}, listing the whole directory in case it does not support patterns", dir, pattern);
+            } catch (FTPException ex) {
+                throw new FileSystemException("A FTP Exception occurred when listing files", ex);
             }
-        } catch (FTPException ex) {
-            throw new FileSystemException("A FTP Exception occurred when listing files", ex);
         }
+
+        return listDirectory(dir);
     }
 
     /**
@@ -287,7 +310,7 @@ public class RemoteFileSystem extends AbstractFileSystem {
 
     /**
      * This method is used to copy files remote to remote. It needs to do a download to local temp folder
-     * and then upload to the destination
+     * and then upload to the destination. A single file is staged through the RemoteFileCache, so copying an unchanged file again doesn't download it again
      * @param source the file representing the source
      * @param destination the file representing the destination directory
      * @return true if successful, false if not
@@ -301,24 +324,30 @@ public class RemoteFileSystem extends AbstractFileSystem {
 
         if (source.isADirectory()) {
             String localPath = FileUtils.TEMP_DIRECTORY + FileUtils.PATH_SEPARATOR + sourceName;
-            LocalFileSystem.recursivelyDownloadDirectory(source.getFilePath(), FileUtils.TEMP_DIRECTORY, null, connection, this, true);
-
             LocalFile localFile = new LocalFile(localPath);
-            if (!localFile.exists())
-                throw new FileSystemException("Failed to local temp copy file");
 
-            recursivelyUploadDirectory(localPath, destinationDir, null, connection, true);
-            deleteTempCopyDirectory(localFile);
-        } else {
-            LocalFile downloaded = connection.downloadFile(source.getFilePath(), FileUtils.TEMP_DIRECTORY);
+            try {
+                LocalFileSystem.recursivelyDownloadDirectory(RemotePath.of(source.getFilePath()), LocalPath.of(FileUtils.TEMP_DIRECTORY), connection, this, true, false); // only the upload to the destination is reported as progress
+
+                if (!localFile.exists())
+                    throw new FileSystemException("Failed to local temp copy file");
 
-            if (downloaded == null || !downloaded.exists())
-                throw new FileSystemException("Failed to local temp copy file");
+                recursivelyUploadDirectory(LocalPath.of(localPath), RemotePath.of(destinationDir), connection, true);
+            } finally {
+                if (localFile.exists())
+                    deleteTempCopyDirectory(localFile); // remove the temp copy even if the copy was cancelled or failed part way through
+            }
+        } else {
+            try (RemoteFileCache.Lease lease = RemoteFileCache.getInstance().fetch(source.getFilePath(), connection)) { // copying the same unchanged file again reuses the cached copy
+                LocalFile downloaded = lease.getFile();
 
-            downloaded.deleteOnExit();
+                if (connection.uploadFile(downloaded, destinationDir) == null)
+                    throw new FileSystemException("Failed to upload the local temp copy to the destination");
 
-            if (connection.uploadFile(downloaded, destinationDir) == null)
-                throw new FileSystemException("Failed to upload the local temp copy to the destination");
+                reportProgress(source.getFilePath(), destPath, downloaded.length());
+            } catch (IOException ex) {
+                throw new FileSystemException("Failed to local temp copy file", ex);
+            }
         }
 
         return isTemporaryFileSystem() ? new RemoteFile(destPath, connection, null).exists():new RemoteFile(destPath).exists();
@@ -360,21 +389,18 @@ public class RemoteFileSystem extends AbstractFileSystem {
 
     /**
      * Recursively uploads an entire directory to the destination directory path.
-     * @param sourceDirectory the source directory to upload
-     * @param destDirectory the destination directory to upload to
-     * @param currentDirectory the current directory traversed, leave null for initial state
+     * @param sourceDirectory the parsed path of the source directory to upload
+     * @param destDirectory the parsed path of the destination directory to upload to
      * @param ftpConnection the connection to use
      * @param copy if false, the files will be deleted locally as they are copied
      * @throws FTPException if an error occurs related to the FTP connection
      */
-    private void recursivelyUploadDirectory(String sourceDirectory, String destDirectory, String currentDirectory, FTPConnection ftpConnection, boolean copy) throws FTPException, FileSystemException {
-        String listPath = sourceDirectory;
-        if (currentDirectory != null)
-            listPath = FileUtils.appendPath(listPath, currentDirectory, true); // this is a local path we want to append
-
+    private void recursivelyUploadDirectory(LocalPath sourceDirectory, RemotePath destDirectory, FTPConnection ftpConnection, boolean copy) throws FTPException, FileSystemException {
+        String listPath = sourceDirectory.toString();
         LocalFile listFile = new LocalFile(listPath);
 
-        String destPath = FileUtils.appendPath(destDirectory, listFile.getName(), false);
+        RemotePath destination = destDirectory.resolveName(listFile.getName());
+        String destPath = destination.toString();
 
         if (!fileExists(destPath))
             if (!ftpConnection.makeDirectory(destPath))
@@ -384,28 +410,32 @@ public class RemoteFileSystem extends AbstractFileSystem {
 
         if (fileNames != null && fileNames.length > 0) {
             for (String name : fileNames) {
-                String filePath;
-                if (currentDirectory == null) {
-                    filePath = FileUtils.appendPath(sourceDirectory, name, true);
-                } else {
-                    filePath = FileUtils.appendPath(FileUtils.appendPath(sourceDirectory, currentDirectory, true), name, true);
-                }
+                checkCancelled();
 
+                LocalPath path = sourceDirectory.resolveName(name);
+                String filePath = path.toString();
                 LocalFile file = new LocalFile(filePath);
 
                 if (file.isADirectory()) {
-                    recursivelyUploadDirectory(listPath, destPath, name, ftpConnection, copy);
+                    recursivelyUploadDirectory(path, destination, ftpConnection, copy);
                 } else if (file.isFile()) {
-                    if (ftpConnection.uploadFile(file, destPath) == null)
-                        fileOperationErrors.add(new FileOperationError("Failed to upload file to destination", filePath, destPath));
+                    if (!isTransferred(filePath)) { // a file transferred before a resumed move was interrupted only needs to be removed
+                        String targetPath = destination.resolveName(name).toString();
+                        boolean resume = beginTransfer(filePath, targetPath);
+                        long size = file.length();
+                        if (ftpConnection.uploadFile(file, destPath, resume) == null)
+                            reportError("Failed to upload file to destination", filePath, destPath);
+                        else
+                            reportProgress(filePath, targetPath, size);
+                    }
 
                     if (!copy && !file.delete())
-                        fileOperationErrors.add(new FileOperationError("Failed to remove file from local filesystem", filePath, null));
+                        reportError("Failed to remove file from local filesystem", filePath, null);
                 }
             }
 
             if (!copy && !new LocalFile(listPath).delete())
-                fileOperationErrors.add(new FileOperationError("Failed to remove file from local filesystem", listPath, null));
+                reportError("Failed to remove file from local filesystem", listPath, null);
         }
     }
 
@@ -430,7 +460,7 @@ public class RemoteFileSystem extends AbstractFileSystem {
         if (!destination.exists() || !destination.isADirectory())
             throw new FileSystemException("The destination file " + destinationDir + " is either not a directory or it does not exist");
 
-        if (fileExists(destinationPath))
+        if (fileExists(destinationPath) && !isResuming())
             return false;
 
         boolean sourceDir = source.isADirectory();
@@ -439,10 +469,13 @@ public class RemoteFileSystem extends AbstractFileSystem {
             FTPConnection connection = getFTPConnection();
 
             if (sourceDir) {
-                recursivelyUploadDirectory(sourcePath, destinationDir, null, connection, copy);
+                recursivelyUploadDirectory(LocalPath.of(sourcePath), RemotePath.of(destinationDir), connection, copy);
                 return fileExists(destinationPath);
             } else {
-                if (connection.uploadFile(source, destinationDir) != null) {
+                boolean resume = beginTransfer(sourcePath, destinationPath);
+                long size = source.length();
+                if (connection.uploadFile(source, destinationDir, resume) != null) {
+                    reportProgress(sourcePath, destinationPath, size);
                     return copy || source.delete();
                 } else {
                     return false;
@@ -477,12 +510,20 @@ public class RemoteFileSystem extends AbstractFileSystem {
     @Override
     public boolean copyFiles(CommonFile source, CommonFile destination) throws FileSystemException {
         CopyMoveOperation copyMoveOperation = determineCopyMoveOperation(source, destination);
-        if (copyMoveOperation == CopyMoveOperation.REMOTE_TO_REMOTE) {
-            return remoteToRemoteOperation((RemoteFile)source, (RemoteFile)destination, true);
-        } else if (copyMoveOperation == CopyMoveOperation.LOCAL_TO_REMOTE) {
-            return localToRemoteOperation((LocalFile)source, (RemoteFile)destination, true);
-        } else {
-            throw new UnsupportedOperationException("Unsupported copy operation for RemoteFileSystem encountered: " + copyMoveOperation);
+        boolean succeeded = false;
+
+        try {
+            if (copyMoveOperation == CopyMoveOperation.REMOTE_TO_REMOTE) {
+                succeeded = remoteToRemoteOperation((RemoteFile)source, (RemoteFile)destination, true);
+            } else if (copyMoveOperation == CopyMoveOperation.LOCAL_TO_REMOTE) {
+                succeeded = localToRemoteOperation((LocalFile)source, (RemoteFile)destination, true);
+            } else {
+                throw new UnsupportedOperationException("Unsupported copy operation for RemoteFileSystem encountered: " + copyMoveOperation);
+            }
+
+            return succeeded;
+        } finally {
+            reportCompleted(source.getFilePath(), destination.getFilePath(), succeeded); // published even if an exception is thrown so subscribers know the operation has finished
         }
     }
 
@@ -510,12 +551,20 @@ public class RemoteFileSystem extends AbstractFileSystem {
     @Override
     public boolean moveFiles(CommonFile source, CommonFile destination) throws FileSystemException {
         CopyMoveOperation copyMoveOperation = determineCopyMoveOperation(source, destination);
-        if (copyMoveOperation == CopyMoveOperation.REMOTE_TO_REMOTE) {
-            return remoteToRemoteOperation((RemoteFile)source, (RemoteFile)destination, false);
-        } else if (copyMoveOperation == CopyMoveOperation.LOCAL_TO_REMOTE) {
-            return localToRemoteOperation((LocalFile)source, (RemoteFile)destination, false);
-        } else {
-            throw new UnsupportedOperationException("Unsupported move operation for RemoteFileSystem encountered: " + copyMoveOperation);
+        boolean succeeded = false;
+
+        try {
+            if (copyMoveOperation == CopyMoveOperation.REMOTE_TO_REMOTE) {
+                succeeded = remoteToRemoteOperation((RemoteFile)source, (RemoteFile)destination, false);
+            } else if (copyMoveOperation == CopyMoveOperation.LOCAL_TO_REMOTE) {
+                succeeded = localToRemoteOperation((LocalFile)source, (RemoteFile)destination, false);
+            } else {
+                throw new UnsupportedOperationException("Unsupported move operation for RemoteFileSystem encountered: " + copyMoveOperation);
+            }
+
+            return succeeded;
+        } finally {
+            reportCompleted(source.getFilePath(), destination.getFilePath(), succeeded); // published even if an exception is thrown so subscribers know the operation has finished
         }
     }
 }
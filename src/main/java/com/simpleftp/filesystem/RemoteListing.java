@@ -0,0 +1,670 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem;
+
+import com.simpleftp.filesystem.exceptions.FileSystemException;
+import com.simpleftp.filesystem.paths.RemotePath;
+import com.simpleftp.ftp.connection.FTPConnection;
+import lombok.Getter;
+import org.apache.commons.net.ftp.FTPFile;
+
+import java.nio.CharBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * This class represents a compact snapshot of a remote directory listing.
+ * Rather than keeping an FTPFile (with its raw listing line, Calendar and permission arrays) for every entry, the names
+ * are stored in one shared char arena and the sizes, modification times and mode bits in primitive arrays. A Builder copies
+ * these columns out of each file as it is parsed, so the files do not need to be kept once listed.
+ *
+ * A listing is immutable apart from the exact modification times recorded with setExactModificationTime. Listings are shared
+ * between threads, e.g. through a listing cache, so the times and the flag recording them are read and written while holding the listing's lock.
+ *
+ * Entries are accessed by index. A RemoteFile for an entry is only created when asked for with getFile(int), and it reads
+ * its attributes from this listing rather than holding its own FTPFile
+ */
+public final class RemoteListing {
+    /**
+     * The value used for a modification time that could not be determined
+     */
+    public static final long UNKNOWN_TIME = Long.MIN_VALUE;
+    /**
+     * The number of bits the file type is shifted by in the mode bits. The 9 bits below hold the unix permissions
+     */
+    private static final int TYPE_SHIFT = 9;
+    /**
+     * The mask of the file type after it is shifted down by TYPE_SHIFT
+     */
+    private static final int TYPE_MASK = 0b11;
+    /**
+     * The mode bit set if the FTPFile the entry was parsed from was valid
+     */
+    private static final int VALID = 1 << 11;
+    /**
+     * The mode bit set if the modification time came from the server (MDTM) rather than the listing
+     */
+    private static final int EXACT_TIME = 1 << 12;
+    /**
+     * The access levels in the order they appear in the permission bits, highest bits first
+     */
+    private static final int[] ACCESS_LEVELS = {FTPFile.USER_ACCESS, FTPFile.GROUP_ACCESS, FTPFile.WORLD_ACCESS};
+    /**
+     * The permission types in the order they appear in each access level, highest bit first
+     */
+    private static final int[] PERMISSIONS = {FTPFile.READ_PERMISSION, FTPFile.WRITE_PERMISSION, FTPFile.EXECUTE_PERMISSION};
+    /**
+     * The characters used to display each permission type
+     */
+    private static final char[] PERMISSION_CHARS = {'r', 'w', 'x'};
+    /**
+     * The directory that was listed
+     */
+    @Getter
+    private final String directory;
+    /**
+     * The parsed path of the directory, which the names of the entries are appended onto
+     */
+    private final RemotePath directoryPath;
+    /**
+     * The connection the files of this listing use. Null if they are to use the system's connection
+     */
+    @Getter
+    private final FTPConnection connection;
+    /**
+     * The pattern the server was asked to match the listed names against, null if the whole directory was listed
+     */
+    @Getter
+    private final String serverPattern;
+    /**
+     * The zone the modification times were parsed in, so they can be displayed with the same wall-clock time as the listing
+     */
+    private final ZoneId zone;
+    /**
+     * The number of entries in this listing
+     */
+    private final int count;
+    /**
+     * The arena all names are stored in back to back
+     */
+    private final char[] names;
+    /**
+     * A CharSequence view of names so names can be matched against a FileMask where they are stored
+     */
+    private final CharBuffer nameSequence;
+    /**
+     * The start offset of each name in names. The entry at count marks the end of the last name
+     */
+    private final int[] nameOffsets;
+    /**
+     * The size in bytes of each entry
+     */
+    private final long[] sizes;
+    /**
+     * The modification time of each entry in epoch milliseconds, or UNKNOWN_TIME
+     */
+    private final long[] modified;
+    /**
+     * The type, permission and flag bits of each entry
+     */
+    private final int[] modes;
+    /**
+     * The sorted indices of the entries that are symbolic links
+     */
+    private final int[] linkIndices;
+    /**
+     * The link targets of the entries in linkIndices
+     */
+    private final String[] links;
+
+    /**
+     * Constructs a listing from the columns copied out by the builder
+     * @param builder the builder the entries were added to
+     */
+    private RemoteListing(Builder builder) {
+        this.directory = builder.directory;
+        this.directoryPath = RemotePath.of(directory);
+        this.connection = builder.connection;
+        this.serverPattern = builder.serverPattern;
+        this.zone = builder.timeZone == null ? ZoneId.systemDefault():builder.timeZone.toZoneId();
+
+        count = builder.count;
+        names = Arrays.copyOf(builder.names, builder.nameLength);
+        nameSequence = CharBuffer.wrap(names).asReadOnlyBuffer();
+        nameOffsets = Arrays.copyOf(builder.nameOffsets, count + 1);
+        nameOffsets[count] = builder.nameLength;
+        sizes = Arrays.copyOf(builder.sizes, count);
+        modified = Arrays.copyOf(builder.modified, count);
+        modes = Arrays.copyOf(builder.modes, count);
+        linkIndices = Arrays.copyOf(builder.linkIndices, builder.links.size());
+        links = builder.links.toArray(new String[0]);
+    }
+
+    /**
+     * Creates a builder to copy listed files into as they are parsed, so the files of a large directory don't all need to be held at once
+     * @param directory the absolute path of the directory being listed
+     * @param connection the connection the files of the listing should use. Leave null to use the system's connection
+     * @param serverPattern the pattern the server is matching the files against, null if the whole directory is being listed
+     * @return the builder
+     */
+    public static Builder builder(String directory, FTPConnection connection, String serverPattern) {
+        return new Builder(directory, connection, serverPattern);
+    }
+
+    /**
+     * Creates a listing of the provided files that were listed in the given directory
+     * @param directory the absolute path of the directory that was listed
+     * @param connection the connection the files of this listing should use. Leave null to use the system's connection
+     * @param files the files returned from listing the directory
+     * @return the compact listing
+     */
+    public static RemoteListing of(String directory, FTPConnection connection, FTPFile[] files) {
+        return of(directory, connection, files, null);
+    }
+
+    /**
+     * Creates a listing of the provided files that the server listed in the given directory as matching the pattern
+     * @param directory the absolute path of the directory that was listed
+     * @param connection the connection the files of this listing should use. Leave null to use the system's connection
+     * @param files the files returned from listing the directory with the pattern
+     * @param serverPattern the pattern the files were listed with
+     * @return the compact listing
+     */
+    public static RemoteListing of(String directory, FTPConnection connection, FTPFile[] files, String serverPattern) {
+        Builder builder = new Builder(directory, connection, serverPattern);
+
+        for (FTPFile file : files)
+            builder.add(file);
+
+        return builder.build();
+    }
+
+    /**
+     * Gets the name of the file to store. Some servers return the path of each file when listing with a pattern, so only the last part is kept
+     * @param file the listed file
+     * @return the name to store for the file
+     */
+    private static String getEntryName(FTPFile file) {
+        String name = file.getName();
+
+        return name.indexOf('/') == -1 ? name:RemoteFile.getName(name);
+    }
+
+    /**
+     * Determines if the file should be part of a listing, i.e. it is not null and not the . or .. entries
+     * @param file the file to check
+     * @return true if it is to be listed
+     */
+    private static boolean isListed(FTPFile file) {
+        if (file == null || file.getName() == null)
+            return false;
+
+        String name = file.getName();
+
+        return !name.equals(".") && !name.equals("..");
+    }
+
+    /**
+     * Packs the type, permissions and validity of the file into mode bits
+     * @param file the file to pack
+     * @return the mode bits
+     */
+    private static int packMode(FTPFile file) {
+        int mode = (file.getType() & TYPE_MASK) << TYPE_SHIFT;
+
+        if (file.isValid())
+            mode |= VALID;
+
+        int bit = 8;
+        for (int access : ACCESS_LEVELS) {
+            for (int permission : PERMISSIONS) {
+                if (file.hasPermission(access, permission))
+                    mode |= 1 << bit;
+
+                bit--;
+            }
+        }
+
+        return mode;
+    }
+
+    /**
+     * Returns the number of entries in this listing
+     * @return number of entries
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Checks that the index is within the bounds of this listing
+     * @param index the index to check
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for listing of size " + count);
+    }
+
+    /**
+     * Gets the name of the entry at the index. A new String is created on each call
+     * @param index the index of the entry
+     * @return the name of the entry
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        int start = nameOffsets[index];
+
+        return new String(names, start, nameOffsets[index + 1] - start);
+    }
+
+    /**
+     * Checks if the name of the entry at the index starts with the provided prefix without creating the name
+     * @param index the index of the entry
+     * @param prefix the prefix to check for
+     * @return true if the name starts with the prefix
+     */
+    public boolean nameStartsWith(int index, String prefix) {
+        checkIndex(index);
+        int start = nameOffsets[index];
+        int length = prefix.length();
+
+        if (nameOffsets[index + 1] - start < length)
+            return false;
+
+        for (int i = 0; i < length; i++) {
+            if (names[start + i] != prefix.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if the name of the entry at the index matches the mask without creating the name
+     * @param index the index of the entry
+     * @param mask the mask to match against
+     * @return true if the name matches
+     */
+    public boolean nameMatches(int index, FileMask mask) {
+        checkIndex(index);
+        return mask.matches(nameSequence, nameOffsets[index], nameOffsets[index + 1]);
+    }
+
+    /**
+     * Gets the parsed absolute path of the entry at the index
+     * @param index the index of the entry
+     * @return the parsed path of the entry
+     */
+    public RemotePath getPath(int index) {
+        return directoryPath.resolveName(getName(index));
+    }
+
+    /**
+     * Gets the absolute path of the entry at the index
+     * @param index the index of the entry
+     * @return the absolute path of the entry
+     */
+    public String getFilePath(int index) {
+        return getPath(index).toString();
+    }
+
+    /**
+     * Gets the size of the entry at the index as it was listed
+     * @param index the index of the entry
+     * @return the size in bytes
+     */
+    public long getSize(int index) {
+        checkIndex(index);
+        return sizes[index];
+    }
+
+    /**
+     * Gets the modification time of the entry at the index
+     * @param index the index of the entry
+     * @return the modification time in epoch milliseconds, or UNKNOWN_TIME if not known
+     */
+    public synchronized long getModified(int index) {
+        checkIndex(index);
+        return modified[index];
+    }
+
+    /**
+     * Gets the FTPFile type of the entry at the index, e.g. FTPFile.DIRECTORY_TYPE
+     * @param index the index of the entry
+     * @return the type of the entry
+     */
+    public int getType(int index) {
+        checkIndex(index);
+        return (modes[index] >> TYPE_SHIFT) & TYPE_MASK;
+    }
+
+    /**
+     * Checks if the entry at the index was parsed validly from the listing
+     * @param index the index of the entry
+     * @return true if valid
+     */
+    public boolean isValid(int index) {
+        checkIndex(index);
+        return (modes[index] & VALID) != 0;
+    }
+
+    /**
+     * Checks if the entry at the index is a directory
+     * @param index the index of the entry
+     * @return true if a directory
+     */
+    public boolean isDirectory(int index) {
+        return getType(index) == FTPFile.DIRECTORY_TYPE;
+    }
+
+    /**
+     * Checks if the entry at the index is a normal file
+     * @param index the index of the entry
+     * @return true if a normal file
+     */
+    public boolean isFile(int index) {
+        return getType(index) == FTPFile.FILE_TYPE;
+    }
+
+    /**
+     * Checks if the entry at the index is a symbolic link
+     * @param index the index of the entry
+     * @return true if a symbolic link
+     */
+    public boolean isSymbolicLink(int index) {
+        return getType(index) == FTPFile.SYMBOLIC_LINK_TYPE;
+    }
+
+    /**
+     * Gets the link target of the entry at the index as it was listed
+     * @param index the index of the entry
+     * @return the link target, null if not a symbolic link
+     */
+    public String getLink(int index) {
+        checkIndex(index);
+        int i = Arrays.binarySearch(linkIndices, index);
+
+        return i < 0 ? null:links[i];
+    }
+
+    /**
+     * Checks if the entry at the index has the given permission
+     * @param index the index of the entry
+     * @param access the access level, e.g. FTPFile.USER_ACCESS
+     * @param permission the permission, e.g. FTPFile.READ_PERMISSION
+     * @return true if the permission is set
+     */
+    public boolean hasPermission(int index, int access, int permission) {
+        checkIndex(index);
+        return (modes[index] & (1 << permissionBit(access, permission))) != 0;
+    }
+
+    /**
+     * Gets the bit the permission is stored in
+     * @param access the access level
+     * @param permission the permission
+     * @return the bit of the permission
+     */
+    private static int permissionBit(int access, int permission) {
+        return 8 - (access * 3 + permission);
+    }
+
+    /**
+     * Gets the permissions of the entry at the index in the unix form of the ls command, e.g. drwxr-xr-x
+     * @param index the index of the entry
+     * @return the permissions string
+     */
+    public String getPermissions(int index) {
+        checkIndex(index);
+        char[] permissions = new char[10];
+        int type = getType(index);
+        permissions[0] = type == FTPFile.SYMBOLIC_LINK_TYPE ? 'l':type == FTPFile.DIRECTORY_TYPE ? 'd':'-';
+        int mode = modes[index];
+
+        for (int i = 0; i < 9; i++)
+            permissions[i + 1] = (mode & (1 << (8 - i))) != 0 ? PERMISSION_CHARS[i % 3]:'-';
+
+        return new String(permissions);
+    }
+
+    /**
+     * Checks if the modification time of the entry at the index came from the server rather than the listing
+     * @param index the index of the entry
+     * @return true if it was recorded with setExactModificationTime
+     */
+    public synchronized boolean hasExactModificationTime(int index) {
+        checkIndex(index);
+        return (modes[index] & EXACT_TIME) != 0;
+    }
+
+    /**
+     * Records the modification time retrieved from the server for the entry at the index, so files created from this listing
+     * again, e.g. from a cached listing, do not need to ask the server again
+     * @param index the index of the entry
+     * @param dateTime the modification time retrieved from the server, in the local time the server's time was converted to
+     */
+    synchronized void setExactModificationTime(int index, LocalDateTime dateTime) {
+        checkIndex(index);
+        modified[index] = dateTime.atZone(zone).toInstant().toEpochMilli();
+        modes[index] |= EXACT_TIME;
+    }
+
+    /**
+     * Gets the modification time of the entry at the index formatted in the form of Month Day Hour:Minute, e.g Jan 01 12:50
+     * @param index the index of the entry
+     * @return the formatted modification time, null if not known
+     */
+    public String getModificationTime(int index) {
+        long time = getModified(index);
+
+        if (time == UNKNOWN_TIME)
+            return null;
+
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(time), zone)
+                .truncatedTo(ChronoUnit.MINUTES)
+                .format(DateTimeFormatter.ofPattern(FileUtils.FILE_DATETIME_FORMAT));
+    }
+
+    /**
+     * Re-creates an FTPFile for the entry at the index. The raw listing line, user and group are not retained
+     * @param index the index of the entry
+     * @return the created FTPFile
+     */
+    public FTPFile toFTPFile(int index) {
+        FTPFile file = new FTPFile();
+        file.setName(getName(index));
+        file.setType(getType(index));
+        file.setSize(sizes[index]);
+        file.setLink(getLink(index));
+        long time = getModified(index);
+
+        if (time != UNKNOWN_TIME) {
+            Calendar timestamp = Calendar.getInstance(TimeZone.getTimeZone(zone));
+            timestamp.setTimeInMillis(time);
+            file.setTimestamp(timestamp);
+        }
+
+        for (int access : ACCESS_LEVELS) {
+            for (int permission : PERMISSIONS) {
+                file.setPermission(access, permission, hasPermission(index, access, permission));
+            }
+        }
+
+        return file;
+    }
+
+    /**
+     * Creates a RemoteFile for the entry at the index. Valid entries that are not symbolic links read their attributes from this
+     * listing, so no FTPFile is kept for them
+     * @param index the index of the entry
+     * @return the remote file for the entry
+     * @throws FileSystemException if an error occurs creating the file, e.g. following a symbolic link
+     */
+    public RemoteFile getFile(int index) throws FileSystemException {
+        checkIndex(index);
+        return new RemoteFile(this, index);
+    }
+
+    /**
+     * Creates a RemoteFile for every entry in this listing
+     * @return the array of remote files
+     * @throws FileSystemException if an error occurs creating a file
+     */
+    public RemoteFile[] getFiles() throws FileSystemException {
+        RemoteFile[] files = new RemoteFile[count];
+
+        for (int i = 0; i < count; i++)
+            files[i] = getFile(i);
+
+        return files;
+    }
+
+    /**
+     * This class copies the columns of a listing out of each listed file as it is added, growing its arrays as needed.
+     * The FTPFile added is not kept, so it can be discarded as soon as it has been parsed
+     */
+    public static final class Builder {
+        /**
+         * The number of entries the arrays start with
+         */
+        private static final int INITIAL_CAPACITY = 16;
+        /**
+         * The directory being listed
+         */
+        private final String directory;
+        /**
+         * The connection the files of the listing should use, null for the system's connection
+         */
+        private final FTPConnection connection;
+        /**
+         * The pattern the server is matching names against, null if none
+         */
+        private final String serverPattern;
+        /**
+         * The zone of the first timestamp added
+         */
+        private TimeZone timeZone;
+        /**
+         * The number of entries added
+         */
+        private int count;
+        /**
+         * The names added so far, back to back
+         */
+        private char[] names = new char[INITIAL_CAPACITY * 16];
+        /**
+         * The number of characters used in names
+         */
+        private int nameLength;
+        /**
+         * The start offset of each name in names, with room for the end offset of the last name
+         */
+        private int[] nameOffsets = new int[INITIAL_CAPACITY + 1];
+        /**
+         * The size of each entry
+         */
+        private long[] sizes = new long[INITIAL_CAPACITY];
+        /**
+         * The modification time of each entry
+         */
+        private long[] modified = new long[INITIAL_CAPACITY];
+        /**
+         * The mode bits of each entry
+         */
+        private int[] modes = new int[INITIAL_CAPACITY];
+        /**
+         * The indices of the entries that are symbolic links, in the order added
+         */
+        private int[] linkIndices = new int[INITIAL_CAPACITY];
+        /**
+         * The link targets of the entries in linkIndices
+         */
+        private final List<String> links = new ArrayList<>();
+
+        /**
+         * Constructs a builder
+         * @param directory the directory being listed
+         * @param connection the connection the files of the listing should use, null for the system's connection
+         * @param serverPattern the pattern the server is matching names against, null if none
+         */
+        private Builder(String directory, FTPConnection connection, String serverPattern) {
+            this.directory = directory;
+            this.connection = connection;
+            this.serverPattern = serverPattern;
+        }
+
+        /**
+         * Copies the listed file into the listing, skipping null files and the . and .. entries
+         * @param file the file that was listed
+         */
+        public void add(FTPFile file) {
+            if (!isListed(file))
+                return;
+
+            if (count == sizes.length) {
+                int capacity = count * 2;
+                nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+                sizes = Arrays.copyOf(sizes, capacity);
+                modified = Arrays.copyOf(modified, capacity);
+                modes = Arrays.copyOf(modes, capacity);
+            }
+
+            String name = getEntryName(file);
+            if (nameLength + name.length() > names.length)
+                names = Arrays.copyOf(names, Math.max(names.length * 2, nameLength + name.length()));
+
+            nameOffsets[count] = nameLength;
+            name.getChars(0, name.length(), names, nameLength);
+            nameLength += name.length();
+
+            sizes[count] = file.getSize();
+            Calendar timestamp = file.getTimestamp();
+            modified[count] = timestamp == null ? UNKNOWN_TIME:timestamp.getTimeInMillis();
+            modes[count] = packMode(file);
+
+            if (timeZone == null && timestamp != null)
+                timeZone = timestamp.getTimeZone();
+
+            if (file.isSymbolicLink()) {
+                if (links.size() == linkIndices.length)
+                    linkIndices = Arrays.copyOf(linkIndices, linkIndices.length * 2);
+
+                linkIndices[links.size()] = count;
+                links.add(file.getLink());
+            }
+
+            count++;
+        }
+
+        /**
+         * Builds the listing from the files added, trimming the columns to the number of entries
+         * @return the built listing
+         */
+        public RemoteListing build() {
+            return new RemoteListing(this);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem;
+
+import lombok.Getter;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * This class is an OutputStream that decodes the bytes of a text file written to it and passes the decoded text on in chunks, so the start of a file can be displayed
+ * while the rest of it is still being read or downloaded.
+ *
+ * The charset is detected from the first bytes written. A byte order mark identifies UTF-8 or UTF-16 and is removed, otherwise UTF-8 is used if the bytes are valid UTF-8,
+ * else the fallback charset, replaced by ISO-8859-1 if it is a multi-byte charset, as a single-byte charset that maps every byte decodes any file without loss.
+ * Line endings are converted to \n, the same as the editor uses. The detected format, including the first line separator found,
+ * is available from getTextFormat so the text can be written back in the same format.
+ *
+ * Bytes that are invalid in the detected charset, e.g. a file that is only UTF-8 in its first bytes, are displayed as the replacement character. The text
+ * before them has already been passed on, so it can't be decoded again in another charset. Writing the text back would then corrupt the file, so isLossy
+ * reports this and the text should only be shown read-only.
+ *
+ * The first chunk is passed on as soon as a small amount of text is decoded, and later chunks in larger amounts so the consumer isn't called too often.
+ * Any remaining text is passed on when the stream is closed. This class is not thread-safe
+ */
+public final class TextDecodingOutputStream extends OutputStream {
+    /**
+     * The number of bytes looked at to detect the charset
+     */
+    public static final int DETECTION_LENGTH = 8192;
+    /**
+     * The number of characters decoded before the first chunk is passed on
+     */
+    private static final int FIRST_CHUNK_LENGTH = 16 * 1024;
+    /**
+     * The number of characters decoded before later chunks are passed on
+     */
+    private static final int CHUNK_LENGTH = 1024 * 1024;
+    /**
+     * The consumer the decoded chunks are passed to
+     */
+    private final Consumer<String> chunkConsumer;
+    /**
+     * The charset to use if the bytes are not valid UTF-8 and have no byte order mark
+     */
+    private final Charset fallbackCharset;
+    /**
+     * The first bytes written, kept to detect the charset
+     */
+    private final byte[] header = new byte[DETECTION_LENGTH];
+    /**
+     * The number of bytes in the header
+     */
+    private int headerLength;
+    /**
+     * The charset detected, null until enough bytes have been written to detect it
+     */
+    @Getter
+    private Charset charset;
+    /**
+     * True if the input started with a byte order mark
+     */
+    private boolean byteOrderMark;
+    /**
+     * The first line separator decoded, null if none yet
+     */
+    private String lineSeparator;
+    /**
+     * The decoder for the detected charset
+     */
+    private CharsetDecoder decoder;
+    /**
+     * The bytes waiting to be decoded, which may end with an incomplete character
+     */
+    private final ByteBuffer input = ByteBuffer.allocate(64 * 1024);
+    /**
+     * The buffer characters are decoded into
+     */
+    private final CharBuffer output = CharBuffer.allocate(64 * 1024);
+    /**
+     * The decoded text waiting to be passed on
+     */
+    private final StringBuilder text = new StringBuilder();
+    /**
+     * True if the last character decoded was a \r, which may be followed by a \n
+     */
+    private boolean pendingCarriageReturn;
+    /**
+     * The number of characters to decode before passing the next chunk on
+     */
+    private int chunkLength = FIRST_CHUNK_LENGTH;
+    /**
+     * True once closed
+     */
+    private boolean closed;
+    /**
+     * True if any bytes could not be decoded and were replaced
+     */
+    @Getter
+    private boolean lossy;
+
+    /**
+     * Constructs a decoding stream
+     * @param chunkConsumer the consumer to pass the decoded chunks to
+     * @param fallbackCharset the charset to use if the text is not UTF-8 and has no byte order mark
+     */
+    public TextDecodingOutputStream(Consumer<String> chunkConsumer, Charset fallbackCharset) {
+        this.chunkConsumer = chunkConsumer;
+        this.fallbackCharset = fallbackCharset;
+    }
+
+    /**
+     * Writes a single byte
+     * @param b the byte to write
+     */
+    @Override
+    public void write(int b) {
+        write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    /**
+     * Writes the bytes, decoding them once the charset is detected
+     * @param b the bytes to write
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     */
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (decoder == null) {
+            int copied = Math.min(len, DETECTION_LENGTH - headerLength);
+            System.arraycopy(b, off, header, headerLength, copied);
+            headerLength += copied;
+            off += copied;
+            len -= copied;
+
+            if (headerLength < DETECTION_LENGTH)
+                return;
+
+            startDecoding(false);
+        }
+
+        decode(b, off, len, false);
+    }
+
+    /**
+     * Detects the charset from the header and decodes the header
+     * @param endOfInput true if the header is the whole of the input, so the last character can't have been cut off
+     */
+    private void startDecoding(boolean endOfInput) {
+        byte[] header = Arrays.copyOf(this.header, headerLength);
+        int bomLength = getByteOrderMarkLength(header);
+        charset = detectCharset(header, endOfInput, fallbackCharset);
+        byteOrderMark = bomLength > 0;
+
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT); // reported so they can be replaced and the text marked as lossy
+        decode(header, bomLength, headerLength - bomLength, false);
+    }
+
+    /**
+     * Detects the charset of text from its first bytes. A byte order mark identifies UTF-8 or UTF-16, otherwise UTF-8 is used if the bytes are valid UTF-8,
+     * else the fallback charset. If the fallback charset is a multi-byte charset, e.g. a system default of UTF-8, ISO-8859-1 is used instead, as the bytes
+     * are not valid in it
+     * @param header the first bytes of the text, up to DETECTION_LENGTH of them
+     * @param complete true if the bytes are the whole of the text, so the last character can't have been cut off
+     * @param fallbackCharset the charset to use if the text is not UTF-8 and has no byte order mark
+     * @return the detected charset
+     */
+    public static Charset detectCharset(byte[] header, boolean complete, Charset fallbackCharset) {
+        if (startsWith(header, 0xEF, 0xBB, 0xBF))
+            return StandardCharsets.UTF_8;
+        else if (startsWith(header, 0xFE, 0xFF))
+            return StandardCharsets.UTF_16BE;
+        else if (startsWith(header, 0xFF, 0xFE))
+            return StandardCharsets.UTF_16LE;
+        else
+            return isUtf8(header, !complete) ? StandardCharsets.UTF_8:getSingleByteCharset(fallbackCharset);
+    }
+
+    /**
+     * Gets the charset to decode text that isn't UTF-8 with
+     * @param fallbackCharset the charset to use if it is a single-byte charset
+     * @return the fallback charset if single-byte, else ISO-8859-1. Null if the fallback charset is null
+     */
+    private static Charset getSingleByteCharset(Charset fallbackCharset) {
+        if (fallbackCharset == null || !fallbackCharset.canEncode())
+            return fallbackCharset;
+
+        return fallbackCharset.newEncoder().maxBytesPerChar() > 1 ? StandardCharsets.ISO_8859_1:fallbackCharset;
+    }
+
+    /**
+     * Gets the length of the byte order mark the bytes start with
+     * @param header the first bytes of the text
+     * @return the number of bytes of the byte order mark, 0 if there is none
+     */
+    public static int getByteOrderMarkLength(byte[] header) {
+        if (startsWith(header, 0xEF, 0xBB, 0xBF))
+            return 3;
+        else if (startsWith(header, 0xFE, 0xFF) || startsWith(header, 0xFF, 0xFE))
+            return 2;
+        else
+            return 0;
+    }
+
+    /**
+     * Checks if the bytes start with the given values
+     * @param bytes the bytes to check
+     * @param values the values to check for
+     * @return true if they start with the values
+     */
+    private static boolean startsWith(byte[] bytes, int...values) {
+        if (bytes.length < values.length)
+            return false;
+
+        for (int i = 0; i < values.length; i++)
+            if ((bytes[i] & 0xFF) != values[i])
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Checks if the bytes are valid UTF-8
+     * @param bytes the bytes to check
+     * @param allowCutOff true to allow the last character to be cut off, i.e. the bytes are only the start of the input
+     * @return true if valid UTF-8
+     */
+    private static boolean isUtf8(byte[] bytes, boolean allowCutOff) {
+        int i = 0;
+
+        while (i < bytes.length) {
+            int b = bytes[i] & 0xFF;
+            int continuation;
+
+            if (b < 0x80)
+                continuation = 0;
+            else if (b >= 0xC2 && b <= 0xDF)
+                continuation = 1;
+            else if (b >= 0xE0 && b <= 0xEF)
+                continuation = 2;
+            else if (b >= 0xF0 && b <= 0xF4)
+                continuation = 3;
+            else
+                return false;
+
+            for (int j = 1; j <= continuation; j++) {
+                if (i + j >= bytes.length)
+                    return allowCutOff; // cut off at the end of the header
+
+                if ((bytes[i + j] & 0xC0) != 0x80)
+                    return false;
+            }
+
+            i += continuation + 1;
+        }
+
+        return true;
+    }
+
+    /**
+     * Decodes the bytes, passing on a chunk if enough text has been decoded
+     * @param b the bytes to decode
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     * @param endOfInput true if these are the last bytes
+     */
+    private void decode(byte[] b, int off, int len, boolean endOfInput) {
+        do {
+            int length = Math.min(len, input.remaining());
+            input.put(b, off, length);
+            off += length;
+            len -= length;
+            input.flip();
+
+            CoderResult result;
+            while ((result = decoder.decode(input, output, endOfInput && len == 0)).isOverflow() || result.isError()) {
+                if (result.isError())
+                    replace(result.length());
+                else
+                    drainOutput();
+            }
+
+            drainOutput();
+            input.compact();
+        } while (len > 0);
+
+        if (text.length() >= chunkLength)
+            publish();
+    }
+
+    /**
+     * Skips the bytes that could not be decoded, replacing them with the replacement character and marking the text as lossy
+     * @param length the number of bytes to skip
+     */
+    private void replace(int length) {
+        if (!output.hasRemaining())
+            drainOutput();
+
+        input.position(input.position() + length);
+        output.put('\uFFFD');
+        lossy = true;
+    }
+
+    /**
+     * Moves the decoded characters into the text waiting to be passed on, converting line endings to \n
+     */
+    private void drainOutput() {
+        output.flip();
+
+        while (output.hasRemaining()) {
+            char c = output.get();
+
+            if (pendingCarriageReturn) {
+                pendingCarriageReturn = false;
+                text.append('\n');
+
+                if (lineSeparator == null)
+                    lineSeparator = c == '\n' ? "\r\n":"\r";
+
+                if (c == '\n')
+                    continue;
+            }
+
+            if (c == '\r') {
+                pendingCarriageReturn = true;
+            } else {
+                if (c == '\n' && lineSeparator == null)
+                    lineSeparator = "\n";
+
+                text.append(c);
+            }
+        }
+
+        output.clear();
+    }
+
+    /**
+     * Passes the decoded text on to the consumer
+     */
+    private void publish() {
+        if (text.length() > 0) {
+            chunkConsumer.accept(text.toString());
+            text.setLength(0);
+            chunkLength = CHUNK_LENGTH;
+        }
+    }
+
+    /**
+     * Decodes any remaining bytes and passes the remaining text on to the consumer
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+
+            if (decoder == null)
+                startDecoding(true);
+
+            decode(new byte[0], 0, 0, true);
+
+            while (decoder.flush(output).isOverflow())
+                drainOutput();
+            drainOutput();
+
+            if (pendingCarriageReturn) {
+                pendingCarriageReturn = false;
+                text.append('\n');
+
+                if (lineSeparator == null)
+                    lineSeparator = "\r";
+            }
+
+            publish();
+        }
+    }
+
+    /**
+     * Gets the format of the decoded text. The default line separator is used if no line separator was found
+     * @return the text format, the default format if the charset hasn't been detected yet
+     */
+    public TextFormat getTextFormat() {
+        if (charset == null)
+            return TextFormat.getDefault();
+
+        return new TextFormat(charset, byteOrderMark, lineSeparator == null ? TextFormat.getDefault().getLineSeparator():lineSeparator);
+    }
+}
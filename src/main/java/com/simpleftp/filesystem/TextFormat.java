@@ -0,0 +1,101 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * This class represents the format of a text file, i.e. its charset, whether it starts with a byte order mark and the line separator it uses.
+ * Text is held with \n line endings in memory, so the format is detected when a file is read and used to write the text back in the same format.
+ * Converting the line endings locally means text files can be transferred in binary mode
+ */
+@AllArgsConstructor
+@Getter
+public final class TextFormat {
+    /**
+     * The number of characters converted and encoded at a time
+     */
+    private static final int CHUNK_LENGTH = 8192;
+    /**
+     * The charset of the file
+     */
+    private final Charset charset;
+    /**
+     * True if the file starts with a byte order mark
+     */
+    private final boolean byteOrderMark;
+    /**
+     * The line separator used by the file
+     */
+    private final String lineSeparator;
+
+    /**
+     * Gets the format used for files with no detected format, i.e. new or empty files
+     * @return the default format
+     */
+    public static TextFormat getDefault() {
+        return new TextFormat(Charset.defaultCharset(), false, "\n");
+    }
+
+    /**
+     * Writes the text to the stream in this format, converting the \n line endings in chunks rather than copying the whole text.
+     * The stream is flushed but not closed
+     * @param text the text to write
+     * @param outputStream the stream to write to
+     * @throws IOException if an error occurs writing
+     */
+    public void write(String text, OutputStream outputStream) throws IOException {
+        Writer writer = new OutputStreamWriter(outputStream, charset);
+        boolean convert = !lineSeparator.equals("\n");
+        StringBuilder chunk = new StringBuilder(CHUNK_LENGTH + CHUNK_LENGTH / 8);
+        int length = text.length();
+
+        if (byteOrderMark)
+            writer.write('\uFEFF'); // encoded as the byte order mark of the charset
+
+        for (int offset = 0; offset < length; offset += CHUNK_LENGTH) {
+            int end = Math.min(length, offset + CHUNK_LENGTH);
+
+            if (convert) {
+                chunk.setLength(0);
+                int start = offset;
+
+                for (int i = offset; i < end; i++) {
+                    if (text.charAt(i) == '\n') {
+                        chunk.append(text, start, i).append(lineSeparator);
+                        start = i + 1;
+                    }
+                }
+
+                chunk.append(text, start, end);
+                writer.append(chunk);
+            } else {
+                writer.write(text, offset, end - offset);
+            }
+        }
+
+        writer.flush();
+    }
+}
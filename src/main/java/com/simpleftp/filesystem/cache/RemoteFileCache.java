@@ -0,0 +1,744 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.cache;
+
+import com.simpleftp.filesystem.FileUtils;
+import com.simpleftp.filesystem.LocalFile;
+import com.simpleftp.filesystem.RemoteFile;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.connection.Server;
+import com.simpleftp.ftp.exceptions.FTPError;
+import com.simpleftp.ftp.exceptions.FTPException;
+import com.simpleftp.ftp.exceptions.FTPRemotePathNotFoundException;
+import com.simpleftp.properties.Properties;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.net.ftp.FTPFile;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * This class is a cache of files downloaded from remote servers, so that opening or copying a file that hasn't changed since it was last downloaded
+ * doesn't download it again.
+ * <p>
+ * Each file is stored in a directory named by a SHA-256 hash of its key, made up of the server, path, size, modification time and transfer mode of the remote file.
+ * Before a cached file is used, the size and modification time of the remote file are looked up again, so a changed file has a different key and is downloaded again.
+ * The modification time is retrieved with MDTM, which is precise to the second, falling back to the time in the listing, which may only be precise to the minute, if the server doesn't support it.
+ * As a file can still change without its size or modification time changing, e.g. when saved twice within the same second, the application's cache also listens for
+ * paths changed by any FTPConnection and discards the cached copies of files uploaded to, renamed or removed. Only files cached or used since the application started can
+ * be discarded this way, as the path of a file cached by a previous run is only known once it is looked up again.
+ * The cache is limited to a quota of bytes, with the least recently used files evicted when it is exceeded. A file is leased while it is being used, and a leased
+ * file is never evicted. If the size or modification time of the remote file can't be determined, or the file is bigger than the quota, it is downloaded uncached and
+ * deleted once its lease is closed.
+ * <p>
+ * Files are downloaded into a staging directory and moved into the cache once complete, so a partially downloaded file is never served from the cache.
+ * Uncached files are downloaded into a directory of their own. The staging and uncached directories left behind by a previous run are removed before the
+ * first file is looked up or downloaded, never while a download may be in progress.
+ */
+@Log4j2
+public final class RemoteFileCache {
+    /**
+     * The directory of the cache used by the application
+     */
+    private static final String CACHE_DIRECTORY = System.getProperty("user.home") + FileUtils.PATH_SEPARATOR + ".simple-ftp" + FileUtils.PATH_SEPARATOR + "cache";
+    /**
+     * The name of the directory files are downloaded into before being moved into the cache
+     */
+    private static final String STAGING_DIRECTORY = ".staging";
+    /**
+     * The name of the directory files downloaded uncached are kept in until their lease is closed
+     */
+    private static final String UNCACHED_DIRECTORY = ".uncached";
+    /**
+     * The cache used by the application
+     */
+    private static RemoteFileCache instance;
+    /**
+     * The directory this cache stores its files in
+     */
+    private final Path directory;
+    /**
+     * Supplies the maximum number of bytes this cache can store
+     */
+    private final LongSupplier quota;
+    /**
+     * The cached files keyed by the hash of their key, in least recently used order
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The total number of bytes of the cached files
+     */
+    private long cachedBytes;
+    /**
+     * True once the files left in the directory by a previous run have been loaded
+     */
+    private boolean loaded;
+
+    /**
+     * Constructs a cache storing its files in the given directory
+     * @param directory the directory to store the cached files in
+     * @param quota the maximum number of bytes to cache, 0 to not cache any files
+     */
+    public RemoteFileCache(Path directory, long quota) {
+        this(directory, () -> quota);
+    }
+
+    /**
+     * Constructs a cache storing its files in the given directory with a quota that can change
+     * @param directory the directory to store the cached files in
+     * @param quota the supplier of the maximum number of bytes to cache
+     */
+    private RemoteFileCache(Path directory, LongSupplier quota) {
+        this.directory = directory;
+        this.quota = quota;
+    }
+
+    /**
+     * Gets the cache used by the application, stored in ~/.simple-ftp/cache with the quota given by the REMOTE_FILE_CACHE_SIZE property
+     * @return the application's cache
+     */
+    public static synchronized RemoteFileCache getInstance() {
+        if (instance == null) {
+            instance = new RemoteFileCache(Paths.get(CACHE_DIRECTORY), () -> Properties.REMOTE_FILE_CACHE_SIZE.getValue() * 1024L * 1024L);
+            FTPConnection.addRemoteChangeListener(instance::invalidate);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Retrieves a local copy of the remote file, downloading it with the connection only if there is no copy cached for its current size and modification time.
+     * The returned lease should be closed once the file is no longer needed, preferably with a try-with-resources statement.
+     * The file must not be modified, as it may be shared with other leases
+     * @param remotePath the path of the remote file
+     * @param connection the connection to look up and download the file with
+     * @return the lease on the local copy of the file
+     * @throws FTPException if the file doesn't exist or can't be downloaded
+     * @throws IOException if the file can't be stored locally
+     */
+    public Lease fetch(String remotePath, FTPConnection connection) throws FTPException, IOException {
+        load();
+        FTPFile remoteFile = connection.getFTPFile(remotePath);
+
+        if (remoteFile == null || remoteFile.isDirectory())
+            throw new FTPRemotePathNotFoundException("The remote file " + remotePath + " does not exist", remotePath);
+
+        String hash = getHash(remotePath, remoteFile, connection);
+
+        if (hash == null)
+            return new Lease(null, download(remotePath, connection, UNCACHED_DIRECTORY));
+
+        String serverKey = getServerKey(connection.getServer());
+        Lease lease = lease(hash, serverKey, remotePath);
+
+        if (lease == null) {
+            log.debug("Remote file {} is not cached, downloading it", remotePath);
+            lease = store(hash, download(remotePath, connection, STAGING_DIRECTORY), serverKey, remotePath);
+        } else {
+            log.debug("Using the cached copy of remote file {}", remotePath);
+        }
+
+        return lease;
+    }
+
+    /**
+     * Retrieves the cached copy of the remote file if there is one for its current size and modification time, without downloading it if not.
+     * The returned lease should be closed once the file is no longer needed
+     * @param remotePath the path of the remote file
+     * @param connection the connection to look up the file with
+     * @return the lease on the cached copy of the file, null if it is not cached
+     * @throws FTPException if the file can't be looked up
+     */
+    public Lease lookup(String remotePath, FTPConnection connection) throws FTPException {
+        load();
+        FTPFile remoteFile = connection.getFTPFile(remotePath);
+
+        if (remoteFile == null || remoteFile.isDirectory())
+            return null;
+
+        String hash = getHash(remotePath, remoteFile, connection);
+
+        return hash == null ? null:lease(hash, getServerKey(connection.getServer()), remotePath);
+    }
+
+    /**
+     * Streams the remote file into the target stream, from the cached copy if its current version is cached. Otherwise, the file is downloaded with the connection
+     * and every byte written to the target is also written to a staging file, which is moved into the cache once the download completes, so the next read of the
+     * same version doesn't download it again. The target stream is not closed by this method
+     * @param remotePath the path of the remote file
+     * @param connection the connection to look up and download the file with
+     * @param target the stream to write the contents of the file to
+     * @return true if the file was streamed, false if it doesn't exist or is a directory
+     * @throws FTPException if the file can't be looked up or downloaded
+     * @throws IOException if the cached copy can't be read or the target can't be written to
+     */
+    public boolean stream(String remotePath, FTPConnection connection, OutputStream target) throws FTPException, IOException {
+        load();
+        FTPFile remoteFile = connection.getFTPFile(remotePath);
+
+        if (remoteFile == null || remoteFile.isDirectory())
+            return false;
+
+        String hash = getHash(remotePath, remoteFile, connection);
+
+        if (hash == null)
+            return connection.downloadFile(remotePath, target, 0); // the file was already looked up, so download it without looking it up again
+
+        String serverKey = getServerKey(connection.getServer());
+        try (Lease lease = lease(hash, serverKey, remotePath)) {
+            if (lease != null) {
+                log.debug("Streaming the cached copy of remote file {}", remotePath);
+                Files.copy(lease.getFile().toPath(), target);
+                return true;
+            }
+        }
+
+        log.debug("Remote file {} is not cached, caching it as it is streamed", remotePath);
+        Path stagingDirectory = directory.resolve(STAGING_DIRECTORY).resolve(UUID.randomUUID().toString());
+        Files.createDirectories(stagingDirectory);
+        Path staged = stagingDirectory.resolve(RemoteFile.getName(remotePath));
+        boolean downloaded = false;
+        CachingOutputStream cachingStream = new CachingOutputStream(target, staged);
+
+        try {
+            downloaded = connection.downloadFile(remotePath, cachingStream, 0);
+        } finally {
+            boolean complete = cachingStream.finish() && downloaded
+                    && (!connection.isBinaryTransfer() || cachingStream.written == remoteFile.getSize()); // a file changed while downloading is a different version
+
+            if (complete)
+                store(hash, staged, serverKey, remotePath).close();
+            else
+                deleteDirectory(stagingDirectory);
+        }
+
+        return downloaded;
+    }
+
+    /**
+     * Gets the hash identifying the current version of the remote file in the cache
+     * @param remotePath the path of the file
+     * @param remoteFile the file looked up
+     * @param connection the connection to use
+     * @return the hash, null if the file can't be cached as its version can't be determined or it is too large
+     * @throws FTPException if an error occurs
+     */
+    private String getHash(String remotePath, FTPFile remoteFile, FTPConnection connection) throws FTPException {
+        String version = getVersion(remotePath, remoteFile, connection);
+        long size = remoteFile.getSize();
+
+        if (version == null || size < 0 || size > quota.getAsLong())
+            return null;
+
+        return hash(getServerKey(connection.getServer()) + "\n" + remotePath + "\n" + size + "\n" + version + "\n" + (connection.isBinaryTransfer() ? "I":"A"));
+    }
+
+    /**
+     * Gets the modification time to identify the version of the remote file with. MDTM is used whether or not SERVER_REMOTE_MODIFICATION_TIME is enabled,
+     * since the listing's time may only be precise to the minute, so a file changed within the same minute would be served stale from the cache
+     * @param remotePath the path of the file
+     * @param remoteFile the file looked up
+     * @param connection the connection to use
+     * @return the modification time, null if it can't be determined
+     * @throws FTPException if an error occurs
+     */
+    private String getVersion(String remotePath, FTPFile remoteFile, FTPConnection connection) throws FTPException {
+        String modificationTime = connection.getModificationTime(remotePath);
+
+        if (modificationTime != null) {
+            return modificationTime;
+        } else {
+            Calendar timestamp = remoteFile.getTimestamp();
+            return timestamp == null ? null:String.valueOf(timestamp.getTimeInMillis());
+        }
+    }
+
+    /**
+     * Gets the key identifying the server in the key of a file
+     * @param server the server
+     * @return the server key
+     */
+    private static String getServerKey(Server server) {
+        return server == null ? "":server.getUser() + "@" + server.getServer() + ":" + server.getPort();
+    }
+
+    /**
+     * Hashes the key of a file with SHA-256
+     * @param key the key to hash
+     * @return the hex string of the hash
+     */
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+
+            for (byte b : digest)
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported by this Java runtime", ex); // every Java platform is required to support SHA-256
+        }
+    }
+
+    /**
+     * Downloads the remote file into a new directory of its own
+     * @param remotePath the path of the remote file
+     * @param connection the connection to download with
+     * @param parent the name of the directory to create the file's directory in, either STAGING_DIRECTORY or UNCACHED_DIRECTORY
+     * @return the downloaded file
+     * @throws FTPException if the download fails
+     * @throws IOException if the directory can't be created
+     */
+    private Path download(String remotePath, FTPConnection connection, String parent) throws FTPException, IOException {
+        Path stagingDirectory = directory.resolve(parent).resolve(UUID.randomUUID().toString());
+        Files.createDirectories(stagingDirectory);
+
+        LocalFile downloaded = null;
+        try {
+            downloaded = connection.downloadFile(remotePath, stagingDirectory.toString());
+
+            if (downloaded == null || !downloaded.exists())
+                throw new FTPError("Failed to download the remote file " + remotePath, connection.getReplyString());
+
+            return downloaded.toPath();
+        } finally {
+            if (downloaded == null || !downloaded.exists())
+                deleteDirectory(stagingDirectory);
+        }
+    }
+
+    /**
+     * Leases the cached file with the given hash if it is cached
+     * @param hash the hash of the file's key
+     * @param serverKey the key of the server the file is on
+     * @param remotePath the path of the remote file, recorded so the file can be invalidated if it is changed
+     * @return the lease, null if not cached
+     */
+    private synchronized Lease lease(String hash, String serverKey, String remotePath) {
+        load();
+        Entry entry = entries.get(hash);
+
+        if (entry == null) {
+            return null;
+        } else if (!Files.isRegularFile(entry.file)) { // removed from outside the application
+            remove(hash, entry);
+            return null;
+        } else {
+            entry.serverKey = serverKey;
+            entry.remotePath = remotePath;
+            entry.leases++;
+            touch(entry);
+
+            return new Lease(entry, entry.file);
+        }
+    }
+
+    /**
+     * Moves the downloaded file from its staging directory into the cache and leases it. If another thread cached the same file in the meantime,
+     * the downloaded file is discarded and the cached one leased instead
+     * @param hash the hash of the file's key
+     * @param downloaded the downloaded file
+     * @param serverKey the key of the server the file is on
+     * @param remotePath the path of the remote file
+     * @return the lease on the cached file
+     * @throws IOException if the file can't be moved into the cache
+     */
+    private synchronized Lease store(String hash, Path downloaded, String serverKey, String remotePath) throws IOException {
+        Path stagingDirectory = downloaded.getParent();
+        Lease existing = lease(hash, serverKey, remotePath);
+
+        if (existing != null) {
+            deleteDirectory(stagingDirectory);
+            return existing;
+        }
+
+        Path entryDirectory = directory.resolve(hash);
+        try {
+            deleteDirectory(entryDirectory); // a directory not known to the index can only be the remains of a failed store
+            Files.move(stagingDirectory, entryDirectory, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            deleteDirectory(stagingDirectory);
+            throw ex;
+        }
+
+        Entry entry = new Entry(hash, entryDirectory.resolve(downloaded.getFileName()), Files.size(entryDirectory.resolve(downloaded.getFileName())));
+        entry.serverKey = serverKey;
+        entry.remotePath = remotePath;
+        entry.leases++;
+        entries.put(hash, entry);
+        cachedBytes += entry.size;
+        evict();
+
+        return new Lease(entry, entry.file);
+    }
+
+    /**
+     * Releases a lease on a cached file, evicting files if the cache is over its quota. The file of an entry that was invalidated while leased is deleted
+     * once its last lease is released, unless the file has been cached again since
+     * @param entry the entry of the leased file
+     */
+    private synchronized void release(Entry entry) {
+        entry.leases--;
+
+        if (entry.invalidated && entry.leases == 0 && !entries.containsKey(entry.hash))
+            deleteDirectory(entry.file.getParent());
+
+        evict();
+    }
+
+    /**
+     * Discards the cached copies of the remote path, and of any path below it if it is a directory, since it has been changed on the server.
+     * A copy that is leased is no longer served, and is deleted once its leases are closed
+     * @param server the server the path was changed on
+     * @param remotePath the path that was changed
+     */
+    public synchronized void invalidate(Server server, String remotePath) {
+        String serverKey = getServerKey(server);
+        String prefix = remotePath.endsWith("/") ? remotePath:remotePath + "/";
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            String path = entry.remotePath;
+
+            if (path != null && entry.serverKey.equals(serverKey) && (path.equals(remotePath) || path.startsWith(prefix))) {
+                log.debug("Discarding the cached copy of changed remote file {}", path);
+                iterator.remove();
+                cachedBytes -= entry.size;
+                entry.invalidated = true;
+
+                if (entry.leases == 0)
+                    deleteDirectory(entry.file.getParent());
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used files that aren't leased until the cache is within its quota
+     */
+    private void evict() {
+        long quota = this.quota.getAsLong();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+
+        while (cachedBytes > quota && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+
+            if (entry.leases == 0) {
+                iterator.remove();
+                cachedBytes -= entry.size;
+                deleteDirectory(entry.file.getParent());
+            }
+        }
+    }
+
+    /**
+     * Removes the entry from the cache
+     * @param hash the hash of the entry
+     * @param entry the entry to remove
+     */
+    private void remove(String hash, Entry entry) {
+        entries.remove(hash);
+        cachedBytes -= entry.size;
+        deleteDirectory(entry.file.getParent());
+    }
+
+    /**
+     * Records the time the entry was used on its directory, so the least recently used order can be restored when the cache is next loaded
+     * @param entry the entry used
+     */
+    private void touch(Entry entry) {
+        try {
+            Files.setLastModifiedTime(entry.file.getParent(), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            log.debug("Failed to record the last use of cached file {}", entry.file);
+        }
+    }
+
+    /**
+     * Loads the files cached by previous runs into the index in the order they were last used, and removes any staging and uncached directories left behind.
+     * This is called before anything is looked up or downloaded, so only files left by a previous run are removed
+     */
+    private synchronized void load() {
+        if (loaded)
+            return;
+
+        loaded = true;
+        deleteDirectory(directory.resolve(STAGING_DIRECTORY));
+        deleteDirectory(directory.resolve(UNCACHED_DIRECTORY));
+        File[] directories = directory.toFile().listFiles(file -> file.isDirectory() && !file.getName().startsWith("."));
+
+        if (directories != null) {
+            Arrays.sort(directories, Comparator.comparingLong(File::lastModified));
+
+            for (File entryDirectory : directories) {
+                File[] files = entryDirectory.listFiles();
+
+                if (files != null && files.length == 1 && files[0].isFile()) {
+                    Entry entry = new Entry(entryDirectory.getName(), files[0].toPath(), files[0].length());
+                    entries.put(entryDirectory.getName(), entry);
+                    cachedBytes += entry.size;
+                } else {
+                    deleteDirectory(entryDirectory.toPath());
+                }
+            }
+
+            evict();
+        }
+    }
+
+    /**
+     * Deletes the directory and its contents, logging any failure
+     * @param path the directory to delete
+     */
+    private static void deleteDirectory(Path path) {
+        File[] files = path.toFile().listFiles();
+
+        if (files != null)
+            for (File file : files)
+                deleteDirectory(file.toPath());
+
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            log.warn("Failed to delete {} from the remote file cache", path);
+        }
+    }
+
+    /**
+     * An entry for a file in the cache
+     */
+    private static class Entry {
+        /**
+         * The hash of the file's key, also the name of its directory
+         */
+        private final String hash;
+        /**
+         * The cached file
+         */
+        private final Path file;
+        /**
+         * The size of the cached file
+         */
+        private final long size;
+        /**
+         * The key of the server the file is on, null if not known as the file was cached by a previous run and has not been looked up since
+         */
+        private String serverKey;
+        /**
+         * The path of the remote file, null if not known as the file was cached by a previous run and has not been looked up since
+         */
+        private String remotePath;
+        /**
+         * The number of open leases on the file
+         */
+        private int leases;
+        /**
+         * True once the entry has been removed from the cache because the remote file was changed
+         */
+        private boolean invalidated;
+
+        /**
+         * Constructs an entry
+         * @param hash the hash of the file's key
+         * @param file the cached file
+         * @param size the size of the file
+         */
+        private Entry(String hash, Path file, long size) {
+            this.hash = hash;
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A lease on a local copy of a remote file retrieved from the cache. The file can't be evicted from the cache until the lease is closed.
+     * If the file was downloaded uncached, it is deleted when the lease is closed
+     */
+    public final class Lease implements AutoCloseable {
+        /**
+         * The entry of the cached file, null if uncached
+         */
+        private final Entry entry;
+        /**
+         * The local copy of the file
+         */
+        private final Path file;
+        /**
+         * True once closed
+         */
+        private boolean closed;
+
+        /**
+         * Constructs a lease
+         * @param entry the cache entry of the file, null if uncached
+         * @param file the local copy of the file
+         */
+        private Lease(Entry entry, Path file) {
+            this.entry = entry;
+            this.file = file;
+        }
+
+        /**
+         * Gets the local copy of the remote file. It has the same name as the remote file
+         * @return the local file
+         */
+        public LocalFile getFile() {
+            return new LocalFile(file.toString());
+        }
+
+        /**
+         * Determines if the file was served from, or stored in, the cache
+         * @return true if cached, false if it was downloaded uncached
+         */
+        public boolean isCached() {
+            return entry != null;
+        }
+
+        /**
+         * Releases the lease on the file, deleting it if uncached
+         */
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+
+                if (entry != null)
+                    release(entry);
+                else
+                    deleteDirectory(file.getParent());
+            }
+        }
+    }
+
+    /**
+     * This class is a stream that writes to a target stream and copies every byte to a staging file for the cache. If the staging file can't be written,
+     * it is abandoned and the bytes are still written to the target, since caching the file is only an optimisation
+     */
+    private static final class CachingOutputStream extends OutputStream {
+        /**
+         * The stream the contents are being written to
+         */
+        private final OutputStream target;
+        /**
+         * The staging file the contents are copied to
+         */
+        private final Path staged;
+        /**
+         * The stream to the staging file, null once abandoned or finished
+         */
+        private OutputStream cacheStream;
+        /**
+         * The number of bytes written
+         */
+        private long written;
+
+        /**
+         * Constructs the stream
+         * @param target the stream the contents are being written to
+         * @param staged the staging file to copy the contents to
+         * @throws IOException if the staging file can't be created
+         */
+        private CachingOutputStream(OutputStream target, Path staged) throws IOException {
+            this.target = target;
+            this.staged = staged;
+            this.cacheStream = new BufferedOutputStream(Files.newOutputStream(staged));
+        }
+
+        /**
+         * Writes the byte to the target and the staging file
+         * @param b the byte to write
+         * @throws IOException if the target can't be written to
+         */
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte)b}, 0, 1);
+        }
+
+        /**
+         * Writes the bytes to the target and the staging file
+         * @param b the buffer of bytes
+         * @param off the offset of the bytes in the buffer
+         * @param len the number of bytes to write
+         * @throws IOException if the target can't be written to
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+            written += len;
+
+            if (cacheStream != null) {
+                try {
+                    cacheStream.write(b, off, len);
+                } catch (IOException ex) {
+                    log.debug("Failed to write the cached copy of {}, the file will not be cached", staged);
+                    abandon();
+                }
+            }
+        }
+
+        /**
+         * Flushes the target stream
+         * @throws IOException if the target can't be flushed
+         */
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        /**
+         * Closes the staging file, abandoning it if it can't be closed
+         */
+        private void abandon() {
+            try {
+                cacheStream.close();
+            } catch (IOException ignored) {
+                // the staging file is deleted anyway
+            }
+
+            cacheStream = null;
+        }
+
+        /**
+         * Finishes writing the staging file
+         * @return true if every byte was written to the staging file, false if it was abandoned
+         */
+        private boolean finish() {
+            if (cacheStream == null)
+                return false;
+
+            try {
+                cacheStream.close();
+                return true;
+            } catch (IOException ex) {
+                return false;
+            } finally {
+                cacheStream = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.simpleftp.filesystem.cache;
+
+import com.simpleftp.filesystem.RemoteListing;
+import com.simpleftp.properties.Properties;
+import lombok.AllArgsConstructor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * This class is a cache of the listings of remote directories, keyed by the path of the directory. It is shared between a remote panel, which caches the
+ * directories it displays, and the background tasks walking the remote tree, which cache every directory they list. Visiting a directory a search has
+ * already listed, or searching a tree again, can then be served from the cache without listing the directories again.
+ *
+ * A listing the server filtered with a pattern is cached for display, but not used by a task that needs every entry of the directory.
+ * <p>
+ * A listing is reused until it is older than the maximum age. As a walk of a large tree can list a great many directories, the cache holds a bounded number
+ * of files across all its listings, evicting the least recently used listings.
+ * <p>
+ * This class is thread safe
+ */
+public final class RemoteListingCache {
+    /**
+     * The default maximum number of files across all the cached listings
+     */
+    private static final long MAX_FILES = 100000;
+    /**
+     * Supplies the number of milliseconds a listing is reused for
+     */
+    private final LongSupplier maxAge;
+    /**
+     * The maximum number of files across all the cached listings
+     */
+    private final long maxFiles;
+    /**
+     * The cached listings keyed by the path of the directory, in least recently used order
+     */
+    private final LinkedHashMap<String, Entry> listings = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The number of files across all the cached listings
+     */
+    private long files;
+
+    /**
+     * Constructs a cache reusing listings for the number of seconds given by the LISTING_CACHE_MAX_AGE property
+     */
+    public RemoteListingCache() {
+        this(() -> Properties.LISTING_CACHE_MAX_AGE.getValue() * 1000L, MAX_FILES);
+    }
+
+    /**
+     * Constructs a cache reusing listings for the given number of milliseconds
+     * @param maxAge the number of milliseconds a listing is reused for
+     * @param maxFiles the maximum number of files across all the cached listings
+     */
+    public RemoteListingCache(long maxAge, long maxFiles) {
+        this(() -> maxAge, maxFiles);
+    }
+
+    /**
+     * Constructs a cache with a maximum age that can change
+     * @param maxAge the supplier of the number of milliseconds a listing is reused for
+     * @param maxFiles the maximum number of files across all the cached listings
+     */
+    private RemoteListingCache(LongSupplier maxAge, long maxFiles) {
+        this.maxAge = maxAge;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * This class represents a cached listing
+     */
+    @AllArgsConstructor
+    private static final class Entry {
+        /**
+         * The cached listing
+         */
+        private final RemoteListing listing;
+        /**
+         * The time in milliseconds the listing was cached
+         */
+        private final long cached;
+    }
+
+    /**
+     * Gets the cached listing of the directory if it is not older than the maximum age
+     * @param directory the path of the directory
+     * @return the listing, null if not cached
+     */
+    public synchronized RemoteListing get(String directory) {
+        Entry entry = listings.get(directory);
+
+        if (entry == null) {
+            return null;
+        } else if (System.currentTimeMillis() - entry.cached > maxAge.getAsLong()) {
+            remove(directory);
+            return null;
+        }
+
+        return entry.listing;
+    }
+
+    /**
+     * Gets the cached listing of the directory if it contains every entry of the directory, i.e. the server didn't filter it with a pattern
+     * @param directory the path of the directory
+     * @return the complete listing, null if not cached
+     */
+    public RemoteListing getComplete(String directory) {
+        RemoteListing listing = get(directory);
+
+        return listing != null && listing.getServerPattern() == null ? listing:null;
+    }
+
+    /**
+     * Caches the listing of the directory, replacing any listing already cached. The least recently used listings are evicted until the cache is back
+     * within its maximum number of files, though the listing just cached is always kept. A null listing, i.e. a directory that failed to be listed, is not
+     * cached and removes any listing already cached
+     * @param directory the path of the directory
+     * @param listing the listing to cache
+     */
+    public synchronized void put(String directory, RemoteListing listing) {
+        if (listing == null) {
+            remove(directory);
+            return;
+        }
+
+        Entry replaced = listings.put(directory, new Entry(listing, System.currentTimeMillis()));
+        if (replaced != null)
+            files -= replaced.listing.size();
+
+        files += listing.size();
+        Iterator<Entry> iterator = listings.values().iterator();
+
+        while (files > maxFiles && listings.size() > 1) {
+            files -= iterator.next().listing.size();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes the cached listing of the directory, so it is listed again on the next visit
+     * @param directory the path of the directory
+     */
+    public synchronized void remove(String directory) {
+        Entry entry = listings.remove(directory);
+
+        if (entry != null)
+            files -= entry.listing.size();
+    }
+
+    /**
+     * Removes all the cached listings
+     */
+    public synchronized void clear() {
+        listings.clear();
+        files = 0;
+    }
+}
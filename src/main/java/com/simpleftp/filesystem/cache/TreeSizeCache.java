@@ -0,0 +1,234 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.cache;
+
+import com.simpleftp.ftp.connection.Server;
+import com.simpleftp.properties.Properties;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * This class is a cache of the calculated sizes of directory trees, keyed by the server, or local file system, and path of the directory at the root of each tree.
+ * A calculation stores the size of every directory it finishes, not only the one it was asked for, so calculating a directory's parent or one of its
+ * siblings' parents afterwards reuses the sizes of the subtrees already calculated rather than walking them again.
+ * <p>
+ * A size is reused until it is older than the maximum age, as a cached size can't tell if its tree has changed. Invalidating a path removes the sizes of the
+ * directory, the directories below it and the directories above it, since the sizes of all of those include it.
+ * The cache holds a bounded number of sizes, evicting the least recently used.
+ * <p>
+ * This class is thread safe
+ */
+public final class TreeSizeCache {
+    /**
+     * The maximum number of sizes cached
+     */
+    private static final int MAX_ENTRIES = 10000;
+    /**
+     * The cache used by the application
+     */
+    private static TreeSizeCache instance;
+    /**
+     * Supplies the number of milliseconds a size is reused for
+     */
+    private final LongSupplier maxAge;
+    /**
+     * The cached sizes keyed by the key of their directory, in least recently used order
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Constructs a cache reusing sizes for the given number of milliseconds
+     * @param maxAge the number of milliseconds a size is reused for, 0 to not reuse sizes
+     */
+    public TreeSizeCache(long maxAge) {
+        this(() -> maxAge);
+    }
+
+    /**
+     * Constructs a cache with a maximum age that can change
+     * @param maxAge the supplier of the number of milliseconds a size is reused for
+     */
+    private TreeSizeCache(LongSupplier maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Gets the cache used by the application, with the maximum age given by the TREE_SIZE_CACHE_MAX_AGE property
+     * @return the application's cache
+     */
+    public static synchronized TreeSizeCache getInstance() {
+        if (instance == null)
+            instance = new TreeSizeCache(() -> Properties.TREE_SIZE_CACHE_MAX_AGE.getValue() * 1000L);
+
+        return instance;
+    }
+
+    /**
+     * This class represents the size of a directory tree. The directory at the root of the tree isn't counted in its directories
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class TreeSize {
+        /**
+         * The total number of bytes of the files in the tree
+         */
+        private final long bytes;
+        /**
+         * The number of files in the tree, including symbolic links and special files
+         */
+        private final long files;
+        /**
+         * The number of directories below the root of the tree
+         */
+        private final long directories;
+    }
+
+    /**
+     * This class represents a cached size
+     */
+    @AllArgsConstructor
+    private static final class Entry {
+        /**
+         * The path of the directory, without a trailing separator
+         */
+        private final String path;
+        /**
+         * The server the directory is on, null if local
+         */
+        private final Server server;
+        /**
+         * The size of the directory's tree
+         */
+        private final TreeSize size;
+        /**
+         * The time in milliseconds the size was calculated
+         */
+        private final long calculated;
+    }
+
+    /**
+     * Removes a trailing separator from the path so that the same directory always has the same key. The root directory is left as it is
+     * @param path the path to normalise
+     * @return the normalised path
+     */
+    private static String normalise(String path) {
+        int length = path.length();
+
+        if (length > 1 && (path.endsWith("/") || path.endsWith("\\")) && path.charAt(length - 2) != ':')
+            return path.substring(0, length - 1);
+
+        return path;
+    }
+
+    /**
+     * Creates the key of a directory
+     * @param server the server the directory is on, null if local
+     * @param path the normalised path of the directory
+     * @return the key
+     */
+    private static String getKey(Server server, String path) {
+        String location = server == null ? "local":server.getUser() + "@" + server.getServer() + ":" + server.getPort();
+
+        return location + "\n" + path;
+    }
+
+    /**
+     * Checks if the path is the directory or inside it
+     * @param path the path to check
+     * @param directory the path of the directory
+     * @return true if the path is the directory or below it
+     */
+    private static boolean isWithin(String path, String directory) {
+        if (!path.startsWith(directory))
+            return false;
+        else if (path.length() == directory.length() || directory.endsWith("/") || directory.endsWith("\\"))
+            return true;
+
+        char separator = path.charAt(directory.length());
+
+        return separator == '/' || separator == '\\';
+    }
+
+    /**
+     * Gets the cached size of the directory's tree if it is not older than the maximum age
+     * @param server the server the directory is on, null if local
+     * @param path the path of the directory
+     * @return the size of the tree, null if not cached
+     */
+    public synchronized TreeSize get(Server server, String path) {
+        String key = getKey(server, normalise(path));
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            return null;
+        } else if (System.currentTimeMillis() - entry.calculated > maxAge.getAsLong()) {
+            entries.remove(key);
+            return null;
+        }
+
+        return entry.size;
+    }
+
+    /**
+     * Caches the size of the directory's tree, replacing any size already cached. Nothing is cached if the maximum age is 0
+     * @param server the server the directory is on, null if local
+     * @param path the path of the directory
+     * @param size the size of the tree
+     */
+    public synchronized void put(Server server, String path, TreeSize size) {
+        if (maxAge.getAsLong() > 0) {
+            path = normalise(path);
+            entries.put(getKey(server, path), new Entry(path, server, size, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Removes the cached sizes of the directory, every directory below it and every directory above it on the same server or local file system
+     * @param server the server the directory is on, null if local
+     * @param path the path of the directory
+     */
+    public synchronized void invalidate(Server server, String path) {
+        path = normalise(path);
+        Iterator<Entry> iterator = entries.values().iterator();
+
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+
+            if ((server == null ? entry.server == null:server.equals(entry.server))
+                    && (isWithin(entry.path, path) || isWithin(path, entry.path)))
+                iterator.remove();
+        }
+    }
+
+    /**
+     * Removes every cached size
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
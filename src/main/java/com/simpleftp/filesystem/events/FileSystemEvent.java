@@ -0,0 +1,147 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.events;
+
+import com.simpleftp.filesystem.FileOperationError;
+import lombok.Getter;
+
+/**
+ * This class represents an event published by a FileSystem on its FileSystemEventBus while it carries out an operation.
+ * There are 4 types of event:
+ * <ol>
+ *     <li>ERROR: a non-fatal error occurred on a file, the FileOperationError is available through getError()</li>
+ *     <li>PROGRESS: a single file has been transferred, the number of bytes transferred is available through getBytes()</li>
+ *     <li>RETRYING: the transfer of a file stalled and is being retried, the number of the retry is available through getRetry() and the offset it carries on from through getBytes()</li>
+ *     <li>COMPLETED: the copy/move/remove operation has finished, whether it succeeded is available through isSucceeded()</li>
+ * </ol>
+ */
+@Getter
+public final class FileSystemEvent {
+    /**
+     * The type of this event
+     */
+    private final Type type;
+    /**
+     * The path of the file the event is for
+     */
+    private final String sourcePath;
+    /**
+     * The path the file is being copied/moved to, null for removals
+     */
+    private final String destinationPath;
+    /**
+     * The number of bytes transferred if a PROGRESS event, the offset the retry carries on from if a RETRYING event, 0 otherwise
+     */
+    private final long bytes;
+    /**
+     * The number of the retry if a RETRYING event, starting at 1, 0 otherwise
+     */
+    private final int retry;
+    /**
+     * The error that occurred if an ERROR event, null otherwise
+     */
+    private final FileOperationError error;
+    /**
+     * True if a COMPLETED event and the operation succeeded
+     */
+    private final boolean succeeded;
+
+    /**
+     * This enum represents the types of event
+     */
+    public enum Type {
+        /**
+         * A non-fatal error occurred
+         */
+        ERROR,
+        /**
+         * A file was transferred
+         */
+        PROGRESS,
+        /**
+         * A file transfer stalled and is being retried
+         */
+        RETRYING,
+        /**
+         * The operation finished
+         */
+        COMPLETED
+    }
+
+    /**
+     * Constructs a FileSystemEvent
+     * @param type the type of the event
+     * @param sourcePath the path of the file the event is for
+     * @param destinationPath the path the file is being copied/moved to
+     * @param bytes the bytes transferred
+     * @param retry the number of the retry
+     * @param error the error that occurred
+     * @param succeeded true if the operation succeeded
+     */
+    private FileSystemEvent(Type type, String sourcePath, String destinationPath, long bytes, int retry, FileOperationError error, boolean succeeded) {
+        this.type = type;
+        this.sourcePath = sourcePath;
+        this.destinationPath = destinationPath;
+        this.bytes = bytes;
+        this.retry = retry;
+        this.error = error;
+        this.succeeded = succeeded;
+    }
+
+    /**
+     * Creates an ERROR event for the provided error
+     * @param error the error that occurred
+     * @return the event
+     */
+    public static FileSystemEvent error(FileOperationError error) {
+        return new FileSystemEvent(Type.ERROR, error.getSourcePath(), error.getDestinationPath(), 0, 0, error, false);
+    }
+
+    /**
+     * Creates a PROGRESS event for a file that was transferred
+     * @param sourcePath the path of the file transferred
+     * @param destinationPath the path it was transferred to
+     * @param bytes the number of bytes transferred
+     * @return the event
+     */
+    public static FileSystemEvent progress(String sourcePath, String destinationPath, long bytes) {
+        return new FileSystemEvent(Type.PROGRESS, sourcePath, destinationPath, bytes, 0, null, false);
+    }
+
+    /**
+     * Creates a RETRYING event for a file transfer that stalled
+     * @param path the path of the file being transferred
+     * @param retry the number of the retry, starting at 1
+     * @param restartOffset the offset in bytes the retry carries on from
+     * @return the event
+     */
+    public static FileSystemEvent retrying(String path, int retry, long restartOffset) {
+        return new FileSystemEvent(Type.RETRYING, path, null, restartOffset, retry, null, false);
+    }
+
+    /**
+     * Creates a COMPLETED event for an operation that finished
+     * @param sourcePath the path of the file the operation was carried out on
+     * @param destinationPath the path of the directory it was copied/moved to, null for removals
+     * @param succeeded true if the operation succeeded
+     * @return the event
+     */
+    public static FileSystemEvent completed(String sourcePath, String destinationPath, boolean succeeded) {
+        return new FileSystemEvent(Type.COMPLETED, sourcePath, destinationPath, 0, 0, null, succeeded);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.events;
+
+import com.simpleftp.filesystem.interfaces.FileSystemEventListener;
+import com.simpleftp.ftp.FTPSystem;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class carries the events published by a FileSystem to the listeners subscribed to it.
+ *
+ * Publishing an event only adds it to a thread-safe queue, so the thread carrying out the file operation is never held up by the listeners.
+ * The queue is then drained on a dispatching thread, which calls each listener for each event in the order they were published. No thread is
+ * kept waiting on the queue. A dispatching thread is only used while there are events to deliver, and at most one dispatches for a bus at a time.
+ *
+ * If events are published before any listener subscribes, they are held in the queue and delivered once the first listener subscribes. Only the last
+ * MAX_HELD_EVENTS are held, so a bus nobody ever subscribes to, e.g. the file system of a directory pane, doesn't keep every event published to it.
+ *
+ * This class is thread safe
+ */
+public class FileSystemEventBus {
+    /**
+     * The maximum number of events held while there are no listeners to deliver them to
+     */
+    private static final int MAX_HELD_EVENTS = 1024;
+    /**
+     * The threads dispatching events for all buses
+     */
+    private static final ExecutorService dispatcher = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "FileSystemEventBus-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * The queue of events waiting to be delivered
+     */
+    private final LinkedBlockingQueue<FileSystemEvent> events = new LinkedBlockingQueue<>();
+    /**
+     * The listeners subscribed to this bus
+     */
+    private final CopyOnWriteArrayList<FileSystemEventListener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * True while a thread is dispatching this bus' events
+     */
+    private final AtomicBoolean dispatching = new AtomicBoolean();
+
+    /**
+     * Subscribes the listener to this bus. Any events waiting to be delivered are delivered to it
+     * @param listener the listener to subscribe
+     */
+    public void subscribe(FileSystemEventListener listener) {
+        listeners.addIfAbsent(listener);
+        scheduleDispatch();
+    }
+
+    /**
+     * Unsubscribes the listener from this bus
+     * @param listener the listener to unsubscribe
+     */
+    public void unsubscribe(FileSystemEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Publishes the event to the listeners of this bus. This returns straight away, the listeners are called on the dispatching thread.
+     * If there are no listeners, the oldest event held is dropped once MAX_HELD_EVENTS are held
+     * @param event the event to publish
+     */
+    public void publish(FileSystemEvent event) {
+        if (listeners.isEmpty()) {
+            while (events.size() >= MAX_HELD_EVENTS)
+                events.poll();
+        }
+
+        events.add(event);
+        scheduleDispatch();
+    }
+
+    /**
+     * Starts a dispatching thread if there are listeners and one is not already dispatching
+     */
+    private void scheduleDispatch() {
+        if (!listeners.isEmpty() && !events.isEmpty() && dispatching.compareAndSet(false, true))
+            dispatcher.execute(this::dispatch);
+    }
+
+    /**
+     * Delivers the events in the queue until it is empty. The queue is checked again after giving up dispatching in case an event
+     * was published in between
+     */
+    private void dispatch() {
+        do {
+            FileSystemEvent event;
+            while (!listeners.isEmpty() && (event = events.poll()) != null) {
+                for (FileSystemEventListener listener : listeners) {
+                    try {
+                        listener.onEvent(event);
+                    } catch (RuntimeException ex) {
+                        if (FTPSystem.isDebugEnabled())
+                            ex.printStackTrace();
+                    }
+                }
+            }
+
+            dispatching.set(false);
+        } while (!listeners.isEmpty() && !events.isEmpty() && dispatching.compareAndSet(false, true));
+    }
+}
@@ -75,6 +75,12 @@ public interface CommonFile {
      */
     String getModificationTime() throws FileSystemException;
 
+    /**
+     * Gets the modification time as milliseconds since the epoch, as known without contacting the server, for uses such as sorting
+     * @return the modification time in milliseconds, -1 if it could not be determined
+     */
+    long getModificationTimeMillis();
+
     /**
      * Returns the hashcode for this object
      * @return the hash code
@@ -17,8 +17,9 @@
 
 package com.simpleftp.filesystem.interfaces;
 
-import com.simpleftp.filesystem.FileOperationError;
+import com.simpleftp.filesystem.events.FileSystemEventBus;
 import com.simpleftp.filesystem.exceptions.FileSystemException;
+import com.simpleftp.filesystem.journal.TransferJournal;
 import com.simpleftp.ftp.connection.FTPConnection;
 
 /**
@@ -134,15 +135,34 @@ public interface FileSystem {
     boolean moveFiles(CommonFile source, CommonFile destination) throws FileSystemException;
 
     /**
-     * Retrieves the next file operation error if there is one available. These errors are non-fatal errors produced by copyFiles or
-     * moveFiles/removeFile if source file is a directory.
-     * @return the next FileOperationError if available, null if not
+     * Returns the bus this file system publishes events on while carrying out copyFiles, moveFiles and removeFile.
+     * Non-fatal errors, the progress of each file transferred and the completion of the operation are published as FileSystemEvents.
+     * Subscribe a FileSystemEventListener to the bus before starting the operation to receive them
+     * @return the event bus of this file system
      */
-    FileOperationError getNextFileOperationError();
+    FileSystemEventBus getEventBus();
 
     /**
-     * Returns true if there is a file operation error available to retrieve
-     * @return true if there is a FileOperationError, false if not
+     * Cancels the copyFiles, moveFiles or removeFile operation being carried out by this file system. Recursive operations stop before the next file,
+     * throwing a FileSystemException, and the upload/download in progress on the connection is aborted rather than left to finish.
+     * Once cancelled, a file system stays cancelled, so this is intended for temporary file systems created for a single task.
+     * This can be called from any thread
      */
-    boolean hasNextFileOperationError();
+    void cancel();
+
+    /**
+     * Determines if cancel() has been called on this file system
+     * @return true if cancelled
+     */
+    boolean isCancelled();
+
+    /**
+     * Sets the journal copyFiles and moveFiles record each file they transfer in, so the operation can be resumed if interrupted.
+     * If the journal was loaded to resume an operation, the files it records as completed are skipped, files it records as planned are continued from where
+     * they stopped, and the destination is allowed to exist already.
+     * Only copies/moves between the local and remote file systems and local copies are journaled. Moves on the same file system are a rename and a copy on the remote
+     * file system goes through a temporary local copy, so neither is journaled
+     * @param journal the journal to record the operation in, null to not journal it
+     */
+    void setJournal(TransferJournal journal);
 }
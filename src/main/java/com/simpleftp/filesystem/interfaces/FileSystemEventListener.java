@@ -0,0 +1,33 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.interfaces;
+
+import com.simpleftp.filesystem.events.FileSystemEvent;
+
+/**
+ * This interface represents a subscriber to the events a FileSystem publishes on its FileSystemEventBus
+ */
+@FunctionalInterface
+public interface FileSystemEventListener {
+    /**
+     * Called for each event published on the bus the listener is subscribed to. This is called on the bus' dispatching thread,
+     * so any work on the UI should be wrapped in a Platform.runLater call
+     * @param event the event that was published
+     */
+    void onEvent(FileSystemEvent event);
+}
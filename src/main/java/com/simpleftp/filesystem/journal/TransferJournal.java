@@ -0,0 +1,485 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.journal;
+
+import com.simpleftp.filesystem.FileUtils;
+import com.simpleftp.filesystem.interfaces.CommonFile;
+import com.simpleftp.ftp.connection.Server;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is a write-ahead journal for a single batch copy/move operation. It is stored under ~/.simple-ftp/journals and records the operation being carried out,
+ * each file before it is transferred and each file once it has been transferred. If the operation is interrupted by the application crashing or the connection being lost,
+ * the journal is left behind and the operation can be resumed from it, skipping the files that were completed and carrying on with the file that was partially transferred.
+ * <p>
+ * The journal is only written to disk once the first file is planned, so an operation that fails before transferring anything leaves no journal behind.
+ * Records are synced to disk in batches of SYNC_RECORDS records, or SYNC_INTERVAL milliseconds, rather than after every record, so a crash can lose the last few records.
+ * This is safe, since a file without a completion record is just transferred again.
+ * <p>
+ * If the journal can't be written to, the error is logged and journaling stops, rather than failing the operation it is recording.
+ */
+@Log4j2
+public final class TransferJournal {
+    /**
+     * The directory journals are stored in
+     */
+    private static final String JOURNAL_DIRECTORY = System.getProperty("user.home") + FileUtils.PATH_SEPARATOR + ".simple-ftp" + FileUtils.PATH_SEPARATOR + "journals";
+    /**
+     * The extension of journal files
+     */
+    private static final String JOURNAL_EXTENSION = ".journal";
+    /**
+     * The record that starts a journal, describing the operation
+     */
+    private static final String BATCH_RECORD = "BATCH";
+    /**
+     * The record written before a file is transferred
+     */
+    private static final String PLAN_RECORD = "PLAN";
+    /**
+     * The record written once a file has been transferred
+     */
+    private static final String DONE_RECORD = "DONE";
+    /**
+     * The number of records that can be written before the journal is synced to disk
+     */
+    private static final int SYNC_RECORDS = 64;
+    /**
+     * The number of milliseconds that can pass after a sync before a record causes the journal to be synced again
+     */
+    private static final long SYNC_INTERVAL = 1000;
+    /**
+     * The IDs of the journals that are open in this application, so they're not offered to be resumed while still in use
+     */
+    private static final Set<String> openJournals = ConcurrentHashMap.newKeySet();
+    /**
+     * The ID of this journal, also the name of its file
+     */
+    @Getter
+    private final String id;
+    /**
+     * True if the operation is a copy, false if a move
+     */
+    @Getter
+    private final boolean copy;
+    /**
+     * The path of the file being copied/moved
+     */
+    @Getter
+    private final String sourcePath;
+    /**
+     * True if the source file is local
+     */
+    @Getter
+    private final boolean sourceLocal;
+    /**
+     * The path of the directory the source is being copied/moved to
+     */
+    @Getter
+    private final String destinationPath;
+    /**
+     * True if the destination directory is local
+     */
+    @Getter
+    private final boolean destinationLocal;
+    /**
+     * The server the operation was carried out on in the form user@host:port. Empty if the operation was local only
+     */
+    private final String server;
+    /**
+     * True if this journal was loaded from disk to resume the operation it records
+     */
+    @Getter
+    private final boolean resumed;
+    /**
+     * The path of the file this journal is stored in
+     */
+    private final Path journalPath;
+    /**
+     * The source paths of the files that have been planned
+     */
+    private final Set<String> planned = new HashSet<>();
+    /**
+     * The source paths of the files that have been completed
+     */
+    private final Set<String> completed = new HashSet<>();
+    /**
+     * The output stream to the journal file, kept so it can be synced. Null until the first record is written
+     */
+    private FileOutputStream outputStream;
+    /**
+     * The writer the records are written with
+     */
+    private Writer writer;
+    /**
+     * The number of records written since the last sync
+     */
+    private int unsyncedRecords;
+    /**
+     * The time of the last sync
+     */
+    private long lastSync;
+    /**
+     * True once this journal has been closed or deleted or failed to be written, after which records are ignored
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a journal
+     * @param id the ID of the journal
+     * @param copy true if a copy, false if a move
+     * @param sourcePath the path of the source file
+     * @param sourceLocal true if the source is local
+     * @param destinationPath the path of the destination directory
+     * @param destinationLocal true if the destination is local
+     * @param server the server key, empty if local only
+     * @param resumed true if loaded from disk
+     */
+    private TransferJournal(String id, boolean copy, String sourcePath, boolean sourceLocal, String destinationPath, boolean destinationLocal, String server, boolean resumed) {
+        this.id = id;
+        this.copy = copy;
+        this.sourcePath = sourcePath;
+        this.sourceLocal = sourceLocal;
+        this.destinationPath = destinationPath;
+        this.destinationLocal = destinationLocal;
+        this.server = server;
+        this.resumed = resumed;
+        this.journalPath = Paths.get(JOURNAL_DIRECTORY, id + JOURNAL_EXTENSION);
+        openJournals.add(id);
+    }
+
+    /**
+     * Creates a new journal for the copy/move of source into destination. Nothing is written to disk until the first file is planned
+     * @param copy true if the operation is a copy, false if a move
+     * @param source the file being copied/moved
+     * @param destination the directory it is being copied/moved to
+     * @param server the server the operation is carried out on, null if the operation is local only
+     * @return the created journal
+     */
+    public static TransferJournal create(boolean copy, CommonFile source, CommonFile destination, Server server) {
+        return new TransferJournal(UUID.randomUUID().toString(), copy, source.getFilePath(), source.isLocal(),
+                destination.getFilePath(), destination.isLocal(), getServerKey(server), false);
+    }
+
+    /**
+     * Loads the journals left behind by operations that did not finish, excluding any that are open in this application.
+     * The returned journals are treated as open, so each one must be resumed, closed or deleted by the caller.
+     * A journal file that can't be read is deleted.
+     * @return the list of unfinished journals
+     */
+    public static List<TransferJournal> loadUnfinished() {
+        List<TransferJournal> journals = new ArrayList<>();
+        File[] files = new File(JOURNAL_DIRECTORY).listFiles((dir, name) -> name.endsWith(JOURNAL_EXTENSION));
+
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                String id = name.substring(0, name.length() - JOURNAL_EXTENSION.length());
+
+                if (!openJournals.contains(id)) {
+                    TransferJournal journal = load(id, file.toPath());
+
+                    if (journal != null)
+                        journals.add(journal);
+                    else if (!file.delete())
+                        log.warn("Failed to delete the unreadable journal {}", file);
+                }
+            }
+        }
+
+        return journals;
+    }
+
+    /**
+     * Loads the journal stored at the given path
+     * @param id the ID of the journal
+     * @param path the path of the journal file
+     * @return the journal, null if it couldn't be read
+     */
+    private static TransferJournal load(String id, Path path) {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String[] batch = parseRecord(reader.readLine());
+
+            if (batch.length != 7 || !batch[0].equals(BATCH_RECORD))
+                return null;
+
+            TransferJournal journal = new TransferJournal(id, batch[1].equals("COPY"), batch[3], batch[2].equals("1"), batch[5], batch[4].equals("1"), batch[6], true);
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                String[] record = parseRecord(line);
+
+                if (record.length == 3 && record[0].equals(PLAN_RECORD))
+                    journal.planned.add(record[1]);
+                else if (record.length == 2 && record[0].equals(DONE_RECORD))
+                    journal.completed.add(record[1]);
+                // anything else is a record cut off by a crash, so it is ignored
+            }
+
+            return journal;
+        } catch (IOException | UncheckedIOException ex) {
+            log.warn("Failed to read the journal {}", path, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Gets the key identifying the server in a journal
+     * @param server the server, null if local only
+     * @return the server key, empty if server is null
+     */
+    private static String getServerKey(Server server) {
+        return server == null ? "":server.getUser() + "@" + server.getServer() + ":" + server.getPort();
+    }
+
+    /**
+     * Determines if this journal can be resumed with a connection to the given server, i.e. it was recorded on that server or it is local only
+     * @param server the server currently connected to
+     * @return true if this journal can be resumed with the server
+     */
+    public boolean isResumableWith(Server server) {
+        return this.server.isEmpty() || this.server.equals(getServerKey(server));
+    }
+
+    /**
+     * Records that a file is about to be transferred
+     * @param source the path of the file being transferred
+     * @param destination the path it is being transferred to
+     */
+    public synchronized void planned(String source, String destination) {
+        if (!closed && planned.add(source))
+            write(PLAN_RECORD, source, destination);
+    }
+
+    /**
+     * Records that a file has been transferred
+     * @param source the path of the file that was transferred
+     */
+    public synchronized void completed(String source) {
+        if (!closed && completed.add(source))
+            write(DONE_RECORD, source);
+    }
+
+    /**
+     * Determines if the file was transferred by the operation recorded in this journal
+     * @param source the path of the file
+     * @return true if it has been transferred
+     */
+    public synchronized boolean isCompleted(String source) {
+        return completed.contains(source);
+    }
+
+    /**
+     * Determines if the file was planned but not completed, i.e. it may have been partially transferred
+     * @param source the path of the file
+     * @return true if it may have been partially transferred
+     */
+    public synchronized boolean isPartial(String source) {
+        return planned.contains(source) && !completed.contains(source);
+    }
+
+    /**
+     * Gets the number of files recorded as transferred
+     * @return the number of completed files
+     */
+    public synchronized int getCompletedCount() {
+        return completed.size();
+    }
+
+    /**
+     * Writes a record to the journal, opening the journal file if not opened yet
+     * @param fields the fields of the record
+     */
+    private void write(String...fields) {
+        try {
+            if (writer == null)
+                open();
+
+            append(fields);
+
+            if (++unsyncedRecords >= SYNC_RECORDS || System.currentTimeMillis() - lastSync >= SYNC_INTERVAL)
+                sync();
+        } catch (IOException ex) {
+            log.error("Failed to write to the journal {}, the operation will no longer be journaled", journalPath, ex);
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Appends a record to the journal file
+     * @param fields the fields of the record
+     * @throws IOException if an error occurs
+     */
+    private void append(String...fields) throws IOException {
+        StringBuilder record = new StringBuilder();
+        for (String field : fields) {
+            if (record.length() > 0)
+                record.append('\t');
+            escape(field, record);
+        }
+
+        writer.write(record.append('\n').toString());
+    }
+
+    /**
+     * Opens the journal file, writing the batch record if this is a new journal
+     * @throws IOException if the journal can't be opened
+     */
+    private void open() throws IOException {
+        Files.createDirectories(journalPath.getParent());
+        outputStream = new FileOutputStream(journalPath.toFile(), true);
+        writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        lastSync = System.currentTimeMillis();
+
+        if (resumed)
+            writer.write('\n'); // ends any record cut off by the crash so it isn't joined to the next one
+        else
+            append(BATCH_RECORD, copy ? "COPY":"MOVE", sourceLocal ? "1":"0", sourcePath, destinationLocal ? "1":"0", destinationPath, server);
+    }
+
+    /**
+     * Flushes the records written and forces them to disk
+     * @throws IOException if an error occurs
+     */
+    private void sync() throws IOException {
+        writer.flush();
+        outputStream.getFD().sync();
+        unsyncedRecords = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Closes the journal file without throwing an exception
+     */
+    private void closeQuietly() {
+        closed = true;
+        openJournals.remove(id);
+
+        if (writer != null) {
+            try {
+                sync();
+            } catch (IOException ex) {
+                log.warn("Failed to sync the journal {}", journalPath, ex);
+            }
+
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                log.warn("Failed to close the journal {}", journalPath, ex);
+            }
+
+            writer = null;
+        }
+    }
+
+    /**
+     * Syncs and closes this journal, keeping it on disk so the operation can be resumed later
+     */
+    public synchronized void close() {
+        if (!closed)
+            closeQuietly();
+    }
+
+    /**
+     * Closes this journal and deletes it from the disk. This is called when the operation finishes or it is decided not to resume it
+     */
+    public synchronized void delete() {
+        closeQuietly();
+
+        try {
+            Files.deleteIfExists(journalPath);
+        } catch (IOException ex) {
+            log.warn("Failed to delete the journal {}", journalPath, ex);
+        }
+    }
+
+    /**
+     * Finishes this journal once the operation it records has stopped. If the operation was interrupted, e.g. the connection was lost part way through, the journal
+     * is closed and kept so the operation can be resumed from it. Otherwise, the operation either completed or was cancelled, so there is nothing to resume and it is deleted
+     * @param interrupted true if the operation failed part way through without being cancelled
+     */
+    public synchronized void finish(boolean interrupted) {
+        if (interrupted)
+            close();
+        else
+            delete();
+    }
+
+    /**
+     * Escapes the field so that it can't be confused with the separators of a record and appends it to the record
+     * @param field the field to escape
+     * @param record the record to append to
+     */
+    private static void escape(String field, StringBuilder record) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+
+            switch (c) {
+                case '\\': record.append("\\\\");
+                           break;
+                case '\t': record.append("\\t");
+                           break;
+                case '\n': record.append("\\n");
+                           break;
+                case '\r': record.append("\\r");
+                           break;
+                default: record.append(c);
+            }
+        }
+    }
+
+    /**
+     * Parses a record into its unescaped fields
+     * @param line the line of the record
+     * @return the fields of the record, empty if line is null
+     */
+    private static String[] parseRecord(String line) {
+        if (line == null)
+            return new String[0];
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char escaped = line.charAt(++i);
+                field.append(escaped == 't' ? '\t':escaped == 'n' ? '\n':escaped == 'r' ? '\r':escaped);
+            } else {
+                field.append(c);
+            }
+        }
+
+        fields.add(field.toString());
+
+        return fields.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.paths;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This class is an immutable, parsed file path. The path is split into its components once when it is created, so comparing paths, checking if one path is
+ * below another and finding the parent of a path don't need to re-parse or build strings.
+ * <p>
+ * The components are held in an array that is shared with the path's parents, so getParent() is O(1) and doesn't copy. Appending a child with resolve()
+ * only parses the child. The hash code and string form are calculated once and cached.
+ * <p>
+ * Empty components are ignored, so /path/to/file, /path//to/file and /path/to/file/ are equal.
+ * @param <P> the type of path
+ */
+public abstract class FilePath<P extends FilePath<P>> {
+    /**
+     * The root of the path if absolute, null if relative
+     */
+    private final String root;
+    /**
+     * The components of the path. Only the first count components belong to this path, the rest may belong to a child of it sharing the array
+     */
+    private final String[] components;
+    /**
+     * The number of components in this path
+     */
+    private final int count;
+    /**
+     * The cached hash code, 0 if not calculated yet
+     */
+    private int hash;
+    /**
+     * The cached string form of the path
+     */
+    private String string;
+
+    /**
+     * Constructs a path
+     * @param root the root of the path if absolute, null if relative
+     * @param components the components of the path, which must not be modified afterwards
+     * @param count the number of components of the array in the path
+     */
+    protected FilePath(String root, String[] components, int count) {
+        this.root = root;
+        this.components = components;
+        this.count = count;
+    }
+
+    /**
+     * Creates a path of the same type as this one
+     * @param root the root of the path if absolute, null if relative
+     * @param components the components of the path
+     * @param count the number of components of the array in the path
+     * @return the created path
+     */
+    protected abstract P create(String root, String[] components, int count);
+
+    /**
+     * Parses the path into a path of the same type as this one
+     * @param path the path to parse
+     * @return the parsed path
+     */
+    protected abstract P parse(String path);
+
+    /**
+     * Gets the separator between components of this type of path
+     * @return the path separator
+     */
+    protected abstract char getSeparator();
+
+    /**
+     * Determines if the components of this type of path are compared ignoring case
+     * @return true if case insensitive
+     */
+    protected abstract boolean isCaseInsensitive();
+
+    /**
+     * Splits the path into its non-empty components, starting at the given index
+     * @param path the path to split
+     * @param start the index to start at, i.e. after the root
+     * @param separator the separator of the path
+     * @param alternativeSeparator another character accepted as a separator, or the same as separator if there isn't one
+     * @return the components of the path
+     */
+    protected static String[] split(String path, int start, char separator, char alternativeSeparator) {
+        List<String> components = new ArrayList<>();
+        int length = path.length();
+        int componentStart = start;
+
+        for (int i = start; i <= length; i++) {
+            if (i == length || path.charAt(i) == separator || path.charAt(i) == alternativeSeparator) {
+                if (i > componentStart)
+                    components.add(path.substring(componentStart, i));
+                componentStart = i + 1;
+            }
+        }
+
+        return components.toArray(new String[0]);
+    }
+
+    /**
+     * Returns this path as an instance of its type
+     * @return this path
+     */
+    @SuppressWarnings("unchecked")
+    private P self() {
+        return (P)this;
+    }
+
+    /**
+     * Determines if this path is absolute, i.e. it starts at the root
+     * @return true if absolute
+     */
+    public boolean isAbsolute() {
+        return root != null;
+    }
+
+    /**
+     * Gets the root of this path
+     * @return the root, null if the path is relative
+     */
+    public String getRoot() {
+        return root;
+    }
+
+    /**
+     * Gets the number of components in this path. The root has 0 components
+     * @return the number of components
+     */
+    public int getNameCount() {
+        return count;
+    }
+
+    /**
+     * Gets the component of this path at the given index, where 0 is the component closest to the root
+     * @param index the index of the component
+     * @return the component
+     */
+    public String getName(int index) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for path with " + count + " components");
+
+        return components[index];
+    }
+
+    /**
+     * Gets the name of the file this path points to, i.e. the last component
+     * @return the file name, empty if this path is the root or empty
+     */
+    public String getFileName() {
+        return count == 0 ? "":components[count - 1];
+    }
+
+    /**
+     * Gets the components of this path as an unmodifiable list, without copying them
+     * @return the list of components
+     */
+    public List<String> getComponents() {
+        return Collections.unmodifiableList(Arrays.asList(components).subList(0, count));
+    }
+
+    /**
+     * Gets the parent of this path. The parent of the root is the root
+     * @return the parent path
+     */
+    public P getParent() {
+        return count == 0 ? self():create(root, components, count - 1);
+    }
+
+    /**
+     * Appends the child onto this path. If the child is absolute, it is returned instead
+     * @param child the path to append, may contain multiple components
+     * @return the appended path
+     */
+    public P resolve(String child) {
+        P childPath = parse(child);
+
+        if (childPath.isAbsolute())
+            return childPath;
+
+        FilePath<P> parsed = childPath;
+        if (parsed.count == 0)
+            return self();
+
+        String[] appended = Arrays.copyOf(components, count + parsed.count);
+        System.arraycopy(parsed.components, 0, appended, count, parsed.count);
+
+        return create(root, appended, appended.length);
+    }
+
+    /**
+     * Appends a single name onto this path without parsing it, e.g. the name of a file listed in the directory this path points to
+     * @param name the name to append, which must not contain a separator
+     * @return the appended path
+     */
+    public P resolveName(String name) {
+        String[] appended = Arrays.copyOf(components, count + 1);
+        appended[count] = name;
+
+        return create(root, appended, appended.length);
+    }
+
+    /**
+     * Determines if this path is the same as or below the given path. Both paths should be normalized if they may contain . or .. components
+     * @param parent the path to check
+     * @return true if this path starts with the parent path
+     */
+    public boolean startsWith(P parent) {
+        FilePath<P> other = parent;
+
+        if (!Objects.equals(root, other.root) || other.count > count)
+            return false;
+
+        for (int i = 0; i < other.count; i++)
+            if (!componentEquals(components[i], other.components[i]))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Determines if this path contains no . or .. components
+     * @return true if normalized
+     */
+    public boolean isNormalized() {
+        for (int i = 0; i < count; i++)
+            if (components[i].equals(".") || components[i].equals(".."))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Removes the . and .. components from this path without following any links, i.e. /path/to/../file is /path/file.
+     * A .. at the root of an absolute path is dropped, while leading .. components of a relative path are kept
+     * @return the normalized path, this path if already normalized
+     */
+    public P normalize() {
+        if (isNormalized())
+            return self();
+
+        String[] normalized = new String[count];
+        int size = 0;
+
+        for (int i = 0; i < count; i++) {
+            String component = components[i];
+
+            if (component.equals("..")) {
+                if (size > 0 && !normalized[size - 1].equals(".."))
+                    size--;
+                else if (!isAbsolute())
+                    normalized[size++] = component;
+            } else if (!component.equals(".")) {
+                normalized[size++] = component;
+            }
+        }
+
+        return create(root, normalized, size);
+    }
+
+    /**
+     * Compares two components of a path
+     * @param component1 the first component
+     * @param component2 the second component
+     * @return true if equal
+     */
+    private boolean componentEquals(String component1, String component2) {
+        return isCaseInsensitive() ? component1.equalsIgnoreCase(component2):component1.equals(component2);
+    }
+
+    /**
+     * Determines if this path is equal to the given object. Paths are equal if they are the same type, have the same root, or are both relative, and have the same components
+     * @param obj the object to compare
+     * @return true if equal
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        else if (obj == null || obj.getClass() != getClass())
+            return false;
+
+        FilePath<?> other = (FilePath<?>)obj;
+
+        if (!Objects.equals(root, other.root) || count != other.count || (hash != 0 && other.hash != 0 && hash != other.hash))
+            return false;
+
+        for (int i = count - 1; i >= 0; i--) // paths in the same directory differ at the end, so compare from the end
+            if (!componentEquals(components[i], other.components[i]))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Returns the hash code of this path, calculated once and cached
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        int hash = this.hash;
+
+        if (hash == 0) {
+            hash = root == null ? 0:root.hashCode();
+
+            for (int i = 0; i < count; i++)
+                hash = 31 * hash + (isCaseInsensitive() ? components[i].toLowerCase():components[i]).hashCode();
+
+            this.hash = hash == 0 ? 1:hash;
+        }
+
+        return this.hash;
+    }
+
+    /**
+     * Returns the string form of this path, built once and cached. It has no trailing separator unless it is the root
+     * @return the path as a string
+     */
+    @Override
+    public String toString() {
+        String string = this.string;
+
+        if (string == null) {
+            StringBuilder builder = new StringBuilder(root == null ? "":root);
+            char separator = getSeparator();
+
+            for (int i = 0; i < count; i++) {
+                if (i > 0)
+                    builder.append(separator);
+                builder.append(components[i]);
+            }
+
+            string = builder.toString();
+            this.string = string;
+        }
+
+        return string;
+    }
+}
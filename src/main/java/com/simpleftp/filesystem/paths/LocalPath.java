@@ -0,0 +1,130 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.paths;
+
+import com.simpleftp.filesystem.FileUtils;
+
+import java.io.File;
+
+/**
+ * This class is an immutable, parsed path on the local file system. Local paths are separated by the system's file separator, with / also accepted on Windows.
+ * Absolute paths start with the root given by FileUtils.getRootPath(true), or on Windows with any drive, e.g. D:\, and components are compared ignoring case on Windows as the file system does
+ */
+public final class LocalPath extends FilePath<LocalPath> {
+    /**
+     * The separator of local paths
+     */
+    private static final char SEPARATOR = File.separatorChar;
+    /**
+     * True if the local file system is Windows, which accepts / as a separator too and ignores case
+     */
+    private static final boolean WINDOWS = SEPARATOR == '\\';
+    /**
+     * The root of local paths, the system drive on Windows
+     */
+    private static final String ROOT = FileUtils.getRootPath(true);
+
+    /**
+     * Constructs a local path
+     * @param root the root if absolute, null if relative
+     * @param components the components of the path
+     * @param count the number of components of the array in the path
+     */
+    private LocalPath(String root, String[] components, int count) {
+        super(root, components, count);
+    }
+
+    /**
+     * Parses the given string into a local path
+     * @param path the path to parse
+     * @return the parsed path
+     */
+    public static LocalPath of(String path) {
+        String root;
+        int start;
+
+        if (!WINDOWS) {
+            root = path.startsWith(ROOT) ? ROOT:null;
+            start = root == null ? 0:ROOT.length();
+        } else {
+            root = getDriveRoot(path);
+            start = root == null ? 0:2; // any separator after the drive is skipped when splitting
+        }
+
+        String[] components = split(path, start, SEPARATOR, WINDOWS ? '/':SEPARATOR);
+
+        return new LocalPath(root, components, components.length);
+    }
+
+    /**
+     * Gets the root of the drive the Windows path starts with, e.g. D:\ for d:/path, so paths on any drive are absolute and compare equal regardless of the drive's case
+     * @param path the path to check
+     * @return the root of the drive, null if the path doesn't start with a drive
+     */
+    private static String getDriveRoot(String path) {
+        if (path.length() < 2 || path.charAt(1) != ':' || (path.length() > 2 && path.charAt(2) != '\\' && path.charAt(2) != '/'))
+            return null;
+
+        char drive = Character.toUpperCase(path.charAt(0));
+
+        if (drive < 'A' || drive > 'Z')
+            return null;
+
+        return drive + ":" + SEPARATOR;
+    }
+
+    /**
+     * Creates a local path
+     * @param root the root of the path if absolute, null if relative
+     * @param components the components of the path
+     * @param count the number of components of the array in the path
+     * @return the created path
+     */
+    @Override
+    protected LocalPath create(String root, String[] components, int count) {
+        return new LocalPath(root, components, count);
+    }
+
+    /**
+     * Parses the path into a local path
+     * @param path the path to parse
+     * @return the parsed path
+     */
+    @Override
+    protected LocalPath parse(String path) {
+        return of(path);
+    }
+
+    /**
+     * Gets the separator between components of local paths
+     * @return the path separator
+     */
+    @Override
+    protected char getSeparator() {
+        return SEPARATOR;
+    }
+
+    /**
+     * Local paths are case insensitive on Windows
+     * @return true if on Windows
+     */
+    @Override
+    protected boolean isCaseInsensitive() {
+        return WINDOWS;
+    }
+}
@@ -23,7 +23,6 @@ import com.simpleftp.filesystem.exceptions.PathResolverException;
 import com.simpleftp.filesystem.paths.interfaces.PathResolver;
 
 import java.io.IOException;
-import java.util.List;
 
 /*
  * Represents a resolver for resolving local paths
@@ -48,8 +47,7 @@ class LocalPathResolver implements PathResolver {
      * @return true if canonical
      */
     private boolean isPathCanonical(String path) {
-        List<String> splitPath = FileUtils.splitPath(path, true);
-        return !splitPath.contains(".") && !splitPath.contains("..");
+        return LocalPath.of(path).isNormalized();
     }
 
     /**
@@ -0,0 +1,98 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.paths;
+
+/**
+ * This class is an immutable, parsed path on a remote FTP server. Remote paths are separated by / and absolute paths start with /
+ */
+public final class RemotePath extends FilePath<RemotePath> {
+    /**
+     * The separator of remote paths
+     */
+    private static final char SEPARATOR = '/';
+    /**
+     * The root of remote paths
+     */
+    private static final String ROOT = "/";
+    /**
+     * The root path
+     */
+    public static final RemotePath ROOT_PATH = new RemotePath(ROOT, new String[0], 0);
+
+    /**
+     * Constructs a remote path
+     * @param root the root if absolute, null if relative
+     * @param components the components of the path
+     * @param count the number of components of the array in the path
+     */
+    private RemotePath(String root, String[] components, int count) {
+        super(root, components, count);
+    }
+
+    /**
+     * Parses the given string into a remote path
+     * @param path the path to parse
+     * @return the parsed path
+     */
+    public static RemotePath of(String path) {
+        boolean absolute = path.startsWith(ROOT);
+        String[] components = split(path, absolute ? ROOT.length():0, SEPARATOR, SEPARATOR);
+
+        return absolute && components.length == 0 ? ROOT_PATH:new RemotePath(absolute ? ROOT:null, components, components.length);
+    }
+
+    /**
+     * Creates a remote path
+     * @param root the root of the path if absolute, null if relative
+     * @param components the components of the path
+     * @param count the number of components of the array in the path
+     * @return the created path
+     */
+    @Override
+    protected RemotePath create(String root, String[] components, int count) {
+        return new RemotePath(root, components, count);
+    }
+
+    /**
+     * Parses the path into a remote path
+     * @param path the path to parse
+     * @return the parsed path
+     */
+    @Override
+    protected RemotePath parse(String path) {
+        return of(path);
+    }
+
+    /**
+     * Gets the separator between components of remote paths
+     * @return the path separator
+     */
+    @Override
+    protected char getSeparator() {
+        return SEPARATOR;
+    }
+
+    /**
+     * Remote paths are case sensitive
+     * @return false
+     */
+    @Override
+    protected boolean isCaseInsensitive() {
+        return false;
+    }
+}
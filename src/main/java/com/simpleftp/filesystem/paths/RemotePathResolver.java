@@ -28,7 +28,6 @@ import com.simpleftp.ftp.exceptions.FTPException;
 import com.simpleftp.ftp.exceptions.FTPRemotePathNotFoundException;
 
 import java.io.File;
-import java.util.List;
 
 /**
  * This class represents a PathResolver for resolving remote paths
@@ -70,8 +69,7 @@ class RemotePathResolver implements PathResolver {
      * @return true if canonical
      */
     private boolean isPathCanonical(String path) {
-        List<String> splitPath = FileUtils.splitPath(path, false);
-        return !splitPath.contains(".") && !splitPath.contains("..");
+        return RemotePath.of(path).isNormalized();
     }
 
     /**
@@ -21,6 +21,7 @@ import com.simpleftp.filesystem.LocalFile;
 import com.simpleftp.filesystem.paths.interfaces.PathResolver;
 
 import java.util.ArrayList;
+import java.util.regex.Pattern;
 
 /**
  * This is a PathResolver implementation which does a "loose" canonicalization of a path.
@@ -42,6 +43,10 @@ class SymbolicPathResolver implements PathResolver {
      * This shouldn't be null
      */
     private final String root;
+    /**
+     * The pattern splitting a path on the path separator, compiled once rather than on every split
+     */
+    private final Pattern separatorPattern;
 
     /**
      * Constructs a symbolic path resolver
@@ -51,6 +56,7 @@ class SymbolicPathResolver implements PathResolver {
     SymbolicPathResolver(String pathSeparator, String root) {
         this.pathSeparator = pathSeparator;
         this.root = root;
+        this.separatorPattern = Pattern.compile(Pattern.quote(pathSeparator));
     }
 
     /**
@@ -63,9 +69,8 @@ class SymbolicPathResolver implements PathResolver {
             path = path.substring(root.length());
         else if (path.startsWith(pathSeparator))
             path = path.substring(1);
-        String regex = pathSeparator.equals("\\") ? "\\\\":pathSeparator;
 
-        return path.split(regex);
+        return separatorPattern.split(path);
     }
 
     /**
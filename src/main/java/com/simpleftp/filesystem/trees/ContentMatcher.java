@@ -0,0 +1,420 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.trees;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class represents a compiled set of strings to search the contents of files for. Every string is searched for at the same time in a single pass
+ * over the bytes of a file, using an Aho-Corasick automaton compiled into a transition table, so the cost of scanning a file is one table lookup per byte
+ * however many strings are searched for.
+ *
+ * The strings are matched against the UTF-8 encoded bytes of the file, so files are never decoded unless a line matches. If case is ignored, only ASCII
+ * letters are folded. A compiled matcher is immutable and can be shared between threads, with each file scanned by its own Scanner
+ */
+public final class ContentMatcher {
+    /**
+     * The number of bytes at the start of a file checked for a NUL byte to determine if the file is binary
+     */
+    public static final int BINARY_CHECK_LENGTH = 8192;
+    /**
+     * The maximum number of bytes of a line that are kept to display a match, so a file with very long lines can't use up the heap
+     */
+    public static final int MAX_LINE_LENGTH = 1024;
+    /**
+     * The strings being searched for
+     */
+    private final List<String> strings;
+    /**
+     * True if ASCII case is ignored
+     */
+    private final boolean ignoreCase;
+    /**
+     * The transition table. The state reached from state s on byte b is transitions[(s << 8) | b]. State 0 is the start state
+     */
+    private final int[] transitions;
+    /**
+     * For each state, the index of a string that ends when the state is reached, or -1 if none do
+     */
+    private final int[] matches;
+
+    /**
+     * Compiles the matcher for the strings
+     * @param strings the strings to search for
+     * @param ignoreCase true to ignore the case of ASCII letters
+     */
+    private ContentMatcher(List<String> strings, boolean ignoreCase) {
+        this.strings = strings;
+        this.ignoreCase = ignoreCase;
+
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        trie.add(newNode());
+        ends.add(-1);
+
+        for (int i = 0; i < strings.size(); i++) {
+            int state = 0;
+
+            for (byte b : strings.get(i).getBytes(StandardCharsets.UTF_8)) {
+                int value = fold(b & 0xFF, ignoreCase);
+                int next = trie.get(state)[value];
+
+                if (next == 0) {
+                    next = trie.size();
+                    trie.add(newNode());
+                    ends.add(-1);
+                    trie.get(state)[value] = next;
+                }
+
+                state = next;
+            }
+
+            if (ends.get(state) == -1)
+                ends.set(state, i);
+        }
+
+        int states = trie.size();
+        transitions = new int[states << 8];
+        matches = new int[states];
+        int[] failures = new int[states];
+
+        for (int s = 0; s < states; s++)
+            matches[s] = ends.get(s);
+
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int[] root = trie.get(0);
+        for (int b = 0; b < 256; b++) {
+            transitions[b] = root[b];
+
+            if (root[b] != 0)
+                queue.add(root[b]);
+        }
+
+        while (!queue.isEmpty()) { // breadth first, so the failure of every shallower state is complete before it is used
+            int state = queue.poll();
+            int failure = failures[state];
+
+            if (matches[state] == -1)
+                matches[state] = matches[failure];
+
+            int[] node = trie.get(state);
+            for (int b = 0; b < 256; b++) {
+                int child = node[b];
+
+                if (child != 0) {
+                    failures[child] = transitions[(failure << 8) | b];
+                    transitions[(state << 8) | b] = child;
+                    queue.add(child);
+                } else {
+                    transitions[(state << 8) | b] = transitions[(failure << 8) | b];
+                }
+            }
+        }
+
+        if (ignoreCase) {
+            for (int s = 0; s < states; s++)
+                for (int b = 'A'; b <= 'Z'; b++)
+                    transitions[(s << 8) | b] = transitions[(s << 8) | (b + ('a' - 'A'))];
+        }
+    }
+
+    /**
+     * Creates a trie node with no children
+     * @return the node's children indexed by byte
+     */
+    private static int[] newNode() {
+        return new int[256];
+    }
+
+    /**
+     * Folds the byte to lower case if it is an ASCII upper case letter and case is ignored
+     * @param b the unsigned byte
+     * @param ignoreCase true if case is ignored
+     * @return the folded byte
+     */
+    private static int fold(int b, boolean ignoreCase) {
+        return ignoreCase && b >= 'A' && b <= 'Z' ? b + ('a' - 'A'):b;
+    }
+
+    /**
+     * Compiles a matcher for the strings. Empty strings are ignored
+     * @param strings the strings to search for
+     * @param ignoreCase true to ignore the case of ASCII letters
+     * @return the compiled matcher, or null if there are no strings to search for
+     */
+    public static ContentMatcher compile(List<String> strings, boolean ignoreCase) {
+        List<String> searched = new ArrayList<>();
+
+        for (String string : strings) {
+            if (string != null && !string.isEmpty() && !searched.contains(string))
+                searched.add(string);
+        }
+
+        return searched.isEmpty() ? null:new ContentMatcher(List.copyOf(searched), ignoreCase);
+    }
+
+    /**
+     * Gets the strings being searched for
+     * @return the strings in the order they were compiled, which the indices passed to a LineListener refer to
+     */
+    public List<String> getStrings() {
+        return strings;
+    }
+
+    /**
+     * Determines if ASCII case is ignored
+     * @return true if case is ignored
+     */
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Creates a scanner to scan a single file with
+     * @param listener the listener to pass the matching lines of the file to
+     * @return the scanner
+     */
+    public Scanner newScanner(LineListener listener) {
+        return new Scanner(listener);
+    }
+
+    /**
+     * This interface represents a listener receiving the lines of a file that contain one of the searched for strings
+     */
+    @FunctionalInterface
+    public interface LineListener {
+        /**
+         * Called for each line containing a searched for string
+         * @param lineNumber the number of the line, starting at 1
+         * @param line the line, without its line separator and cut off at MAX_LINE_LENGTH bytes
+         * @param stringIndex the index of the first string found in the line
+         */
+        void lineMatched(long lineNumber, String line, int stringIndex);
+    }
+
+    /**
+     * This class scans the contents of a single file as they are written to it, either from a download or from a memory mapped local file.
+     * The lines containing a searched for string are passed to the listener as soon as they end.
+     *
+     * If a NUL byte is found in the first BINARY_CHECK_LENGTH bytes, the file is taken to be binary and the rest of it is ignored.
+     * close() must be called once all the contents have been written so that a matching last line without a line separator is reported
+     */
+    public final class Scanner extends OutputStream {
+        /**
+         * The listener receiving the matching lines
+         */
+        private final LineListener listener;
+        /**
+         * The bytes of the current line, up to MAX_LINE_LENGTH
+         */
+        private final byte[] line = new byte[MAX_LINE_LENGTH];
+        /**
+         * The number of bytes of the current line kept in line
+         */
+        private int lineLength;
+        /**
+         * The number of the current line
+         */
+        private long lineNumber = 1;
+        /**
+         * The index of the first string found in the current line, -1 if none found yet
+         */
+        private int lineMatch = -1;
+        /**
+         * The matching lines that ended before the binary check finished, reported once the file is known not to be binary
+         */
+        private final List<Runnable> heldLines = new ArrayList<>();
+        /**
+         * The current state of the automaton
+         */
+        private int state;
+        /**
+         * The number of bytes scanned so far
+         */
+        private long scanned;
+        /**
+         * The number of lines that matched
+         */
+        private long matchedLines;
+        /**
+         * True if the file was found to be binary
+         */
+        private boolean binary;
+        /**
+         * True once closed
+         */
+        private boolean closed;
+
+        /**
+         * Constructs the scanner
+         * @param listener the listener to pass matching lines to
+         */
+        private Scanner(LineListener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * Scans the next byte
+         * @param b the byte as an unsigned value
+         */
+        private void scan(int b) {
+            if (scanned < BINARY_CHECK_LENGTH) {
+                if (b == 0) {
+                    binary = true;
+                    heldLines.clear();
+                    return;
+                }
+            } else if (scanned == BINARY_CHECK_LENGTH) {
+                reportHeldLines();
+            }
+
+            scanned++;
+
+            if (b == '\n') {
+                endLine();
+            } else {
+                state = transitions[(state << 8) | b];
+
+                if (lineMatch == -1)
+                    lineMatch = matches[state];
+
+                if (lineLength < MAX_LINE_LENGTH)
+                    line[lineLength++] = (byte)b;
+            }
+        }
+
+        /**
+         * Ends the current line, passing it to the listener if it matched
+         */
+        private void endLine() {
+            if (lineMatch != -1) {
+                int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1:lineLength;
+                long number = lineNumber;
+                String text = new String(line, 0, length, StandardCharsets.UTF_8);
+                int stringIndex = lineMatch;
+                Runnable report = () -> {
+                    matchedLines++;
+                    listener.lineMatched(number, text, stringIndex);
+                };
+
+                if (scanned <= BINARY_CHECK_LENGTH) {
+                    heldLines.add(report);
+                } else {
+                    report.run();
+                }
+            }
+
+            lineNumber++;
+            lineLength = 0;
+            lineMatch = -1;
+            state = 0;
+        }
+
+        /**
+         * Reports the matching lines held back while the binary check was unfinished
+         */
+        private void reportHeldLines() {
+            heldLines.forEach(Runnable::run);
+            heldLines.clear();
+        }
+
+        /**
+         * Scans the byte
+         * @param b the byte to scan
+         */
+        @Override
+        public void write(int b) {
+            if (!binary)
+                scan(b & 0xFF);
+        }
+
+        /**
+         * Scans the bytes
+         * @param bytes the bytes to scan
+         * @param off the offset of the first byte
+         * @param len the number of bytes
+         */
+        @Override
+        public void write(byte[] bytes, int off, int len) {
+            for (int i = off, end = off + len; i < end && !binary; i++)
+                scan(bytes[i] & 0xFF);
+        }
+
+        /**
+         * Scans the remaining bytes of the buffer, e.g. a memory mapped file
+         * @param buffer the buffer to scan
+         */
+        public void write(ByteBuffer buffer) {
+            if (buffer.hasArray()) {
+                write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+            } else {
+                while (buffer.hasRemaining() && !binary)
+                    scan(buffer.get() & 0xFF);
+            }
+        }
+
+        /**
+         * Determines if the file was found to be binary, in which case the rest of it need not be written
+         * @return true if binary
+         */
+        public boolean isBinary() {
+            return binary;
+        }
+
+        /**
+         * Gets the number of lines that matched so far
+         * @return the number of matching lines
+         */
+        public long getMatchedLines() {
+            return matchedLines;
+        }
+
+        /**
+         * Ends the scan, reporting the last line if it matched and didn't end with a line separator
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+
+                if (!binary) {
+                    if (lineLength > 0)
+                        endLine();
+
+                    reportHeldLines();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the strings being searched for
+     * @return the string representation of this matcher
+     */
+    @Override
+    public String toString() {
+        return Arrays.toString(strings.toArray()) + (ignoreCase ? " (ignoring case)":"");
+    }
+}
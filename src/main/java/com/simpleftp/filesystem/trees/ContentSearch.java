@@ -0,0 +1,335 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.trees;
+
+import com.simpleftp.filesystem.FileMask;
+import com.simpleftp.filesystem.RemoteListing;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.exceptions.FTPTransferAbortedException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * This class searches the contents of the files in a local or remote directory tree for one or more strings, passing each matching line to a consumer as soon
+ * as it is found.
+ *
+ * Each file is streamed through a ContentMatcher.Scanner without being written anywhere: local files are memory mapped and remote files are downloaded
+ * straight into the scanner. Only files matching the file mask and no larger than the maximum size are searched, and binary files are skipped once detected:
+ * the rest of a local file isn't read, and the download of a remote file is aborted with ABOR so the rest of it isn't transferred.
+ * Symbolic links are not followed, so a link can't lead the search round in a loop
+ */
+public final class ContentSearch extends TreeWalker {
+    /**
+     * The number of bytes of a local file mapped at a time
+     */
+    private static final long MAP_SEGMENT_SIZE = 64L * 1024 * 1024;
+    /**
+     * The matcher the contents are searched with
+     */
+    private final ContentMatcher matcher;
+    /**
+     * The mask the names of searched files have to match, null to search all files
+     */
+    private final FileMask mask;
+    /**
+     * The maximum size in bytes of a file to search
+     */
+    private final long maxFileSize;
+    /**
+     * The consumer receiving the matches. Called from the searching threads
+     */
+    private final Consumer<Match> matchConsumer;
+    /**
+     * The number of files searched
+     */
+    private final AtomicLong filesSearched = new AtomicLong();
+    /**
+     * The number of files skipped for being too large or binary
+     */
+    private final AtomicLong filesSkipped = new AtomicLong();
+
+    /**
+     * Constructs a content search
+     * @param directory the path of the directory to search
+     * @param connectionBasis the connection to base the search's connections on, null if the directory is local
+     * @param parallelism the number of files to search at the same time
+     * @param matcher the matcher to search the contents with
+     * @param mask the mask the names of searched files have to match, null to search all files
+     * @param maxFileSize the maximum size in bytes of a file to search
+     * @param matchConsumer the consumer to pass each match to. It is called from the searching threads
+     */
+    public ContentSearch(String directory, FTPConnection connectionBasis, int parallelism, ContentMatcher matcher, FileMask mask, long maxFileSize,
+                         Consumer<Match> matchConsumer) {
+        super(directory, connectionBasis, parallelism);
+        this.matcher = matcher;
+        this.mask = mask;
+        this.maxFileSize = maxFileSize;
+        this.matchConsumer = matchConsumer;
+    }
+
+    /**
+     * This class represents a line of a file that contains one of the strings searched for
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Match {
+        /**
+         * The path of the file
+         */
+        private final String filePath;
+        /**
+         * The number of the line, starting at 1
+         */
+        private final long lineNumber;
+        /**
+         * The line, cut off at ContentMatcher.MAX_LINE_LENGTH bytes
+         */
+        private final String line;
+        /**
+         * The first of the strings searched for found in the line
+         */
+        private final String string;
+
+        /**
+         * Returns the match in the form path:line: text
+         * @return the string representation of the match
+         */
+        @Override
+        public String toString() {
+            return filePath + ":" + lineNumber + ": " + line;
+        }
+    }
+
+    /**
+     * Queues the listing of the root directory
+     */
+    @Override
+    protected void start() {
+        submit(() -> searchDirectory(directory));
+    }
+
+    /**
+     * Lists the directory, queueing the search of each file and the listing of each sub-directory
+     * @param path the path of the directory
+     * @throws Exception if the directory can't be listed
+     */
+    private void searchDirectory(String path) throws Exception {
+        if (local) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(path))) {
+                for (Path entry : stream) {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    String entryPath = entry.toString();
+
+                    if (attributes.isDirectory()) {
+                        submit(() -> searchDirectory(entryPath));
+                    } else if (attributes.isRegularFile() && isSearched(entry.getFileName().toString(), attributes.size())) {
+                        submit(() -> searchLocalFile(entry, attributes.size()));
+                    }
+                }
+            }
+        } else {
+            RemoteListing listing = listRemoteDirectory(path);
+
+            for (int i = 0; i < listing.size(); i++) {
+                String entryPath = listing.getFilePath(i);
+
+                if (listing.isDirectory(i)) {
+                    submit(() -> searchDirectory(entryPath));
+                } else if (listing.isFile(i) && (mask == null || listing.nameMatches(i, mask))) {
+                    if (listing.getSize(i) <= maxFileSize)
+                        submit(() -> searchRemoteFile(entryPath));
+                    else
+                        filesSkipped.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if a local file should be searched, counting it as skipped if it is too large
+     * @param name the name of the file
+     * @param size the size of the file
+     * @return true if it should be searched
+     */
+    private boolean isSearched(String name, long size) {
+        if (mask != null && !mask.matches(name)) {
+            return false;
+        } else if (size > maxFileSize) {
+            filesSkipped.incrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates a scanner passing the matches in the file to the match consumer
+     * @param filePath the path of the file to scan
+     * @return the scanner
+     */
+    private ContentMatcher.Scanner newScanner(String filePath) {
+        return matcher.newScanner((lineNumber, line, stringIndex) ->
+                matchConsumer.accept(new Match(filePath, lineNumber, line, matcher.getStrings().get(stringIndex))));
+    }
+
+    /**
+     * Records the end of the search of a file
+     * @param scanner the scanner the file was searched with
+     */
+    private void searched(ContentMatcher.Scanner scanner) {
+        scanner.close();
+
+        if (scanner.isBinary())
+            filesSkipped.incrementAndGet();
+        else
+            filesSearched.incrementAndGet();
+    }
+
+    /**
+     * Searches the local file by memory mapping it a segment at a time
+     * @param path the path of the file
+     * @param size the size of the file
+     * @throws IOException if the file can't be read
+     */
+    private void searchLocalFile(Path path, long size) throws IOException {
+        ContentMatcher.Scanner scanner = newScanner(path.toString());
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = Math.min(size, channel.size()); // the file may have been truncated since it was listed
+
+            for (long position = 0; position < size && !scanner.isBinary() && !isCancelled(); position += MAP_SEGMENT_SIZE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SEGMENT_SIZE, size - position));
+                scanner.write(buffer);
+            }
+        }
+
+        searched(scanner);
+    }
+
+    /**
+     * Searches the remote file by downloading it straight into a scanner. If the scanner finds the file is binary, the download is aborted
+     * @param filePath the path of the file
+     * @throws Exception if the file can't be downloaded
+     */
+    private void searchRemoteFile(String filePath) throws Exception {
+        ContentMatcher.Scanner scanner = newScanner(filePath);
+
+        withConnection(connection -> {
+            try {
+                return connection.downloadFile(filePath, new AbortingOutputStream(scanner, connection), 0);
+            } catch (FTPTransferAbortedException ex) {
+                if (!scanner.isBinary() || isCancelled())
+                    throw ex;
+
+                return false; // aborted as the file is binary. If the connection couldn't be recovered, the pool discards it
+            }
+        });
+        searched(scanner);
+    }
+
+    /**
+     * This class passes the downloaded bytes on to the scanner, aborting the download once the scanner finds the file is binary
+     */
+    private static final class AbortingOutputStream extends OutputStream {
+        /**
+         * The scanner the bytes are passed to
+         */
+        private final ContentMatcher.Scanner scanner;
+        /**
+         * The connection downloading the file
+         */
+        private final FTPConnection connection;
+        /**
+         * True once the download has been aborted
+         */
+        private boolean aborted;
+
+        /**
+         * Constructs the stream
+         * @param scanner the scanner to pass the bytes on to
+         * @param connection the connection downloading the file
+         */
+        private AbortingOutputStream(ContentMatcher.Scanner scanner, FTPConnection connection) {
+            this.scanner = scanner;
+            this.connection = connection;
+        }
+
+        /**
+         * Passes the byte on to the scanner
+         * @param b the byte to write
+         */
+        @Override
+        public void write(int b) {
+            scanner.write(b);
+            abortIfBinary();
+        }
+
+        /**
+         * Passes the bytes on to the scanner
+         * @param b the bytes to write
+         * @param off the offset of the first byte
+         * @param len the number of bytes
+         */
+        @Override
+        public void write(byte[] b, int off, int len) {
+            scanner.write(b, off, len);
+            abortIfBinary();
+        }
+
+        /**
+         * Aborts the download if the scanner has found the file is binary. The data connection is closed, so the download fails on its next read
+         * and sends ABOR to bring the control connection back in sync
+         */
+        private void abortIfBinary() {
+            if (!aborted && scanner.isBinary()) {
+                aborted = true;
+                connection.abortTransfer();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of files searched so far
+     * @return the number of files searched
+     */
+    public long getFilesSearched() {
+        return filesSearched.get();
+    }
+
+    /**
+     * Gets the number of files skipped so far for being too large or binary
+     * @return the number of files skipped
+     */
+    public long getFilesSkipped() {
+        return filesSkipped.get();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.trees;
+
+import com.simpleftp.filesystem.FileMask;
+import com.simpleftp.filesystem.RemoteListing;
+import com.simpleftp.ftp.connection.FTPConnection;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * This class searches a local or remote directory tree for files and directories whose names match a file mask or regular expression, passing each one to a
+ * consumer as soon as it is found.
+ *
+ * The tree is crawled breadth first, so matches near the top of the tree are found first. The crawl goes no deeper than the maximum depth, and stops queueing
+ * directories once the maximum number of entries has been visited, so searching the root of a huge server is bounded. Symbolic links are matched but not
+ * followed. Remote names are matched where they are stored in each listing, so no String is created for an entry that doesn't match a file mask
+ */
+public final class NameSearch extends TreeWalker {
+    /**
+     * The mask names have to match, null if matching a regular expression
+     */
+    private final FileMask mask;
+    /**
+     * The regular expression names have to contain a match of, null if matching a mask
+     */
+    private final Pattern pattern;
+    /**
+     * The maximum depth of directory to list below the root, where the root's entries are at depth 1
+     */
+    private final int maxDepth;
+    /**
+     * The maximum number of entries to visit
+     */
+    private final long maxEntries;
+    /**
+     * The consumer receiving the matches. Called from the searching threads
+     */
+    private final Consumer<Hit> hitConsumer;
+    /**
+     * The number of entries visited
+     */
+    private final AtomicLong entriesVisited = new AtomicLong();
+    /**
+     * True once the maximum number of entries has been visited
+     */
+    private volatile boolean limitReached;
+
+    /**
+     * Constructs a name search
+     * @param directory the path of the directory to search
+     * @param connectionBasis the connection to base the search's connections on, null if the directory is local
+     * @param parallelism the number of directories to list at the same time
+     * @param mask the mask names have to match, null if pattern is given
+     * @param pattern the regular expression names have to contain a match of, null if mask is given
+     * @param maxDepth the maximum depth of directory to list below the root, where the root's entries are at depth 1
+     * @param maxEntries the maximum number of entries to visit
+     * @param hitConsumer the consumer to pass each match to. It is called from the searching threads
+     */
+    private NameSearch(String directory, FTPConnection connectionBasis, int parallelism, FileMask mask, Pattern pattern, int maxDepth, long maxEntries,
+                       Consumer<Hit> hitConsumer) {
+        super(directory, connectionBasis, parallelism);
+        this.mask = mask;
+        this.pattern = pattern;
+        this.maxDepth = maxDepth;
+        this.maxEntries = maxEntries;
+        this.hitConsumer = hitConsumer;
+    }
+
+    /**
+     * Constructs a name search matching names against a file mask
+     * @param directory the path of the directory to search
+     * @param connectionBasis the connection to base the search's connections on, null if the directory is local
+     * @param parallelism the number of directories to list at the same time
+     * @param mask the mask names have to match
+     * @param maxDepth the maximum depth of directory to list below the root, where the root's entries are at depth 1
+     * @param maxEntries the maximum number of entries to visit
+     * @param hitConsumer the consumer to pass each match to. It is called from the searching threads
+     */
+    public NameSearch(String directory, FTPConnection connectionBasis, int parallelism, FileMask mask, int maxDepth, long maxEntries, Consumer<Hit> hitConsumer) {
+        this(directory, connectionBasis, parallelism, mask, null, maxDepth, maxEntries, hitConsumer);
+    }
+
+    /**
+     * Constructs a name search matching names against a regular expression
+     * @param directory the path of the directory to search
+     * @param connectionBasis the connection to base the search's connections on, null if the directory is local
+     * @param parallelism the number of directories to list at the same time
+     * @param pattern the regular expression names have to contain a match of
+     * @param maxDepth the maximum depth of directory to list below the root, where the root's entries are at depth 1
+     * @param maxEntries the maximum number of entries to visit
+     * @param hitConsumer the consumer to pass each match to. It is called from the searching threads
+     */
+    public NameSearch(String directory, FTPConnection connectionBasis, int parallelism, Pattern pattern, int maxDepth, long maxEntries, Consumer<Hit> hitConsumer) {
+        this(directory, connectionBasis, parallelism, null, pattern, maxDepth, maxEntries, hitConsumer);
+    }
+
+    /**
+     * This class represents a file or directory whose name matched
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Hit {
+        /**
+         * The path of the file
+         */
+        private final String filePath;
+        /**
+         * True if the file is a directory
+         */
+        private final boolean directory;
+        /**
+         * The size of the file in bytes as listed
+         */
+        private final long size;
+
+        /**
+         * Returns the path of the file, ending in a separator if it is a directory
+         * @return the string representation of the hit
+         */
+        @Override
+        public String toString() {
+            return directory ? filePath + "/":filePath + " (" + size + " bytes)";
+        }
+    }
+
+    /**
+     * Queues the listing of the root directory
+     */
+    @Override
+    protected void start() {
+        submit(() -> searchDirectory(directory, 1));
+    }
+
+    /**
+     * Checks if a name matches
+     * @param name the name to check
+     * @return true if it matches
+     */
+    private boolean matches(CharSequence name) {
+        return mask != null ? mask.matches(name):pattern.matcher(name).find();
+    }
+
+    /**
+     * Records that entries have been visited, marking the limit as reached if the maximum has been exceeded
+     * @param entries the number of entries visited
+     * @return true if directories can still be queued
+     */
+    private boolean visited(int entries) {
+        if (entriesVisited.addAndGet(entries) >= maxEntries)
+            limitReached = true;
+
+        return !limitReached;
+    }
+
+    /**
+     * Lists the directory, passing the matching entries to the consumer and queueing the listing of each sub-directory within the limits
+     * @param path the path of the directory
+     * @param depth the depth of the directory's entries below the root
+     * @throws Exception if the directory can't be listed
+     */
+    private void searchDirectory(String path, int depth) throws Exception {
+        if (limitReached)
+            return;
+
+        if (local) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(path))) {
+                for (Path entry : stream) {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    String entryPath = entry.toString();
+                    boolean queue = visited(1) && depth < maxDepth;
+
+                    if (matches(entry.getFileName().toString()))
+                        hitConsumer.accept(new Hit(entryPath, attributes.isDirectory(), attributes.size()));
+
+                    if (attributes.isDirectory() && queue)
+                        submit(() -> searchDirectory(entryPath, depth + 1));
+                }
+            }
+        } else {
+            RemoteListing listing = listRemoteDirectory(path);
+            boolean queue = visited(listing.size()) && depth < maxDepth;
+
+            for (int i = 0; i < listing.size(); i++) {
+                boolean directory = listing.isDirectory(i);
+
+                if (mask != null ? listing.nameMatches(i, mask):matches(listing.getName(i)))
+                    hitConsumer.accept(new Hit(listing.getFilePath(i), directory, listing.getSize(i)));
+
+                if (directory && queue) {
+                    String entryPath = listing.getFilePath(i);
+                    submit(() -> searchDirectory(entryPath, depth + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of entries visited so far
+     * @return the number of entries visited
+     */
+    public long getEntriesVisited() {
+        return entriesVisited.get();
+    }
+
+    /**
+     * Determines if the search stopped listing directories because the maximum number of entries was visited
+     * @return true if the limit was reached
+     */
+    public boolean isLimitReached() {
+        return limitReached;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.trees;
+
+import com.simpleftp.filesystem.RemoteListing;
+import com.simpleftp.filesystem.cache.TreeSizeCache;
+import com.simpleftp.filesystem.cache.TreeSizeCache.TreeSize;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.connection.Server;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class calculates the total number of bytes, files and directories in a local or remote directory tree.
+ *
+ * The totals found so far can be read at any time while the calculation is running, so they can be displayed as they grow. Each directory keeps the
+ * totals of its own tree, which are added to its parent's once the directory and every directory below it have been listed. The finished size of each
+ * directory is stored in the TreeSizeCache, if one is given, and a directory whose size is already cached is not walked again, so calculating a tree that
+ * overlaps one calculated recently only lists the directories that haven't been calculated. A directory whose tree couldn't be fully listed, because of an
+ * error or cancellation, is never cached.
+ *
+ * Symbolic links are counted as files with the size of the link and are not followed, so a link can't count a tree twice or loop
+ */
+public final class TreeSizeCalculator extends TreeWalker {
+    /**
+     * The server the tree is on, null if local
+     */
+    private final Server server;
+    /**
+     * The cache of calculated sizes to use and add to, null if not caching
+     */
+    private final TreeSizeCache sizeCache;
+    /**
+     * The total number of bytes of the files found so far
+     */
+    private final AtomicLong bytes = new AtomicLong();
+    /**
+     * The number of files found so far
+     */
+    private final AtomicLong files = new AtomicLong();
+    /**
+     * The number of directories found so far, not including the root
+     */
+    private final AtomicLong directories = new AtomicLong();
+    /**
+     * The number of directories whose size was taken from the cache rather than walked
+     */
+    private final AtomicLong directoriesReused = new AtomicLong();
+    /**
+     * The size of the whole tree, null until every directory has been listed
+     */
+    private volatile TreeSize size;
+
+    /**
+     * Constructs a calculator for the size of a directory tree
+     * @param directory the path of the directory at the root of the tree
+     * @param connectionBasis the connection to base the connections walking a remote tree on, null if the tree is local
+     * @param parallelism the number of threads, and connections if remote, to walk the tree with
+     * @param sizeCache the cache of calculated sizes to use and add to, null to walk the whole tree without caching
+     */
+    public TreeSizeCalculator(String directory, FTPConnection connectionBasis, int parallelism, TreeSizeCache sizeCache) {
+        super(directory, connectionBasis, parallelism);
+        this.server = connectionBasis == null ? null:connectionBasis.getServer();
+        this.sizeCache = sizeCache;
+    }
+
+    /**
+     * This class represents a directory being walked, holding the totals of its tree found so far
+     */
+    private final class Node {
+        /**
+         * The path of the directory
+         */
+        private final String path;
+        /**
+         * The node of the parent directory, null if this is the root
+         */
+        private final Node parent;
+        /**
+         * The number of sub-directories still being walked, plus one until the directory itself has been listed
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+        /**
+         * The total number of bytes of the files in the tree found so far
+         */
+        private long bytes;
+        /**
+         * The number of files in the tree found so far
+         */
+        private long files;
+        /**
+         * The number of directories below this one found so far
+         */
+        private long directories;
+
+        /**
+         * Constructs a node
+         * @param path the path of the directory
+         * @param parent the node of the parent directory, null if this is the root
+         */
+        private Node(String path, Node parent) {
+            this.path = path;
+            this.parent = parent;
+        }
+
+        /**
+         * Adds a file listed in this directory to its totals
+         * @param size the size of the file
+         */
+        private synchronized void addFile(long size) {
+            bytes += size;
+            files++;
+        }
+
+        /**
+         * Adds the tree of a sub-directory to the totals, counting the sub-directory itself
+         * @param size the size of the sub-directory's tree
+         */
+        private synchronized void addDirectory(TreeSize size) {
+            bytes += size.getBytes();
+            files += size.getFiles();
+            directories += size.getDirectories() + 1;
+        }
+
+        /**
+         * Gets the totals of this directory's tree
+         * @return the size of the tree
+         */
+        private synchronized TreeSize getSize() {
+            return new TreeSize(bytes, files, directories);
+        }
+
+        /**
+         * Records that the directory or one of its sub-directories has been fully walked. Once nothing is pending, the directory's size is cached and added
+         * to its parent
+         */
+        private void finished() {
+            if (pending.decrementAndGet() == 0) {
+                TreeSize size = getSize();
+
+                if (sizeCache != null)
+                    sizeCache.put(server, path, size);
+
+                if (parent != null) {
+                    parent.addDirectory(size);
+                    parent.finished();
+                } else {
+                    TreeSizeCalculator.this.size = size;
+                }
+            }
+        }
+    }
+
+    /**
+     * Uses the cached size of the root if there is one, otherwise queues the listing of the root directory
+     */
+    @Override
+    protected void start() {
+        TreeSize cached = sizeCache == null ? null:sizeCache.get(server, directory);
+
+        if (cached != null) {
+            directoriesReused.incrementAndGet();
+            addToTotals(cached);
+            size = cached;
+        } else {
+            Node root = new Node(directory, null);
+            submit(() -> sizeDirectory(root));
+        }
+    }
+
+    /**
+     * Adds a size to the running totals
+     * @param size the size to add
+     */
+    private void addToTotals(TreeSize size) {
+        bytes.addAndGet(size.getBytes());
+        files.addAndGet(size.getFiles());
+        directories.addAndGet(size.getDirectories());
+    }
+
+    /**
+     * Adds a file to the totals of the directory and the running totals
+     * @param node the node of the directory the file is in
+     * @param size the size of the file
+     */
+    private void addFile(Node node, long size) {
+        node.addFile(size);
+        bytes.addAndGet(size);
+        files.incrementAndGet();
+    }
+
+    /**
+     * Adds a sub-directory, using its cached size if there is one, otherwise queueing its listing
+     * @param node the node of the directory the sub-directory is in
+     * @param path the path of the sub-directory
+     */
+    private void addDirectory(Node node, String path) {
+        TreeSize cached = sizeCache == null ? null:sizeCache.get(server, path);
+        directories.incrementAndGet();
+
+        if (cached != null) {
+            directoriesReused.incrementAndGet();
+            addToTotals(cached);
+            node.addDirectory(cached);
+        } else {
+            Node child = new Node(path, node);
+            node.pending.incrementAndGet();
+            submit(() -> sizeDirectory(child));
+        }
+    }
+
+    /**
+     * Lists the directory, adding its files to the totals and each of its sub-directories
+     * @param node the node of the directory
+     * @throws Exception if the directory can't be listed. The directory and the directories above it are then never finished
+     */
+    private void sizeDirectory(Node node) throws Exception {
+        if (local) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(node.path))) {
+                for (Path entry : stream) {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+                    if (attributes.isDirectory())
+                        addDirectory(node, entry.toString());
+                    else
+                        addFile(node, attributes.size());
+                }
+            }
+        } else {
+            RemoteListing listing = listRemoteDirectory(node.path);
+
+            for (int i = 0; i < listing.size(); i++) {
+                if (listing.isDirectory(i))
+                    addDirectory(node, listing.getFilePath(i));
+                else
+                    addFile(node, Math.max(listing.getSize(i), 0)); // the size is -1 if the server didn't list it
+            }
+        }
+
+        node.finished();
+    }
+
+    /**
+     * Gets the total number of bytes of the files found so far
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Gets the number of files found so far
+     * @return the number of files
+     */
+    public long getFiles() {
+        return files.get();
+    }
+
+    /**
+     * Gets the number of directories found so far, not including the root
+     * @return the number of directories
+     */
+    public long getDirectories() {
+        return directories.get();
+    }
+
+    /**
+     * Gets the number of directories whose size was taken from the cache rather than walked
+     * @return the number of directories reused
+     */
+    public long getDirectoriesReused() {
+        return directoriesReused.get();
+    }
+
+    /**
+     * Gets the size of the whole tree
+     * @return the size, null if the tree hasn't been fully listed, e.g. it is still running, was cancelled or a directory couldn't be listed
+     */
+    public TreeSize getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.filesystem.trees;
+
+import com.simpleftp.filesystem.RemoteListing;
+import com.simpleftp.filesystem.cache.RemoteListingCache;
+import com.simpleftp.ftp.connection.ConnectionPool;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.exceptions.FTPCommandFailedException;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class provides the base for a background task that walks a local or remote directory tree using several threads at once.
+ *
+ * The walk is broken into small pieces of work, e.g. listing one directory or scanning one file, which are queued and carried out in the order they were
+ * queued by a fixed number of threads. As the pieces of work for the entries of a directory are queued after those of the directories before it, the tree is
+ * walked breadth first. The walk is finished once no work is queued or running.
+ *
+ * A remote tree is walked with a ConnectionPool with a connection for each thread, so each connection is logged in once rather than for every command.
+ * If a RemoteListingCache is set, remote directories already cached are not listed again, and the directories listed are added to the cache.
+ * A failure in one piece of work is counted and logged but does not stop the walk
+ */
+@Log4j2
+public abstract class TreeWalker {
+    /**
+     * The path of the directory at the root of the tree
+     */
+    @Getter
+    protected final String directory;
+    /**
+     * True if the tree is local
+     */
+    @Getter
+    protected final boolean local;
+    /**
+     * The pool of connections to walk a remote tree with, null if local
+     */
+    private final ConnectionPool connectionPool;
+    /**
+     * The threads carrying out the work
+     */
+    private final ExecutorService executor;
+    /**
+     * The number of pieces of work queued or running
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+    /**
+     * Counted down once the walk is finished or cancelled
+     */
+    private final CountDownLatch finished = new CountDownLatch(1);
+    /**
+     * The number of pieces of work that failed
+     */
+    private final AtomicLong errors = new AtomicLong();
+    /**
+     * The number of remote directories listed from the server
+     */
+    private final AtomicLong directoriesListed = new AtomicLong();
+    /**
+     * The number of remote directories served from the listing cache
+     */
+    private final AtomicLong directoriesCached = new AtomicLong();
+    /**
+     * The cache of remote directory listings to use and add to, null if not caching
+     */
+    @Setter
+    private volatile RemoteListingCache listingCache;
+    /**
+     * True if the walk was cancelled
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Constructs a tree walker
+     * @param directory the path of the directory at the root of the tree
+     * @param connectionBasis the connection to base the connections walking a remote tree on, null if the tree is local
+     * @param parallelism the number of threads, and connections if remote, to walk the tree with
+     */
+    protected TreeWalker(String directory, FTPConnection connectionBasis, int parallelism) {
+        this.directory = directory;
+        this.local = connectionBasis == null;
+        this.connectionPool = local ? null:new ConnectionPool(connectionBasis, parallelism);
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, getClass().getSimpleName() + "-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * This interface represents a piece of work carried out by the walk
+     */
+    @FunctionalInterface
+    protected interface Work {
+        /**
+         * Carries out the work
+         * @throws Exception if the work fails
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * This interface represents an action carried out with a connection from the pool
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    protected interface ConnectionAction<T> {
+        /**
+         * Carries out the action
+         * @param connection the connection to carry out the action with
+         * @return the result of the action
+         * @throws Exception if the action fails
+         */
+        T run(FTPConnection connection) throws Exception;
+    }
+
+    /**
+     * Queues the work for the root directory of the tree. Implementations queue the work for each entry of a directory as it is listed
+     * @throws Exception if the work can't be queued
+     */
+    protected abstract void start() throws Exception;
+
+    /**
+     * Walks the tree, returning once the walk is finished or cancelled
+     * @throws InterruptedException if interrupted while waiting for the walk to finish. The walk is cancelled
+     */
+    public final void run() throws InterruptedException {
+        try {
+            submit(this::start);
+            finished.await();
+        } catch (InterruptedException ex) {
+            cancel();
+            throw ex;
+        } finally {
+            executor.shutdownNow();
+
+            if (connectionPool != null)
+                connectionPool.close();
+        }
+    }
+
+    /**
+     * Queues a piece of work. If the walk is cancelled, the work is discarded
+     * @param work the work to queue
+     */
+    protected final void submit(Work work) {
+        pending.incrementAndGet();
+
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!cancelled)
+                        work.run();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception ex) {
+                    if (!cancelled) {
+                        errors.incrementAndGet();
+                        log.warn("An error occurred walking the tree at {}: {}", directory, ex.getMessage());
+                    }
+                } finally {
+                    completed();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            completed(); // the walk was cancelled
+        }
+    }
+
+    /**
+     * Records that a piece of work was completed, finishing the walk if it was the last
+     */
+    private void completed() {
+        if (pending.decrementAndGet() == 0)
+            finished.countDown();
+    }
+
+    /**
+     * Carries out the action with a connection from the pool, releasing it afterwards
+     * @param action the action to carry out
+     * @param <T> the type of the result
+     * @return the result of the action
+     * @throws Exception if the action fails or a connection can't be acquired
+     */
+    protected final <T> T withConnection(ConnectionAction<T> action) throws Exception {
+        if (connectionPool == null)
+            throw new IllegalStateException("A connection can only be used to walk a remote tree");
+
+        FTPConnection connection = connectionPool.acquire();
+        try {
+            return action.run(connection);
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /**
+     * Lists a remote directory, using the listing cache if the directory is cached. A directory the server refuses to list is a failure rather than an
+     * empty directory, so it is never cached or counted as empty
+     * @param path the path of the directory
+     * @return the listing of the directory
+     * @throws FTPCommandFailedException if the server refuses to list the directory
+     * @throws Exception if the directory can't be listed
+     */
+    protected final RemoteListing listRemoteDirectory(String path) throws Exception {
+        RemoteListingCache listingCache = this.listingCache;
+        RemoteListing listing = listingCache == null ? null:listingCache.getComplete(path);
+
+        if (listing != null) {
+            directoriesCached.incrementAndGet();
+            return listing;
+        }
+
+        listing = withConnection(connection -> {
+            RemoteListing.Builder builder = RemoteListing.builder(path, null, null);
+            if (!connection.listFiles(path, null, builder::add)) // MLSD is used if the server supports it
+                throw new FTPCommandFailedException("Failed to list the directory " + path, connection.getReplyString());
+
+            return builder.build();
+        });
+        directoriesListed.incrementAndGet();
+
+        if (listingCache != null)
+            listingCache.put(path, listing);
+
+        return listing;
+    }
+
+    /**
+     * Cancels the walk. Any work queued is discarded and any transfers in progress are aborted
+     */
+    public void cancel() {
+        cancelled = true;
+        executor.shutdownNow();
+
+        if (connectionPool != null)
+            connectionPool.abortTransfers();
+
+        finished.countDown();
+    }
+
+    /**
+     * Determines if the walk was cancelled
+     * @return true if cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Gets the number of pieces of work that failed, e.g. directories that couldn't be listed
+     * @return the number of errors
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Gets the number of remote directories listed from the server so far
+     * @return the number of directories listed
+     */
+    public long getDirectoriesListed() {
+        return directoriesListed.get();
+    }
+
+    /**
+     * Gets the number of remote directories served from the listing cache so far
+     * @return the number of cached directories used
+     */
+    public long getDirectoriesCached() {
+        return directoriesCached.get();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.connection;
+
+import org.apache.commons.net.ftp.FTPClient;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * This class is a FTPClient that keeps track of the data connection opened for the current transfer so that the transfer can be aborted from another thread.
+ *
+ * FTPClient blocks inside retrieveFile/storeFile until the transfer finishes, and FTPConnection holds its monitor for that time, so the only way to stop it from another
+ * thread is to close the data socket underneath it. Sending the ABOR and reading the replies is left to the thread that carried out the transfer, as only it can use the control connection
+ */
+final class AbortableFTPClient extends FTPClient {
+    /**
+     * The data connection of the transfer in progress, null if there is none
+     */
+    private volatile Socket dataSocket;
+
+    /**
+     * True if the current transfer has been aborted
+     */
+    private volatile boolean aborted;
+
+    /**
+     * Opens the data connection for the command and records it so it can be closed by abortDataConnection(). If the transfer was aborted before
+     * the connection was opened, it is closed straight away
+     * @param command the command to open the data connection for
+     * @param arg the argument of the command
+     * @return the opened data connection, null if the server refused the command
+     * @throws IOException if an error occurs opening the connection
+     */
+    @Override
+    protected Socket _openDataConnection_(String command, String arg) throws IOException {
+        Socket socket = super._openDataConnection_(command, arg);
+        dataSocket = socket;
+
+        if (aborted)
+            closeDataConnection();
+
+        return socket;
+    }
+
+    /**
+     * Aborts the current transfer by closing its data connection. The thread carrying out the transfer will then fail with an IOException.
+     * This is safe to call from any thread
+     */
+    void abortDataConnection() {
+        aborted = true;
+        closeDataConnection();
+    }
+
+    /**
+     * Closes the data connection of the current transfer if there is one, without marking it as aborted. This is used to unblock a stalled transfer
+     * so that it can be retried
+     */
+    void closeDataConnection() {
+        Socket socket = dataSocket;
+        dataSocket = null;
+
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // the transfer is being aborted anyway
+            }
+        }
+    }
+
+    /**
+     * Determines if the current transfer was aborted
+     * @return true if abortDataConnection was called since the transfer started
+     */
+    boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Resets the abort state before a new transfer starts
+     */
+    void resetAbort() {
+        aborted = false;
+        dataSocket = null;
+    }
+}
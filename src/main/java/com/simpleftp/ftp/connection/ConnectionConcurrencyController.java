@@ -0,0 +1,356 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.connection;
+
+import com.simpleftp.properties.Properties;
+import org.apache.commons.net.ftp.FTPReply;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class controls how many temporary connections can be open to a server at the same time. There is one controller per server and user, retrieved by forServer.
+ *
+ * The number of connections allowed (the limit) is adjusted using AIMD (additive increase, multiplicative decrease):
+ * <ul>
+ *     <li>Each successful login increases the limit by 1/limit, so the limit grows by about 1 for every limit number of successful connections, up to the
+ *     CONNECTION_CONCURRENCY_LIMIT property</li>
+ *     <li>If the server refuses a connection because it has too many (a 421 reply, or a 530 reply mentioning connections), the limit is halved</li>
+ *     <li>If the login latency, smoothed over recent connections, rises to more than double the lowest latency seen (and by more than a small floor
+ *     so that latency noise on fast networks is ignored), the server is taken to be overloaded and the limit is halved</li>
+ * </ul>
+ * The limit is halved at most once a second so that a burst of refusals from connections opened at the same time doesn't collapse it to 1. It never goes below 1.
+ *
+ * A refusal also starts a backoff, during which no connection is let through, so connections retrying after a refusal don't hammer the server. The backoff
+ * doubles with each refusal in a row, up to MAX_BACKOFF, and is reset by a successful login.
+ *
+ * Connections waiting for the limit to allow them to connect are queued and let through in the order they started waiting. Callers that must not block,
+ * e.g. because an idle connection may be handed to them instead, can use tryAcquire.
+ *
+ * This class is thread safe
+ */
+public final class ConnectionConcurrencyController {
+    /**
+     * The controllers for each server mapped by user@host:port
+     */
+    private static final ConcurrentHashMap<String, ConnectionConcurrencyController> controllers = new ConcurrentHashMap<>();
+    /**
+     * The limit new controllers start with, if less than the maximum limit
+     */
+    private static final int INITIAL_LIMIT = 2;
+    /**
+     * The factor the smoothed latency has to exceed the baseline latency by to be considered rising
+     */
+    private static final double LATENCY_FACTOR = 2.0;
+    /**
+     * The number of milliseconds the smoothed latency has to exceed the baseline latency by to be considered rising
+     */
+    private static final double LATENCY_FLOOR = 100;
+    /**
+     * The weight a new latency sample has in the smoothed latency
+     */
+    private static final double LATENCY_SMOOTHING = 0.2;
+    /**
+     * The weight that the smoothed latency has in moving the baseline latency up towards it, so that a server that becomes slower for good eventually gets a new baseline
+     */
+    private static final double BASELINE_DRIFT = 0.01;
+    /**
+     * The minimum number of milliseconds between 2 decreases of the limit
+     */
+    private static final long DECREASE_INTERVAL = 1000;
+    /**
+     * The number of milliseconds no connection is let through for after the first refusal in a row
+     */
+    private static final long INITIAL_BACKOFF = 500;
+    /**
+     * The maximum number of milliseconds no connection is let through for after a refusal
+     */
+    private static final long MAX_BACKOFF = 16000;
+    /**
+     * The lock guarding the state of this controller
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * The condition signalled whenever a connection may be able to proceed, i.e. the limit, number in use or queue changes
+     */
+    private final Condition changed = lock.newCondition();
+    /**
+     * The queue of tickets of the connections waiting to proceed, in the order they started waiting
+     */
+    private final ArrayDeque<Object> waiting = new ArrayDeque<>();
+    /**
+     * The maximum the limit can grow to
+     */
+    private final int maxLimit;
+    /**
+     * The current limit. This is fractional so that it can be increased by a fraction on each success
+     */
+    private double limit;
+    /**
+     * The number of connections currently allowed through
+     */
+    private int inUse;
+    /**
+     * The smoothed login latency in milliseconds, -1 if no latency recorded yet
+     */
+    private double smoothedLatency = -1;
+    /**
+     * The lowest smoothed login latency seen in milliseconds, -1 if no latency recorded yet
+     */
+    private double baselineLatency = -1;
+    /**
+     * The time in milliseconds the limit was last decreased
+     */
+    private long lastDecrease;
+    /**
+     * The number of refusals since the last successful login
+     */
+    private int refusals;
+    /**
+     * The time in milliseconds until which no connection is let through because of a refusal
+     */
+    private long backoffUntil;
+
+    /**
+     * Constructs a controller with the provided limits
+     * @param initialLimit the limit to start with
+     * @param maxLimit the maximum the limit can grow to
+     * @throws IllegalArgumentException if either limit is less than 1 or initialLimit is greater than maxLimit
+     */
+    public ConnectionConcurrencyController(int initialLimit, int maxLimit) {
+        if (initialLimit < 1 || maxLimit < 1 || initialLimit > maxLimit)
+            throw new IllegalArgumentException("The limits of a ConnectionConcurrencyController must be at least 1 and the initial limit cannot be greater than the maximum limit");
+
+        this.limit = initialLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Retrieves the controller for the provided server, creating it if it does not exist yet. Servers with the same host, port and user share
+     * the same controller, as it is per user connection limits that are being worked around
+     * @param server the server to get the controller for
+     * @return the controller for the server
+     */
+    public static ConnectionConcurrencyController forServer(Server server) {
+        String key = server.getUser() + "@" + server.getServer() + ":" + server.getPort();
+
+        return controllers.computeIfAbsent(key, k -> {
+            int maxLimit = Properties.CONNECTION_CONCURRENCY_LIMIT.getValue();
+            return new ConnectionConcurrencyController(Math.min(INITIAL_LIMIT, maxLimit), maxLimit);
+        });
+    }
+
+    /**
+     * Returns true if the reply from the server indicates that it refused the connection because there are too many connections
+     * @param replyCode the reply code from the server
+     * @param replyString the reply string from the server, may be null
+     * @return true if it is a refusal because of too many connections
+     */
+    public static boolean isRefusal(int replyCode, String replyString) {
+        if (replyCode == FTPReply.SERVICE_NOT_AVAILABLE) {
+            return true;
+        } else if (replyCode == FTPReply.NOT_LOGGED_IN && replyString != null) {
+            String reply = replyString.toLowerCase();
+            return reply.contains("too many") || reply.contains("connections") || reply.contains("maximum");
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the number of connections currently allowed at the same time
+     * @return the whole number limit
+     */
+    private int getPermits() {
+        return Math.max(1, (int)limit);
+    }
+
+    /**
+     * Waits until this connection can proceed, i.e. it is at the front of the queue and the number of connections in use is below the limit.
+     * If this returns true, release must be called once the connection is closed
+     * @param timeout the maximum time to wait in milliseconds
+     * @return true if the connection can proceed, false if the timeout elapsed first
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean acquire(long timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            Object ticket = new Object();
+            waiting.add(ticket);
+
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+                while (waiting.peek() != ticket || inUse >= getPermits() || getBackoffRemaining() > 0) {
+                    if (remaining <= 0)
+                        return false;
+
+                    long backoff = TimeUnit.MILLISECONDS.toNanos(getBackoffRemaining());
+                    long wait = backoff > 0 ? Math.min(remaining, backoff):remaining; // nothing signals the end of a backoff, so wake up for it
+                    remaining -= wait - changed.awaitNanos(wait);
+                }
+
+                inUse++;
+                return true;
+            } finally {
+                waiting.remove(ticket);
+                changed.signalAll(); // the next in the queue may now be able to proceed
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lets this connection proceed only if it can do so straight away, i.e. no connections are waiting, the number in use is below the limit and
+     * the controller is not backing off after a refusal. If this returns true, release must be called once the connection is closed
+     * @return true if the connection can proceed, false if it would have to wait
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (waiting.isEmpty() && inUse < getPermits() && getBackoffRemaining() <= 0) {
+                inUse++;
+                return true;
+            }
+
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of milliseconds left of the backoff after a refusal. Must be called with the lock held
+     * @return the remaining backoff, 0 or less if not backing off
+     */
+    private long getBackoffRemaining() {
+        return backoffUntil - System.currentTimeMillis();
+    }
+
+    /**
+     * Releases a connection that was let through by acquire or tryAcquire
+     */
+    public void release() {
+        lock.lock();
+        try {
+            if (inUse > 0)
+                inUse--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Halves the limit if it has not been decreased in the last DECREASE_INTERVAL milliseconds. Must be called with the lock held
+     */
+    private void decrease() {
+        long now = System.currentTimeMillis();
+
+        if (now - lastDecrease >= DECREASE_INTERVAL) {
+            limit = Math.max(1, limit / 2);
+            lastDecrease = now;
+        }
+    }
+
+    /**
+     * Records that the server refused a connection because it has too many connections, decreasing the limit and backing off
+     * for a time that doubles with each refusal in a row
+     */
+    public void onRefused() {
+        lock.lock();
+        try {
+            decrease();
+            long backoff = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << Math.min(refusals, 16));
+            backoffUntil = System.currentTimeMillis() + backoff;
+            refusals++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a successful login along with its latency. If the smoothed latency has risen well above the baseline, the limit is decreased,
+     * else it is increased by 1/limit
+     * @param latency the time the login took in milliseconds
+     */
+    public void onSuccess(long latency) {
+        lock.lock();
+        try {
+            refusals = 0;
+
+            if (smoothedLatency < 0) {
+                smoothedLatency = baselineLatency = latency;
+            } else {
+                smoothedLatency += (latency - smoothedLatency) * LATENCY_SMOOTHING;
+                baselineLatency = Math.min(smoothedLatency, baselineLatency + (smoothedLatency - baselineLatency) * BASELINE_DRIFT);
+            }
+
+            if (smoothedLatency > Math.max(baselineLatency * LATENCY_FACTOR, baselineLatency + LATENCY_FLOOR))
+                decrease();
+            else
+                limit = Math.min(maxLimit, limit + 1 / limit);
+
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of connections currently allowed at the same time
+     * @return the current limit
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return getPermits();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of milliseconds left before connections are let through again after a refusal
+     * @return the remaining backoff, 0 if not backing off
+     */
+    public long getBackoff() {
+        lock.lock();
+        try {
+            return Math.max(0, getBackoffRemaining());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of connections currently let through
+     * @return number of connections in use
+     */
+    public int getInUse() {
+        lock.lock();
+        try {
+            return inUse;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
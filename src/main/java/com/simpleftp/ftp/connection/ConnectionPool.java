@@ -0,0 +1,248 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.connection;
+
+import com.simpleftp.ftp.exceptions.FTPConnectionFailedException;
+import com.simpleftp.ftp.exceptions.FTPException;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class represents a pool of temporary connections to the same server, for background tasks that carry out many small commands from several threads,
+ * e.g. listing every directory of a tree. A connection is connected and logged in once, in binary mode, and reused by each thread that acquires it,
+ * rather than connecting and logging in for every command.
+ *
+ * Connections are opened when they are needed, up to the size of the pool. As they are temporary connections, the number actually opened is also limited by
+ * the server's ConnectionConcurrencyController. Only the first connection waits for the controller to let it through; once the controller refuses another one,
+ * the pool is capped at the connections it already has and threads share them, rather than waiting for a place that may not come.
+ *
+ * This class is thread safe
+ */
+@Log4j2
+public final class ConnectionPool implements AutoCloseable {
+    /**
+     * The connection the pooled connections are based on
+     */
+    private final FTPConnection connectionBasis;
+    /**
+     * The maximum number of connections in the pool, lowered when the server's ConnectionConcurrencyController refuses another connection
+     */
+    private int maxSize;
+    /**
+     * The connections not in use
+     */
+    private final ArrayDeque<FTPConnection> idle = new ArrayDeque<>();
+    /**
+     * The connections in use
+     */
+    private final Set<FTPConnection> acquired = Collections.newSetFromMap(new IdentityHashMap<>());
+    /**
+     * The number of connections open or being opened
+     */
+    private int size;
+    /**
+     * True once the pool is closed
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a connection pool
+     * @param connectionBasis the connection to base the pooled connections on
+     * @param maxSize the maximum number of connections in the pool
+     * @throws IllegalArgumentException if maxSize is less than 1
+     */
+    public ConnectionPool(FTPConnection connectionBasis, int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("A ConnectionPool must have at least 1 connection");
+
+        this.connectionBasis = connectionBasis;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Acquires a connection, waiting for one to be released if the pool is full. The connection must be passed to release once the caller is finished with it
+     * @return the connected and logged in connection
+     * @throws FTPException if a new connection fails to connect or login
+     * @throws InterruptedException if interrupted while waiting for a connection
+     * @throws IllegalStateException if the pool is closed
+     */
+    public FTPConnection acquire() throws FTPException, InterruptedException {
+        while (true) {
+            boolean first;
+
+            synchronized (this) {
+                while (true) {
+                    if (closed)
+                        throw new IllegalStateException("The ConnectionPool is closed");
+
+                    FTPConnection connection = idle.poll();
+                    if (connection != null) {
+                        acquired.add(connection);
+                        return connection;
+                    } else if (size < maxSize) {
+                        first = size == 0;
+                        size++; // reserve the place while the connection is opened outside the lock
+                        break;
+                    }
+
+                    wait();
+                }
+            }
+
+            FTPConnection connection = open(first);
+            if (connection == null) {
+                refused();
+                continue;
+            }
+
+            synchronized (this) {
+                if (closed) {
+                    size--;
+                    disconnect(connection);
+                    throw new IllegalStateException("The ConnectionPool is closed");
+                }
+
+                acquired.add(connection);
+            }
+
+            return connection;
+        }
+    }
+
+    /**
+     * Opens a new connection for the pool. The first connection waits for the server's ConnectionConcurrencyController, any other is only opened if the
+     * controller lets it through straight away
+     * @param first true if the pool has no other connection to share
+     * @return the connected and logged in connection, null if the controller refused it
+     * @throws FTPException if the connection fails to connect or login
+     */
+    private FTPConnection open(boolean first) throws FTPException {
+        FTPConnection connection = FTPConnection.createTemporaryConnection(connectionBasis);
+        try {
+            if (first) {
+                connection.connect();
+            } else if (!connection.connectIfPermitted()) {
+                return null;
+            }
+
+            if (!connection.login())
+                throw new FTPConnectionFailedException("Failed to login a pooled connection to the server", connection.getReplyString(), connection.getServer());
+
+            connection.setTextTransferMode(false);
+        } catch (FTPException ex) {
+            disconnect(connection);
+            removed();
+            throw ex;
+        }
+
+        return connection;
+    }
+
+    /**
+     * Gives back the place reserved for a connection the server's ConnectionConcurrencyController refused, capping the pool at the connections it has
+     */
+    private synchronized void refused() {
+        size--;
+        maxSize = Math.max(1, size);
+        log.debug("Capped the ConnectionPool at {} connection(s) as the server has no more connections free", maxSize);
+        notifyAll();
+    }
+
+    /**
+     * Releases a connection acquired from this pool so other threads can use it. If the connection was lost, it is discarded
+     * @param connection the connection to release
+     */
+    public void release(FTPConnection connection) {
+        boolean discard;
+
+        synchronized (this) {
+            if (!acquired.remove(connection))
+                return;
+
+            discard = closed || !connection.isConnected() || !connection.isLoggedIn();
+
+            if (!discard) {
+                idle.push(connection);
+                notifyAll();
+            }
+        }
+
+        if (discard) {
+            disconnect(connection);
+            removed();
+        }
+    }
+
+    /**
+     * Records that a connection has left the pool, letting a waiting thread open a new one
+     */
+    private synchronized void removed() {
+        size--;
+        notifyAll();
+    }
+
+    /**
+     * Aborts any transfers in progress on the connections in use, e.g. when the task using the pool is cancelled. The threads using them fail straight away
+     */
+    public void abortTransfers() {
+        List<FTPConnection> connections;
+
+        synchronized (this) {
+            connections = new ArrayList<>(acquired);
+        }
+
+        connections.forEach(FTPConnection::abortTransfer);
+    }
+
+    /**
+     * Disconnects the connection ignoring any errors
+     * @param connection the connection to disconnect
+     */
+    private static void disconnect(FTPConnection connection) {
+        try {
+            if (connection.isConnected())
+                connection.disconnect();
+        } catch (FTPException ex) {
+            log.warn("Failed to disconnect a pooled connection: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Closes the pool, disconnecting the idle connections. Connections still in use are disconnected when they are released
+     */
+    @Override
+    public void close() {
+        List<FTPConnection> connections;
+
+        synchronized (this) {
+            closed = true;
+            connections = new ArrayList<>(idle);
+            size -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+
+        connections.forEach(ConnectionPool::disconnect);
+    }
+}
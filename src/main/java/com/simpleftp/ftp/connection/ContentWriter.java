@@ -0,0 +1,34 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This interface represents a source of file contents that are written straight to the data connection of an upload, without being stored in a local file first
+ */
+@FunctionalInterface
+public interface ContentWriter {
+    /**
+     * Writes the contents to the stream. This may be called again if the upload stalls and is retried, so it must write the whole contents each time
+     * @param outputStream the stream to write to, which should not be closed
+     * @throws IOException if an error occurs writing
+     */
+    void write(OutputStream outputStream) throws IOException;
+}
@@ -21,13 +21,19 @@ import com.simpleftp.filesystem.FileUtils;
 import com.simpleftp.filesystem.LocalFile;
 import com.simpleftp.ftp.FTPSystem;
 import com.simpleftp.ftp.exceptions.*;
+import com.simpleftp.properties.Properties;
 import lombok.*;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.net.ftp.*;
+import org.apache.commons.net.io.CopyStreamEvent;
 import org.apache.commons.net.io.CopyStreamException;
+import org.apache.commons.net.io.CopyStreamListener;
 
 import java.io.*;
+import java.net.SocketTimeoutException;
 import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * This is the main class used for provided a client connection to a FTP server.
@@ -75,12 +81,48 @@ public class FTPConnection {
     protected boolean connected;
     @Getter
     protected boolean loggedIn;
+    /**
+     * The controller limiting the number of connections open to the server at the same time. Only temporary connections are controlled, so this is null for other connections
+     */
+    private ConnectionConcurrencyController concurrencyController;
+    /**
+     * True if this connection has been let through by the concurrency controller and has to release it when it is closed
+     */
+    private boolean permitHeld;
+    /**
+     * The number of times to retry connecting/logging in if the server refuses because it has too many connections
+     */
+    private static final int MAX_REFUSAL_RETRIES = 3;
+    /**
+     * True while a file is being uploaded or downloaded. This is read without holding the monitor by abortTransfer
+     */
+    private volatile boolean transferInProgress;
+    /**
+     * The maximum number of replies to read after an ABOR while bringing the control connection back in sync with the server.
+     * Replies left over from the aborted transfer (426/226) and any keep alive NOOPs sent during it can be waiting before the reply we are looking for
+     */
+    private static final int MAX_STALE_REPLIES = 8;
+    /**
+     * The listeners told when any connection changes a remote path
+     */
+    private static final CopyOnWriteArrayList<RemoteChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    /**
+     * True if files are transferred in binary mode. A stalled transfer can only carry on from where it stopped in binary mode, as in ASCII mode the number of bytes
+     * written locally doesn't match the number of bytes on the server
+     */
+    @Getter
+    private volatile boolean binaryTransfer = true;
+    /**
+     * The listener to tell when a transfer stalls and is retried, may be null
+     */
+    @Setter
+    private volatile TransferStallListener transferStallListener;
 
     /**
      * Constructs a default object
      */
     protected FTPConnection() {
-        ftpClient = new FTPClient();
+        ftpClient = new AbortableFTPClient();
         if (!FTPSystem.isSystemTesting()) // dont enable as if under test, hidden files causes issues
             ftpClient.setListHiddenFiles(true); // show hidden files and leave it up to UI to hide them or not
         ftpLookup = new FTPLookup(ftpClient);
@@ -112,7 +154,7 @@ public class FTPConnection {
      * @param server               the object storing the server parameters
      */
     protected FTPConnection(Server server) {
-        this.ftpClient = new FTPClient();
+        this.ftpClient = new AbortableFTPClient();
         if (!FTPSystem.isSystemTesting()) // dont enable as if under test, hidden files causes issues
             ftpClient.setListHiddenFiles(true); // show hidden files and leave it up to UI to hide them or not
         this.ftpLookup = new FTPLookup(ftpClient);
@@ -138,23 +180,34 @@ public class FTPConnection {
             String host = server.getServer();
             int port = server.getPort();
 
-            try {
-                logDebug("Connecting the FTPConnection to the server");
-                ftpClient.connect(host, port);
-
-                if (FTPReply.isPositiveCompletion(ftpClient.getReplyCode())) {
-                    log.info("FTPConnection successfully connected to the server");
-                    connected = true;
-                    ftpClient.setFileType(FTPClient.BINARY_FILE_TYPE);
-                    return true;
+            for (int attempt = 0; !connectionFailed; attempt++) {
+                acquirePermit();
+
+                try {
+                    logDebug("Connecting the FTPConnection to the server");
+                    ftpClient.connect(host, port);
+
+                    if (FTPReply.isPositiveCompletion(ftpClient.getReplyCode())) {
+                        log.info("FTPConnection successfully connected to the server");
+                        connected = true;
+                        ftpClient.setFileType(FTPClient.BINARY_FILE_TYPE);
+                        binaryTransfer = true;
+                        return true;
+                    }
+
+                    ftpClient.disconnect();
+                    releasePermit();
+                    connectionFailed = !retryRefusal(attempt);
+                } catch (IOException ex) {
+                    resetConnectionValues();
+
+                    if (!retryRefusal(attempt)) { // the server may have closed the connection because it has too many connections
+                        log.error("Failed to connect to FTP Server with hostname {}, port {} and user {}", host, port, server.getUser());
+                        throw new FTPConnectionFailedException("Failed to connect to FTP Server", ftpClient.getReplyString(), server);
+                    }
+
+                    disconnectQuietly();
                 }
-
-                connectionFailed = true;
-                ftpClient.disconnect();
-            } catch (IOException ex) {
-                log.error("Failed to connect to FTP Server with hostname {}, port {} and user {}", host, port, server.getUser());
-                resetConnectionValues();
-                throw new FTPConnectionFailedException("Failed to connect to FTP Server", ftpClient.getReplyString(), server);
             }
         }
 
@@ -167,12 +220,121 @@ public class FTPConnection {
         return false;
     }
 
+    /**
+     * Connects to the server like connect, but only if this connection's ConnectionConcurrencyController lets it through straight away. This is for callers
+     * that must not wait for the number of connections to the server to fall below its limit, e.g. because they may be able to reuse an idle connection instead.
+     * A connection that isn't controlled always connects
+     *
+     * @return true if connected, false if the limit has been reached and the connection was not attempted
+     * @throws FTPConnectionFailedException if an error occurs during connection
+     */
+    public synchronized boolean connectIfPermitted() throws FTPConnectionFailedException {
+        if (!connected && concurrencyController != null && !permitHeld) {
+            if (!concurrencyController.tryAcquire())
+                return false;
+
+            permitHeld = true;
+        }
+
+        try {
+            connect();
+        } catch (FTPConnectionFailedException ex) {
+            releasePermit();
+            throw ex;
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds a listener to be told whenever any connection changes a remote path, i.e. uploads to it, renames it or removes it
+     * @param listener the listener to add
+     */
+    public static void addRemoteChangeListener(RemoteChangeListener listener) {
+        changeListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Removes a listener added by addRemoteChangeListener
+     * @param listener the listener to remove
+     */
+    public static void removeRemoteChangeListener(RemoteChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Tells the change listeners that this connection has changed the remote path
+     * @param path the path changed
+     */
+    private void notifyChanged(String path) {
+        for (RemoteChangeListener listener : changeListeners)
+            listener.remotePathChanged(server, path);
+    }
+
+    /**
+     * If this connection is controlled by a ConnectionConcurrencyController, this waits until the controller allows it to connect
+     * @throws FTPConnectionFailedException if the wait times out or is interrupted
+     */
+    private void acquirePermit() throws FTPConnectionFailedException {
+        if (concurrencyController != null && !permitHeld) {
+            try {
+                if (!concurrencyController.acquire(server.getTimeout() * 1000L))
+                    throw new FTPConnectionFailedException("Timed out waiting for the number of connections to the server to fall below its limit", null, server);
+
+                permitHeld = true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new FTPConnectionFailedException("Interrupted while waiting for the number of connections to the server to fall below its limit", null, ex, server);
+            }
+        }
+    }
+
+    /**
+     * Releases this connection's place with the ConnectionConcurrencyController if it holds one
+     */
+    private void releasePermit() {
+        if (permitHeld) {
+            permitHeld = false;
+            concurrencyController.release();
+        }
+    }
+
+    /**
+     * Checks if the last reply from the server is a refusal because of too many connections. If so and this connection is controlled, the controller is told
+     * so it can lower the limit and the caller should retry, provided the retry limit has not been reached
+     * @param attempt the number of the attempt that was refused, starting at 0
+     * @return true if the caller should retry
+     */
+    private boolean retryRefusal(int attempt) {
+        if (concurrencyController != null && ConnectionConcurrencyController.isRefusal(ftpClient.getReplyCode(), ftpClient.getReplyString())) {
+            log.warn("FTP Server refused the connection as it has too many connections, reducing the number of connections allowed to it");
+            concurrencyController.onRefused();
+
+            return attempt < MAX_REFUSAL_RETRIES;
+        }
+
+        return false;
+    }
+
+    /**
+     * Disconnects the underlying client ignoring any errors, used when the connection is being thrown away
+     */
+    private void disconnectQuietly() {
+        try {
+            if (ftpClient.isConnected())
+                ftpClient.disconnect();
+        } catch (IOException ex) {
+            logDebug("Failed to disconnect the FTPClient: {}", ex.getMessage());
+        }
+    }
+
     /**
      * To be only used in the case of FTPConnectionClosedException
      */
     private void resetConnectionValues() {
         connected = false;
         loggedIn = false;
+        releasePermit();
     }
 
     /**
@@ -202,6 +364,8 @@ public class FTPConnection {
         } catch (IOException e) {
             log.error("An error occurred causing disconnect operation to fail");
             throw new FTPCommandFailedException("An error occurred while disconnecting from the server", ftpClient.getReplyString(), e);
+        } finally {
+            releasePermit();
         }
     }
 
@@ -224,11 +388,32 @@ public class FTPConnection {
 
         try {
             logDebug("Logging in to ftp server with user {}", user);
-            if (!loggedIn) {
-                loggedIn = ftpClient.login(user, server.getPassword());
+            for (int attempt = 0; !loggedIn; attempt++) {
+                long startTime = System.currentTimeMillis();
+                boolean refused;
+
+                try {
+                    loggedIn = ftpClient.login(user, server.getPassword());
+                    refused = !loggedIn && retryRefusal(attempt);
+                } catch (FTPConnectionClosedException cl) {
+                    if (!retryRefusal(attempt))
+                        throw cl;
+                    refused = true;
+                }
+
                 if (loggedIn) {
+                    if (concurrencyController != null)
+                        concurrencyController.onSuccess(System.currentTimeMillis() - startTime);
+
                     logDebug("User {} logged into the ftp Server", user);
                     return true;
+                } else if (refused) {
+                    logDebug("Reconnecting to retry login for user {}", user); // the server refused because of too many connections so reconnect once allowed
+                    disconnectQuietly();
+                    resetConnectionValues();
+                    connect();
+                } else {
+                    break;
                 }
             }
 
@@ -432,6 +617,21 @@ public class FTPConnection {
      * @throws FTPCommandFailedException    if an error occurs sending or receiving the command
      */
     public synchronized FTPFile[] listFiles(String path) throws FTPNotConnectedException, FTPConnectionFailedException, FTPCommandFailedException {
+        return listFiles(path, null);
+    }
+
+    /**
+     * Lists the files in the given path whose names match the glob pattern. The pattern is sent to the server as part of a LIST
+     * command, so only the matching files are transferred. Not all servers support patterns, so the caller should still check the names
+     *
+     * @param path the path to list
+     * @param pattern the glob pattern to match, null to list all files
+     * @return the array of retrieved files, empty if no files matched the pattern, null if path doesn't exist, the server refused the pattern or not logged in
+     * @throws FTPNotConnectedException     if isConnected() returns false
+     * @throws FTPConnectionFailedException if connection fails
+     * @throws FTPCommandFailedException    if an error occurs sending or receiving the command
+     */
+    public synchronized FTPFile[] listFiles(String path, String pattern) throws FTPNotConnectedException, FTPConnectionFailedException, FTPCommandFailedException {
         if (!connected) {
             log.error("FTPConnection not connected to the server, cannot list files for path {}", path);
             loggedIn = false;
@@ -440,7 +640,7 @@ public class FTPConnection {
 
         try {
             if (loggedIn) {
-                return ftpLookup.listFTPFiles(path);
+                return pattern == null ? ftpLookup.listFTPFiles(path):ftpLookup.listFTPFiles(path, pattern);
             }
 
             logDebug("User is not logged in, so cannot list files");
@@ -455,22 +655,79 @@ public class FTPConnection {
         }
     }
 
+    /**
+     * Lists the files in the given path, passing each file to the consumer as it is parsed rather than returning an array of every file.
+     * This should be used when the files are copied into another structure, e.g. a RemoteListing, so the files of a large directory aren't all kept at once
+     *
+     * @param path the path to list
+     * @param pattern the glob pattern to match, null to list all files. Not all servers support patterns, so the caller should still check the names
+     * @param consumer the consumer to pass each listed file to
+     * @return true if the server completed the listing, even if no files were listed, false if it refused the listing, e.g. the path doesn't exist, or not logged in
+     * @throws FTPNotConnectedException     if isConnected() returns false
+     * @throws FTPConnectionFailedException if connection fails
+     * @throws FTPCommandFailedException    if an error occurs sending or receiving the command
+     */
+    public synchronized boolean listFiles(String path, String pattern, Consumer<FTPFile> consumer) throws FTPNotConnectedException, FTPConnectionFailedException, FTPCommandFailedException {
+        if (!connected) {
+            log.error("FTPConnection not connected to the server, cannot list files for path {}", path);
+            loggedIn = false;
+            throw new FTPNotConnectedException("FTPConnection not connected to the server, cannot list files", FTPNotConnectedException.ActionType.DOWNLOAD);
+        }
+
+        try {
+            if (loggedIn) {
+                return ftpLookup.listFTPFiles(path, pattern, consumer);
+            }
+
+            logDebug("User is not logged in, so cannot list files");
+            return false;
+        } catch (FTPConnectionClosedException cl) {
+            log.error("FTPConnection unexpectedly closed the connection, cannot retrieve files");
+            resetConnectionValues();
+            throw new FTPConnectionFailedException("FTPConnection unexpectedly closed the connection, cannot retrieve files", ftpClient.getReplyString(), cl, server);
+        } catch (IOException ex) {
+            log.error("An error occurred when listing files");
+            throw new FTPCommandFailedException("An error occurred when listing files", ftpClient.getReplyString(), ex);
+        }
+    }
+
     /**
      * Writes the specified file locally to remote path
      *
      * @param file the local file
      * @param path the path to store the file on
+     * @param resume true to carry on from the end of a partial copy of the file already on the server
      * @return the FTPFile representing the uploaded file
      * @throws IOException if an error occurs
+     * @throws FTPTransferAbortedException if the upload was aborted
      */
-    private synchronized FTPFile writeLocalFileToRemote(File file, String path) throws IOException {
+    private synchronized FTPFile writeLocalFileToRemote(File file, String path, boolean resume) throws IOException, FTPTransferAbortedException {
         String name = file.getName();
         String remoteFileName = FileUtils.appendPath(path, name, false);
+        RestartOffset remoteSize = () -> {
+            FTPFile partial = ftpLookup.getFTPFile(remoteFileName);
+            return partial == null ? 0:Math.max(0, partial.getSize());
+        };
+        long initialOffset = resume && binaryTransfer ? Math.min(remoteSize.get(), file.length()):0;
 
-        boolean stored;
+        if (initialOffset > 0)
+            logDebug("Resuming the upload of {} from offset {}", file.getPath(), initialOffset);
 
-        FileInputStream fileInputStream = new FileInputStream(file);
-        stored = ftpClient.storeFile(remoteFileName, fileInputStream);
+        boolean stored;
+        try {
+            stored = runTransfer("upload of " + file.getPath() + " to " + path, remoteFileName, restartOffset -> {
+                try (FileInputStream fileInputStream = new FileInputStream(file)) {
+                    if (restartOffset > 0) {
+                        fileInputStream.getChannel().position(restartOffset);
+                        ftpClient.setRestartOffset(restartOffset);
+                    }
+
+                    return ftpClient.storeFile(remoteFileName, fileInputStream);
+                }
+            }, remoteSize, initialOffset);
+        } finally {
+            notifyChanged(remoteFileName); // even a failed upload may have overwritten part of the file
+        }
 
         if (stored) {
             logDebug("File {} was uploaded successfully to {}", name, path);
@@ -491,11 +748,34 @@ public class FTPConnection {
      * @throws FTPConnectionFailedException if an error occurred
      * @throws FTPError                     if an error occurs when uploading files
      * @throws FTPCommandFailedException    if the upload failed
+     * @throws FTPTransferAbortedException  if the upload was aborted by abortTransfer()
      */
     public synchronized FTPFile uploadFile(LocalFile file, String path) throws FTPNotConnectedException,
             FTPConnectionFailedException,
             FTPError,
             FTPCommandFailedException {
+        return uploadFile(file, path, false);
+    }
+
+    /**
+     * Saves the file specified to the path on the server, optionally resuming a previous upload of it that did not finish.
+     * When resuming in binary mode, the upload carries on from the size of the file already on the server, so a partial copy left behind by an interrupted
+     * upload is completed rather than transferred again. In ASCII mode, or if the file isn't on the server, the whole file is uploaded.
+     *
+     * @param file the standard Java IO file to add to the server
+     * @param path the path to store the file in (directory)
+     * @param resume true to resume a partial upload of the file, false to upload it from the start
+     * @return FTPFile representation of uploaded file, null if the file provided doesn't exist/is a directory, path doesn't exist or user not logged in
+     * @throws FTPNotConnectedException     if this is called when isConnected() returns false
+     * @throws FTPConnectionFailedException if an error occurred
+     * @throws FTPError                     if an error occurs when uploading files
+     * @throws FTPCommandFailedException    if the upload failed
+     * @throws FTPTransferAbortedException  if the upload was aborted by abortTransfer()
+     */
+    public synchronized FTPFile uploadFile(LocalFile file, String path, boolean resume) throws FTPNotConnectedException,
+            FTPConnectionFailedException,
+            FTPError,
+            FTPCommandFailedException {
         String name = file.getName();
 
         if (!connected) {
@@ -510,7 +790,7 @@ public class FTPConnection {
                 return null;
             }
 
-            return writeLocalFileToRemote(file, path);
+            return writeLocalFileToRemote(file, path, resume);
         } catch (FTPConnectionClosedException cl) {
             log.error("FTPConnection unexpectedly closed the connection when uploading file");
             resetConnectionValues();
@@ -527,6 +807,86 @@ public class FTPConnection {
         }
     }
 
+    /**
+     * Uploads contents written by the content writer to the remote path, streaming them straight to the data connection rather than from a local file.
+     * An existing file at the remote path is overwritten. If the transfer stalls, the contents are written again from the start
+     *
+     * @param remotePath the path of the file to store on the server
+     * @param contentWriter the writer of the contents to upload
+     * @return true if the contents were stored, false if the server refused to store them or the user is not logged in
+     * @throws FTPNotConnectedException     if called when isConnected() returns false
+     * @throws FTPConnectionFailedException if a connection error occurs
+     * @throws FTPError                     if an error occurs in transferring the contents
+     * @throws FTPCommandFailedException    if an error occurs executing the command
+     * @throws FTPTransferAbortedException  if the upload was aborted by abortTransfer()
+     */
+    public synchronized boolean uploadFile(String remotePath, ContentWriter contentWriter) throws FTPNotConnectedException,
+            FTPConnectionFailedException,
+            FTPError,
+            FTPCommandFailedException {
+        if (!connected) {
+            log.error("Cannot save file {} as FTPConnection is not connected", remotePath);
+            loggedIn = false;
+            throw new FTPNotConnectedException("FTPConnection is not connected to the sever, cannot add file to it", FTPNotConnectedException.ActionType.UPLOAD);
+        }
+
+        try {
+            if (!loggedIn) {
+                logDebug("User is not logged in, aborting upload to {}", remotePath);
+                return false;
+            }
+
+            boolean stored;
+            try {
+                stored = runTransfer("upload to " + remotePath, remotePath, restartOffset -> {
+                    OutputStream outputStream = ftpClient.storeFileStream(remotePath);
+
+                    if (outputStream == null)
+                        return false;
+
+                    CopyStreamListener listener = ftpClient.getCopyStreamListener(); // the watchdog, which needs to be told of progress as the stream is written directly
+                    long[] written = new long[1];
+
+                    try (OutputStream watchedStream = new FilterOutputStream(outputStream) {
+                        @Override
+                        public void write(int b) throws IOException {
+                            write(new byte[]{(byte)b}, 0, 1);
+                        }
+
+                        @Override
+                        public void write(byte[] b, int off, int len) throws IOException {
+                            out.write(b, off, len);
+                            written[0] += len;
+
+                            if (listener != null)
+                                listener.bytesTransferred(written[0], len, CopyStreamEvent.UNKNOWN_STREAM_SIZE);
+                        }
+                    }) {
+                        contentWriter.write(watchedStream);
+                    }
+
+                    return ftpClient.completePendingCommand();
+                }, () -> 0, 0);
+            } finally {
+                notifyChanged(remotePath); // even a failed upload may have overwritten part of the file
+            }
+
+            logDebug(stored ? "Contents were uploaded successfully to {}":"Contents were not uploaded successfully to {}", remotePath);
+
+            return stored;
+        } catch (FTPConnectionClosedException cl) {
+            log.error("FTPConnection unexpectedly closed the connection when uploading file");
+            resetConnectionValues();
+            throw new FTPConnectionFailedException("The FTPConnection unexpectedly closed while uploading file", ftpClient.getReplyString(), cl, server);
+        } catch (CopyStreamException cs) {
+            log.error("An error occurred transferring the file");
+            throw new FTPError("An error occurred in file transmission", ftpClient.getReplyString(), cs);
+        } catch (IOException ex) {
+            log.error("Cannot save file {} as an error occurred", remotePath);
+            throw new FTPCommandFailedException("An error occurred saving file to server", ftpClient.getReplyString(), ex);
+        }
+    }
+
     /**
      * Overloaded version of uploadFile(java.io.File, java.lang.String) but converts localPath to file and calls the other method
      *
@@ -537,6 +897,7 @@ public class FTPConnection {
      * @throws FTPConnectionFailedException if a connection error occurs
      * @throws FTPError                     if an error occurs in transferring the file
      * @throws FTPCommandFailedException    if an error occurs executing the command
+     * @throws FTPTransferAbortedException  if the upload was aborted by abortTransfer()
      */
     public synchronized FTPFile uploadFile(String localPath, String path) throws FTPNotConnectedException,
             FTPConnectionFailedException,
@@ -545,6 +906,203 @@ public class FTPConnection {
         return uploadFile(new LocalFile(localPath), path);
     }
 
+    /**
+     * Aborts the upload or download in progress on this connection, if any. The data connection is closed underneath the transfer so the thread carrying it out
+     * fails straight away, and that thread then sends ABOR and brings the control connection back in sync with the server before throwing a FTPTransferAbortedException.
+     * If the control connection could not be recovered, this connection is disconnected.
+     * <p>
+     * Unlike the other methods of this class, this does not wait for the monitor, since the thread transferring the file holds it until the transfer ends.
+     * It can therefore be called from any thread, including the JavaFX thread. If no transfer is in progress, this does nothing.
+     */
+    public void abortTransfer() {
+        if (transferInProgress && ftpClient instanceof AbortableFTPClient) {
+            logDebug("Aborting the transfer in progress");
+            ((AbortableFTPClient) ftpClient).abortDataConnection();
+        }
+    }
+
+    /**
+     * This interface represents a single attempt at a transfer
+     */
+    @FunctionalInterface
+    private interface TransferAttempt {
+        /**
+         * Carries out the transfer
+         * @param restartOffset the offset in bytes to carry on the transfer from, 0 to transfer the whole file
+         * @return true if the transfer succeeded
+         * @throws IOException if an error occurs
+         */
+        boolean transfer(long restartOffset) throws IOException;
+    }
+
+    /**
+     * This interface represents a way of finding out how much of a stalled transfer was completed
+     */
+    @FunctionalInterface
+    private interface RestartOffset {
+        /**
+         * Gets the offset a retry of the stalled transfer can carry on from
+         * @return the number of bytes already transferred
+         * @throws IOException if an error occurs
+         */
+        long get() throws IOException;
+    }
+
+    /**
+     * Carries out a transfer, watching it with the TransferWatchdog and retrying it if it stalls.
+     * <p>
+     * A stalled transfer has its data connection closed by the watchdog (or times out waiting for data), is aborted with ABOR and then retried after a backoff
+     * of TRANSFER_RETRY_BACKOFF milliseconds, doubling for each retry, up to TRANSFER_RETRY_LIMIT times. In binary mode, the retry carries on from where the stalled transfer stopped.
+     * The transfer can be aborted with abortTransfer at any point, including while waiting to retry.
+     * @param description the description of the transfer for messages, e.g. download of x to y
+     * @param path the path of the file being transferred, to tell the TransferStallListener
+     * @param attempt the transfer to carry out
+     * @param restartOffset the way of finding out where to carry on from after a stall
+     * @param initialOffset the offset to start the first attempt from, non-zero when resuming a partial transfer
+     * @return true if the transfer succeeded
+     * @throws IOException if an error other than a stall occurs
+     * @throws FTPTransferAbortedException if the transfer was aborted, or it stalled more than TRANSFER_RETRY_LIMIT times
+     */
+    private boolean runTransfer(String description, String path, TransferAttempt attempt, RestartOffset restartOffset, long initialOffset) throws IOException, FTPTransferAbortedException {
+        int retryLimit = Properties.TRANSFER_RETRY_LIMIT.getValue();
+        long offset = binaryTransfer ? initialOffset:0;
+
+        if (ftpClient instanceof AbortableFTPClient)
+            ((AbortableFTPClient) ftpClient).resetAbort();
+        transferInProgress = true;
+
+        try {
+            for (int retry = 1; ; retry++) {
+                TransferWatchdog.Transfer watched = TransferWatchdog.watch(this::transferStalled);
+
+                try {
+                    ftpClient.setCopyStreamListener(watched);
+                    return attempt.transfer(offset);
+                } catch (IOException ex) {
+                    if (isTransferAborted())
+                        throw transferAborted("The " + description + " was aborted");
+                    else if (!watched.isStalled() && !isTimeout(ex))
+                        throw ex;
+                } finally {
+                    watched.close();
+                    ftpClient.setCopyStreamListener(null);
+                    ftpClient.setRestartOffset(0);
+                }
+
+                log.warn("The {} stalled", description);
+                if (retry > retryLimit)
+                    throw transferAborted("The " + description + " stalled and failed after " + retryLimit + " retries");
+
+                if (!recoverFromAbort())
+                    throw transferAborted("The " + description + " stalled and the connection could not be recovered");
+
+                offset = binaryTransfer ? restartOffset.get():0;
+                TransferStallListener listener = transferStallListener;
+                if (listener != null)
+                    listener.transferStalled(path, retry, offset);
+
+                backOff(retry, description);
+                if (isTransferAborted())
+                    throw new FTPTransferAbortedException("The " + description + " was aborted", ftpClient.getReplyString(), true);
+
+                logDebug("Retrying the {} from offset {}, retry {} of {}", description, offset, retry, retryLimit);
+            }
+        } finally {
+            transferInProgress = false;
+        }
+    }
+
+    /**
+     * Called by the TransferWatchdog when the transfer in progress has stalled. The data connection is closed so that the blocked transfer returns
+     */
+    private void transferStalled() {
+        if (ftpClient instanceof AbortableFTPClient)
+            ((AbortableFTPClient) ftpClient).closeDataConnection();
+    }
+
+    /**
+     * Determines if the exception was caused by the data connection timing out waiting for data
+     * @param ex the exception thrown by the transfer
+     * @return true if it was a timeout
+     */
+    private boolean isTimeout(IOException ex) {
+        if (ex instanceof CopyStreamException)
+            return ((CopyStreamException) ex).getIOException() instanceof SocketTimeoutException;
+        else
+            return ex instanceof SocketTimeoutException;
+    }
+
+    /**
+     * Waits before retrying a stalled transfer
+     * @param retry the number of the retry, starting at 1
+     * @param description the description of the transfer
+     * @throws FTPTransferAbortedException if the thread is interrupted while waiting
+     */
+    private void backOff(int retry, String description) throws FTPTransferAbortedException {
+        long delay = Math.min(Properties.TRANSFER_RETRY_BACKOFF.getValue() * (1L << Math.min(retry - 1, 16)), 5 * 60 * 1000);
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new FTPTransferAbortedException("The " + description + " was interrupted while waiting to be retried", ftpClient.getReplyString(), true);
+        }
+    }
+
+    /**
+     * Determines if the current transfer was aborted by abortTransfer
+     * @return true if aborted
+     */
+    private boolean isTransferAborted() {
+        return ftpClient instanceof AbortableFTPClient && ((AbortableFTPClient) ftpClient).isAborted();
+    }
+
+    /**
+     * Recovers the control connection after a transfer was aborted and creates the exception to throw. If the connection could not be recovered, it is disconnected
+     * @param message the message for the exception
+     * @return the exception to throw
+     */
+    private FTPTransferAbortedException transferAborted(String message) {
+        boolean recovered = recoverFromAbort();
+        String replyString = ftpClient.getReplyString();
+
+        if (!recovered) {
+            log.warn("Could not recover the control connection after aborting a transfer, disconnecting");
+            disconnectQuietly();
+            resetConnectionValues();
+        }
+
+        return new FTPTransferAbortedException(message, replyString, recovered);
+    }
+
+    /**
+     * Sends ABOR to stop the server sending/receiving the aborted file and then reads replies until the control connection is in sync again.
+     * Depending on the server, the ABOR may be answered with a 426 for the transfer followed by a 226 for the ABOR, just a 226, or a 225, and keep alive NOOP replies may be waiting too.
+     * So a PWD is sent after it and replies are read until its 257 reply is found, meaning everything sent before it has been answered
+     * @return true if the control connection is in sync and can be used, false if not
+     */
+    private boolean recoverFromAbort() {
+        try {
+            int soTimeout = ftpClient.getSoTimeout();
+            ftpClient.setSoTimeout(server.getTimeout() * 1000); // don't wait forever on a reply the server will never send
+
+            try {
+                ftpClient.abort();
+                int reply = ftpClient.pwd();
+
+                for (int i = 0; i < MAX_STALE_REPLIES && reply != FTPReply.PATHNAME_CREATED; i++)
+                    reply = ftpClient.getReply();
+
+                return reply == FTPReply.PATHNAME_CREATED;
+            } finally {
+                ftpClient.setSoTimeout(soTimeout);
+            }
+        } catch (IOException ex) {
+            logDebug("An error occurred recovering the control connection after an abort: {}", ex.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Gets the basename of the file, i.e. name without path
      *
@@ -590,14 +1148,33 @@ public class FTPConnection {
      *
      * @param remotePath the path of the remote file to write locally
      * @param localPath  the path where to store the file locally
+     * @param resume true to carry on from the end of a partial copy of the file already stored locally
      * @return the file representing the written local file
      * @throws IOException if any FTP or IO exception occurs
+     * @throws FTPTransferAbortedException if the download was aborted
      */
-    private synchronized LocalFile writeRemoteFileToLocal(String remotePath, String localPath) throws IOException {
-        FileOutputStream fileOutputStream = new FileOutputStream(new File(localPath));
-
-        boolean retrieved = ftpClient.retrieveFile(remotePath, fileOutputStream);
+    private synchronized LocalFile writeRemoteFileToLocal(String remotePath, String localPath, boolean resume) throws IOException, FTPTransferAbortedException {
+        boolean retrieved;
         LocalFile retrievedFile = new LocalFile(localPath);
+        long initialOffset = resume && binaryTransfer && retrievedFile.isFile() ? retrievedFile.length():0;
+
+        if (initialOffset > 0)
+            logDebug("Resuming the download of {} from offset {}", remotePath, initialOffset);
+
+        try {
+            retrieved = runTransfer("download of " + remotePath + " to " + localPath, remotePath, restartOffset -> {
+                try (FileOutputStream fileOutputStream = new FileOutputStream(retrievedFile, restartOffset > 0)) {
+                    if (restartOffset > 0)
+                        ftpClient.setRestartOffset(restartOffset);
+
+                    return ftpClient.retrieveFile(remotePath, fileOutputStream);
+                }
+            }, retrievedFile::length, initialOffset);
+        } catch (FTPTransferAbortedException ex) {
+            if (retrievedFile.exists() && !retrievedFile.delete())
+                logDebug("Failed to delete the partially downloaded file {}", localPath);
+            throw ex;
+        }
 
         if (retrieved) {
             logDebug("Retrieved file successfully from server");
@@ -623,11 +1200,34 @@ public class FTPConnection {
      * @throws FTPConnectionFailedException if a connection error occurs
      * @throws FTPError                     if an error occurs determining if remotePath exists
      * @throws FTPCommandFailedException    if an error occurs sending the command
+     * @throws FTPTransferAbortedException  if the download was aborted by abortTransfer()
      */
     public synchronized LocalFile downloadFile(String remotePath, String localPath) throws FTPNotConnectedException,
             FTPConnectionFailedException,
             FTPError,
             FTPCommandFailedException {
+        return downloadFile(remotePath, localPath, false);
+    }
+
+    /**
+     * Downloads the file specified by remotePath into the directory localPath, optionally resuming a previous download of it that did not finish.
+     * When resuming in binary mode, the download carries on from the size of the file already stored locally, so a partial copy left behind by an interrupted
+     * download is completed rather than transferred again. In ASCII mode, or if there is no local copy, the whole file is downloaded.
+     *
+     * @param remotePath the path to the remote file
+     * @param localPath  the path to where to save the remote file to locally (without filename, i.e. directory)
+     * @param resume true to resume a partial download of the file, false to download it from the start
+     * @return a File object representing the local file that was downloaded
+     * @throws FTPNotConnectedException     if isConnected() returns false when called
+     * @throws FTPConnectionFailedException if a connection error occurs
+     * @throws FTPError                     if an error occurs determining if remotePath exists
+     * @throws FTPCommandFailedException    if an error occurs sending the command
+     * @throws FTPTransferAbortedException  if the download was aborted by abortTransfer()
+     */
+    public synchronized LocalFile downloadFile(String remotePath, String localPath, boolean resume) throws FTPNotConnectedException,
+            FTPConnectionFailedException,
+            FTPError,
+            FTPCommandFailedException {
         if (!connected) {
             log.error("FTPConnection is not connected to the server, cannot get file from remote path {}", remotePath);
             loggedIn = false;
@@ -650,7 +1250,7 @@ public class FTPConnection {
 
             localPath = addFileNameToLocalPath(localPath, remoteFile);
 
-            return writeRemoteFileToLocal(remotePath, localPath);
+            return writeRemoteFileToLocal(remotePath, localPath, resume);
         } catch (FTPConnectionClosedException cl) {
             log.error("FTPConnection unexpectedly closed the connection while downloading file");
             resetConnectionValues();
@@ -667,6 +1267,204 @@ public class FTPConnection {
         }
     }
 
+    /**
+     * Downloads the file specified by remotePath, writing its contents to the output stream as they are received rather than storing them in a local file.
+     * The stream is not closed by this method. If the transfer stalls, it is retried from the number of bytes already written to the stream, which is only possible
+     * in binary mode, so in ASCII mode a stalled transfer fails rather than writing the start of the file to the stream twice
+     *
+     * @param remotePath the path to the remote file
+     * @param outputStream the stream to write the contents of the file to
+     * @return true if the file was downloaded, false if the remote path does not exist, is a directory or the user is not logged in
+     * @throws FTPNotConnectedException     if isConnected() returns false when called
+     * @throws FTPConnectionFailedException if a connection error occurs
+     * @throws FTPError                     if an error occurs transferring the file or writing to the stream
+     * @throws FTPCommandFailedException    if an error occurs sending the command
+     * @throws FTPTransferAbortedException  if the download was aborted by abortTransfer()
+     */
+    public synchronized boolean downloadFile(String remotePath, OutputStream outputStream) throws FTPNotConnectedException,
+            FTPConnectionFailedException,
+            FTPError,
+            FTPCommandFailedException {
+        if (!connected) {
+            log.error("FTPConnection is not connected to the server, cannot get file from remote path {}", remotePath);
+            loggedIn = false;
+            throw new FTPNotConnectedException("FTPConnection is not connected to the server, cannot download file", FTPNotConnectedException.ActionType.DOWNLOAD);
+        }
+
+        try {
+            if (!loggedIn || ftpLookup.remotePathExists(remotePath, true) || ftpLookup.getFTPFile(remotePath) == null) {
+                logDebug("Either remote path {} does not exist or is a directory or the user is not logged in", remotePath);
+                return false;
+            }
+
+            return retrieveToStream(remotePath, outputStream, 0);
+        } catch (FTPConnectionClosedException cl) {
+            log.error("FTPConnection unexpectedly closed the connection while downloading file");
+            resetConnectionValues();
+            throw new FTPConnectionFailedException("The FTPConnection unexpectedly closed while downloading the file", ftpClient.getReplyString(), cl, server);
+        } catch (CopyStreamException cs) {
+            log.error("An error occurred in transferring the file {} from server", remotePath);
+            throw new FTPError("An error occurred transferring the file from server to local machine", ftpClient.getReplyString(), cs);
+        } catch (IOException ex1) {
+            log.error("An error occurred when downloading file {} from server", remotePath);
+            throw new FTPCommandFailedException("An error occurred when downloading remote file", ftpClient.getReplyString(), ex1);
+        }
+    }
+
+    /**
+     * Downloads the file specified by remotePath from the given offset, writing the bytes after the offset to the output stream, e.g. to fetch only what has
+     * been appended to a file since it was last read. The file is not looked up first, so only the REST and RETR commands are sent.
+     * The stream is not closed by this method. This requires binary mode, as offsets are not supported in ASCII mode
+     *
+     * @param remotePath the path to the remote file
+     * @param outputStream the stream to write the contents of the file to
+     * @param offset the offset in bytes to download from
+     * @return true if the file was downloaded, false if the server refused to send it or the user is not logged in
+     * @throws FTPNotConnectedException     if isConnected() returns false when called
+     * @throws FTPConnectionFailedException if a connection error occurs
+     * @throws FTPError                     if an error occurs transferring the file or writing to the stream, or the connection is in ASCII mode
+     * @throws FTPCommandFailedException    if an error occurs sending the command
+     * @throws FTPTransferAbortedException  if the download was aborted by abortTransfer()
+     */
+    public synchronized boolean downloadFile(String remotePath, OutputStream outputStream, long offset) throws FTPNotConnectedException,
+            FTPConnectionFailedException,
+            FTPError,
+            FTPCommandFailedException {
+        if (!connected) {
+            log.error("FTPConnection is not connected to the server, cannot get file from remote path {}", remotePath);
+            loggedIn = false;
+            throw new FTPNotConnectedException("FTPConnection is not connected to the server, cannot download file", FTPNotConnectedException.ActionType.DOWNLOAD);
+        }
+
+        if (!binaryTransfer && offset > 0)
+            throw new FTPError("The file " + remotePath + " can only be downloaded from an offset in binary mode", null);
+
+        try {
+            if (!loggedIn) {
+                logDebug("User is not logged in, cannot download {}", remotePath);
+                return false;
+            }
+
+            return retrieveToStream(remotePath, outputStream, offset);
+        } catch (FTPConnectionClosedException cl) {
+            log.error("FTPConnection unexpectedly closed the connection while downloading file");
+            resetConnectionValues();
+            throw new FTPConnectionFailedException("The FTPConnection unexpectedly closed while downloading the file", ftpClient.getReplyString(), cl, server);
+        } catch (CopyStreamException cs) {
+            log.error("An error occurred in transferring the file {} from server", remotePath);
+            throw new FTPError("An error occurred transferring the file from server to local machine", ftpClient.getReplyString(), cs);
+        } catch (IOException ex1) {
+            log.error("An error occurred when downloading file {} from server", remotePath);
+            throw new FTPCommandFailedException("An error occurred when downloading remote file", ftpClient.getReplyString(), ex1);
+        }
+    }
+
+    /**
+     * Retrieves the file to the output stream from the offset, retrying from the number of bytes written if the transfer stalls
+     * @param remotePath the path to the remote file
+     * @param outputStream the stream to write to
+     * @param offset the offset to retrieve from, 0 for the whole file
+     * @return true if retrieved
+     * @throws IOException if an error occurs
+     * @throws FTPTransferAbortedException if the transfer was aborted
+     */
+    private boolean retrieveToStream(String remotePath, OutputStream outputStream, long offset) throws IOException, FTPTransferAbortedException {
+        long[] written = new long[1];
+        OutputStream countingStream = new FilterOutputStream(outputStream) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                written[0] += len;
+            }
+
+            @Override
+            public void close() {
+                // the caller owns the stream
+            }
+        };
+
+        boolean retrieved = runTransfer("download of " + remotePath, remotePath, restartOffset -> {
+            if (restartOffset > 0)
+                ftpClient.setRestartOffset(restartOffset);
+            else if (written[0] > 0)
+                throw new IOException("The download of " + remotePath + " can't be restarted as the start of the file has already been written");
+
+            return ftpClient.retrieveFile(remotePath, countingStream);
+        }, () -> offset + written[0], offset);
+
+        logDebug(retrieved ? "Retrieved file successfully from server":"Did not retrieve the file successfully from server");
+
+        return retrieved;
+    }
+
+    /**
+     * Reads the first bytes of the file specified by remotePath, e.g. to detect its type, aborting the download once they have been read
+     * so the rest of the file isn't transferred. The download is aborted the same way as abortTransfer does, closing the data connection and then sending ABOR
+     * and reading replies until the control connection is back in sync. If it can't be brought back in sync, this connection is disconnected
+     *
+     * @param remotePath the path to the remote file
+     * @param length the maximum number of bytes to read
+     * @return the first bytes of the file, fewer than length if the file is shorter, null if the file couldn't be retrieved or the user is not logged in
+     * @throws FTPNotConnectedException     if isConnected() returns false when called
+     * @throws FTPConnectionFailedException if a connection error occurs
+     * @throws FTPCommandFailedException    if an error occurs reading the file
+     */
+    public synchronized byte[] readFileHead(String remotePath, int length) throws FTPNotConnectedException, FTPConnectionFailedException, FTPCommandFailedException {
+        if (!connected) {
+            log.error("FTPConnection is not connected to the server, cannot read file from remote path {}", remotePath);
+            loggedIn = false;
+            throw new FTPNotConnectedException("FTPConnection is not connected to the server, cannot read file", FTPNotConnectedException.ActionType.DOWNLOAD);
+        }
+
+        try {
+            if (!loggedIn) {
+                logDebug("User is not logged in, cannot read remote file {}", remotePath);
+                return null;
+            }
+
+            InputStream inputStream = ftpClient.retrieveFileStream(remotePath);
+
+            if (inputStream == null) {
+                logDebug("Could not retrieve remote file {}", remotePath);
+                return null;
+            }
+
+            byte[] head;
+            boolean complete;
+            try {
+                head = inputStream.readNBytes(length);
+                complete = head.length < length || inputStream.read() == -1;
+            } finally {
+                inputStream.close(); // closes the data connection, stopping the rest of the download
+            }
+
+            if (complete) {
+                ftpClient.completePendingCommand();
+            } else if (!recoverFromAbort()) {
+                String replyString = ftpClient.getReplyString();
+                log.warn("Could not recover the control connection after aborting the read of {}, disconnecting", remotePath);
+                disconnectQuietly();
+                resetConnectionValues();
+                throw new FTPConnectionFailedException("The connection could not be recovered after reading the start of a remote file", replyString, server);
+            }
+
+            return head;
+        } catch (FTPConnectionClosedException cl) {
+            log.error("FTPConnection unexpectedly closed the connection while reading file");
+            resetConnectionValues();
+            throw new FTPConnectionFailedException("The FTPConnection unexpectedly closed while reading the file", ftpClient.getReplyString(), cl, server);
+        } catch (IOException ex) {
+            log.error("An error occurred when reading file {} from server", remotePath);
+            throw new FTPCommandFailedException("An error occurred when reading remote file", ftpClient.getReplyString(), ex);
+        }
+    }
+
     /**
      * Attempts to make a directory specified by the path provided. Expected in the format path/to/[directory-name] or as an abstract path
      * If the path already exists as either a directory or a file, this returns false.
@@ -728,7 +1526,14 @@ public class FTPConnection {
         try {
             if (loggedIn) {
                 logDebug("Renaming file from {} to {}", from, to);
-                return ftpClient.rename(from, to);
+                boolean renamed = ftpClient.rename(from, to);
+
+                if (renamed) {
+                    notifyChanged(from);
+                    notifyChanged(to);
+                }
+
+                return renamed;
             }
 
             logDebug("Cannot rename file from {} to {} as user is not logged into the server", from, to);
@@ -764,7 +1569,12 @@ public class FTPConnection {
         try {
             if (loggedIn) {
                 logDebug("Removing file {} from the server", filePath);
-                return ftpClient.deleteFile(filePath);
+                boolean removed = ftpClient.deleteFile(filePath);
+
+                if (removed)
+                    notifyChanged(filePath);
+
+                return removed;
             }
 
             logDebug("Not removing file {} from server as user is not logged in", filePath);
@@ -798,7 +1608,12 @@ public class FTPConnection {
         try {
             if (loggedIn) {
                 logDebug("Attempting to remove directory {}", path);
-                return ftpClient.removeDirectory(path);
+                boolean removed = ftpClient.removeDirectory(path);
+
+                if (removed)
+                    notifyChanged(path);
+
+                return removed;
             }
 
             logDebug("User is not logged in, cannot remove directory {}", path);
@@ -1060,7 +1875,7 @@ public class FTPConnection {
             ftpClient.setConnectTimeout(mSeconds);
             ftpClient.setControlKeepAliveTimeout(seconds);
             ftpClient.setControlKeepAliveReplyTimeout(mSeconds);
-            ftpClient.setDataTimeout(0);
+            ftpClient.setDataTimeout(Properties.TRANSFER_STALL_WINDOW.getValue() * 1000); // a transfer waiting this long for data has stalled, so don't let it block forever
         }
     }
 
@@ -1102,7 +1917,11 @@ public class FTPConnection {
                 int fileType = textTransfer ? FTPClient.ASCII_FILE_TYPE : FTPClient.BINARY_FILE_TYPE;
                 logDebug(textTransfer ? "Setting the connection to transfer files with ASCII file type" : "Setting the connection to transfer files as BINARY type");
 
-                return ftpClient.setFileType(fileType);
+                boolean set = ftpClient.setFileType(fileType);
+                if (set)
+                    binaryTransfer = !textTransfer;
+
+                return set;
             }
 
             logDebug("User not logged in, can't set file type");
@@ -1219,13 +2038,15 @@ public class FTPConnection {
      * Creates a temporary FTPConnection based on the provided connection.
      * This doesn't share it with other classes. Useful for creating a separate connection for upload/download but based on the same details.
      *
-     * This method clones the connectionBasis' Server and FTPConnectionDetails objects
+     * This method clones the connectionBasis' Server and FTPConnectionDetails objects.
+     * The number of temporary connections open to the same server at the same time is limited by the server's ConnectionConcurrencyController,
+     * so connect() may wait until another temporary connection is disconnected
      *
      * @param connectionBasis the connection to base the temporary connection on
      * @return the temporary connection
      */
     public static FTPConnection createTemporaryConnection(FTPConnection connectionBasis) {
-        return new FTPConnection(connectionBasis.server.clone());
+        return createTemporaryConnection(connectionBasis.server.clone());
     }
 
     /**
@@ -1233,13 +2054,16 @@ public class FTPConnection {
      * This could be useful for creating an uploading/downloading connection as another temporary user.
      *
      * This method leaves it up to the programmer to clone the Server and FTPConnectionDetails classes before passing them into this
-     * method.
+     * method. Like createTemporaryConnection(FTPConnection), the connection is limited by the server's ConnectionConcurrencyController.
      *
      * @param server               the Server object containing the login details
      * @return the temporary connection
      */
     public static FTPConnection createTemporaryConnection(Server server) {
-        return new FTPConnection(server);
+        FTPConnection connection = new FTPConnection(server);
+        connection.concurrencyController = ConnectionConcurrencyController.forServer(server);
+
+        return connection;
     }
 }
 
@@ -27,12 +27,15 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPListParseEngine;
+import org.apache.commons.net.ftp.FTPReply;
 
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
+import java.util.function.Consumer;
 
 /**
  * The responsibility of this class is to provided lookup features for info on the server.
@@ -47,6 +50,10 @@ import java.util.Arrays;
 @RequiredArgsConstructor(access = AccessLevel.PROTECTED)
 @Log4j2
 public class FTPLookup {
+    /**
+     * The number of listed files parsed at a time when streaming a listing
+     */
+    private static final int LISTING_CHUNK_SIZE = 256;
     /**
      * The client object which will be used by this class
      */
@@ -174,6 +181,59 @@ public class FTPLookup {
         return files;
     }
 
+    /**
+     * Lists the files in the given path that match the glob pattern, leaving the matching to the server.
+     * MLSD does not accept patterns, so LIST is always used
+     *
+     * @param path the path to list
+     * @param pattern the glob pattern the names of the files must match
+     * @return the list of matching files, empty if none matched, null if the server refused the pattern, e.g. as it does not support patterns
+     * @throws IOException if an error occurs
+     */
+    public synchronized FTPFile[] listFTPFiles(String path, String pattern) throws IOException {
+        String patternPath = FileUtils.appendPath(path, pattern, false);
+        logDebug("Using LIST to list files matching {}", patternPath);
+        FTPFile[] files = ftpClient.listFiles(patternPath);
+        if (files != null && files.length == 0 && !FTPReply.isPositiveCompletion(ftpClient.getReplyCode()))
+            return null; // a refused listing is returned as an empty array, so check the reply to tell it apart from no matches
+
+        return files;
+    }
+
+    /**
+     * Lists the files in the given path, passing each file to the consumer as it is parsed rather than creating an array of every file.
+     * Only a chunk of files is parsed at a time, so the files can be discarded once the consumer has copied what it needs from them.
+     * If a pattern is given, LIST is used with the pattern, otherwise MLSD is used if the server supports it
+     *
+     * @param path the path to list
+     * @param pattern the glob pattern the names of the files must match, null to list all files
+     * @param consumer the consumer to pass each listed file to
+     * @return true if the server completed the listing, even if no files were listed, false if it refused it, e.g. the path does not exist
+     * @throws IOException if an error occurs
+     */
+    public synchronized boolean listFTPFiles(String path, String pattern, Consumer<FTPFile> consumer) throws IOException {
+        FTPListParseEngine engine;
+
+        if (pattern != null) {
+            String patternPath = FileUtils.appendPath(path, pattern, false);
+            logDebug("Using LIST to stream files matching {}", patternPath);
+            engine = ftpClient.initiateListParsing(patternPath);
+        } else if (ftpClient.hasFeature("MLSD")) {
+            logDebug("Using MLSD to stream files in path {}", path);
+            engine = ftpClient.initiateMListParsing(path);
+        } else {
+            logDebug("Using LIST to stream all files in path {}", path);
+            engine = ftpClient.initiateListParsing(path);
+        }
+
+        while (engine.hasNext()) {
+            for (FTPFile file : engine.getNext(LISTING_CHUNK_SIZE))
+                consumer.accept(file);
+        }
+
+        return FTPReply.isPositiveCompletion(ftpClient.getReplyCode()); // the engine is empty rather than failing if the server refuses the listing
+    }
+
     /**
      * Attempts to retrieve the current working directory on the ftp server
      *
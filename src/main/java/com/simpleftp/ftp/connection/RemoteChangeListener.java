@@ -0,0 +1,32 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.connection;
+
+/**
+ * This interface represents a listener that is told when any FTPConnection changes a path on a server, so that anything cached about the path can be discarded
+ */
+@FunctionalInterface
+public interface RemoteChangeListener {
+    /**
+     * Called on the thread that changed the path once a file has been uploaded to it, renamed from or to it or removed. A change to a directory
+     * also changes every path below it
+     * @param server the server the path was changed on
+     * @param path the path that was changed
+     */
+    void remotePathChanged(Server server, String path);
+}
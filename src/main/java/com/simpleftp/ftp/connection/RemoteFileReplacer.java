@@ -0,0 +1,164 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.connection;
+
+import com.simpleftp.filesystem.paths.RemotePath;
+import com.simpleftp.ftp.exceptions.FTPError;
+import com.simpleftp.ftp.exceptions.FTPException;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.UUID;
+
+/**
+ * This class replaces the contents of a remote file without ever leaving it partially written. The new contents are streamed to a hidden temporary file next to
+ * the file, which is then renamed over it. If a backup is kept, the previous version is renamed to the file's path with a ~ appended first, replacing any earlier backup.
+ * If the server doesn't allow a rename over an existing file, the file is moved aside first and removed once the new version is in place.
+ * <p>
+ * If the new version can't be put in place, the previous version is moved back to the file's path, so a failed save never leaves the file only as its backup
+ */
+@Log4j2
+public final class RemoteFileReplacer {
+    /**
+     * The connection to replace the file with
+     */
+    private final FTPConnection connection;
+    /**
+     * The path of the file to replace
+     */
+    private final String filePath;
+    /**
+     * True to keep the previous version as filePath~
+     */
+    private final boolean keepBackup;
+
+    /**
+     * Constructs a replacer for the given file
+     * @param connection the connection to replace the file with, which must be connected and logged in
+     * @param filePath the path of the file to replace
+     * @param keepBackup true to keep the previous version as filePath~
+     */
+    public RemoteFileReplacer(FTPConnection connection, String filePath, boolean keepBackup) {
+        this.connection = connection;
+        this.filePath = filePath;
+        this.keepBackup = keepBackup;
+    }
+
+    /**
+     * Replaces the contents of the file with the contents written by the writer
+     * @param contentWriter the writer of the new contents
+     * @return true if replaced, false if the backup could not be created, in which case the file is left unchanged
+     * @throws FTPException if an error occurs or the server refuses to store or replace the file. The file is left as the previous version
+     */
+    public boolean replace(ContentWriter contentWriter) throws FTPException {
+        String temporaryPath = getHiddenPath("tmp");
+        String backupPath = null;
+
+        try {
+            if (!connection.uploadFile(temporaryPath, contentWriter))
+                throw new FTPError("The server refused to store the file " + temporaryPath, connection.getReplyString());
+
+            if (keepBackup) {
+                String path = filePath + "~";
+                connection.removeFile(path); // replace the previous backup, if any
+
+                if (connection.renameFile(filePath, path))
+                    backupPath = path;
+                else if (connection.remotePathExists(filePath, false))
+                    return false; // the file may have been deleted since it was opened, so there is nothing to back up
+            }
+
+            if (!connection.renameFile(temporaryPath, filePath)) {
+                if (backupPath != null) // the file was moved to the backup, so nothing is in the way of the rename
+                    throw new FTPError("Could not replace the file " + filePath, connection.getReplyString());
+
+                replaceAside(temporaryPath);
+            }
+
+            temporaryPath = null; // now the file
+
+            return true;
+        } finally {
+            if (temporaryPath != null) {
+                if (backupPath != null)
+                    restoreBackup(backupPath);
+
+                removeQuietly(temporaryPath);
+            }
+        }
+    }
+
+    /**
+     * Gets a path in the same directory as the file, that is hidden and unique to this replacement
+     * @param suffix the suffix identifying what the path is used for
+     * @return the hidden path
+     */
+    private String getHiddenPath(String suffix) {
+        RemotePath path = RemotePath.of(filePath);
+        String name = "." + path.getFileName() + "." + UUID.randomUUID().toString().substring(0, 8) + "." + suffix;
+
+        return path.getParent().resolveName(name).toString();
+    }
+
+    /**
+     * Replaces the file with the temporary file when the server can't rename over an existing file, by moving the file aside first
+     * @param temporaryPath the path of the temporary file holding the new contents
+     * @throws FTPException if the file can't be replaced
+     */
+    private void replaceAside(String temporaryPath) throws FTPException {
+        String asidePath = getHiddenPath("old");
+
+        if (!connection.renameFile(filePath, asidePath))
+            throw new FTPError("Could not replace the file " + filePath, connection.getReplyString());
+
+        if (!connection.renameFile(temporaryPath, filePath)) {
+            String reply = connection.getReplyString();
+            connection.renameFile(asidePath, filePath); // put the previous version back
+
+            throw new FTPError("Could not replace the file " + filePath, reply);
+        }
+
+        removeQuietly(asidePath);
+    }
+
+    /**
+     * Moves the backup of the previous version back to the file's path after the new version failed to replace it. A failure is logged rather than thrown,
+     * so the error that caused the replacement to fail is the one reported
+     * @param backupPath the path of the backup
+     */
+    private void restoreBackup(String backupPath) {
+        try {
+            if (!connection.renameFile(backupPath, filePath))
+                log.error("Failed to restore the file {} from its backup {}", filePath, backupPath);
+        } catch (FTPException ex) {
+            log.error("Failed to restore the file {} from its backup {}", filePath, backupPath);
+        }
+    }
+
+    /**
+     * Removes the remote file, logging rather than throwing a failure as it is only clean up
+     * @param path the path to remove
+     */
+    private void removeQuietly(String path) {
+        try {
+            if (!connection.removeFile(path))
+                log.warn("Failed to remove the file {} left by a save", path);
+        } catch (FTPException ex) {
+            log.warn("Failed to remove the file {} left by a save", path);
+        }
+    }
+}
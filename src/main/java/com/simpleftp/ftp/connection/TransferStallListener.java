@@ -0,0 +1,32 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.connection;
+
+/**
+ * This interface represents a listener that is told when a file transfer on a FTPConnection stalls and is about to be retried
+ */
+@FunctionalInterface
+public interface TransferStallListener {
+    /**
+     * Called on the thread carrying out the transfer when it has stalled and is about to be retried
+     * @param path the path of the file being transferred
+     * @param retry the number of the retry that is about to be made, starting at 1
+     * @param restartOffset the offset in bytes the retry will carry on from, 0 if it starts again
+     */
+    void transferStalled(String path, int retry, long restartOffset);
+}
@@ -0,0 +1,219 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.connection;
+
+import com.simpleftp.properties.Properties;
+import org.apache.commons.net.io.CopyStreamEvent;
+import org.apache.commons.net.io.CopyStreamListener;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class watches the byte progress of the file transfers carried out by FTPConnections and flags transfers that have stalled.
+ *
+ * Each transfer is measured over windows of TRANSFER_STALL_WINDOW seconds. If fewer than TRANSFER_STALL_MIN_RATE bytes per second were transferred over a window
+ * (or no bytes at all if the rate is 0), the transfer is flagged as stalled and its stall handler is called, which is expected to close the data connection so the
+ * blocked transfer returns and can be retried.
+ *
+ * A single daemon thread checks every watched transfer once a second, and only runs while there are transfers being watched.
+ */
+final class TransferWatchdog {
+    /**
+     * The number of milliseconds between each check of the watched transfers
+     */
+    private static final long CHECK_INTERVAL = 1000;
+    /**
+     * The thread checking the transfers
+     */
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TransferWatchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * The transfers being watched
+     */
+    private static final Set<Transfer> transfers = ConcurrentHashMap.newKeySet();
+    /**
+     * The scheduled check, null if no transfers are being watched
+     */
+    private static ScheduledFuture<?> check;
+
+    /**
+     * Prevent instantiation
+     */
+    private TransferWatchdog() {}
+
+    /**
+     * Starts watching a new transfer. The returned transfer should be set as the CopyStreamListener of the client carrying out the transfer so that its progress is counted,
+     * and closed when the transfer ends
+     * @param onStall the handler to call on the watchdog thread if the transfer stalls
+     * @return the watched transfer
+     */
+    static Transfer watch(Runnable onStall) {
+        Transfer transfer = new Transfer(onStall, Properties.TRANSFER_STALL_WINDOW.getValue() * 1000L, Properties.TRANSFER_STALL_MIN_RATE.getValue());
+
+        synchronized (TransferWatchdog.class) {
+            transfers.add(transfer);
+
+            if (check == null)
+                check = timer.scheduleWithFixedDelay(TransferWatchdog::checkTransfers, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        return transfer;
+    }
+
+    /**
+     * Stops watching the transfer and stops the checks if it was the last one
+     * @param transfer the transfer to stop watching
+     */
+    private static void unwatch(Transfer transfer) {
+        synchronized (TransferWatchdog.class) {
+            transfers.remove(transfer);
+
+            if (transfers.isEmpty() && check != null) {
+                check.cancel(false);
+                check = null;
+            }
+        }
+    }
+
+    /**
+     * Checks each watched transfer for a stall
+     */
+    private static void checkTransfers() {
+        long now = System.currentTimeMillis();
+
+        for (Transfer transfer : transfers) {
+            if (transfer.check(now)) {
+                unwatch(transfer);
+                transfer.onStall.run();
+            }
+        }
+    }
+
+    /**
+     * This class represents a single transfer being watched. It counts the bytes transferred as the CopyStreamListener of the transfer
+     */
+    static final class Transfer implements CopyStreamListener, AutoCloseable {
+        /**
+         * The handler to call if the transfer stalls
+         */
+        private final Runnable onStall;
+        /**
+         * The length of the window in milliseconds
+         */
+        private final long window;
+        /**
+         * The minimum number of bytes that have to be transferred over a window
+         */
+        private final long minimumBytes;
+        /**
+         * The number of bytes transferred so far
+         */
+        private final AtomicLong bytes = new AtomicLong();
+        /**
+         * The time the current window started. Only accessed by the watchdog thread
+         */
+        private long windowStart;
+        /**
+         * The number of bytes that had been transferred when the current window started. Only accessed by the watchdog thread
+         */
+        private long windowStartBytes;
+        /**
+         * True if the transfer has been flagged as stalled
+         */
+        private volatile boolean stalled;
+
+        /**
+         * Creates a transfer to watch
+         * @param onStall the handler to call if the transfer stalls
+         * @param window the length of the window in milliseconds
+         * @param minimumRate the minimum bytes per second
+         */
+        private Transfer(Runnable onStall, long window, long minimumRate) {
+            this.onStall = onStall;
+            this.window = window;
+            this.minimumBytes = Math.max(1, minimumRate * window / 1000);
+            this.windowStart = System.currentTimeMillis();
+        }
+
+        /**
+         * Checks if the transfer has stalled, starting a new window if the current one has ended without a stall
+         * @param now the current time in milliseconds
+         * @return true if the transfer has just been flagged as stalled
+         */
+        private boolean check(long now) {
+            if (now - windowStart >= window) {
+                long transferred = bytes.get();
+
+                if (transferred - windowStartBytes < minimumBytes) {
+                    stalled = true;
+                    return true;
+                }
+
+                windowStart = now;
+                windowStartBytes = transferred;
+            }
+
+            return false;
+        }
+
+        /**
+         * Determines if this transfer was flagged as stalled
+         * @return true if stalled
+         */
+        boolean isStalled() {
+            return stalled;
+        }
+
+        /**
+         * Counts the bytes transferred in the event
+         * @param event the event describing the bytes transferred
+         */
+        @Override
+        public void bytesTransferred(CopyStreamEvent event) {
+            bytes.addAndGet(event.getBytesTransferred());
+        }
+
+        /**
+         * Counts the bytes transferred
+         * @param totalBytesTransferred the total bytes transferred so far
+         * @param bytesTransferred the bytes transferred since the last call
+         * @param streamSize the size of the stream if known
+         */
+        @Override
+        public void bytesTransferred(long totalBytesTransferred, int bytesTransferred, long streamSize) {
+            bytes.addAndGet(bytesTransferred);
+        }
+
+        /**
+         * Stops watching this transfer
+         */
+        @Override
+        public void close() {
+            unwatch(this);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.exceptions;
+
+import lombok.Getter;
+
+/**
+ * This exception is thrown when a file transfer is aborted by a call to FTPConnection.abortTransfer() before it could finish.
+ * It is a FTPError so that it can be thrown by the upload and download methods without changing what they declare
+ */
+public class FTPTransferAbortedException extends FTPError {
+    /**
+     * True if the control connection was brought back in sync with the server after the abort, i.e. the connection can be used for further commands
+     */
+    @Getter
+    private final boolean connectionRecovered;
+
+    /**
+     * Constructs an exception object with the given message
+     * @param message the message for the exception to display
+     * @param replyString the reply from the server
+     * @param connectionRecovered true if the connection can still be used after the abort
+     */
+    public FTPTransferAbortedException(String message, String replyString, boolean connectionRecovered) {
+        super(message, replyString);
+        this.connectionRecovered = connectionRecovered;
+    }
+}
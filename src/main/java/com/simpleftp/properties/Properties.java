@@ -89,12 +89,12 @@ public final class Properties {
     public static final BooleanProperty SERVER_REMOTE_MODIFICATION_TIME = new BooleanProperty("SERVER_REMOTE_MODIFICATION_TIME", false);
 
     /**
-     * If true, LineEntries on a RemoteDirectoryPane will be cached up until the first refresh() method call
+     * If true, the listings of directories visited on a RemoteDirectoryPane will be cached up until the first refresh() method call, or until they are older than LISTING_CACHE_MAX_AGE
      */
     public static final BooleanProperty CACHE_REMOTE_DIRECTORY_LISTING = new BooleanProperty("CACHE_REMOTE_DIRECTORY_LISTING", true);
 
     /**
-     * If true, all cached LineEntries are removed when DirectoryPane.refresh() is called (or refresh(false)). If false,
+     * If true, all cached listings are removed when DirectoryPane.refresh() is called (or refresh(false)). If false,
      * just the cached entries for the current directory are cleared
      */
     public static final BooleanProperty REMOVE_ALL_LISTING_CACHE_REFRESH = new BooleanProperty("REMOVE_ALL_LISTING_CACHE_REFRESH", true);
@@ -138,6 +138,141 @@ public final class Properties {
      */
     public static final IntegerProperty FILE_OPERATION_ERROR_LIMIT = new IntegerProperty("FILE_OPERATION_ERROR_LIMIT", 5, 0, 20);
 
+    /**
+     * Property representing the maximum number of non-conflicting scheduled tasks that can run at the same time
+     */
+    public static final IntegerProperty TASK_SCHEDULER_PARALLELISM = new IntegerProperty("TASK_SCHEDULER_PARALLELISM", 4, 1, 16);
+
+    /**
+     * Property representing the number of services in a bundle of file operations (e.g. copying multiple selected files) that can run at the same time
+     * if the server has no entry in BUNDLE_SERVER_CONCURRENCY
+     */
+    public static final IntegerProperty BUNDLE_CONCURRENCY = new IntegerProperty("BUNDLE_CONCURRENCY", 3, 1, 16);
+
+    /**
+     * Property representing the maximum number of temporary connections that can be open to a server at the same time. The number actually allowed
+     * is adapted below this depending on how the server responds
+     */
+    public static final IntegerProperty CONNECTION_CONCURRENCY_LIMIT = new IntegerProperty("CONNECTION_CONCURRENCY_LIMIT", 8, 1, 64);
+
+    /**
+     * Property representing the number of seconds over which a file transfer's progress is measured. If fewer than TRANSFER_STALL_MIN_RATE bytes per second
+     * are transferred over this window, the transfer is considered stalled
+     */
+    public static final IntegerProperty TRANSFER_STALL_WINDOW = new IntegerProperty("TRANSFER_STALL_WINDOW", 30, 5, 3600);
+
+    /**
+     * Property representing the minimum number of bytes per second a file transfer has to keep up over TRANSFER_STALL_WINDOW to not be considered stalled
+     */
+    public static final IntegerProperty TRANSFER_STALL_MIN_RATE = new IntegerProperty("TRANSFER_STALL_MIN_RATE", 512, 0, null);
+
+    /**
+     * Property representing the number of times a stalled file transfer is retried before it fails
+     */
+    public static final IntegerProperty TRANSFER_RETRY_LIMIT = new IntegerProperty("TRANSFER_RETRY_LIMIT", 3, 0, 10);
+
+    /**
+     * Property representing the number of milliseconds to wait before the first retry of a stalled file transfer. The wait is doubled for each further retry
+     */
+    public static final IntegerProperty TRANSFER_RETRY_BACKOFF = new IntegerProperty("TRANSFER_RETRY_BACKOFF", 1000, 100, 60000);
+
+    /**
+     * Property representing the number of megabytes of disk space the cache of downloaded remote files can use. Once exceeded, the least recently used files are evicted.
+     * A value of 0 disables the cache
+     */
+    public static final IntegerProperty REMOTE_FILE_CACHE_SIZE = new IntegerProperty("REMOTE_FILE_CACHE_SIZE", 256, 0, null);
+
+    /**
+     * If true, a file mask made up of a single pattern is sent to the server with the LIST command on a remote pane, so only matching files
+     * are transferred. Only enable for servers that match patterns against the names in the directory rather than listing the contents of matching directories
+     */
+    public static final BooleanProperty REMOTE_MASK_PUSHDOWN = new BooleanProperty("REMOTE_MASK_PUSHDOWN", false);
+
+    /**
+     * Property representing the number of files copied at the same time when copying a directory from one local location to another
+     */
+    public static final IntegerProperty LOCAL_COPY_PARALLELISM = new IntegerProperty("LOCAL_COPY_PARALLELISM", 4, 1, 32);
+
+    /**
+     * Property representing the number of files copied at the same time in a local directory copy if the source or destination is on a rotational disk,
+     * where copying many files at once causes seeking
+     */
+    public static final IntegerProperty LOCAL_COPY_HDD_PARALLELISM = new IntegerProperty("LOCAL_COPY_HDD_PARALLELISM", 1, 1, 32);
+
+    /**
+     * If true, saving a remote file in the editor keeps the previous version on the server as a backup named after the file with a ~ appended
+     */
+    public static final BooleanProperty REMOTE_SAVE_KEEP_BACKUP = new BooleanProperty("REMOTE_SAVE_KEEP_BACKUP", false);
+
+    /**
+     * Property representing the maximum number of lines kept by a remote log tail view. The oldest lines are dropped when more arrive
+     */
+    public static final IntegerProperty LOG_TAIL_MAX_LINES = new IntegerProperty("LOG_TAIL_MAX_LINES", 10000, 100, 1000000);
+
+    /**
+     * Property representing the shortest time in milliseconds between checks of a tailed remote file for new contents
+     */
+    public static final IntegerProperty LOG_TAIL_MIN_INTERVAL = new IntegerProperty("LOG_TAIL_MIN_INTERVAL", 1000, 100, 60000);
+
+    /**
+     * Property representing the longest time in milliseconds between checks of a tailed remote file that isn't growing
+     */
+    public static final IntegerProperty LOG_TAIL_MAX_INTERVAL = new IntegerProperty("LOG_TAIL_MAX_INTERVAL", 30000, 1000, 600000);
+
+    /**
+     * Property representing the number of threads, and connections for a remote tree, used to search a directory tree or calculate its size
+     */
+    public static final IntegerProperty SEARCH_PARALLELISM = new IntegerProperty("SEARCH_PARALLELISM", 4, 1, 16);
+
+    /**
+     * Property representing the default maximum size in kilobytes of a file whose contents are searched
+     */
+    public static final IntegerProperty CONTENT_SEARCH_MAX_FILE_SIZE = new IntegerProperty("CONTENT_SEARCH_MAX_FILE_SIZE", 1024, 1, 1048576);
+
+    /**
+     * Property representing the maximum number of results a search of a directory tree displays before it is stopped
+     */
+    public static final IntegerProperty SEARCH_MAX_RESULTS = new IntegerProperty("SEARCH_MAX_RESULTS", 10000, 100, 1000000);
+
+    /**
+     * Property representing the default maximum depth of directory below the searched directory that a search for file names lists
+     */
+    public static final IntegerProperty NAME_SEARCH_MAX_DEPTH = new IntegerProperty("NAME_SEARCH_MAX_DEPTH", 32, 1, 1000);
+
+    /**
+     * Property representing the default maximum number of files and directories a search for file names visits before it stops listing directories
+     */
+    public static final IntegerProperty NAME_SEARCH_MAX_ENTRIES = new IntegerProperty("NAME_SEARCH_MAX_ENTRIES", 1000000, 1000, 100000000);
+
+    /**
+     * Property representing the number of seconds the calculated size of a directory tree is reused for before it is calculated again, 0 to not reuse sizes
+     */
+    public static final IntegerProperty TREE_SIZE_CACHE_MAX_AGE = new IntegerProperty("TREE_SIZE_CACHE_MAX_AGE", 300, 0, 86400);
+
+    /**
+     * Property representing the number of seconds a cached remote directory listing is reused for before the directory is listed again
+     */
+    public static final IntegerProperty LISTING_CACHE_MAX_AGE = new IntegerProperty("LISTING_CACHE_MAX_AGE", 600, 1, 86400);
+
+    /**
+     * Property representing the number of services in a bundle that can run at the same time for specific servers.
+     * The value is a comma separated list of host[:port]=width entries, or NONE if BUNDLE_CONCURRENCY should be used for all servers
+     */
+    public static final StringProperty BUNDLE_SERVER_CONCURRENCY = new StringProperty("BUNDLE_SERVER_CONCURRENCY", "NONE") {
+        /**
+         * Validates that the value is NONE or a list of host[:port]=width entries
+         *
+         * @param value the property value parsed from properties file
+         */
+        @Override
+        void validateValue(String value) {
+            super.validateValue(value);
+
+            if (!value.equals("NONE") && !value.matches("^[^=,\\s]+(:[0-9]+)?=[0-9]+(,[^=,\\s]+(:[0-9]+)?=[0-9]+)*$"))
+                throw new PropertyException("Invalid value for BUNDLE_SERVER_CONCURRENCY: " + value + ", NONE or a comma separated list of host[:port]=width expected");
+        }
+    };
+
     /**
      * Initialises the properties object
      */
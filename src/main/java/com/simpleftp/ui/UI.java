@@ -17,8 +17,9 @@
 
 package com.simpleftp.ui;
 
-import com.simpleftp.filesystem.FileUtils;
+import com.simpleftp.filesystem.ContentTypeDetector;
 import com.simpleftp.filesystem.LocalFile;
+import com.simpleftp.filesystem.RemoteFile;
 import com.simpleftp.filesystem.paths.PathResolverFactory;
 import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.exceptions.PathResolverException;
@@ -35,7 +36,6 @@ import com.simpleftp.sessions.Sessions;
 import com.simpleftp.sessions.exceptions.SessionLoadException;
 import com.simpleftp.ui.background.elements.TaskElement;
 import com.simpleftp.ui.background.interfaces.BackgroundTask;
-import com.simpleftp.ui.background.FileService;
 import com.simpleftp.ui.background.interfaces.DisplayableBackgroundTask;
 import com.simpleftp.ui.dialogs.*;
 import com.simpleftp.ui.exceptions.UIException;
@@ -45,7 +45,11 @@ import com.simpleftp.ui.files.LineEntry;
 import com.simpleftp.ui.interfaces.ActionHandler;
 import com.simpleftp.ui.directories.DirectoryPane;
 import com.simpleftp.ui.editor.FileEditorWindow;
+import com.simpleftp.ui.editor.LargeFileViewerWindow;
+import com.simpleftp.ui.editor.LogTailWindow;
 import com.simpleftp.ui.login.LoginWindow;
+import com.simpleftp.ui.search.ContentSearchWindow;
+import com.simpleftp.ui.search.NameSearchWindow;
 import com.simpleftp.ui.views.MainView;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
@@ -63,7 +67,6 @@ import javafx.stage.Stage;
 import javafx.util.Pair;
 import lombok.Getter;
 import lombok.Setter;
-import org.apache.tika.Tika;
 
 import java.io.IOException;
 import java.util.*;
@@ -238,16 +241,6 @@ public final class UI {
      */
     private static final HashMap<DisplayableBackgroundTask, TaskElement> displayedBackgroundTasks = new HashMap<>();
 
-    /**
-     * List of paths of opened remote files
-     */
-    private static final Set<String> openedRemoteFiles = new HashSet<>();
-
-    /**
-     * Lost of paths of opened local files
-     */
-    private static final Set<String> openedLocalFiles = new HashSet<>();
-
     /**
      * The Scene this application is being displayed in.
      * Should be set in the start() method of the main class
@@ -530,11 +523,54 @@ public final class UI {
      * Shows a file editor
      * @param panel the panel opening the editor
      * @param lineEntry the line entry to edit
-     * @param fileContents the contents of the file
+     * @param fileContents the contents of the file, or the first chunk of them if the rest is still loading
+     * @return the editor window shown
      */
-    public static void showFileEditor(DirectoryPane panel, LineEntry lineEntry, String fileContents) {
+    public static FileEditorWindow showFileEditor(DirectoryPane panel, LineEntry lineEntry, String fileContents) {
         FileEditorWindow editorWindow = FileEditorWindow.newInstance(panel, fileContents, lineEntry);
         editorWindow.show();
+
+        return editorWindow;
+    }
+
+    /**
+     * Shows a read-only viewer for a file too large to open in the editor
+     * @param panel the panel opening the viewer
+     * @param lineEntry the line entry to view
+     */
+    public static void showLargeFileViewer(DirectoryPane panel, LineEntry lineEntry) {
+        LargeFileViewerWindow viewerWindow = new LargeFileViewerWindow(panel, lineEntry);
+        viewerWindow.show();
+    }
+
+    /**
+     * Shows a read-only window following a remote file as it grows
+     * @param panel the panel opening the window
+     * @param lineEntry the line entry of the file to tail
+     */
+    public static void showLogTail(DirectoryPane panel, LineEntry lineEntry) {
+        LogTailWindow tailWindow = new LogTailWindow(panel, lineEntry);
+        tailWindow.show();
+    }
+
+    /**
+     * Shows a window to search the contents of the files in a directory tree
+     * @param panel the panel opening the window
+     * @param directory the directory to search initially
+     */
+    public static void showContentSearch(DirectoryPane panel, String directory) {
+        ContentSearchWindow searchWindow = new ContentSearchWindow(panel, directory);
+        searchWindow.show();
+    }
+
+    /**
+     * Shows a window to search a directory tree for files by name
+     * @param panel the panel opening the window
+     * @param directory the directory to search initially
+     */
+    public static void showNameSearch(DirectoryPane panel, String directory) {
+        NameSearchWindow searchWindow = new NameSearchWindow(panel, directory);
+        searchWindow.show();
     }
 
     /**
@@ -609,45 +645,14 @@ public final class UI {
     }
 
     /**
-     * Checks if file matches file1 by the isLocal method and file's filePath starts with file1's filePath
-     * @param file the first file to compare
-     * @param file1 the file that the first file is matched against
-     * @return true if they match, false if not
-     */
-    private static boolean taskFileEquals(CommonFile file, CommonFile file1) {
-        boolean fileLocal = file1.isLocal();
-        return fileLocal == file1.isLocal() && FileUtils.startsWith(file.getFilePath(), file1.getFilePath(), fileLocal); // if the file's filePath starts with the file1's path, we have a sub-file of file and file is a directory
-    }
-
-    /**
-     * Determines whether the specified file is "locked" by a FileService task.
-     * It is determined locked, if there exists a FileService background task with a source file matching the file. The source file could be a parent of the file
-     * @param file the file to check if it is locked
-     * @return true if locked, false if not
-     */
-    public static boolean isFileLockedByFileService(CommonFile file) {
-        List<BackgroundTask> tasks = getBackgroundTasks();
-        if (tasks.size() == 0)
-            return false;
-        else
-            return tasks.stream()
-                    .filter(task -> task instanceof FileService)
-                    .map(task -> (FileService) task)
-                    .filter(task -> {
-                        BackgroundTask.State state = task.getState();
-                        return state != BackgroundTask.State.FAILED && state != BackgroundTask.State.CANCELLED;
-                    })
-                    .anyMatch(task -> taskFileEquals(file, task.getSource()));
-    }
-
-    /**
-     * Shows a dialog saying the specified file is over 100MB and may cause you to run out of memory if opened in editor
+     * Shows a dialog saying the specified file is over the size limit and may cause you to run out of memory if opened in editor, giving the choice
+     * of viewing it read-only instead
      * @param path the path of the file
-     * @return true if editor should be opened, false if not
+     * @return the choice of how to open the file
      */
-    public static boolean doFileSizeWarningDialog(String path) {
+    public static FileSizeConfirmationDialog.Choice doFileSizeWarningDialog(String path) {
         FileSizeConfirmationDialog confirmationDialog = new FileSizeConfirmationDialog(path);
-        return confirmationDialog.showAndGetConfirmation();
+        return confirmationDialog.showAndGetChoice();
     }
 
     /**
@@ -669,16 +674,6 @@ public final class UI {
         return symLinkDialog.showAndGetEntry();
     }
 
-    /**
-     * Attempts to get the type of the specified file
-     * @param file the file to query
-     * @return the file type
-     */
-    private static String getFileType(LocalFile file) throws IOException {
-        Tika tika = new Tika();
-        return tika.detect(file);
-    }
-
     /**
      * Attempts to determine if the specified file can be opened in an editor
      * @param file the file to check
@@ -686,18 +681,42 @@ public final class UI {
      */
     public static boolean canOpenFile(LocalFile file) {
         try {
-            String type = getFileType(file);
-
-            return type.contains("xml") || type.contains("text")
-                    || (type.contains("application") && !type.contains("octet-stream")
-                    && !type.contains("executable") && !type.contains("java-vm")
-                    && !type.contains("sharedlib")) && !type.contains("lib")
-                    && !type.contains("zip") && !type.contains("archive") || file.length() == 0;
+            return file.length() == 0 || isEditableType(ContentTypeDetector.detect(file));
         } catch (IOException ex) {
             return false;
         }
     }
 
+    /**
+     * Attempts to determine if the specified remote file can be opened in an editor. Only the first bytes of the file are downloaded to check it
+     * @param file the file to check
+     * @param connection the connection to download the first bytes with
+     * @return true if the file can be opened (txt or xml), false if not or its type can't be determined
+     * @throws FTPException if the first bytes can't be downloaded, e.g. the connection was lost
+     * @throws FileSystemException if the file can't be queried
+     */
+    public static boolean canOpenFile(RemoteFile file, FTPConnection connection) throws FTPException, FileSystemException {
+        if (file.getSize() == 0)
+            return true;
+
+        String type = ContentTypeDetector.detect(file, connection);
+
+        return type != null && isEditableType(type);
+    }
+
+    /**
+     * Checks if the detected type of file can be opened in an editor
+     * @param type the type detected by Tika
+     * @return true if the type can be opened
+     */
+    private static boolean isEditableType(String type) {
+        return type.contains("xml") || type.contains("text")
+                || (type.contains("application") && !type.contains("octet-stream")
+                && !type.contains("executable") && !type.contains("java-vm")
+                && !type.contains("sharedlib")) && !type.contains("lib")
+                && !type.contains("zip") && !type.contains("archive");
+    }
+
     /**
      * Resolves a local path
      * @param localPath the path to resolve
@@ -753,56 +772,6 @@ public final class UI {
         return null;
     }
 
-    /**
-     * "Opens" this file by adding its path to the list of opened files. A LineEntry represents a file with a path, so more efficient to just pass in it's path
-     * This method doesn't check if the file exists on the file system. It also doesn't open the window/do an action of opening on the file.
-     * This method simply is to just tell the UI that you have opened this file elsewhere so that other methods calling isFileOpened will know about it
-     * and so can block the action if it is an action that isn't allowed while a file is open, e.g. delete/rename.
-     * It is a way of tracking that the file has been opened. This call should be made everytime you open a file (like clicking into a directory or opening an editor). Example, opening a property window is not opening the file, because opening means either opening a directory or a file to view the contents
-     * @param filePath the path of the file that has been opened in the UI. When opening a LineEntry, just call lineEntry.getFilePath to retrieve the path
-     * @param local true if this is a local path, false if remote
-     */
-    public static void openFile(final String filePath, boolean local) {
-        Set<String> openedFiles = local ? openedLocalFiles:openedRemoteFiles;
-        openedFiles.add(filePath);
-    }
-
-    /**
-     * "Closes" this file by removing its path from the list of opened files. A LineEntry represents a file with a path, so more efficient to just pass in it's path
-     * This method does not check if the path exists on the file system.
-     * It also doesn't close any window/do an action of closing on the file.
-     * This method simply is to just tell the UI that you have now closed this file elsewhere to tell other methods calling isFileOpened that they can now perform an action on the file
-     * that would otherwise not be allowed if isFileOpened returned true, e.g. if you want to delete a file, and a call to openFile for that path was made, you need to call closeFile before you can delete it.
-     * It is a way of tracking that the window is now closed. Should be made when leaving a file after it was opened (directory opened or file opened to view the contents, not opening a properties window for example)
-     * @param filePath the path of the file that has been opened in the UI. When opening a LineEntry, just call lineEntry.getFilePath to retrieve the path
-     * @param local true if this is a local path, false if remote
-     */
-    public static void closeFile(final String filePath, boolean local) {
-        Set<String> openedFiles = local ? openedLocalFiles:openedRemoteFiles;
-        openedFiles.remove(filePath);
-    }
-
-    /**
-     * Removes all files from the specified opened files path
-     * @param local true if the path is local, false if not
-     */
-    public static void closeAllFiles(boolean local) {
-        Set<String> openedFiles = local ? openedLocalFiles:openedRemoteFiles;
-        openedFiles.clear();
-    }
-
-    /**
-     * Checks if the specified file is opened in the UI. A LineEntry represents a file with a path, so more efficient to just pass in it's path.
-     * Note that this method does not check if the path exists on the file system
-     * @param filePath the path of the file to check. When opening a LineEntry, just call lineEntry.getFilePath to retrieve the path
-     * @param local true if this is a local path, false if remote
-     * @return true if the file has been opened in the UI, false otherwise
-     */
-    public static boolean isFileOpened(final String filePath, boolean local) {
-        Set<String> openedFiles = local ? openedLocalFiles:openedRemoteFiles;
-        return openedFiles.contains(filePath);
-    }
-
     /**
      * Display an error message if connection of the system connection fails
      */
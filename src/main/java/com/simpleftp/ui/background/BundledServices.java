@@ -17,22 +17,56 @@
 
 package com.simpleftp.ui.background;
 
+import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.interfaces.CommonFile;
+import com.simpleftp.ftp.FTPSystem;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.connection.Server;
+import com.simpleftp.ftp.exceptions.FTPConnectionFailedException;
+import com.simpleftp.ftp.exceptions.FTPException;
+import com.simpleftp.properties.Properties;
 import com.simpleftp.ui.UI;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * This class provides a means of bundling multiple FileServices (with the same destination) together so that you only
  * get 1 success message for the whole count of file services in the bundled operation rather than a success message each.
  *
  * 10 files may be involved in a multiple operation so it would be too much to have 10 success messages
+ *
+ * The bundle does not schedule all its services at once, as each running service needs its own connection to the server and servers
+ * may limit the number of connections a user can have. Instead, only width services are scheduled at a time and the next waiting service
+ * is scheduled when one finishes. The width is taken from the BUNDLE_SERVER_CONCURRENCY property for the server being connected to, or BUNDLE_CONCURRENCY if it
+ * has no entry there.
+ *
+ * The services in the bundle borrow their connections from the bundle rather than each opening their own. When a service finishes, its connection is handed back
+ * to the bundle and given to the next service, and all the connections are disconnected when the bundle finishes.
+ * A new connection is only opened if the server's ConnectionConcurrencyController lets it through straight away. Otherwise, the service waits on its own thread for
+ * a connection to be handed back or for the limit to allow a new one, so a bundle wider than the number of connections the server allows
+ * runs its services over the connections it has. The bundle's lock is never held while connecting, so handing a connection back from the FX thread never waits on a connection being opened.
+ *
+ * The bundle is itself a background task, displayed in the task window with the aggregate progress of its services, and cancelling it cancels every service in it.
  */
-public final class BundledServices {
+public final class BundledServices extends AbstractDisplayableBackgroundTask {
     /**
-     * The bundled file services
+     * The bundled file services that have not yet finished
      */
     private final ArrayList<FileService> services;
+    /**
+     * The bundled file services that have not yet been scheduled
+     */
+    private final ArrayDeque<FileService> waitingServices;
+    /**
+     * The bundled file services that have been scheduled and have not yet finished
+     */
+    private final ArrayList<FileService> scheduledServices;
+    /**
+     * The connections that have been handed back by finished services and are waiting to be used by the next service
+     */
+    private final ArrayDeque<FTPConnection> idleConnections;
     /**
      * A variable to count the number of services completed successfully
      */
@@ -49,14 +83,42 @@ public final class BundledServices {
      * The total number of services bundled
      */
     private int total;
+    /**
+     * The total number of bytes of the files bundled. Directories are not counted towards this
+     */
+    private long totalBytes;
+    /**
+     * The number of bytes transferred so far by the bundled services, as reported by their file systems' progress events
+     */
+    private long transferredBytes;
+    /**
+     * A map of the sizes of the bundled services' source files
+     */
+    private final HashMap<FileService, Long> serviceBytes;
+    /**
+     * The maximum number of services in this bundle that can be scheduled at the same time
+     */
+    private int width;
     /**
      * Flag to keep track of if the activate method has been called or not
      */
     private boolean activated;
+    /**
+     * Flag to keep track of if the whole bundle has been cancelled
+     */
+    private volatile boolean bundleCancelled;
+    /**
+     * Flag to keep track of if every service in the bundle has finished
+     */
+    private volatile boolean finished;
     /**
      * The operation this bundled service is for
      */
     private final FileService.Operation operation;
+    /**
+     * The number of milliseconds a service waiting for a connection sleeps between attempts to open a new one, if no connection is handed back in the meantime
+     */
+    private static final long CONNECTION_RETRY_INTERVAL = 250;
 
     /**
      * This enum outlines the valid notification types to be passed to notify
@@ -82,6 +144,10 @@ public final class BundledServices {
      */
     public BundledServices(FileService.Operation operation) {
         services = new ArrayList<>();
+        waitingServices = new ArrayDeque<>();
+        scheduledServices = new ArrayList<>();
+        idleConnections = new ArrayDeque<>();
+        serviceBytes = new HashMap<>();
         this.operation = operation;
     }
 
@@ -118,7 +184,7 @@ public final class BundledServices {
                 }
             }
 
-            total += services.size();
+            total = services.size();
         } else {
             throw new BundleException("You cannot call bundle after it has been activated");
         }
@@ -141,6 +207,11 @@ public final class BundledServices {
                 }
 
                 services.remove(fileService);
+                waitingServices.remove(fileService);
+                scheduledServices.remove(fileService);
+
+                scheduleNextServices();
+                updateProgress();
                 checkCompleted();
             } else {
                 throw new BundleException("The provided file service is not bundled");
@@ -150,20 +221,32 @@ public final class BundledServices {
         }
     }
 
+    /**
+     * Adds the provided number of bytes to the bytes transferred by this bundle's services and updates the progress. This should be called
+     * on the FX thread
+     * @param bytes the number of bytes a service transferred
+     */
+    void addTransferredBytes(long bytes) {
+        transferredBytes += bytes;
+        updateProgress();
+    }
+
     /**
      * Checks if every service in the bundle has been finished, i.e. all of them notified
      */
     void checkCompleted() {
-        if (activated && services.size() == 0) {
-            String operationString = "";
-
-            if (operation == FileService.Operation.COPY) {
-                operationString = "Copy";
-            } else if (operation == FileService.Operation.MOVE) {
-                operationString = "Move";
-            } else if (operation == FileService.Operation.REMOVE) {
-                operationString = "Deletion";
-            }
+        if (activated && !finished && services.size() == 0) {
+            finished = true;
+            closeConnections();
+
+            if (bundleCancelled)
+                updateState(State.CANCELLED);
+            else if (failed > 0 || cancelled > 0)
+                updateState(State.FAILED);
+            else
+                updateState(State.COMPLETED);
+
+            String operationString = getOperationString();
 
             UI.doInfo(operationString + " finished", operationString + " finished with: "
                 + completed + " successfully completed, " + failed + " failed, and " + cancelled + " cancelled");
@@ -171,16 +254,312 @@ public final class BundledServices {
     }
 
     /**
-     * Activates the bundle by scheduling all the services to run
+     * Gets the operation of this bundle as a String for display
+     * @return the display string for the operation
+     */
+    private String getOperationString() {
+        String operationString = "";
+
+        if (operation == FileService.Operation.COPY) {
+            operationString = "Copy";
+        } else if (operation == FileService.Operation.MOVE) {
+            operationString = "Move";
+        } else if (operation == FileService.Operation.REMOVE) {
+            operationString = "Deletion";
+        }
+
+        return operationString;
+    }
+
+    /**
+     * Schedules waiting services until width services are scheduled or there are no more waiting
+     */
+    private void scheduleNextServices() {
+        while (!bundleCancelled && scheduledServices.size() < width && !waitingServices.isEmpty()) {
+            FileService service = waitingServices.poll();
+            scheduledServices.add(service);
+            service.schedule();
+        }
+    }
+
+    /**
+     * Records the size of each bundled service's source file. Directories are not counted as their size would require a walk of the directory
+     */
+    private void calculateTotalBytes() {
+        for (FileService service : services) {
+            CommonFile source = service.getSource();
+
+            try {
+                if (source.isNormalFile()) {
+                    long size = source.getSize();
+                    serviceBytes.put(service, size);
+                    totalBytes += size;
+                }
+            } catch (FileSystemException ex) {
+                if (FTPSystem.isDebugEnabled())
+                    ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Updates the description of this bundle with the progress of its services
+     */
+    private void updateProgress() {
+        int finishedServices = total - services.size();
+        String description = getOperationString() + " of " + total + " files: " + finishedServices + "/" + total + " finished";
+
+        if (operation != FileService.Operation.REMOVE) {
+            if (serviceBytes.size() == total) // the size of every source is known, i.e. no directories
+                description += ", " + formatBytes(transferredBytes) + "/" + formatBytes(totalBytes);
+            else if (transferredBytes > 0)
+                description += ", " + formatBytes(transferredBytes) + " transferred";
+        }
+
+        setDescription(description);
+    }
+
+    /**
+     * Formats the number of bytes to be displayed in the largest unit that it is at least 1 of
+     * @param bytes the bytes to format
+     * @return the formatted bytes
+     */
+    static String formatBytes(long bytes) {
+        if (bytes >= 1000000000)
+            return String.format("%.2fG", bytes / 1000000000.0);
+        else if (bytes >= 1000000)
+            return String.format("%.2fM", bytes / 1000000.0);
+        else if (bytes >= 1000)
+            return String.format("%.2fK", bytes / 1000.0);
+        else
+            return bytes + "B";
+    }
+
+    /**
+     * Gets the width for the bundle from the BUNDLE_SERVER_CONCURRENCY property for the provided server.
+     * An entry with a matching host and port is preferred over an entry with a matching host and no port
+     * @param server the server to get the width for, may be null if not connected
+     * @return the width for the server, BUNDLE_CONCURRENCY if the server has no entry
+     */
+    static int getServerWidth(Server server) {
+        int width = Properties.BUNDLE_CONCURRENCY.getValue();
+        String serverConcurrency = Properties.BUNDLE_SERVER_CONCURRENCY.getValue();
+
+        if (server != null && !serverConcurrency.equals("NONE")) {
+            boolean portMatched = false;
+
+            for (String entry : serverConcurrency.split(",")) {
+                String[] hostWidth = entry.split("=");
+                String host = hostWidth[0];
+                Integer port = null;
+                int portIndex = host.lastIndexOf(':');
+
+                if (portIndex != -1) {
+                    port = Integer.parseInt(host.substring(portIndex + 1));
+                    host = host.substring(0, portIndex);
+                }
+
+                if (host.equalsIgnoreCase(server.getServer())) {
+                    if (port != null && port == server.getPort()) {
+                        width = Integer.parseInt(hostWidth[1]);
+                        portMatched = true;
+                    } else if (port == null && !portMatched) {
+                        width = Integer.parseInt(hostWidth[1]);
+                    }
+                }
+            }
+        }
+
+        return Math.max(width, 1);
+    }
+
+    /**
+     * Retrieves a connection for a service in this bundle to use. This is called on the service's worker thread. If a connection has been handed back by a finished service
+     * and it is still logged in, it is reused. Otherwise, a new connection is opened if the server's connection limit allows it straight away, else this waits for
+     * either to become possible, for up to the server's timeout
+     * @return the connection to use
+     * @throws FTPException if a new connection fails to be opened, no connection became available in time or the bundle was cancelled while waiting
+     */
+    FTPConnection borrowConnection() throws FTPException {
+        FTPConnection basis = FTPSystem.getConnection();
+        Server server = basis.getServer();
+        long deadline = System.currentTimeMillis() + server.getTimeout() * 1000L;
+
+        while (true) {
+            FTPConnection idle = pollIdleConnection(server);
+
+            if (idle != null)
+                return idle;
+
+            FTPConnection connection = FTPConnection.createTemporaryConnection(basis);
+
+            if (connection.connectIfPermitted()) {
+                try {
+                    connection.login();
+                } catch (FTPException ex) {
+                    disconnect(connection);
+                    throw ex;
+                }
+
+                return connection;
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                throw new FTPConnectionFailedException("Timed out waiting for a connection to the server to become available", null, server);
+
+            waitForIdleConnection(Math.min(remaining, CONNECTION_RETRY_INTERVAL), server);
+        }
+    }
+
+    /**
+     * Takes a connection handed back by a finished service, disconnecting any that are no longer logged in
+     * @param server the server the connections are to, for the exception
+     * @return the idle connection, null if there are none
+     * @throws FTPConnectionFailedException if the bundle has been cancelled or has finished, so no more connections should be handed out
+     */
+    private FTPConnection pollIdleConnection(Server server) throws FTPConnectionFailedException {
+        ArrayList<FTPConnection> stale = new ArrayList<>();
+        FTPConnection idle = null;
+
+        synchronized (this) {
+            if (bundleCancelled || finished)
+                throw new FTPConnectionFailedException("The bundle was cancelled while waiting for a connection", null, server);
+
+            while (idle == null && !idleConnections.isEmpty()) {
+                FTPConnection connection = idleConnections.poll();
+
+                if (connection.isConnected() && connection.isLoggedIn())
+                    idle = connection;
+                else
+                    stale.add(connection);
+            }
+        }
+
+        stale.forEach(this::disconnect); // disconnected outside the lock as it talks to the server
+
+        return idle;
+    }
+
+    /**
+     * Waits until a connection is handed back, the bundle is cancelled, or the timeout elapses
+     * @param timeout the maximum time to wait in milliseconds
+     * @param server the server the connections are to, for the exception
+     * @throws FTPConnectionFailedException if interrupted while waiting
+     */
+    private synchronized void waitForIdleConnection(long timeout, Server server) throws FTPConnectionFailedException {
+        try {
+            if (idleConnections.isEmpty() && !bundleCancelled && !finished)
+                wait(timeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new FTPConnectionFailedException("Interrupted while waiting for a connection to the server to become available", null, ex, server);
+        }
+    }
+
+    /**
+     * Hands back a connection that was retrieved by borrowConnection so that it can be used by the next service, waking up a service waiting for one.
+     * If the bundle has finished, the connection is disconnected instead
+     * @param connection the connection to hand back
+     */
+    void returnConnection(FTPConnection connection) {
+        synchronized (this) {
+            if (!finished && connection.isConnected()) {
+                idleConnections.add(connection);
+                notifyAll();
+                return;
+            }
+        }
+
+        disconnect(connection);
+    }
+
+    /**
+     * Disconnects all the idle connections and wakes up any service waiting for a connection so that it gives up
+     */
+    private void closeConnections() {
+        ArrayList<FTPConnection> connections;
+
+        synchronized (this) {
+            connections = new ArrayList<>(idleConnections);
+            idleConnections.clear();
+            notifyAll();
+        }
+
+        connections.forEach(this::disconnect);
+    }
+
+    /**
+     * Disconnects the provided connection, ignoring any errors as the connection is no longer needed
+     * @param connection the connection to disconnect
+     */
+    private void disconnect(FTPConnection connection) {
+        try {
+            if (connection.isConnected())
+                connection.disconnect();
+        } catch (FTPException ex) {
+            if (FTPSystem.isDebugEnabled())
+                ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Activates the bundle by scheduling the first width services to run and displaying the bundle as a task.
+     * This should be called from the FX thread
      */
     public void activate() {
         activated = true;
-        services.forEach(service -> {
-            if (service.operation == FileService.Operation.COPY)
-                service.start();
-            else
-                service.schedule();
-        });
+        width = getServerWidth(FTPSystem.getConnection() == null ? null:FTPSystem.getConnection().getServer());
+        waitingServices.addAll(services);
+        calculateTotalBytes();
+
+        updateState(State.RUNNING);
+        updateProgress();
+        displayTask();
+
+        scheduleNextServices();
+        checkCompleted(); // in case the bundle is empty
+    }
+
+    /**
+     * Starts the background task. For a bundle, this is the same as calling activate
+     */
+    @Override
+    public void start() {
+        activate();
+    }
+
+    /**
+     * Schedules the background task. For a bundle, this is the same as calling activate, with the services in it being scheduled
+     */
+    @Override
+    public void schedule() {
+        activate();
+    }
+
+    /**
+     * Cancels every service in the bundle that has not finished. Services that have not been scheduled yet are cancelled without ever being started
+     */
+    @Override
+    public void cancel() {
+        if (activated && !finished) {
+            synchronized (this) {
+                bundleCancelled = true;
+                notifyAll(); // services waiting for a connection give up
+            }
+
+            new ArrayList<>(services).forEach(FileService::cancel); // copy as cancelling a service notifies this bundle, removing it from services
+        }
+    }
+
+    /**
+     * Use this call to determine if the bundle is ready, i.e. it has not been activated yet
+     *
+     * @return true if ready, false if not
+     */
+    @Override
+    public boolean isReady() {
+        return !activated;
     }
 
     /**
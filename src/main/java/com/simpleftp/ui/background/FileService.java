@@ -18,14 +18,22 @@
 package com.simpleftp.ui.background;
 
 import com.simpleftp.filesystem.FileOperationError;
+import com.simpleftp.filesystem.LocalFile;
+import com.simpleftp.filesystem.RemoteFile;
+import com.simpleftp.filesystem.events.FileSystemEvent;
 import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.interfaces.CommonFile;
 import com.simpleftp.filesystem.interfaces.FileSystem;
+import com.simpleftp.filesystem.interfaces.FileSystemEventListener;
+import com.simpleftp.filesystem.FileUtils;
+import com.simpleftp.filesystem.journal.TransferJournal;
 import com.simpleftp.ftp.FTPSystem;
 import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.connection.Server;
 import com.simpleftp.ftp.exceptions.FTPException;
 import com.simpleftp.properties.Properties;
 import com.simpleftp.ui.UI;
+import com.simpleftp.ui.background.scheduling.PathLock;
 import com.simpleftp.ui.background.scheduling.TaskScheduler;
 import com.simpleftp.ui.interfaces.ActionHandler;
 import javafx.application.Platform;
@@ -34,8 +42,10 @@ import javafx.concurrent.Task;
 import javafx.concurrent.Worker;
 import lombok.Getter;
 
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class provides a service for doing copy/move operations on files in the background.
@@ -73,7 +83,7 @@ public abstract class FileService extends AbstractDisplayableBackgroundTask {
     /**
      * The FileSystem backing the operations this FileService is doing
      */
-    protected FileSystem fileSystem;
+    protected volatile FileSystem fileSystem;
     /**
      * The action handler to use for when operation succeeds
      */
@@ -87,18 +97,34 @@ public abstract class FileService extends AbstractDisplayableBackgroundTask {
      */
     @Getter
     private final ErrorMonitor errorMonitor;
+    /**
+     * The monitor for watching the progress of the operation
+     */
+    private final ProgressMonitor progressMonitor;
     /**
      * The bundle this service is a part of if any
      */
     BundledServices bundle;
     /**
-     * The scheduler that will schedule this service
+     * Flag set when this service is cancelled or fails, so the worker thread knows to release the connection when the operation stops
+     */
+    private volatile boolean cancelled;
+    /**
+     * True while the worker thread is carrying out the operation
+     */
+    private volatile boolean operationRunning;
+    /**
+     * Ensures the connection is only handed back/disconnected once, as both the worker thread and the FX thread may try to when cancelled
+     */
+    private final AtomicBoolean connectionReleased = new AtomicBoolean();
+    /**
+     * The journal recording the operation so it can be resumed if interrupted. Null if the operation isn't journaled or hasn't started
      */
-    private static final TaskScheduler<CommonFile, FileService> scheduler = new TaskScheduler<>();
+    private volatile TransferJournal journal;
     /**
-     * Keep track of all scheduled FileServices
+     * The scheduler that will schedule this service
      */
-    private static final ArrayList<FileService> scheduledServices = new ArrayList<>();
+    private static final TaskScheduler<FileService> scheduler = new TaskScheduler<>();
     /**
      * A hash map mapping an operation to a boolean to check if a destination file is required and if not, null can be provided
      */
@@ -142,6 +168,7 @@ public abstract class FileService extends AbstractDisplayableBackgroundTask {
         this.destination = destination;
         initService();
         errorMonitor = new ErrorMonitor();
+        progressMonitor = new ProgressMonitor();
     }
 
     /**
@@ -211,9 +238,21 @@ public abstract class FileService extends AbstractDisplayableBackgroundTask {
      * Performs the actual copy/move operation
      */
     private void doOperation() {
+        operationRunning = true;
+
         try {
             FileSystem fileSystem = getFileSystem();
-            errorMonitor.start(); // start the error monitor after we initialise the file system to prevent different filesystems being created if a race condition was to occur
+            if (cancelled) // cancelled while the connection was being opened, so the file system was not there to cancel
+                return;
+
+            if (isJournaled()) {
+                if (journal == null)
+                    journal = TransferJournal.create(operation == Operation.COPY, source, destination, getServer(fileSystem));
+                fileSystem.setJournal(journal);
+            }
+
+            errorMonitor.start(); // start the monitors after we initialise the file system to prevent different filesystems being created if a race condition was to occur
+            progressMonitor.start();
             updateState(State.RUNNING);
             switch (operation) {
                 case COPY: operationSucceeded = fileSystem.copyFiles(source, destination);
@@ -226,6 +265,52 @@ public abstract class FileService extends AbstractDisplayableBackgroundTask {
         } catch (FileSystemException ex) {
             operationSucceeded = false;
             operationException = ex;
+            if (FTPSystem.isDebugEnabled() && !cancelled)
+                ex.printStackTrace();
+        } finally {
+            operationRunning = false;
+
+            if (journal != null)
+                journal.finish(operationException != null && !cancelled);
+
+            if (cancelled)
+                releaseCancelledConnection();
+        }
+    }
+
+    /**
+     * Determines if the operation of this service is recorded in a TransferJournal so it can be resumed if interrupted.
+     * This is a copy/move between the local and remote file systems or a local copy. A move on the same file system is a rename and a remote copy
+     * goes through a temporary local copy, so they aren't journaled
+     * @return true if the operation is journaled
+     */
+    private boolean isJournaled() {
+        if (operation == Operation.REMOVE)
+            return false;
+
+        boolean sourceLocal = source.isLocal();
+        return sourceLocal != destination.isLocal() || (sourceLocal && operation == Operation.COPY);
+    }
+
+    /**
+     * Gets the server the file system's connection is connected to
+     * @param fileSystem the file system carrying out the operation
+     * @return the server, null if the file system doesn't use a connection
+     */
+    private static Server getServer(FileSystem fileSystem) {
+        FTPConnection connection = fileSystem.getFTPConnection();
+        return connection == null ? null:connection.getServer();
+    }
+
+    /**
+     * Releases the connection after the operation stopped because this service was cancelled. This is called on the worker thread once the aborted transfer has
+     * returned, so the FX thread doesn't wait on the connection. If the connection recovered from the abort, it can be handed back to the bundle to be reused
+     */
+    private void releaseCancelledConnection() {
+        try {
+            FTPConnection connection = fileSystem == null ? null:fileSystem.getFTPConnection();
+            closeConnection(connection != null && connection.isConnected() && connection.isLoggedIn());
+        } catch (FTPException ex) {
             if (FTPSystem.isDebugEnabled())
                 ex.printStackTrace();
         }
@@ -235,47 +320,62 @@ public abstract class FileService extends AbstractDisplayableBackgroundTask {
      * This operation is called when the copyMoveOperation succeeds
      */
     private void doSuccess() {
-        scheduledServices.remove(this);
-
         if (operationSucceeded) {
             updateState(State.COMPLETED);
             if (onOperationSucceeded != null)
                 onOperationSucceeded.doAction();
-
-            if (bundle != null)
-                bundle.notify(BundledServices.NotificationType.COMPLETED, this);
         } else {
             updateState(State.FAILED);
             if (onOperationFailed != null)
                 onOperationFailed.doAction();
-
-            if (bundle != null)
-                bundle.notify(BundledServices.NotificationType.FAILED, this);
         }
 
-        cancelErrorMonitor();
-
         try {
-            FileSystem fileSystem = getFileSystem();
-            FTPConnection connection = fileSystem.getFTPConnection();
-            if (connection != null && connection.isConnected())
-                connection.disconnect();
-        } catch (FTPException | FileSystemException ex) {
+            closeConnection(true);
+        } catch (FTPException ex) {
             if (FTPSystem.isDebugEnabled())
                 ex.printStackTrace();
             UI.doError("Service Completion Error", "An error occurred disconnecting the service's connection because: " + ex.getMessage());
         }
+
+        if (bundle != null) // notify the bundle after closing the connection so it can be handed back to the bundle before it closes its connections
+            bundle.notify(operationSucceeded ? BundledServices.NotificationType.COMPLETED:BundledServices.NotificationType.FAILED, this);
     }
 
     /**
-     * Cancels the ErrorMonitor service
+     * Opens the connection for this FileService's FileSystem to use. If this service is part of a bundle, the connection is borrowed from the
+     * bundle, else a new temporary connection is created
+     * @return the connected and logged in connection
+     * @throws FTPException if the connection fails to be opened
      */
-    private void cancelErrorMonitor() {
-        try {
-            errorMonitor.cancel();
-        } catch (FileSystemException ex) {
-            if (FTPSystem.isDebugEnabled())
-                ex.printStackTrace();
+    FTPConnection openConnection() throws FTPException {
+        if (bundle != null) {
+            return bundle.borrowConnection();
+        } else {
+            FTPConnection connection = FTPConnection.createTemporaryConnection(FTPSystem.getConnection());
+            connection.connect();
+            connection.login();
+
+            return connection;
+        }
+    }
+
+    /**
+     * Closes the connection being used by this FileService's FileSystem if the FileSystem has been initialised.
+     * If this service is part of a bundle and the connection can be reused, it is handed back to the bundle, else it is disconnected
+     * @param reusable true if the connection is in a state that it can be reused, i.e. the operation was not cancelled midway
+     * @throws FTPException if an error occurs disconnecting
+     */
+    private void closeConnection(boolean reusable) throws FTPException {
+        if (fileSystem != null && connectionReleased.compareAndSet(false, true)) {
+            FTPConnection connection = fileSystem.getFTPConnection();
+
+            if (connection != null) {
+                if (bundle != null && reusable)
+                    bundle.returnConnection(connection);
+                else if (connection.isConnected())
+                    connection.disconnect();
+            }
         }
     }
 
@@ -293,10 +393,20 @@ public abstract class FileService extends AbstractDisplayableBackgroundTask {
     }
 
     /**
-     * Attempts to fully cancel this FileService by disconnection the connection in the file system if it is connected
+     * Attempts to fully cancel this FileService. The file system is cancelled so that any recursive operation stops before the next file and the transfer in progress is aborted.
+     * If the operation is still running, its connection is released by the worker thread when it stops, otherwise it is disconnected here.
+     * This only takes effect the first time it is called, so a service already cancelled can't then be failed, or notify its bundle twice
      * @param wantedCancel true if this was an intended cancel and not a cancel because of an error
      */
     private void doCancel(boolean wantedCancel) {
+        if (cancelled)
+            return;
+
+        cancelled = true;
+        errorMonitor.stop();
+        if (fileSystem != null)
+            fileSystem.cancel();
+
         try {
             if (!wantedCancel) {
                 updateState(State.FAILED);
@@ -305,28 +415,25 @@ public abstract class FileService extends AbstractDisplayableBackgroundTask {
                 } else {
                     UI.doError("Task Failure", "A file service task has failed due to an unknown error");
                 }
-
-                if (bundle != null)
-                    bundle.notify(BundledServices.NotificationType.FAILED, this);
             } else {
                 updateState(State.CANCELLED);
-                if (bundle != null)
-                    bundle.notify(BundledServices.NotificationType.CANCELLED, this);
             }
 
-            FileSystem fileSystem = getFileSystem();
-            FTPConnection connection = fileSystem.getFTPConnection();
-            if (connection != null && connection.isConnected())
-                connection.disconnect();
+            if (!operationRunning) { // if still running, the worker thread releases the connection and journal once the aborted operation returns
+                closeConnection(false);
 
-            scheduledServices.remove(this);
-            cancelErrorMonitor();
-        } catch (FTPException | FileSystemException ex) {
+                if (journal != null)
+                    journal.delete();
+            }
+        } catch (FTPException ex) {
             if (FTPSystem.isDebugEnabled())
                 ex.printStackTrace();
             UI.doError("Service Cancellation Error", "An error occurred disconnecting the service's connection because: " + ex.getMessage());
             updateState(State.FAILED);
         }
+
+        if (bundle != null)
+            bundle.notify(wantedCancel ? BundledServices.NotificationType.CANCELLED:BundledServices.NotificationType.FAILED, this);
     }
 
     /**
@@ -349,63 +456,48 @@ public abstract class FileService extends AbstractDisplayableBackgroundTask {
     }
 
     /**
-     * Checks if there is a task in progress where either the following conditions match:
+     * Gets the locks this service needs to hold while running.
      * <ol>
-     *     <li>This source matches another service with the same source: returns this source file as the key</li>
-     *     <li>The destination of this service matches a source of another service: that source is returned</li>
-     *     <li>This source matches the destination of another service: that source is returned</li>
-     *     <li>This destination matches another services destination: the other service's source is returned</li>
+     *     <li>COPY: a shared lock on the source as it is only read, and an exclusive lock on the path the source is being copied to in the destination</li>
+     *     <li>MOVE: an exclusive lock on the source as it is being removed, and an exclusive lock on the path the source is being moved to in the destination</li>
+     *     <li>REMOVE: an exclusive lock on the source</li>
      * </ol>
-     * Use this to get the source file to register this service to. Default source file returned is the source of this service
-     * @return the source file to register this service to
-     */
-    private CommonFile getSchedulerKey() {
-        CommonFile sourceFile = source;
-        for (FileService service : scheduledServices) {
-            if (source.equals(service.source)) {
-                break;
-            } else if (destination != null && destination.equals(service.source)) {
-                sourceFile = service.source;
-                break;
-            } else if (source.equals(service.destination)) {
-                sourceFile = service.source;
-                break;
-            } else if (destination != null && destination.equals(service.destination)) {
-                sourceFile = service.source;
-                break;
-            }
-        }
+     * The lock on the destination is held on the path that will be created rather than on the destination directory itself, so that multiple files can be
+     * copied/moved into the same directory in parallel, while still conflicting with a removal or move of the destination directory.
+     * @return the locks this service needs
+     */
+    private PathLock[] getLocks() {
+        String sourcePath = source.getFilePath();
+        boolean sourceLocal = source.isLocal();
+
+        if (operation == Operation.REMOVE) {
+            return new PathLock[]{PathLock.exclusive(sourcePath, sourceLocal)};
+        } else {
+            boolean destinationLocal = destination.isLocal();
+            String targetPath = FileUtils.appendPath(destination.getFilePath(), source.getName(), destinationLocal);
+            PathLock sourceLock = operation == Operation.COPY ? PathLock.shared(sourcePath, sourceLocal):PathLock.exclusive(sourcePath, sourceLocal);
 
-        return sourceFile;
+            return new PathLock[]{sourceLock, PathLock.exclusive(targetPath, destinationLocal)};
+        }
     }
 
     /**
      * Schedules this FileService to be ran rather than immediately starting it.
      * Use this if you want to avoid conflicts.
-     * It schedules the service based on the following criteria:
-     * <ol>
-     *     <li>This source file matches another service with the same source file: schedules with this source file as the key</li>
-     *     <li>The destination file of this service matches a source file of another service: that source file is used as the key</li>
-     *     <li>This source file matches the destination file of another service: that source file is used as the key</li>
-     *     <li>This destination file matches another services' destination file: the other service's source file is used as the key</li>
-     * </ol>
-     *
-     * This is as far as is reasonably possible to schedule this service. There may be conditions that have not been covered by this and start a service with a
-     * different key but that is unavoidable and possibly rare. Some conditions, it may be up to the calling class to ensure there are no conflicting services called through
-     * other methods like checking existing FileServices in the UI's background tasks list.
+     * The service is scheduled with the locks returned by getLocks(), so it will wait for any scheduled service it conflicts with, i.e. one that is working
+     * on the same file, a parent of the file or a file inside it, where at least one of them is changing that file. Services that don't conflict are run in parallel up to
+     * the TASK_SCHEDULER_PARALLELISM property.
      *
      * <b>It is preferred to call this over start since a task started with start() cannot be seen to subsequent schedule() calls. I.e.
      * A task with the same source file may have been started with start() and then another one with same file started with schedule(). The
-     * task started with schedule() will not know about the one started by start() as it is not in the scheduling queue and thus cannot be checked if it is already in
-     * progress</b>
+     * task started with schedule() will not know about the one started by start() as it does not hold any locks with the scheduler</b>
      *
      * This should be called from FX thread
      */
     @Override
     public void schedule() {
-        scheduler.schedule(getSchedulerKey(), this);
-        scheduledServices.add(this);
         updateState(State.SCHEDULED);
+        scheduler.schedule(this, getLocks());
         displayTask();
     }
 
@@ -426,21 +518,45 @@ public abstract class FileService extends AbstractDisplayableBackgroundTask {
     }
 
     /**
-     * This class monitors FileOperationErrors in the file system during the operation
+     * Constructs a FileService to resume the operation recorded in the journal, which was interrupted by the application closing or losing its connection.
+     * Files the journal records as transferred are skipped and a file that was partially transferred is continued from where it stopped.
+     * Remote files are looked up with the system connection, so this should be called when it is logged in to the server the journal was recorded on
+     * @param journal the journal of the operation to resume, loaded by TransferJournal.loadUnfinished()
+     * @return the instance of FileService to resume the operation
+     * @throws FileSystemException if the source or destination of the operation no longer exist
      */
-    public class ErrorMonitor {
-        /**
-         * The backing service
-         */
-        private final Service<Void> service;
+    public static FileService resume(TransferJournal journal) throws FileSystemException {
+        String sourcePath = journal.getSourcePath(), destinationPath = journal.getDestinationPath();
+        CommonFile source = journal.isSourceLocal() ? new LocalFile(sourcePath):new RemoteFile(sourcePath);
+        CommonFile destination = journal.isDestinationLocal() ? new LocalFile(destinationPath):new RemoteFile(destinationPath);
+
+        if (!source.exists())
+            throw new FileSystemException("The source file " + sourcePath + " no longer exists");
+
+        if (!destination.isADirectory())
+            throw new FileSystemException("The destination directory " + destinationPath + " no longer exists");
+
+        FileService fileService = newInstance(source, destination, journal.isCopy() ? Operation.COPY:Operation.MOVE, journal.isDestinationLocal());
+        fileService.journal = journal;
+
+        return fileService;
+    }
+
+    /**
+     * This class monitors FileOperationErrors in the file system during the operation.
+     * It is subscribed to the file system's event bus, so errors are displayed as they are published rather than being polled for.
+     * It unsubscribes itself once the operation has completed and any errors published before completion have been displayed, or once the service is
+     * cancelled or fails, after which no more errors are displayed
+     */
+    public class ErrorMonitor implements FileSystemEventListener {
         /**
-         * Returns true if cancelled
+         * A variable that determines the error limit was reached
          */
-        private boolean cancelled;
+        private volatile boolean errorLimitReached;
         /**
-         * A variable that determines the error limit was reacheds
+         * The number of errors received so far
          */
-        private boolean errorLimitReached;
+        private final AtomicInteger errorsReceived = new AtomicInteger();
         /**
          * The number of error dialogs before it is considered as fatal as if we are getting a lot of errors, something must have went wrong
          */
@@ -450,47 +566,53 @@ public abstract class FileService extends AbstractDisplayableBackgroundTask {
          * Constructs an ErrorMonitor instance
          */
         ErrorMonitor() {
-            service = new Service<>() {
-                @Override
-                protected Task<Void> createTask() {
-                    return new Task<>() {
-                        @Override
-                        protected Void call() throws Exception {
-                            if (!isCancelled()) {
-                                FileSystem fileSystem = getFileSystem();
-
-                                int errorsDisplayed = 0;
-                                while (!cancelled && !isCancelled()) {
-                                    FileOperationError error = fileSystem.getNextFileOperationError();
-
-                                    if (error != null) {
-                                        if (errorsDisplayed < maxErrorDialogs) {
-                                            displayOperationError(error);
-                                            errorsDisplayed++;
-                                        } else if (errorsDisplayed == maxErrorDialogs) {
-                                            cancelled = errorLimitReached = true;
-                                            Platform.runLater(() -> {
-                                                if (FileService.this.service.isRunning())
-                                                    FileService.this.service.cancel();
-                                                FileService.this.doCancel(false);
-                                            });
-                                        }
-                                    }
-                                }
-                            }
-
-                            return null;
-                        }
-                    };
-                }
-            };
         }
 
         /**
-         * Starts this ErrorMonitor
+         * Starts this ErrorMonitor by subscribing it to the file system's event bus
          */
         public void start() {
-            service.start();
+            fileSystem.getEventBus().subscribe(this);
+        }
+
+        /**
+         * Stops this ErrorMonitor by unsubscribing it from the file system's event bus
+         */
+        public void stop() {
+            FileSystem fileSystem = FileService.this.fileSystem;
+
+            if (fileSystem != null)
+                fileSystem.getEventBus().unsubscribe(this);
+        }
+
+        /**
+         * Handles an event published by the file system, displaying it if it is an error.
+         * If the number of errors exceeds the FILE_OPERATION_ERROR_LIMIT, the service is cancelled as a failure
+         * @param event the event that was published
+         */
+        @Override
+        public void onEvent(FileSystemEvent event) {
+            FileSystemEvent.Type type = event.getType();
+
+            if (type == FileSystemEvent.Type.ERROR) {
+                if (cancelled) // errors published while the cancelled operation stops aren't errors of the operation
+                    return;
+
+                int errors = errorsReceived.incrementAndGet();
+
+                if (errors <= maxErrorDialogs) {
+                    displayOperationError(event.getError());
+                } else if (errors == maxErrorDialogs + 1) {
+                    errorLimitReached = true;
+                    Platform.runLater(() -> {
+                        if (service.isRunning())
+                            service.cancel();
+                        doCancel(false);
+                    });
+                }
+            } else if (type == FileSystemEvent.Type.COMPLETED) {
+                stop();
+            }
         }
 
         /**
@@ -511,19 +633,103 @@ public abstract class FileService extends AbstractDisplayableBackgroundTask {
             final String finalMessage = message;
             Platform.runLater(() -> UI.doError("File Operation Error", finalMessage));
         }
+    }
+
+    /**
+     * This class monitors the progress events published by the file system during the operation and displays the number of files and bytes
+     * transferred in the description of this service. If the service is bundled, the bytes are also passed on to the bundle.
+     * Transfers that stalled and are being retried put the service into the RETRYING state until the next file is transferred, and the number of retries is displayed too.
+     *
+     * Progress events can be published much faster than the UI needs to be updated, so they are counted as they arrive and at most one
+     * UI update is queued with Platform.runLater at a time
+     */
+    private class ProgressMonitor implements FileSystemEventListener {
+        /**
+         * The number of files transferred
+         */
+        private final AtomicLong filesTransferred = new AtomicLong();
+        /**
+         * The number of bytes transferred
+         */
+        private final AtomicLong bytesTransferred = new AtomicLong();
+        /**
+         * The number of bytes transferred that have not yet been passed on to the bundle
+         */
+        private final AtomicLong pendingBundleBytes = new AtomicLong();
+        /**
+         * The number of times a stalled transfer has been retried
+         */
+        private final AtomicInteger retries = new AtomicInteger();
+        /**
+         * Flag to determine if an update of the UI has been queued but not yet ran
+         */
+        private final AtomicBoolean updateQueued = new AtomicBoolean();
+        /**
+         * The description of the service before any progress was added to it
+         */
+        private String baseDescription;
+
+        /**
+         * Starts this ProgressMonitor by subscribing it to the file system's event bus
+         */
+        void start() {
+            fileSystem.getEventBus().subscribe(this);
+        }
 
         /**
-         * Cancels this error monitor displaying all file operations left if any
+         * Handles an event published by the file system, counting it if it is progress
+         * @param event the event that was published
          */
-        public void cancel() throws FileSystemException {
-            if (!cancelled) {
-                FileSystem fileSystem = getFileSystem();
-                while (fileSystem.hasNextFileOperationError())
-                    displayOperationError(fileSystem.getNextFileOperationError());
-
-                cancelled = true;
-                service.cancel();
+        @Override
+        public void onEvent(FileSystemEvent event) {
+            FileSystemEvent.Type type = event.getType();
+
+            if (type == FileSystemEvent.Type.PROGRESS) {
+                long bytes = event.getBytes();
+                filesTransferred.incrementAndGet();
+                if (state == State.RETRYING) { // the retried transfer has finished
+                    Platform.runLater(() -> {
+                        if (state == State.RETRYING)
+                            updateState(State.RUNNING);
+                    });
+                }
+                bytesTransferred.addAndGet(bytes);
+                pendingBundleBytes.addAndGet(bytes);
+
+                if (updateQueued.compareAndSet(false, true))
+                    Platform.runLater(this::updateProgress);
+            } else if (type == FileSystemEvent.Type.RETRYING) {
+                retries.incrementAndGet();
+                Platform.runLater(() -> {
+                    if (state == State.RUNNING)
+                        updateState(State.RETRYING);
+                    updateProgress();
+                });
+            } else if (type == FileSystemEvent.Type.COMPLETED) {
+                fileSystem.getEventBus().unsubscribe(this);
             }
         }
+
+        /**
+         * Updates the description with the progress so far and passes the bytes on to the bundle. Called on the FX thread
+         */
+        private void updateProgress() {
+            updateQueued.set(false);
+
+            if (baseDescription == null)
+                baseDescription = getDescriptionProperty().getValue();
+
+            long files = filesTransferred.get();
+            int retried = retries.get();
+            String progress = files + (files == 1 ? " file, ":" files, ") + BundledServices.formatBytes(bytesTransferred.get());
+            if (retried > 0)
+                progress += ", " + retried + (retried == 1 ? " retry":" retries");
+
+            setDescription(baseDescription + " (" + progress + ")");
+
+            long bundleBytes = pendingBundleBytes.getAndSet(0);
+            if (bundle != null && bundleBytes > 0)
+                bundle.addTransferredBytes(bundleBytes);
+        }
     }
 }
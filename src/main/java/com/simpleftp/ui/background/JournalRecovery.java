@@ -0,0 +1,74 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ui.background;
+
+import com.simpleftp.filesystem.exceptions.FileSystemException;
+import com.simpleftp.filesystem.journal.TransferJournal;
+import com.simpleftp.ftp.FTPSystem;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.connection.Server;
+import com.simpleftp.ui.UI;
+
+/**
+ * This class offers to resume the copy/move operations that did not finish the last time they were run, i.e. because the application closed or the connection was lost.
+ * The operations are found from the TransferJournals left behind by them.
+ */
+public final class JournalRecovery {
+    /**
+     * Prevent instantiation
+     */
+    private JournalRecovery() {}
+
+    /**
+     * Asks the user if they want to resume each unfinished operation that can be carried out with the system connection, i.e. it was carried out on the same server or
+     * was local only. A confirmed operation is scheduled as a FileService, while the journal of a declined operation is deleted.
+     * Journals recorded on other servers are left to be offered when logged in to that server.
+     *
+     * This should be called from the FX thread once the system connection is logged in
+     */
+    public static void offerResume() {
+        FTPConnection connection = FTPSystem.getConnection();
+        Server server = connection == null ? null:connection.getServer();
+
+        for (TransferJournal journal : TransferJournal.loadUnfinished()) {
+            if (server == null || !journal.isResumableWith(server)) {
+                journal.close();
+                continue;
+            }
+
+            String operation = journal.isCopy() ? "copy":"move";
+            String header = journal.isCopy() ? "Copy":"Move";
+            String description = operation + " of " + journal.getSourcePath() + " to " + journal.getDestinationPath();
+
+            if (UI.doConfirmation("Resume " + header, "The " + description + " did not finish, with " + journal.getCompletedCount()
+                    + " file(s) completed. Do you want to resume it?")) {
+                try {
+                    FileService.resume(journal)
+                            .setOnOperationSucceeded(() -> UI.doInfo(header + " Completed", "The " + description + " has completed"))
+                            .setOnOperationFailed(() -> UI.doError(header + " Failed", "The " + description + " has failed"))
+                            .schedule();
+                } catch (FileSystemException ex) {
+                    journal.delete();
+                    UI.doError("Resume Failed", "The " + description + " cannot be resumed: " + ex.getMessage());
+                }
+            } else {
+                journal.delete();
+            }
+        }
+    }
+}
@@ -22,7 +22,6 @@ import com.simpleftp.filesystem.LocalFileSystem;
 import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.interfaces.CommonFile;
 import com.simpleftp.filesystem.interfaces.FileSystem;
-import com.simpleftp.ftp.FTPSystem;
 import com.simpleftp.ftp.connection.FTPConnection;
 import com.simpleftp.ftp.exceptions.FTPException;
 
@@ -128,9 +127,7 @@ final class LocalFileService extends FileService {
             FTPConnection connection = null;
             try {
                 if (connectionRequired()) {
-                    connection = FTPConnection.createTemporaryConnection(FTPSystem.getConnection());
-                    connection.connect();
-                    connection.login();
+                    connection = openConnection();
                 }
             } catch (FTPException ex) {
                 throw new FileSystemException("Couldn't initialise the FileSystem for this FileService", ex);
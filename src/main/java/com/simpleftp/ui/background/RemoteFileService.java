@@ -22,7 +22,6 @@ import com.simpleftp.filesystem.RemoteFileSystem;
 import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.interfaces.CommonFile;
 import com.simpleftp.filesystem.interfaces.FileSystem;
-import com.simpleftp.ftp.FTPSystem;
 import com.simpleftp.ftp.connection.FTPConnection;
 import com.simpleftp.ftp.exceptions.FTPException;
 
@@ -93,9 +92,7 @@ class RemoteFileService extends FileService {
         if (fileSystem == null) {
             FTPConnection connection;
             try {
-                connection = FTPConnection.createTemporaryConnection(FTPSystem.getConnection());
-                connection.connect();
-                connection.login();
+                connection = openConnection();
             } catch (FTPException ex) {
                 throw new FileSystemException("Couldn't initialise the FileSystem for this FileService", ex);
             }
@@ -94,6 +94,10 @@ public interface BackgroundTask {
          * The BackgroundTask's task has begun
          */
         RUNNING,
+        /**
+         * A transfer carried out by the task stalled and is being retried. The task goes back to RUNNING once the transfer makes progress
+         */
+        RETRYING,
         /**
          * The task has been cancelled using cancel() method
          */
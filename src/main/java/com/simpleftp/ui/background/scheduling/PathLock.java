@@ -0,0 +1,126 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ui.background.scheduling;
+
+import com.simpleftp.filesystem.FileUtils;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * This class represents a lock that a scheduled task wants to hold on a path for the duration of its run.
+ * A lock is either shared, i.e. the task only reads the path (for example the source of a copy), or exclusive, i.e. the task
+ * changes the path (for example the source of a move or a removal, or the destination a file is being copied/moved to).
+ *
+ * A lock on a path covers every path below it, so an exclusive lock on /a conflicts with any lock on /a/b and vice versa.
+ * The exception is an open lock, which is held while a file is open in an editor or a directory is open in a pane. It only covers the path itself,
+ * so it stops the path or a parent of it being changed while open, but not the files inside an open directory.
+ * Local and remote paths are kept apart, so a local path never conflicts with a remote path.
+ */
+@Getter
+public final class PathLock {
+    /**
+     * The path this lock is held on
+     */
+    private final String path;
+    /**
+     * True if the path is a local path, false if remote
+     */
+    private final boolean local;
+    /**
+     * The mode of this lock
+     */
+    private final Mode mode;
+    /**
+     * The components of the path, split once when the lock is created as the lock table walks them every time the scheduler checks the lock
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final List<String> components;
+
+    /**
+     * Constructs a lock on the provided path
+     * @param path the path to lock
+     * @param local true if the path is local, false if remote
+     * @param mode the mode of the lock
+     */
+    public PathLock(String path, boolean local, Mode mode) {
+        this.path = path;
+        this.local = local;
+        this.mode = mode;
+        this.components = FileUtils.parsePath(path, local).getComponents();
+    }
+
+    /**
+     * This enum represents the modes that a PathLock can be held in
+     */
+    public enum Mode {
+        /**
+         * Any number of shared locks can be held on a path at the same time, once no exclusive lock is held on it, a parent of it or a child of it
+         */
+        SHARED,
+        /**
+         * An exclusive lock can only be held on a path if no other lock is held on it, a parent of it or a child of it
+         */
+        EXCLUSIVE,
+        /**
+         * Any number of open locks can be held on a path at the same time, once no exclusive lock is held on it or a parent of it.
+         * Unlike the other modes, an open lock does not cover the paths below it
+         */
+        OPEN
+    }
+
+    /**
+     * Creates a shared lock on the provided path
+     * @param path the path to lock
+     * @param local true if the path is local, false if remote
+     * @return the shared lock
+     */
+    public static PathLock shared(String path, boolean local) {
+        return new PathLock(path, local, Mode.SHARED);
+    }
+
+    /**
+     * Creates an exclusive lock on the provided path
+     * @param path the path to lock
+     * @param local true if the path is local, false if remote
+     * @return the exclusive lock
+     */
+    public static PathLock exclusive(String path, boolean local) {
+        return new PathLock(path, local, Mode.EXCLUSIVE);
+    }
+
+    /**
+     * Creates an open lock on the provided path
+     * @param path the path to lock
+     * @param local true if the path is local, false if remote
+     * @return the open lock
+     */
+    public static PathLock open(String path, boolean local) {
+        return new PathLock(path, local, Mode.OPEN);
+    }
+
+    /**
+     * Returns a String representation of this lock
+     * @return the lock in String form
+     */
+    @Override
+    public String toString() {
+        return mode + " " + (local ? "local":"remote") + " " + path;
+    }
+}
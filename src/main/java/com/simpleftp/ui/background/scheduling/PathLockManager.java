@@ -0,0 +1,160 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ui.background.scheduling;
+
+import com.simpleftp.filesystem.FileUtils;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class is the central table of the paths in use by the UI, used to check if an action can be carried out on a path, e.g. a file can't be deleted
+ * while it or a file inside it is open in an editor, or while a background task is copying it.
+ *
+ * It holds the locks of every task scheduled by a TaskScheduler, from when the task is scheduled until it finishes, and an open lock for every file
+ * opened in an editor and every directory open in a DirectoryPane. The locks are kept in a PathLockTable, so a check walks down the path being checked once
+ * rather than comparing it against every task and opened file.
+ *
+ * A path is only opened once, opening it again does nothing until it is closed.
+ *
+ * This class is thread-safe.
+ */
+public final class PathLockManager {
+    /**
+     * The table of all the locks held
+     */
+    private static final PathLockTable lockTable = new PathLockTable();
+    /**
+     * The open locks on local paths mapped by the normalised path
+     */
+    private static final HashMap<String, PathLock> openedLocalFiles = new HashMap<>();
+    /**
+     * The open locks on remote paths mapped by the normalised path
+     */
+    private static final HashMap<String, PathLock> openedRemoteFiles = new HashMap<>();
+
+    /**
+     * Prevent instantiation
+     */
+    private PathLockManager() {}
+
+    /**
+     * Gets the map of opened files for the locality
+     * @param local true for local paths, false for remote
+     * @return the map of opened files
+     */
+    private static HashMap<String, PathLock> getOpenedFiles(boolean local) {
+        return local ? openedLocalFiles:openedRemoteFiles;
+    }
+
+    /**
+     * Normalises the path so the same path written differently, e.g. with a trailing separator, is treated as one opened path
+     * @param path the path to normalise
+     * @param local true if local, false if remote
+     * @return the normalised path
+     */
+    private static String normalise(String path, boolean local) {
+        return FileUtils.parsePath(path, local).toString();
+    }
+
+    /**
+     * Records that the path is open in the UI, e.g. opened in an editor or as the current directory of a DirectoryPane, by holding an open lock on it.
+     * This does not check if the open conflicts, canOpen should be called first where the open can be refused
+     * @param path the path being opened
+     * @param local true if local, false if remote
+     */
+    public static synchronized void openFile(String path, boolean local) {
+        HashMap<String, PathLock> openedFiles = getOpenedFiles(local);
+        String normalised = normalise(path, local);
+
+        if (!openedFiles.containsKey(normalised)) {
+            PathLock lock = PathLock.open(path, local);
+            openedFiles.put(normalised, lock);
+            lockTable.acquire(lock);
+        }
+    }
+
+    /**
+     * Records that the path is no longer open in the UI, releasing its open lock
+     * @param path the path being closed
+     * @param local true if local, false if remote
+     */
+    public static synchronized void closeFile(String path, boolean local) {
+        PathLock lock = getOpenedFiles(local).remove(normalise(path, local));
+
+        if (lock != null)
+            lockTable.release(lock);
+    }
+
+    /**
+     * Closes all the opened paths of the given locality, e.g. when the remote connection is closed
+     * @param local true to close all local paths, false for remote
+     */
+    public static synchronized void closeAllFiles(boolean local) {
+        HashMap<String, PathLock> openedFiles = getOpenedFiles(local);
+        openedFiles.values().forEach(lockTable::release);
+        openedFiles.clear();
+    }
+
+    /**
+     * Checks if exactly this path is open in the UI
+     * @param path the path to check
+     * @param local true if local, false if remote
+     * @return true if the path is open
+     */
+    public static synchronized boolean isFileOpened(String path, boolean local) {
+        return getOpenedFiles(local).containsKey(normalise(path, local));
+    }
+
+    /**
+     * Checks if the path can be changed, i.e. deleted, renamed or moved. This is not the case if the path or a path inside it is open, or if a background task
+     * is working on the path, a parent of it or a path inside it
+     * @param path the path to check
+     * @param local true if local, false if remote
+     * @return true if the path can be changed
+     */
+    public static synchronized boolean canChange(String path, boolean local) {
+        return lockTable.canAcquire(PathLock.exclusive(path, local));
+    }
+
+    /**
+     * Checks if the path can be opened. This is not the case if a background task is changing the path or a parent of it
+     * @param path the path to check
+     * @param local true if local, false if remote
+     * @return true if the path can be opened
+     */
+    public static synchronized boolean canOpen(String path, boolean local) {
+        return lockTable.canAcquire(PathLock.open(path, local));
+    }
+
+    /**
+     * Holds the locks of a scheduled task until they are released by releaseTaskLocks
+     * @param locks the locks of the task
+     */
+    static synchronized void holdTaskLocks(List<PathLock> locks) {
+        locks.forEach(lockTable::acquire);
+    }
+
+    /**
+     * Releases the locks of a task held by holdTaskLocks
+     * @param locks the locks to release
+     */
+    static synchronized void releaseTaskLocks(List<PathLock> locks) {
+        lockTable.releaseAll(locks);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ui.background.scheduling;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class keeps track of the PathLocks that are currently held. It stores them in a trie keyed by path component,
+ * one trie for local paths and one for remote paths.
+ *
+ * Each node keeps count of the shared, exclusive and open locks held on its own path and the number held on its path or anywhere below it.
+ * This means checking if a lock can be acquired only needs to walk down the path of the lock once, checking the locks held on each parent
+ * and then the counts of the node the path ends on, rather than comparing against every other lock that is held.
+ *
+ * This class is not thread-safe, the TaskScheduler using it synchronizes access to it.
+ */
+public final class PathLockTable {
+    /**
+     * The root of the trie holding local path locks
+     */
+    private final Node localRoot = new Node();
+    /**
+     * The root of the trie holding remote path locks
+     */
+    private final Node remoteRoot = new Node();
+
+    /**
+     * This class represents a node in the trie, i.e. one component of a path
+     */
+    private static class Node {
+        /**
+         * The children of this node mapped by their path component
+         */
+        private final HashMap<String, Node> children = new HashMap<>();
+        /**
+         * The number of shared locks held on this node's path
+         */
+        private int shared;
+        /**
+         * The number of exclusive locks held on this node's path
+         */
+        private int exclusive;
+        /**
+         * The number of open locks held on this node's path
+         */
+        private int open;
+        /**
+         * The number of shared locks held on this node's path or any path below it
+         */
+        private int subtreeShared;
+        /**
+         * The number of exclusive locks held on this node's path or any path below it
+         */
+        private int subtreeExclusive;
+        /**
+         * The number of open locks held on this node's path or any path below it
+         */
+        private int subtreeOpen;
+
+        /**
+         * Returns true if no locks are held on or below this node, meaning it can be removed from the trie
+         * @return true if no locks held on or below this node
+         */
+        private boolean isEmpty() {
+            return subtreeShared == 0 && subtreeExclusive == 0 && subtreeOpen == 0;
+        }
+    }
+
+    /**
+     * Gets the root of the trie the lock belongs to
+     * @param lock the lock to get the root for
+     * @return the root node
+     */
+    private Node getRoot(PathLock lock) {
+        return lock.isLocal() ? localRoot:remoteRoot;
+    }
+
+    /**
+     * Checks if the provided lock can be acquired without conflicting with any lock currently held
+     * @param lock the lock to check
+     * @return true if it can be acquired, false if it conflicts
+     */
+    public boolean canAcquire(PathLock lock) {
+        PathLock.Mode mode = lock.getMode();
+        boolean exclusive = mode == PathLock.Mode.EXCLUSIVE;
+        Node node = getRoot(lock);
+
+        for (String component : lock.getComponents()) {
+            if (node.exclusive > 0 || (exclusive && node.shared > 0))
+                return false; // a parent of the path is locked in a conflicting mode, open locks on a parent never conflict
+
+            node = node.children.get(component);
+
+            if (node == null)
+                return true; // nothing is held on or below this path
+        }
+
+        if (exclusive)
+            return node.isEmpty();
+        else if (mode == PathLock.Mode.OPEN)
+            return node.exclusive == 0; // an open lock doesn't cover the paths below it
+        else
+            return node.subtreeExclusive == 0;
+    }
+
+    /**
+     * Checks if all the provided locks can be acquired
+     * @param locks the locks to check
+     * @return true if all can be acquired, false if any conflicts
+     */
+    public boolean canAcquireAll(List<PathLock> locks) {
+        for (PathLock lock : locks)
+            if (!canAcquire(lock))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Records the provided lock as held. This does not check for conflicts, canAcquire should be called first
+     * @param lock the lock to acquire
+     */
+    public void acquire(PathLock lock) {
+        PathLock.Mode mode = lock.getMode();
+        Node node = getRoot(lock);
+        updateSubtree(node, mode, 1);
+
+        for (String component : lock.getComponents()) {
+            node = node.children.computeIfAbsent(component, k -> new Node());
+            updateSubtree(node, mode, 1);
+        }
+
+        update(node, mode, 1);
+    }
+
+    /**
+     * Adds the delta to the count of locks of the given mode held on the node's own path
+     * @param node the node to update
+     * @param mode the mode of the lock
+     * @param delta 1 when acquiring, -1 when releasing
+     */
+    private void update(Node node, PathLock.Mode mode, int delta) {
+        if (mode == PathLock.Mode.EXCLUSIVE)
+            node.exclusive += delta;
+        else if (mode == PathLock.Mode.SHARED)
+            node.shared += delta;
+        else
+            node.open += delta;
+    }
+
+    /**
+     * Adds the delta to the subtree count of locks of the given mode of the given node
+     * @param node the node to update
+     * @param mode the mode of the lock
+     * @param delta 1 when acquiring, -1 when releasing
+     */
+    private void updateSubtree(Node node, PathLock.Mode mode, int delta) {
+        if (mode == PathLock.Mode.EXCLUSIVE)
+            node.subtreeExclusive += delta;
+        else if (mode == PathLock.Mode.SHARED)
+            node.subtreeShared += delta;
+        else
+            node.subtreeOpen += delta;
+    }
+
+    /**
+     * Releases the provided lock which must have been acquired previously. Any nodes left with no locks on or below them are removed
+     * @param lock the lock to release
+     */
+    public void release(PathLock lock) {
+        PathLock.Mode mode = lock.getMode();
+        Node root = getRoot(lock);
+        List<String> components = lock.getComponents();
+        List<Node> nodes = new ArrayList<>(components.size() + 1);
+        nodes.add(root);
+
+        Node node = root;
+        for (String component : components) {
+            node = node.children.get(component);
+
+            if (node == null)
+                return; // the lock was never acquired
+            nodes.add(node);
+        }
+
+        update(node, mode, -1);
+
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Node current = nodes.get(i);
+            updateSubtree(current, mode, -1);
+
+            if (i > 0 && current.isEmpty())
+                nodes.get(i - 1).children.remove(components.get(i - 1));
+        }
+    }
+
+    /**
+     * Releases all the provided locks
+     * @param locks the locks to release
+     */
+    public void releaseAll(List<PathLock> locks) {
+        locks.forEach(this::release);
+    }
+}
@@ -17,202 +17,204 @@
 
 package com.simpleftp.ui.background.scheduling;
 
-import com.simpleftp.ui.background.interfaces.BackgroundTask;
+import com.simpleftp.properties.Properties;
+import com.simpleftp.ui.background.interfaces.DisplayableBackgroundTask;
 import javafx.application.Platform;
-import javafx.concurrent.ScheduledService;
-import javafx.concurrent.Task;
+import javafx.beans.value.ChangeListener;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.*;
+import java.util.concurrent.Executor;
 
 /**
- * This class is used to schedule a task using T as the object to schedule by. This can be used if a task should be run one after another based on a certain
- * key/parameter being the same for the subsequent task. If this key is different for a different task of the same type, allow it run in parallel.
+ * This class is used to schedule tasks so that tasks working on the same files do not run at the same time, while tasks working on unrelated files run in parallel.
  *
- * Basically, it maintains a map of key -> Queue of tasks which all share that key. So when you schedule a service, you add it to the queue that is mapped by that key.
- * Tasks are started for each key on a FIFO basis.
+ * When a task is scheduled, it is given the PathLocks it needs to hold while it runs, i.e. a shared lock on a path it only reads and an exclusive lock on a path it changes.
+ * A lock on a path covers all the paths below it, so a move of /a conflicts with a removal of /a/b, while two copies reading /a can run together. The held locks are
+ * kept in a PathLockTable, a trie of locked paths, so a conflict check only walks down the path being locked.
  *
- * On each round of checking for tasks to start, each key is iterated through. If there is not already a task running for that key (identified by a mapping of key to running task. A
- * check is done to see if the task is still running by checking if isFinished returns true and removed then), the next task in the queue is removed and started. If the queue is empty, the key and queue are removed from the mappings.
+ * Scheduled tasks wait in a FIFO queue. Each time the queue is dispatched, it is walked from the front and each task is started if none of its locks conflict with a lock held
+ * by a running task or with a lock wanted by a task waiting ahead of it in the queue (so a task is never overtaken by a later task that conflicts with it). At most the configured parallelism number of tasks
+ * are run at a time.
  *
- * If there are no key -> queue mappings in this class, the Service checking for tasks to start is cancelled and will only be restarted on the next schedule call.
+ * There is no polling. The queue is dispatched when a task is scheduled and when a task finishes. The scheduler finds out a task has finished by listening to the task's removable property,
+ * which is set when the task completes, fails or is cancelled. At that point, the task's locks are released and any tasks waiting on them are started.
  *
  * An example is when we are copying/moving files. When we have a FileService task in progress for copying some source file, let's call it <i>a</i>, it could happen that a move
- * FileService is started for the same file <i>a</i>. What happens if the move thread moves a file just before it is copied by the other FileService? Most likely,
- * an error would be thrown saying the file no longer exists. The solution to this would be to make the move FileService wait until the copy FileService is done.
- * How can we make it wait without having to check if the copy thread is finished? Simple, we can schedule it so that it will run sometime after the copy thread is finished by calling
- * taskScheduler.schedule(a, fileService). This will add fileService to a's queues of FileServices to be started next. Now we have the issue of wanting to start another service that is not the
- * same file. Does that have to wait until a FileService belonging to a has completed? No, because that would have been added to the other file's queue, so would run regardless of the in progress
- * task of a.
+ * FileService is started for the same file <i>a</i> or a file inside it. What happens if the move thread moves a file just before it is copied by the other FileService? Most likely,
+ * an error would be thrown saying the file no longer exists. The copy holds a shared lock on <i>a</i> and the move wants an exclusive lock on it, so the move waits until the copy finishes.
+ * A FileService for an unrelated file does not conflict, so it is started straight away if the parallelism allows.
  *
  * It is important to note that this process is a background process, it is not a process that we want users to know about. So, therefore it does not extend AbstractDisplayableBackgroundTask or implement
  * the BackgroundTask interface.
  *
- * @param <T> the "key" to synchronize by, i.e. if you want to register a task to a key (could be if the task is for the same file for e.g. use a CommonFile as a key and then if 2 tasks with the same file object are registered, run one after another),
- *           basically this key is what determines if a task is a duplicate of another and they should be run one after another based on this key.
- *           It is recommended that T overrides both equals() and hashCode() - following their contract if possible
+ * The locks of every scheduled task are also held in the PathLockManager until the task finishes, so the UI can check if a path is in use by any task.
+ *
+ * This class is thread-safe.
+ *
  * @param <R> the type of the task
  */
-public class TaskScheduler<T, R extends BackgroundTask> {
+public class TaskScheduler<R extends DisplayableBackgroundTask> {
+    /**
+     * The queue of tasks waiting to be started in the order they were scheduled
+     */
+    private final LinkedList<ScheduledTask> waitingTasks = new LinkedList<>();
     /**
-     * The hashmap of queues of tasks per type T
+     * The tasks that have been started by this scheduler and have not yet finished
      */
-    private final HashMap<T, Queue<R>> taskQueues;
+    private final HashMap<R, ScheduledTask> runningTasks = new HashMap<>();
     /**
-     * A flag to keep track of if the scheduler has been started or not
+     * The table of locks held by the running tasks
      */
-    private boolean started;
+    private final PathLockTable lockTable = new PathLockTable();
     /**
-     * A flag to keep track of if the scheduler has been cancelled or not
+     * The maximum number of tasks that can run at the same time
      */
-    private boolean cancelled;
+    private final int parallelism;
     /**
-     * The scheduler service backing this class
+     * The executor dispatched tasks are started on
      */
-    private ScheduledService<Void> scheduler;
+    private final Executor starter;
+
     /**
-     * A hash map to keep track of a running task for the specified key
+     * This class represents a task that has been scheduled along with the locks it needs
      */
-    private final HashMap<T, R> runningTask = new HashMap<>();
+    private class ScheduledTask {
+        /**
+         * The task that was scheduled
+         */
+        private final R task;
+        /**
+         * The locks the task holds while running
+         */
+        private final List<PathLock> locks;
+        /**
+         * The listener waiting for the task to finish
+         */
+        private final ChangeListener<Boolean> finishedListener;
+
+        /**
+         * Constructs a scheduled task
+         * @param task the task being scheduled
+         * @param locks the locks it needs
+         */
+        private ScheduledTask(R task, List<PathLock> locks) {
+            this.task = task;
+            this.locks = locks;
+            this.finishedListener = (observable, oldValue, finished) -> {
+                if (finished)
+                    taskFinished(this);
+            };
+        }
+    }
 
     /**
-     * Constructs a TaskScheduler
+     * Constructs a TaskScheduler with the parallelism defined by the TASK_SCHEDULER_PARALLELISM property
      */
     public TaskScheduler() {
-        taskQueues = new HashMap<>();
-        initScheduler();
+        this(Properties.TASK_SCHEDULER_PARALLELISM.getValue());
     }
 
     /**
-     * Initialises the scheduler
+     * Constructs a TaskScheduler with the provided parallelism
+     * @param parallelism the maximum number of tasks to run at the same time
+     * @throws IllegalArgumentException if parallelism is less than 1
      */
-    private void initScheduler() {
-        scheduler = new ScheduledService<>() {
-            @Override
-            protected Task<Void> createTask() {
-                return new Task<>() {
-                    @Override
-                    protected Void call() throws Exception {
-                        if (isCancelled())
-                            throw new InterruptedException();
-                        startNextTask();
-                        return null;
-                    }
-                };
-            }
-        };
+    public TaskScheduler(int parallelism) {
+        this(parallelism, Platform::runLater); // tasks should only be started from the JavaFX thread
+    }
 
-        scheduler.setOnCancelled(e -> {
-            started = false;
-            cancelled = true;
-        });
+    /**
+     * Constructs a TaskScheduler with the provided parallelism that starts its tasks on the provided executor
+     * @param parallelism the maximum number of tasks to run at the same time
+     * @param starter the executor to start dispatched tasks on
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public TaskScheduler(int parallelism, Executor starter) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("The parallelism of a TaskScheduler must be at least 1");
 
-        scheduler.setOnFailed(e -> started = cancelled = false);
+        this.parallelism = parallelism;
+        this.starter = starter;
     }
 
     /**
-     * Checks the status of the current running task for the provided key, if any. If it isn't running, it is removed from the hashmap
-     * @param key the key to check
-     * @return true if no task has finished for the given key and therefore not removed from the running task map for that key
+     * Walks the waiting queue and starts every task that does not conflict with the running tasks or a task waiting ahead of it, until the parallelism
+     * is reached. Must be called with the lock on this scheduler held
      */
-    private boolean isTaskInProgress(T key) {
-        R task = runningTask.get(key);
-        if (task != null) {
+    private void dispatch() {
+        PathLockTable waitingLocks = new PathLockTable(); // the locks wanted by tasks that have to keep waiting
+        List<ScheduledTask> dispatched = new ArrayList<>();
+        Iterator<ScheduledTask> iterator = waitingTasks.iterator();
+
+        while (iterator.hasNext() && runningTasks.size() < parallelism) {
+            ScheduledTask scheduledTask = iterator.next();
+            R task = scheduledTask.task;
+            List<PathLock> locks = scheduledTask.locks;
+
             if (task.isFinished()) {
-                runningTask.remove(key);
+                iterator.remove(); // cancelled before it got a chance to start
+                task.getRemovableProperty().removeListener(scheduledTask.finishedListener);
+                PathLockManager.releaseTaskLocks(locks);
+            } else if (lockTable.canAcquireAll(locks) && waitingLocks.canAcquireAll(locks)) {
+                iterator.remove();
+                locks.forEach(lockTable::acquire);
+                runningTasks.put(task, scheduledTask);
+                dispatched.add(scheduledTask);
             } else {
-                return true;
+                locks.forEach(waitingLocks::acquire);
             }
         }
 
-        return false;
+        dispatched.forEach(scheduledTask -> starter.execute(() -> startTask(scheduledTask))); // started once the queue is no longer being walked
     }
 
     /**
-     * Checks all running tasks for if they are still running
+     * Starts the scheduled task if it has not been cancelled since it was dispatched
+     * @param scheduledTask the task to start
      */
-    private void checkAllRunningTasks() {
-        ArrayList<T> tasksToRemove = new ArrayList<>();
-        for (Map.Entry<T, R> entry : runningTask.entrySet()) {
-            if (entry.getValue().isFinished())
-                tasksToRemove.add(entry.getKey());
+    private void startTask(ScheduledTask scheduledTask) {
+        R task = scheduledTask.task;
+
+        if (!task.isFinished()) {
+            if (task.isReady())
+                task.start();
+            else
+                taskFinished(scheduledTask); // can't be started, so don't let it hold on to its locks
         }
-
-        tasksToRemove.forEach(runningTask::remove);
     }
 
     /**
-     * Starts the next tasks available to run in the file's queues if not empty. If the source file's queue is empty, it is removed from the map
+     * Called when a scheduled task has finished. Releases its locks if it was running or removes it from the waiting queue if not and
+     * then dispatches the waiting queue
+     * @param scheduledTask the task that finished
      */
-    private void startNextTask() {
-        if (taskQueues.isEmpty()) {
-            checkAllRunningTasks();
-            if (runningTask.isEmpty()) {
-                Platform.runLater(() -> {
-                    scheduler.cancel();
-                    started = false;
-                    cancelled = true;
-                });
-            }
-        } else {
-            ArrayList<T> entriesToRemove = new ArrayList<>();
-
-            for (Map.Entry<T, Queue<R>> entry : taskQueues.entrySet()) {
-                Queue<R> tasks = entry.getValue();
-                T key = entry.getKey();
-                boolean taskInProgress = isTaskInProgress(key);
-
-                if (tasks.isEmpty()) {
-                    entriesToRemove.add(key);
-                } else {
-                    if (!taskInProgress) { // if a task is currently in progress for the provided key, don't start a next task for that key
-                        R task = tasks.poll();
-                        if (task != null && task.isReady() && !task.isFinished()) {
-                            runningTask.put(key, task);
-                            Platform.runLater(task::start); // tasks should only be started from the JavaFX thread
-                        }
-                    }
-                }
-            }
-
-            entriesToRemove.forEach(taskQueues::remove);
+    private synchronized void taskFinished(ScheduledTask scheduledTask) {
+        R task = scheduledTask.task;
+        task.getRemovableProperty().removeListener(scheduledTask.finishedListener);
+
+        if (runningTasks.remove(task) != null) {
+            lockTable.releaseAll(scheduledTask.locks);
+            PathLockManager.releaseTaskLocks(scheduledTask.locks);
+        } else if (waitingTasks.remove(scheduledTask)) {
+            PathLockManager.releaseTaskLocks(scheduledTask.locks);
         }
-    }
 
-    /**
-     * This method checks the status of the service and starts it, restarting if it was cancelled before
-     */
-    private void checkServiceStatus() {
-        if (!started && !cancelled) {
-            scheduler.start();
-            started = true;
-        } else if (cancelled) {
-            scheduler.reset();
-            scheduler.start();
-            started = true;
-            cancelled = false;
-        }
+        dispatch();
     }
 
     /**
-     * Schedules the task against the provided key.
-     * This method adds the task to the queue identified by the key if found, adds a new queue for that key if not and then adds the task
-     * to it.
-     * @param key the key to register this task to
-     * @param task the task to register to the key
+     * Schedules the task to run once the provided locks can be acquired without conflicting with any running task or earlier scheduled task.
+     * If there are no conflicts and the parallelism allows, the task is started straight away.
+     * The locks are released when the task completes, fails or is cancelled.
+     * @param task the task to schedule
+     * @param locks the locks the task needs while running
      */
-    public void schedule(T key, R task) {
-        Queue<R> taskQueue = taskQueues.get(key);
-        if (taskQueue == null) {
-            taskQueue = new ConcurrentLinkedQueue<>();
-            taskQueues.put(key, taskQueue);
-        }
-
-        taskQueue.add(task);
+    public synchronized void schedule(R task, PathLock...locks) {
+        ScheduledTask scheduledTask = new ScheduledTask(task, List.of(locks));
+        task.getRemovableProperty().addListener(scheduledTask.finishedListener);
+        waitingTasks.add(scheduledTask);
+        PathLockManager.holdTaskLocks(scheduledTask.locks); // so the UI sees the paths as in use while the task waits as well as while it runs
 
-        checkServiceStatus(); // check the service status after adding the task queue or else the task queue may still be empty when startNextTask is called and the service may just get cancelled
+        dispatch();
     }
 }
@@ -26,7 +26,7 @@ import javafx.scene.layout.Region;
 import java.util.Optional;
 
 /**
- * Gives the user a choice to still open a file even if it is over 100MB
+ * Gives the user a choice to view a file that is over the size limit read-only, or to still open it in the editor
  */
 public class FileSizeConfirmationDialog extends Alert {
     /**
@@ -36,20 +36,49 @@ public class FileSizeConfirmationDialog extends Alert {
     public FileSizeConfirmationDialog(String path) {
         super(AlertType.WARNING);
         setHeaderText("File Size Warning");
-        setContentText("File " + path + " is over " + Properties.FILE_EDITOR_SIZE_WARN_LIMIT.getValue() / 1000000 + "MB. Do you confirm that you still want to open it? (You may run out of memory)");
+        setContentText("File " + path + " is over " + Properties.FILE_EDITOR_SIZE_WARN_LIMIT.getValue() / 1000000 + "MB. It can be viewed read-only without loading it into memory, "
+                + "or opened in the editor (You may run out of memory)");
         setTitle("Editing Large File Dialog");
         getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
         getButtonTypes().clear();
-        getButtonTypes().addAll(new ButtonType("No", ButtonBar.ButtonData.CANCEL_CLOSE), new ButtonType("Yes", ButtonBar.ButtonData.FINISH));
+        getButtonTypes().addAll(new ButtonType("Cancel", ButtonBar.ButtonData.CANCEL_CLOSE), new ButtonType("View Read-Only", ButtonBar.ButtonData.OTHER),
+                new ButtonType("Edit", ButtonBar.ButtonData.FINISH));
     }
 
     /**
-     * Shows the dialog and gets the confirmation
-     * @return true if confirmed to open, false otherwise
+     * This enum represents the choices that can be made in this dialog
      */
-    public boolean showAndGetConfirmation() {
+    public enum Choice {
+        /**
+         * Don't open the file
+         */
+        CANCEL,
+        /**
+         * Open the file in the read-only large file viewer
+         */
+        VIEW,
+        /**
+         * Open the file in the editor anyway
+         */
+        EDIT
+    }
+
+    /**
+     * Shows the dialog and gets the choice of how to open the file
+     * @return the choice made
+     */
+    public Choice showAndGetChoice() {
         Optional<ButtonType> result = showAndWait();
 
-        return result.map(e -> !e.getText().equals("No")).orElse(false);
+        return result.map(e -> {
+            ButtonBar.ButtonData data = e.getButtonData();
+
+            if (data == ButtonBar.ButtonData.OTHER)
+                return Choice.VIEW;
+            else if (data == ButtonBar.ButtonData.FINISH)
+                return Choice.EDIT;
+            else
+                return Choice.CANCEL;
+        }).orElse(Choice.CANCEL);
     }
 }
@@ -17,6 +17,7 @@
 
 package com.simpleftp.ui.directories;
 
+import com.simpleftp.filesystem.FileMask;
 import com.simpleftp.filesystem.FileUtils;
 import com.simpleftp.ftp.FTPSystem;
 import com.simpleftp.filesystem.LocalFile;
@@ -29,11 +30,14 @@ import com.simpleftp.properties.Properties;
 import com.simpleftp.ui.UI;
 import com.simpleftp.ui.background.BundledServices;
 import com.simpleftp.ui.background.FileService;
+import com.simpleftp.ui.dialogs.FileSizeConfirmationDialog;
 import com.simpleftp.ui.directories.tasks.FileStringDownloader;
 import com.simpleftp.ui.files.FilePropertyWindow;
 import com.simpleftp.ui.files.LineEntries;
 import com.simpleftp.ui.files.LineEntry;
+import com.simpleftp.ui.files.SortColumn;
 import com.simpleftp.ui.panels.FilePanel;
+import com.simpleftp.ui.background.scheduling.PathLockManager;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
@@ -49,6 +53,7 @@ import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
+import lombok.AccessLevel;
 import lombok.Getter;
 
 import java.util.ArrayList;
@@ -139,9 +144,20 @@ public abstract class DirectoryPane extends VBox {
     @Getter
     private String fileMask;
     /**
-     * The regex fileMask is converted to
+     * The column the line entries are sorted by
      */
-    private String fileMaskRegex;
+    @Getter
+    private SortColumn sortColumn = SortColumn.NAME;
+    /**
+     * True if the line entries are sorted in ascending order
+     */
+    @Getter
+    private boolean sortAscending = true;
+    /**
+     * The compiled form of fileMask. Null if there is no mask
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private FileMask compiledFileMask;
     /**
      * The directory representing root
      */
@@ -407,10 +423,10 @@ public abstract class DirectoryPane extends VBox {
         boolean local = isLocal();
 
         if (this.directory != null)
-            UI.closeFile(getCurrentWorkingDirectory(), local); // after successfully leaving this directory to the new one, close it
+            PathLockManager.closeFile(getCurrentWorkingDirectory(), local); // after successfully leaving this directory to the new one, close it
         this.directory = directory;
         String path = directory.getFilePath();
-        UI.openFile(path, local); // open the new directory
+        PathLockManager.openFile(path, local); // open the new directory
 
         statusPanel.setCurrDirText(path);
      }
@@ -471,28 +487,7 @@ public abstract class DirectoryPane extends VBox {
      * @return if the filename matches the mask
      */
     private boolean checkNameAgainstMask(String fileName) {
-        return fileName.matches(fileMaskRegex);
-    }
-
-    /**
-     * Converts any wildcards in the provided glob like linux matching i.e. file*
-     * @param glob the glob to convert
-     * @return the matching regex
-     */
-    private String createRegexFromGlob(String glob) {
-        StringBuilder out = new StringBuilder();
-        for(int i = 0; i < glob.length(); ++i) {
-            final char c = glob.charAt(i);
-            switch(c) {
-                case '*': out.append(".*"); break; // zero or more characters of any value
-                case '?': out.append('.'); break; // one and only one character. Can be any character
-                case '.': out.append("\\."); break; // if it is a dot, escape the dot as it is a literal
-                case '\\': out.append("\\\\"); break; // escape a slash
-                default: out.append(c); // just a normal character, add it to the regex
-            }
-        }
-
-        return out.toString();
+        return compiledFileMask.matches(fileName);
     }
 
     /**
@@ -507,7 +502,7 @@ public abstract class DirectoryPane extends VBox {
         if (!showFile) // if it is hidden, it will never be shown regardless of matching mask or not
             return false;
 
-        if (fileMask != null) {
+        if (compiledFileMask != null) {
             showFile = checkNameAgainstMask(file.getName());
         }
 
@@ -657,6 +652,20 @@ public abstract class DirectoryPane extends VBox {
             contextMenu.getItems().add(target);
         }
 
+        if (lineEntry.isDirectory()) {
+            MenuItem findFiles = new MenuItem("Find Files");
+            findFiles.setOnAction(e -> UI.showNameSearch(this, lineEntry.getFilePath()));
+            MenuItem findInFiles = new MenuItem("Find in Files");
+            findInFiles.setOnAction(e -> UI.showContentSearch(this, lineEntry.getFilePath()));
+            contextMenu.getItems().addAll(findFiles, findInFiles);
+        }
+
+        if (!isLocal() && lineEntry.isFile()) {
+            MenuItem tail = new MenuItem("Tail");
+            tail.setOnAction(e -> tailLineEntry(lineEntry));
+            contextMenu.getItems().add(tail);
+        }
+
         return contextMenu;
     }
 
@@ -794,6 +803,7 @@ public abstract class DirectoryPane extends VBox {
             useCache = false; // always use false if properties have set cache to false
 
         LineEntries lineEntries = constructListOfFiles(useCache, removeAllCache);
+        lineEntries.setSortOrder(sortColumn, sortAscending);
         lineEntries.sort();
 
         boolean displayEntries = lineEntries.size() > 0;
@@ -842,19 +852,19 @@ public abstract class DirectoryPane extends VBox {
     }
 
     /**
-     * Checks the size of the file and if under 100MB returns true, if over, gets confirmation if file size is ok and returns true
+     * Checks the size of the file and if under FILE_EDITOR_SIZE_WARN_LIMIT returns EDIT, if over, asks if the file should be viewed read-only, edited anyway or not opened
      * @param file the file to check size of
-     * @return true if under 100MB or if over, the user confirmed it is ok to open this file
+     * @return the choice of how to open the file
      * @throws FileSystemException if an error occurs checking file size if the file is a remote file
      */
-    private boolean checkFileSize(CommonFile file) throws FileSystemException {
+    private FileSizeConfirmationDialog.Choice checkFileSize(CommonFile file) throws FileSystemException {
         long size = file.getSize();
 
         if (size >= Properties.FILE_EDITOR_SIZE_WARN_LIMIT.getValue())  {
             return UI.doFileSizeWarningDialog(file.getFilePath());
         }
 
-        return true;
+        return FileSizeConfirmationDialog.Choice.EDIT;
     }
 
     /**
@@ -863,10 +873,15 @@ public abstract class DirectoryPane extends VBox {
      */
     private void doubleClickFileEntry(final LineEntry lineEntry) throws FTPException, FileSystemException {
         CommonFile file = lineEntry.getFile();
-        if (checkFileSize(file)) {
+        FileSizeConfirmationDialog.Choice choice = checkFileSize(file);
+
+        if (choice == FileSizeConfirmationDialog.Choice.EDIT) {
             FileStringDownloader fileStringDownloader = new FileStringDownloader(lineEntry, fileSystem, this);
             fileStringDownloader.start();
-            UI.openFile(lineEntry.getFilePath(), isLocal()); // only open it if an error doesn't occur
+            PathLockManager.openFile(lineEntry.getFilePath(), isLocal()); // only open it if an error doesn't occur
+        } else if (choice == FileSizeConfirmationDialog.Choice.VIEW) {
+            UI.showLargeFileViewer(this, lineEntry);
+            PathLockManager.openFile(lineEntry.getFilePath(), isLocal());
         }
     }
 
@@ -879,7 +894,11 @@ public abstract class DirectoryPane extends VBox {
             boolean local = isLocal();
 
             String filePath = lineEntry.getFilePath();
-            if (!UI.isFileOpened(filePath, local)) {
+            if (PathLockManager.isFileOpened(filePath, local)) {
+                UI.doInfo("File Open", "The file " + filePath + " is already opened");
+            } else if (!PathLockManager.canOpen(filePath, local)) {
+                UI.doError("File Locked", "The file " + filePath + " is currently being changed by a background task, it can't be opened");
+            } else {
                 CommonFile file = lineEntry.getFile();
                 file.refresh(); // update the existence information if this is a RemoteFile as the status may have changed after this file was loaded
                             // RemoteFile sorts of "caches" the file retrieved from the remote server to update performance rather than retrieving the info from the server every time. But this info may not be up to date
@@ -896,8 +915,6 @@ public abstract class DirectoryPane extends VBox {
                     UI.doError("File not found", "The file " + filePath + " no longer exists", true);
                     removeEntryFromPanel(lineEntry);
                 }
-            } else {
-                UI.doInfo("File Open", "The file " + filePath + " is already opened");
             }
         } catch (FileSystemException ex) {
             UI.doException(ex, UI.ExceptionType.ERROR, FTPSystem.isDebugEnabled());
@@ -913,6 +930,24 @@ public abstract class DirectoryPane extends VBox {
         doubleClick(lineEntry);
     }
 
+    /**
+     * Opens a window following the specified remote file as it grows, showing lines as they are appended to it
+     * @param lineEntry the line entry of the file to tail
+     */
+    public void tailLineEntry(final LineEntry lineEntry) {
+        boolean local = isLocal();
+        String filePath = lineEntry.getFilePath();
+
+        if (PathLockManager.isFileOpened(filePath, local)) {
+            UI.doInfo("File Open", "The file " + filePath + " is already opened");
+        } else if (!PathLockManager.canOpen(filePath, local)) {
+            UI.doError("File Locked", "The file " + filePath + " is currently being changed by a background task, it can't be opened");
+        } else {
+            UI.showLogTail(this, lineEntry);
+            PathLockManager.openFile(filePath, local);
+        }
+    }
+
     /**
      * Removes the line entry from view on the panel and it's parent container. Doesn't physically delete the file
      * @param lineEntry the line entry to remove
@@ -978,6 +1013,36 @@ public abstract class DirectoryPane extends VBox {
         return deleteEntry(lineEntry, true);
     }
 
+    /**
+     * Sets the column and order the displayed files are sorted by. The displayed line entries are re-ordered rather than listed again
+     * @param sortColumn the column to sort by
+     * @param ascending true for ascending order, false for descending
+     */
+    public void setSortOrder(SortColumn sortColumn, boolean ascending) {
+        this.sortColumn = sortColumn;
+        this.sortAscending = ascending;
+        lineEntries.setSortOrder(sortColumn, ascending);
+
+        if (lineEntries.size() > 0)
+            entriesBox.getChildren().setAll(lineEntries.getLineEntries());
+    }
+
+    /**
+     * Refreshes the provided line entry and moves it to its new sorted position if it is displayed. Should be called from the JavaFX thread
+     * @param lineEntry the line entry to refresh
+     * @throws FileSystemException if an error occurs refreshing the entry
+     */
+    public void refreshLineEntry(LineEntry lineEntry) throws FileSystemException {
+        lineEntry.refresh();
+        int index = lineEntries.update(lineEntry);
+
+        if (index != -1) {
+            ObservableList<Node> children = entriesBox.getChildren();
+            children.remove(lineEntry);
+            children.add(index, lineEntry);
+        }
+    }
+
     /**
      * Returns the files that this DirectoryPane is displaying
      * @return list of displayed files
@@ -1015,14 +1080,13 @@ public abstract class DirectoryPane extends VBox {
      * @param fileMask the file mask to show
      */
     public void setFileMask(String fileMask) {
-        this.fileMask = fileMask;
+        compiledFileMask = FileMask.compile(fileMask);
+        this.fileMask = compiledFileMask == null ? null:fileMask; // a mask with no patterns is no mask at all
 
-        if (fileMask == null) {
-            fileMaskRegex = null;
+        if (compiledFileMask == null) {
             statusPanel.currentDirectoryLabel.setText("Current Directory:");
             MAX_FILE_PATH_LENGTH = 30;
         } else {
-            fileMaskRegex = createRegexFromGlob(fileMask);
             statusPanel.currentDirectoryLabel.setText("Current Directory (masked): ");
             MAX_FILE_PATH_LENGTH = 20;
         }
@@ -1144,8 +1208,8 @@ public abstract class DirectoryPane extends VBox {
             copy = !copy;
         }
 
-        if (!copy && UI.isFileLockedByFileService(source))
-            UI.doError("File Locked", "File " + source.getName() + " is currently locked by a background task, file can't be moved");
+        if (!copy && !PathLockManager.canChange(source.getFilePath(), source.isLocal()))
+            UI.doError("File Locked", "File " + source.getName() + " is currently open or in use by a background task, file can't be moved");
         else
             sourcePane.scheduleCopyMoveService(source, destination, copy, this); // same panel is a copy operation
     }
@@ -1334,8 +1398,13 @@ public abstract class DirectoryPane extends VBox {
             paste.setDisable(disabled);
             paste.setOnAction(e -> paste(DirectoryPane.this.directory));
 
+            MenuItem findFiles = new MenuItem("Find Files");
+            findFiles.setOnAction(e -> UI.showNameSearch(DirectoryPane.this, getCurrentWorkingDirectory()));
+            MenuItem findInFiles = new MenuItem("Find in Files");
+            findInFiles.setOnAction(e -> UI.showContentSearch(DirectoryPane.this, getCurrentWorkingDirectory()));
+
             ContextMenu contextMenu = new ContextMenu();
-            contextMenu.getItems().add(paste);
+            contextMenu.getItems().addAll(paste, findFiles, findInFiles);
 
             return contextMenu;
         }
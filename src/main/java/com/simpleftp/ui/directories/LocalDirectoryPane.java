@@ -27,6 +27,7 @@ import com.simpleftp.ui.UI;
 import com.simpleftp.ui.background.FileService;
 import com.simpleftp.ui.files.LineEntries;
 import com.simpleftp.ui.files.LineEntry;
+import com.simpleftp.ui.background.scheduling.PathLockManager;
 
 import java.io.File;
 
@@ -134,10 +135,10 @@ public final class LocalDirectoryPane extends DirectoryPane {
         CommonFile file = lineEntry.getFile();
         String filePath = file.getFilePath();
 
-        if (!UI.isFileOpened(filePath, true)) {
+        if (PathLockManager.canChange(filePath, true)) {
             renameLocalFile(lineEntry);
         } else {
-            UI.doError("File Open", "The file " + file.getName() + " is open, it cannot be renamed");
+            UI.doError("File Locked", "The file " + file.getName() + " is open or in use by a background task, it cannot be renamed");
         }
     }
 
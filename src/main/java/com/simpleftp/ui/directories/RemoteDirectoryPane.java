@@ -17,9 +17,12 @@
 
 package com.simpleftp.ui.directories;
 
+import com.simpleftp.filesystem.FileMask;
 import com.simpleftp.filesystem.FileUtils;
 import com.simpleftp.filesystem.RemoteFile;
 import com.simpleftp.filesystem.RemoteFileSystem;
+import com.simpleftp.filesystem.RemoteListing;
+import com.simpleftp.filesystem.cache.RemoteListingCache;
 import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.interfaces.CommonFile;
 import com.simpleftp.ftp.FTPSystem;
@@ -30,17 +33,18 @@ import com.simpleftp.ui.UI;
 import com.simpleftp.ui.background.FileService;
 import com.simpleftp.ui.files.LineEntries;
 import com.simpleftp.ui.files.LineEntry;
-
-import java.util.HashMap;
+import com.simpleftp.ui.background.scheduling.PathLockManager;
 
 /**
  * This DirectoryPane displays files on the remote file server
  */
 public final class RemoteDirectoryPane extends DirectoryPane {
     /**
-     * A cached list of entries to reduce time spent navigating without an update in already visited directories on a remote pane
+     * A cached listing of each directory to reduce time spent navigating without an update in already visited directories on a remote pane.
+     * The compact listings are cached rather than the line entries, so visited directories don't keep a node per file alive.
+     * The cache is shared with the searches started from this pane, so the directories they list are cached too
      */
-    private final HashMap<String, LineEntries> cachedEntries;
+    private final RemoteListingCache cachedListings;
 
     /**
      * Constructs a RemoteDirectoryPane with the given directory to initialise this panel with
@@ -49,7 +53,7 @@ public final class RemoteDirectoryPane extends DirectoryPane {
     RemoteDirectoryPane(RemoteFile directory) throws FileSystemException {
         super();
         fileSystem = new RemoteFileSystem();
-        cachedEntries = Properties.CACHE_REMOTE_DIRECTORY_LISTING.getValue() ? new HashMap<>():null;
+        cachedListings = Properties.CACHE_REMOTE_DIRECTORY_LISTING.getValue() ? new RemoteListingCache():null;
         initDirectory(directory);
     }
 
@@ -133,10 +137,10 @@ public final class RemoteDirectoryPane extends DirectoryPane {
         CommonFile file = lineEntry.getFile();
         String filePath = lineEntry.getFilePath();
 
-        if (!UI.isFileOpened(filePath, false)) {
+        if (PathLockManager.canChange(filePath, false)) {
             renameRemoteFile(lineEntry);
         } else {
-            UI.doError("File Open", "The file " + file.getName() + " is open, it cannot be renamed");
+            UI.doError("File Locked", "The file " + file.getName() + " is open or in use by a background task, it cannot be renamed");
         }
     }
 
@@ -154,30 +158,23 @@ public final class RemoteDirectoryPane extends DirectoryPane {
     }
 
     /**
-     * Constructs the list of line entries from the files listed by the remote file
+     * Constructs the list of line entries from the files in the listing. Hidden and masked files are filtered on the listing, so only
+     * the files that are shown are created
      * @param lineEntries the list of line entries to populate
-     * @param path the path to list
+     * @param listing the listing of the directory
      */
-    private void constructListOfRemoteFiles(LineEntries lineEntries, String path) {
+    private void constructListOfRemoteFiles(LineEntries lineEntries, RemoteListing listing) {
+        FileMask fileMask = getCompiledFileMask();
+
         try {
-            RemoteFile[] files = (RemoteFile[])fileSystem.listFiles(path);
-            if (files == null) {
-                UI.doError("Path does not exist", "The path " + path + " does not exist");
-            } else if (files.length == 0) {
-                lineEntries.clear();
-            } else {
-                for (RemoteFile f : files) {
-                    boolean showFile = showFile(f, e -> {
-                        String fileName = f.getName();
-                        return (showHiddenFiles && !fileName.equals(".") && !fileName.startsWith("..")) || !fileName.startsWith(".");
-                    });
-
-                    if (showFile) {
-                        LineEntry constructed = createLineEntry(f);
-
-                        if (constructed != null)
-                            lineEntries.add(constructed);
-                    }
+            for (int i = 0; i < listing.size(); i++) {
+                boolean visible = (showHiddenFiles && !listing.nameStartsWith(i, "..")) || !listing.nameStartsWith(i, ".");
+
+                if (visible && (fileMask == null || listing.nameMatches(i, fileMask))) {
+                    LineEntry constructed = createLineEntry(listing.getFile(i));
+
+                    if (constructed != null)
+                        lineEntries.add(constructed);
                 }
             }
         } catch (FileSystemException ex) {
@@ -186,6 +183,39 @@ public final class RemoteDirectoryPane extends DirectoryPane {
         }
     }
 
+    /**
+     * Determines if a cached listing can be displayed with the current mask. A listing the server filtered with a pattern can only be displayed
+     * with a mask of the same pattern
+     * @param listing the cached listing
+     * @param fileMask the current file mask, null if none
+     * @return true if the listing contains all the files that the mask could show
+     */
+    private boolean isListingUsable(RemoteListing listing, FileMask fileMask) {
+        String serverPattern = listing.getServerPattern();
+
+        return serverPattern == null || (fileMask != null && serverPattern.equals(fileMask.getServerPattern()));
+    }
+
+    /**
+     * Lists the provided path with the current file mask
+     * @param path the path to list
+     * @param fileMask the current file mask, null if none
+     * @return the listing of the path, null if it does not exist or an error occurred
+     */
+    private RemoteListing listDirectory(String path, FileMask fileMask) {
+        try {
+            RemoteListing listing = ((RemoteFileSystem)fileSystem).listDirectory(path, fileMask);
+
+            if (listing == null)
+                UI.doError("Path does not exist", "The path " + path + " does not exist");
+
+            return listing;
+        } catch (FileSystemException ex) {
+            UI.doException(ex, UI.ExceptionType.ERROR, FTPSystem.isDebugEnabled());
+            return null;
+        }
+    }
+
     /**
      * Does the remove action for the file. Removal of a file may differ between local and remote file panels, hence why abstract
      *
@@ -222,42 +252,55 @@ public final class RemoteDirectoryPane extends DirectoryPane {
     @Override
     LineEntries constructListOfFiles(boolean useCache, boolean removeAllCache) {
         String currentDirectory = getCurrentWorkingDirectory();
-        LineEntries lineEntries;
-
-        if (Properties.CACHE_REMOTE_DIRECTORY_LISTING.getValue()) {
-            lineEntries = cachedEntries.get(currentDirectory);
-            if (lineEntries != null && lineEntries.size() > 0 && useCache) {
-                lineEntries.setSort(false);
-                return lineEntries;
-            } else {
-                lineEntries = lineEntries == null ? new LineEntries() : lineEntries;
-                if (!useCache) {
-                    if (removeAllCache) {
-                        cachedEntries.clear();
-                    }
+        LineEntries lineEntries = new LineEntries();
+        RemoteListing listing = null;
+        boolean cache = Properties.CACHE_REMOTE_DIRECTORY_LISTING.getValue();
+
+        FileMask fileMask = getCompiledFileMask();
+
+        if (cache) {
+            if (useCache) {
+                listing = cachedListings.get(currentDirectory);
+                listing = listing != null && listing.size() > 0 && isListingUsable(listing, fileMask) ? listing:null;
+            } else if (removeAllCache) {
+                cachedListings.clear();
+            }
+        }
 
-                    lineEntries.clear();
-                }
+        if (listing == null) {
+            listing = listDirectory(directory.getFilePath(), fileMask);
 
-                cachedEntries.put(currentDirectory, lineEntries);
+            if (cache) {
+                if (listing != null)
+                    cachedListings.put(currentDirectory, listing);
+                else
+                    cachedListings.remove(currentDirectory);
             }
-        } else {
-            lineEntries = new LineEntries();
         }
 
-        constructListOfRemoteFiles(lineEntries, directory.getFilePath());
+        if (listing != null)
+            constructListOfRemoteFiles(lineEntries, listing);
+
         lineEntries.setSort(true);
 
         return lineEntries;
     }
 
     /**
-     * Refreshes the cached line entries for the provided file path if found. This should be used if the destination of an operation is not the current working directory
+     * Refreshes the cached listing for the provided file path if found. This should be used if the destination of an operation is not the current working directory
      * @param filePath the file path to refresh
      */
     public void refreshCache(String filePath) {
         if (Properties.CACHE_REMOTE_DIRECTORY_LISTING.getValue())
-            cachedEntries.remove(filePath); // removing the cache for this file path will force a refresh on the next visit to this directory
+            cachedListings.remove(filePath); // removing the cache for this file path will force a refresh on the next visit to this directory
+    }
+
+    /**
+     * Gets the cache of directory listings of this pane, so background tasks listing remote directories can use and add to it
+     * @return the listing cache, null if CACHE_REMOTE_DIRECTORY_LISTING is disabled
+     */
+    public RemoteListingCache getListingCache() {
+        return cachedListings;
     }
 
     /**
@@ -17,42 +17,58 @@
 
 package com.simpleftp.ui.directories.tasks;
 
-import com.simpleftp.filesystem.FileUtils;
 import com.simpleftp.filesystem.LocalFile;
-import com.simpleftp.filesystem.LocalFileSystem;
 import com.simpleftp.filesystem.RemoteFile;
+import com.simpleftp.filesystem.TextDecodingOutputStream;
+import com.simpleftp.filesystem.TextFormat;
+import com.simpleftp.filesystem.cache.RemoteFileCache;
 import com.simpleftp.filesystem.interfaces.CommonFile;
 import com.simpleftp.filesystem.interfaces.FileSystem;
 import com.simpleftp.ftp.FTPSystem;
 import com.simpleftp.ftp.connection.FTPConnection;
-import com.simpleftp.ftp.exceptions.FTPError;
 import com.simpleftp.ftp.exceptions.FTPException;
+import com.simpleftp.ftp.exceptions.FTPRemotePathNotFoundException;
 import com.simpleftp.ui.UI;
 import com.simpleftp.ui.background.AbstractDisplayableBackgroundTask;
+import com.simpleftp.ui.background.scheduling.PathLockManager;
 import com.simpleftp.ui.directories.DirectoryPane;
+import com.simpleftp.ui.editor.FileEditorWindow;
 import com.simpleftp.ui.files.LineEntry;
 import javafx.application.Platform;
 import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import lombok.extern.log4j.Log4j2;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * This class is a background task for downloading the contents of a file as a string to display in an editor opened by a DirectoryPane
+ * This class is a background task for streaming the contents of a file into an editor opened by a DirectoryPane.
+ * The editor is opened as soon as the first chunk of the contents is decoded and the rest is appended as it arrives, so the start of a large file can be
+ * read while the rest downloads. Remote files are downloaded straight from the connection in binary mode and decoded in memory, or read from the RemoteFileCache
+ * if a copy of the current version is already cached. A downloaded file is copied into the cache as it is decoded, so opening it again doesn't download it again
  */
 @Log4j2
 public final class FileStringDownloader extends AbstractDisplayableBackgroundTask {
+    /**
+     * The size of the buffer used to read local files
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
     /**
      * The line entry to download contents of
      */
     private final LineEntry lineEntry;
     /**
-     * Need a separate connection for downloading files so it doesn't hog the main connection
+     * Need a separate connection for downloading files so it doesn't hog the main connection. It is created here but connected on the worker thread, as it may
+     * have to wait for the server's connection limit to allow it
      */
-    private FTPConnection readingConnection;
+    private final FTPConnection readingConnection;
     /**
      * The pane that created this task
      */
@@ -60,11 +76,39 @@ public final class FileStringDownloader extends AbstractDisplayableBackgroundTas
     /**
      * A flag indicating that an error has occurred
      */
-    private boolean errorOccurred;
+    private volatile boolean errorOccurred;
+    /**
+     * A flag indicating that the contents of the file were found to be of a type that can't be opened
+     */
+    private volatile boolean unsupported;
+    /**
+     * The editor window the contents are streamed into. Only accessed on the FX thread, null until the first chunk is decoded
+     */
+    private FileEditorWindow editorWindow;
+    /**
+     * The format detected while decoding the contents, which the editor saves the file in
+     */
+    private volatile TextFormat textFormat = TextFormat.getDefault();
+    /**
+     * True if some of the contents could not be decoded in the detected charset, so the file is opened read-only to stop the replaced bytes being saved
+     */
+    private volatile boolean lossy;
     /**
      * The download service for downloading the contents
      */
-    private Service<String> downloadService;
+    private Service<Void> downloadService;
+    /**
+     * Flag set when this task is cancelled, so that the worker thread stops and doesn't report the aborted download as an error
+     */
+    private volatile boolean cancelled;
+    /**
+     * True while the worker thread is downloading the contents
+     */
+    private volatile boolean downloadRunning;
+    /**
+     * Ensures the connection is only disconnected once, as both the worker thread and the FX thread may try to when cancelled
+     */
+    private final AtomicBoolean disconnected = new AtomicBoolean();
 
     /**
      * Creates a FileStringDownloader object
@@ -72,16 +116,11 @@ public final class FileStringDownloader extends AbstractDisplayableBackgroundTas
      * @param fileSystem the file system to download the file to
      * @param creatingPanel the panel that created this downloader
      */
-    public FileStringDownloader(LineEntry lineEntry, FileSystem fileSystem, DirectoryPane creatingPanel) throws FTPException {
+    public FileStringDownloader(LineEntry lineEntry, FileSystem fileSystem, DirectoryPane creatingPanel) {
         this.lineEntry = lineEntry;
         this.creatingPanel = creatingPanel;
         boolean local = lineEntry.isLocal();
-        if (!local) {
-            this.readingConnection = FTPConnection.createTemporaryConnection(fileSystem.getFTPConnection());
-            this.readingConnection.connect();
-            this.readingConnection.login();
-            this.readingConnection.setTextTransferMode(true);
-        } // only need connection for remote file
+        this.readingConnection = local ? null:FTPConnection.createTemporaryConnection(fileSystem.getFTPConnection()); // only need connection for remote file
         initDownloadService();
         setDescription("Download contents of " + lineEntry.getFilePath() + (local ? " (local)":" (remote)"));
     }
@@ -105,10 +144,14 @@ public final class FileStringDownloader extends AbstractDisplayableBackgroundTas
     }
 
     /**
-     * Stops the background task and the underlying service
+     * Stops the background task and the underlying service. If the file is being downloaded, the download is aborted so the worker thread stops
+     * straight away rather than when the download finishes
      */
     @Override
     public void cancel() {
+        cancelled = true;
+        if (readingConnection != null)
+            readingConnection.abortTransfer();
         downloadService.cancel();
     }
 
@@ -128,7 +171,7 @@ public final class FileStringDownloader extends AbstractDisplayableBackgroundTas
     private void initDownloadService() {
         downloadService = new Service<>() {
             @Override
-            protected Task<String> createTask() {
+            protected Task<Void> createTask() {
                 return FileStringDownloader.this.createTask();
             }
         };
@@ -136,31 +179,57 @@ public final class FileStringDownloader extends AbstractDisplayableBackgroundTas
         downloadService.setOnSucceeded(e -> {
             if (!errorOccurred) {
                 updateState(State.COMPLETED);
-                String contents = (String) e.getSource().getValue();
-                UI.showFileEditor(creatingPanel, lineEntry, contents);
+
+                if (editorWindow == null) // the file is empty so no chunks were decoded
+                    editorWindow = UI.showFileEditor(creatingPanel, lineEntry, "");
+                else if (editorWindow.isShowing())
+                    editorWindow.finishLoading();
+
+                editorWindow.setTextFormat(textFormat);
+
+                if (lossy && editorWindow.isShowing()) {
+                    editorWindow.setReadOnly();
+                    UI.doError("File Opened Read-Only", "Some of the contents of " + lineEntry.getFilePath() + " are not valid " + textFormat.getCharset()
+                            + ", so the file has been opened read-only, as saving it would corrupt it");
+                }
             } else {
                 updateState(State.FAILED);
+                closeEditor();
             }
             disconnectConnection();
         });
 
         downloadService.setOnCancelled(e -> {
-            disconnectConnection();
+            if (!downloadRunning) // if still running, the worker thread disconnects once the aborted download returns, so the FX thread doesn't wait for it
+                disconnectConnection();
             updateState(State.CANCELLED);
+            closeEditor();
         });
         downloadService.setOnFailed(e -> {
             disconnectConnection();
             updateState(State.FAILED);
+            closeEditor();
         });
     }
 
+    /**
+     * Closes the editor if the contents failed to load, or releases the opened file if the editor was never shown
+     */
+    private void closeEditor() {
+        if (editorWindow == null)
+            PathLockManager.closeFile(lineEntry.getFilePath(), creatingPanel.isLocal());
+        else if (editorWindow.isShowing())
+            editorWindow.close();
+    }
+
     /**
      * Disconnects the ftp connection if it was connected
      */
     private void disconnectConnection() {
-        if (!lineEntry.isLocal()) {
+        if (!lineEntry.isLocal() && disconnected.compareAndSet(false, true)) {
             try {
-                readingConnection.disconnect();
+                if (readingConnection.isConnected())
+                    readingConnection.disconnect();
             } catch (FTPException ex) {
                 log.warn("Failed to disconnect a connection used to download file contents");
             }
@@ -171,83 +240,145 @@ public final class FileStringDownloader extends AbstractDisplayableBackgroundTas
      * Creates the task for the service
      * @return the task
      */
-    private Task<String> createTask() {
+    private Task<Void> createTask() {
         return new Task<>() {
             @Override
-            protected String call() throws Exception {
-                return fileToString(lineEntry.getFile());
+            protected Void call() {
+                downloadRunning = true;
+
+                try {
+                    streamContents(lineEntry.getFile());
+                } finally {
+                    downloadRunning = false;
+
+                    if (cancelled)
+                        disconnectConnection();
+                }
+
+                return null;
             }
         };
     }
 
     /**
-     * Downloads the remote file as a LocalFile and returns it
-     * @param remoteFile the file to download
-     * @return the created file
+     * Shows a chunk of decoded contents in the editor, opening it for the first chunk. Called on the worker thread.
+     * If the editor has been closed while loading, the download is cancelled
+     * @param contents the chunk of contents
      */
-    private LocalFile downloadRemoteFile(RemoteFile remoteFile) {
-        try {
-            LocalFile downloaded;
-            if (remoteFile.isSymbolicLink()) {
-                remoteFile = new RemoteFile(remoteFile.getSymbolicLinkTarget(), readingConnection, null);
-            }
+    private void showContents(String contents) {
+        if (!cancelled) {
+            Platform.runLater(() -> {
+                if (editorWindow == null) {
+                    editorWindow = UI.showFileEditor(creatingPanel, lineEntry, contents);
+                    editorWindow.startLoading();
+                } else if (editorWindow.isShowing()) {
+                    editorWindow.appendContents(contents);
+                } else if (!cancelled) {
+                    cancel();
+                }
+            });
+        }
+    }
 
-            downloaded = new LocalFile(FileUtils.appendPath(FileUtils.TEMP_DIRECTORY, remoteFile.getName(), true));
+    /**
+     * Creates the stream to decode the contents with
+     * @return the decoding stream
+     */
+    private TextDecodingOutputStream newDecoder() {
+        return new TextDecodingOutputStream(this::showContents, Charset.defaultCharset());
+    }
 
-            if (new LocalFileSystem(readingConnection).addFile(remoteFile, downloaded.getParentFile().getAbsolutePath())) { // download the file
-                downloaded.deleteOnExit();
+    /**
+     * Reads the local file into the decoding stream and closes it
+     * @param file the file to read
+     * @param decoder the stream to decode the contents with
+     * @throws IOException if the file can't be read
+     */
+    private void streamLocalFile(LocalFile file, TextDecodingOutputStream decoder) throws IOException {
+        try (InputStream inputStream = new FileInputStream(file); decoder) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
 
-                return downloaded;
-            } else {
-                throw new FTPError("Failed to download remote file to temp directory", readingConnection.getReplyString());
-            }
-        } catch (Exception ex) {
-            Platform.runLater(() -> UI.doException(ex, UI.ExceptionType.ERROR, FTPSystem.isDebugEnabled()));
-            errorOccurred = true;
-            return null;
+            while (!cancelled && (read = inputStream.read(buffer)) != -1)
+                decoder.write(buffer, 0, read);
         }
     }
 
     /**
-     * Opens the file and returns it as a string
+     * Streams the contents of the file into the editor, if it is a supported type. Only the first bytes of a remote file are downloaded to check its type,
+     * so an unsupported file isn't transferred
      * @param file the file to display
-     * @return the file contents as a String
-     * @throws IOException if the reader fails to read the file
      */
-    private String fileToString(CommonFile file) throws IOException {
+    private void streamContents(CommonFile file) {
         if (state != State.RUNNING)
             updateState(State.RUNNING);
 
-        StringBuilder str = new StringBuilder();
-
-        if (file instanceof LocalFile) {
-            LocalFile localFile = (LocalFile)file;
+        TextDecodingOutputStream decoder = newDecoder();
 
-            if (UI.canOpenFile(localFile)) {
-                BufferedReader reader = new BufferedReader(new FileReader(localFile));
+        try {
+            if (file instanceof LocalFile) {
+                LocalFile localFile = (LocalFile)file;
 
-                String line;
-                try {
-                    while ((line = reader.readLine()) != null) {
-                        str.append(line).append("\n");
-                    }
-                } catch (IOException ex) {
-                    Platform.runLater(() -> UI.doException(ex, UI.ExceptionType.ERROR, FTPSystem.isDebugEnabled()));
-                    errorOccurred = true;
-                }
+                if (UI.canOpenFile(localFile))
+                    streamLocalFile(localFile, decoder);
+                else
+                    unsupported = true;
             } else {
-                errorOccurred = true;
-                Platform.runLater(() -> UI.doError("File Unsupported", "The file " + file.getName() + " is not a supported file type"));
+                RemoteFile remoteFile = (RemoteFile)file;
+                String remotePath = remoteFile.isSymbolicLink() ? remoteFile.getSymbolicLinkTarget():remoteFile.getFilePath();
+                readingConnection.connect();
+                readingConnection.login();
+                readingConnection.setTextTransferMode(false); // the bytes are decoded and line endings converted locally, as ASCII mode converts a byte at a time
 
-                return null;
+                if (UI.canOpenFile(remoteFile, readingConnection)) {
+                    if (RemoteFileCache.getInstance().stream(remotePath, readingConnection, new CancellableOutputStream(decoder))) // cached as it downloads
+                        decoder.close();
+                    else
+                        throw new FTPRemotePathNotFoundException("The remote file " + remotePath + " does not exist", remotePath);
+                } else {
+                    unsupported = true;
+                }
             }
-        } else {
-           LocalFile localFile = downloadRemoteFile((RemoteFile)file);
 
-           if (localFile != null)
-               return fileToString(localFile);
+            textFormat = decoder.getTextFormat();
+            lossy = decoder.isLossy();
+        } catch (Exception ex) {
+            if (!unsupported && !cancelled) // an aborted download is expected when cancelled
+                Platform.runLater(() -> UI.doException(ex, UI.ExceptionType.ERROR, FTPSystem.isDebugEnabled()));
+            errorOccurred = true;
         }
 
-        return str.toString();
+        if (unsupported) {
+            errorOccurred = true;
+            Platform.runLater(() -> UI.doError("File Unsupported", "The file " + file.getName() + " is not a supported file type"));
+        }
+    }
+
+    /**
+     * This class is a stream that stops the contents being written once the task is cancelled, so reading a cached copy stops as soon as a download would be aborted
+     */
+    private final class CancellableOutputStream extends FilterOutputStream {
+        /**
+         * Constructs the stream
+         * @param out the stream to write to until cancelled
+         */
+        private CancellableOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        /**
+         * Writes the bytes if the task hasn't been cancelled
+         * @param b the buffer of bytes
+         * @param off the offset of the bytes in the buffer
+         * @param len the number of bytes to write
+         * @throws IOException if the task has been cancelled or the bytes can't be written
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (cancelled)
+                throw new InterruptedIOException("The download of " + lineEntry.getFilePath() + " was cancelled");
+
+            out.write(b, off, len);
+        }
     }
 }
@@ -19,9 +19,13 @@ package com.simpleftp.ui.editor;
 
 import lombok.Getter;
 import org.fxmisc.richtext.StyleClassedTextArea;
+import org.fxmisc.undo.UndoManager;
 
 /**
- * This class provides the FileEditor for a FileEditorWindow
+ * This class provides the FileEditor for a FileEditorWindow.
+ *
+ * Whether the contents are saved is tracked by marking the position of the saved version in the undo history, so it is updated in constant time as the
+ * contents change rather than comparing the whole text with the saved version
  */
 public class FileEditor extends StyleClassedTextArea {
     /**
@@ -29,6 +33,18 @@ public class FileEditor extends StyleClassedTextArea {
      */
     @Getter
     private final FileEditorWindow editorWindow;
+    /**
+     * The position in the undo history of the saved version of the contents
+     */
+    private UndoManager.UndoPosition savedPosition;
+    /**
+     * The position of the saved version before the last save, to go back to if that save fails
+     */
+    private UndoManager.UndoPosition previousSavedPosition;
+    /**
+     * True if changes to the contents update the saved state of the editor window, false while the contents are loading
+     */
+    private boolean trackingChanges;
 
     /**
      * Constructs a FileEditor object
@@ -36,39 +52,75 @@ public class FileEditor extends StyleClassedTextArea {
      */
     public FileEditor(FileEditorWindow editorWindow) {
         this.editorWindow = editorWindow;
-        setOnKeyTyped(e -> {
-            if (!e.isControlDown()) {
-                if (getText().equals(editorWindow.resetFileContents))
-                    editorWindow.setSave(true);
-                else if (editorWindow.saved)
-                    editorWindow.setSave(false);
-            }
+        getUndoManager().atMarkedPositionProperty().addListener((observable, oldValue, atSavedPosition) -> {
+            if (trackingChanges)
+                editorWindow.setSave(atSavedPosition);
         });
     }
 
     /**
-     * Implements ability to paste into the editor window.
-     * If the editor window was in a saved state, it isn't saved anymore
+     * Starts tracking changes against the current contents, which are taken to be the saved version. The undo history is cleared so the contents
+     * can't be undone past the saved version they were loaded with
      */
-    @Override
-    public void paste() {
-        super.paste();
-        if (editorWindow.isSaved()) {
-            editorWindow.setSave(false);
+    public void trackChanges() {
+        trackingChanges = false;
+        getUndoManager().forgetHistory();
+        savedPosition = previousSavedPosition = null;
+        markSaved();
+        trackingChanges = true;
+    }
+
+    /**
+     * Stops tracking changes, e.g. while the contents are loading
+     */
+    public void stopTrackingChanges() {
+        trackingChanges = false;
+    }
+
+    /**
+     * Marks the current contents as the saved version
+     */
+    public void markSaved() {
+        previousSavedPosition = savedPosition;
+        savedPosition = getUndoManager().getCurrentPosition();
+        savedPosition.mark();
+    }
+
+    /**
+     * Marks the version saved before the last call to markSaved as the saved version again, as the last save failed
+     */
+    public void restoreSavedMark() {
+        if (previousSavedPosition != null && previousSavedPosition.isValid()) {
+            savedPosition = previousSavedPosition;
+            savedPosition.mark();
         }
+
+        previousSavedPosition = null;
     }
 
     /**
-     * Undoes all edits since the last save using Ctrl + Z. This is the equivalent to resetConnection
+     * Undoes all edits since the last save using Ctrl + Z. This is the equivalent to resetConnection.
+     * The undo history is stepped back (or forward, if edits were undone past the save) to the saved position. If the saved version is no longer
+     * in the history, the contents are replaced with the saved contents
      */
     @Override
     public void undo() {
-        if (!editorWindow.isSaved()) {
-            if (getText().equals(editorWindow.getResetFileContents())) {
-                editorWindow.setSave(true);
-            } else {
-                super.undo();
-                undo();
+        UndoManager<?> undoManager = getUndoManager();
+
+        if (!undoManager.isAtMarkedPosition()) {
+            if (savedPosition != null && savedPosition.isValid()) {
+                boolean stepped = true;
+                while (!undoManager.isAtMarkedPosition() && stepped)
+                    stepped = undoManager.undo();
+
+                stepped = true;
+                while (!undoManager.isAtMarkedPosition() && stepped)
+                    stepped = undoManager.redo();
+            }
+
+            if (!undoManager.isAtMarkedPosition()) {
+                replaceText(editorWindow.getResetFileContents());
+                markSaved();
             }
         }
     }
@@ -18,6 +18,7 @@
 package com.simpleftp.ui.editor;
 
 import com.simpleftp.ftp.FTPSystem;
+import com.simpleftp.filesystem.TextFormat;
 import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.ftp.exceptions.FTPConnectionFailedException;
 import com.simpleftp.ftp.exceptions.FTPNotConnectedException;
@@ -26,6 +27,7 @@ import com.simpleftp.ui.UI;
 import com.simpleftp.ui.directories.DirectoryPane;
 import com.simpleftp.ui.files.LineEntry;
 import com.simpleftp.ui.interfaces.Window;
+import com.simpleftp.ui.background.scheduling.PathLockManager;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
@@ -36,6 +38,7 @@ import javafx.scene.layout.*;
 import javafx.scene.paint.Paint;
 import javafx.stage.Stage;
 import lombok.Getter;
+import lombok.Setter;
 import org.fxmisc.flowless.VirtualizedScrollPane;
 import org.fxmisc.richtext.StyleClassedTextArea;
 
@@ -91,6 +94,16 @@ public abstract class FileEditorWindow extends VBox implements Window {
      * A label displaying if the file is currently being saved
      */
     private final Label savingLabel;
+    /**
+     * The label displayed while the rest of the file contents are still loading
+     */
+    private final Label loadingLabel;
+    /**
+     * The format of the file, which it is saved in so its charset and line separators are preserved
+     */
+    @Getter
+    @Setter
+    private TextFormat textFormat = TextFormat.getDefault();
     /**
      * The file contents that the resetConnection button brings us back to
      */
@@ -130,6 +143,8 @@ public abstract class FileEditorWindow extends VBox implements Window {
 
         savingLabel = new Label("Saving...");
         savingLabel.setVisible(false);
+        loadingLabel = new Label("Loading...");
+        loadingLabel.setVisible(false);
     }
 
     /**
@@ -145,7 +160,7 @@ public abstract class FileEditorWindow extends VBox implements Window {
      */
     private void initButtonBar() {
         buttonBar.setSpacing(10);
-        buttonBar.getChildren().addAll(save, reset, savingLabel);
+        buttonBar.getChildren().addAll(save, reset, savingLabel, loadingLabel);
         buttonBar.setBorder(new Border(new BorderStroke(Paint.valueOf("BLACK"), BorderStrokeStyle.SOLID, CornerRadii.EMPTY, BorderWidths.DEFAULT)));
         buttonBar.setStyle(UI.GREY_BACKGROUND);
         buttonBar.setAlignment(Pos.CENTER_LEFT);
@@ -205,6 +220,7 @@ public abstract class FileEditorWindow extends VBox implements Window {
                 String filePath = getSaveFilePath();
                 displaySavingLabel(true);
                 saver.saveFile(filePath, text);
+                editor.markSaved();
                 setSave(true);
                 editor.requestFocus();
 
@@ -223,6 +239,7 @@ public abstract class FileEditorWindow extends VBox implements Window {
      */
     private void initWindow() {
         editor.setText(fileContents);
+        editor.trackChanges();
         editorScrollPane.scrollXToPixel(0);
         editorScrollPane.scrollYToPixel(0);
     }
@@ -239,15 +256,25 @@ public abstract class FileEditorWindow extends VBox implements Window {
      * @param saved the value for saved
      */
     public void setSave(boolean saved) {
-        if (saved) {
-            removeStarFromStageTitle();
-        } else {
-            addStarToStageTitle();
+        if (stage != null) {
+            if (saved) {
+                removeStarFromStageTitle();
+            } else {
+                addStarToStageTitle();
+            }
         }
 
         this.saved = saved;
     }
 
+    /**
+     * Marks the file as not saved after a save failed, so the version saved before it is treated as the saved version again
+     */
+    public void saveFailed() {
+        editor.restoreSavedMark();
+        setSave(false);
+    }
+
     /**
      * Sets the visibility of the "Saving..." label based on the display value
      * @param display the value for whether saving should be displayed or not
@@ -256,6 +283,57 @@ public abstract class FileEditorWindow extends VBox implements Window {
         savingLabel.setVisible(display);
     }
 
+    /**
+     * Marks the editor as loading, i.e. the contents it was constructed with are only the start of the file and the rest is appended with appendContents.
+     * The file can't be edited or saved until finishLoading is called
+     */
+    public void startLoading() {
+        editor.stopTrackingChanges();
+        editor.setEditable(false);
+        save.setDisable(true);
+        reset.setDisable(true);
+        loadingLabel.setVisible(true);
+    }
+
+    /**
+     * Appends the next chunk of the file contents while loading
+     * @param contents the chunk of contents to append
+     */
+    public void appendContents(String contents) {
+        editor.appendText(contents);
+    }
+
+    /**
+     * Marks the editor as having loaded all of the file contents, so it can now be edited and saved.
+     * The loaded contents become what the reset button brings us back to
+     */
+    public void finishLoading() {
+        resetFileContents = editor.getText();
+        editor.trackChanges();
+        editor.setEditable(true);
+        save.setDisable(false);
+        reset.setDisable(false);
+        loadingLabel.setVisible(false);
+    }
+
+    /**
+     * Stops the file from being edited or saved, e.g. as some of its contents could not be decoded in its charset, so saving the decoded text would corrupt it.
+     * This should be called after finishLoading, as that makes the editor editable again
+     */
+    public void setReadOnly() {
+        editor.setEditable(false);
+        save.setDisable(true);
+        reset.setDisable(true);
+    }
+
+    /**
+     * Checks if this window is showing
+     * @return true if shown and not closed
+     */
+    public boolean isShowing() {
+        return stage != null && stage.isShowing();
+    }
+
     /**
      * Checks if the file still exists.
      * @return true if exists, false if not or it couldn't be determined
@@ -332,7 +410,7 @@ public abstract class FileEditorWindow extends VBox implements Window {
                 if (consumeEvent)
                     e.consume();
                 else
-                    UI.closeFile(lineEntry.getFilePath(), creatingPane.isLocal());
+                    PathLockManager.closeFile(lineEntry.getFilePath(), creatingPane.isLocal());
             });
         } catch (Exception ex) {
             UI.doException(ex, UI.ExceptionType.ERROR, FTPSystem.isDebugEnabled());
@@ -354,7 +432,7 @@ public abstract class FileEditorWindow extends VBox implements Window {
 
             if (closeStage) {
                 stage.close();
-                UI.closeFile(lineEntry.getFilePath(), creatingPane.isLocal());
+                PathLockManager.closeFile(lineEntry.getFilePath(), creatingPane.isLocal());
             }
         }
     }
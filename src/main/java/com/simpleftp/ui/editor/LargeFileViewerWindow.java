@@ -0,0 +1,366 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ui.editor;
+
+import com.simpleftp.filesystem.MappedTextFile;
+import com.simpleftp.filesystem.cache.RemoteFileCache;
+import com.simpleftp.filesystem.interfaces.CommonFile;
+import com.simpleftp.ftp.FTPSystem;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.exceptions.FTPException;
+import com.simpleftp.properties.Properties;
+import com.simpleftp.ui.UI;
+import com.simpleftp.ui.background.scheduling.PathLockManager;
+import com.simpleftp.ui.directories.DirectoryPane;
+import com.simpleftp.ui.files.LineEntry;
+import com.simpleftp.ui.interfaces.Window;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.*;
+import javafx.scene.paint.Paint;
+import javafx.stage.Stage;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * This class represents a read-only Window for viewing and searching files too large to be loaded into a FileEditorWindow.
+ *
+ * The file is read through a MappedTextFile, so only the lines on screen are decoded. The lines are indexed in the background and can be scrolled through
+ * as they are indexed, and its charset is detected from the start of the file. A remote file is first retrieved into the RemoteFileCache, which stores it on
+ * disk, so the file is never held in memory. Lines can only be located by reading the whole file, so the file is downloaded once, in binary mode so that
+ * its bytes and line endings are exactly those on the server, and viewing it again while unchanged is served from the cache
+ */
+@Log4j2
+public class LargeFileViewerWindow extends VBox implements Window {
+    /**
+     * The file panel that opened this window
+     */
+    private final DirectoryPane creatingPane;
+    /**
+     * The line entry being viewed
+     */
+    private final LineEntry lineEntry;
+    /**
+     * The lines of the file shown by the list view
+     */
+    private final Lines lines;
+    /**
+     * The list view displaying the lines. It only creates cells for the lines on screen
+     */
+    private final ListView<String> linesView;
+    /**
+     * The field to enter text to search for
+     */
+    private final TextField searchField;
+    /**
+     * The button to find the next line containing the search text
+     */
+    private final Button findButton;
+    /**
+     * The label displaying the progress of loading the file
+     */
+    private final Label statusLabel;
+    /**
+     * The stage that will show this window
+     */
+    private Stage stage;
+    /**
+     * The file being viewed, null until it is opened
+     */
+    private volatile MappedTextFile textFile;
+    /**
+     * The lease on the local copy of the file if remote
+     */
+    private volatile RemoteFileCache.Lease lease;
+    /**
+     * Set when the window is closed so the background tasks stop
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructs a LargeFileViewerWindow for the specified file
+     * @param creatingPane the DirectoryPane opening this window
+     * @param lineEntry the line entry representing the file to view
+     */
+    public LargeFileViewerWindow(DirectoryPane creatingPane, LineEntry lineEntry) {
+        this.creatingPane = creatingPane;
+        this.lineEntry = lineEntry;
+        lines = new Lines();
+        linesView = new ListView<>(lines);
+        linesView.setFixedCellSize(20); // a fixed size means the view doesn't have to measure lines to scroll
+        linesView.setStyle("-fx-font-family: monospace;");
+        VBox.setVgrow(linesView, Priority.ALWAYS);
+
+        searchField = new TextField();
+        searchField.setPromptText("Search");
+        searchField.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ENTER)
+                find();
+        });
+        findButton = new Button("Find Next");
+        findButton.setOnAction(e -> find());
+        findButton.setDisable(true);
+        statusLabel = new Label("Loading...");
+
+        HBox toolBar = new HBox(10, new Label("Read-Only"), searchField, findButton, statusLabel);
+        toolBar.setPadding(new Insets(2));
+        toolBar.setAlignment(Pos.CENTER_LEFT);
+        toolBar.setBorder(new Border(new BorderStroke(Paint.valueOf("BLACK"), BorderStrokeStyle.SOLID, CornerRadii.EMPTY, BorderWidths.DEFAULT)));
+        toolBar.setStyle(UI.GREY_BACKGROUND);
+
+        getChildren().addAll(toolBar, linesView);
+        setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ESCAPE)
+                close();
+        });
+    }
+
+    /**
+     * This class is the list of lines displayed by the list view. It holds no lines itself, each line is read from the file when the list view asks for it,
+     * and its size grows as lines are indexed
+     */
+    private class Lines extends ObservableListBase<String> {
+        /**
+         * The number of lines indexed so far
+         */
+        private int size;
+
+        /**
+         * Reads the line from the file
+         * @param index the index of the line
+         * @return the line
+         */
+        @Override
+        public String get(int index) {
+            try {
+                return textFile.getLine(index);
+            } catch (IOException ex) {
+                return "";
+            }
+        }
+
+        /**
+         * Returns the number of lines indexed so far
+         * @return the number of lines
+         */
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Grows the list to the number of lines indexed. Must be called on the JavaFX thread
+         * @param size the number of lines indexed
+         */
+        private void setSize(int size) {
+            if (size > this.size) {
+                beginChange();
+                nextAdd(this.size, size);
+                this.size = size;
+                endChange();
+            }
+        }
+    }
+
+    /**
+     * Gets the path of the local copy of the file to view, retrieving it from the RemoteFileCache if the file is remote
+     * @return the path of the file to view
+     * @throws Exception if the file can't be retrieved
+     */
+    private Path retrieveFile() throws Exception {
+        CommonFile file = lineEntry.getFile();
+
+        if (lineEntry.isLocal())
+            return Paths.get(file.getFilePath());
+
+        FTPConnection readingConnection = FTPConnection.createTemporaryConnection(creatingPane.getFileSystem().getFTPConnection());
+        readingConnection.connect();
+        readingConnection.login();
+        readingConnection.setTextTransferMode(false); // the charset and line endings are handled by the MappedTextFile
+
+        try {
+            String remotePath = file.isSymbolicLink() ? file.getSymbolicLinkTarget():file.getFilePath();
+            lease = RemoteFileCache.getInstance().fetch(remotePath, readingConnection);
+
+            return lease.getFile().toPath();
+        } finally {
+            try {
+                readingConnection.disconnect();
+            } catch (FTPException ex) {
+                log.warn("Failed to disconnect a connection used to retrieve a file to view");
+            }
+        }
+    }
+
+    /**
+     * Starts the background task that opens the file and indexes its lines
+     */
+    private void load() {
+        Task<Void> loadTask = new Task<>() {
+            @Override
+            protected Void call() throws Exception {
+                Path path = retrieveFile();
+                MappedTextFile textFile = new MappedTextFile(path);
+
+                synchronized (LargeFileViewerWindow.this) {
+                    LargeFileViewerWindow.this.textFile = textFile;
+
+                    if (closed) { // closed while the file was retrieved, so release() didn't see the file
+                        releaseFile();
+                        return null;
+                    }
+                }
+
+                Platform.runLater(() -> findButton.setDisable(false));
+
+                textFile.buildIndex(() -> closed, count -> Platform.runLater(() -> {
+                    lines.setSize(count);
+                    statusLabel.setText("Indexing... " + count + " lines");
+                }));
+
+                return null;
+            }
+        };
+
+        loadTask.setOnSucceeded(e -> {
+            MappedTextFile textFile = this.textFile;
+
+            if (textFile != null)
+                statusLabel.setText(textFile.getLineCount() + " lines (" + textFile.getCharset().name() + ")");
+        });
+        loadTask.setOnFailed(e -> {
+            if (!closed) {
+                Throwable ex = loadTask.getException();
+                UI.doException(ex instanceof Exception ? (Exception)ex:new Exception(ex), UI.ExceptionType.ERROR, FTPSystem.isDebugEnabled());
+                close();
+            } else {
+                releaseFile(); // the lease may have been taken after the window was closed
+            }
+        });
+
+        Thread thread = new Thread(loadTask, "LargeFileViewer-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Finds the next line containing the search text after the selected line in the background, selecting it if found
+     */
+    private void find() {
+        MappedTextFile textFile = this.textFile;
+        String text = searchField.getText();
+
+        if (textFile == null || text.isEmpty())
+            return;
+
+        int fromLine = linesView.getSelectionModel().getSelectedIndex() + 1;
+        findButton.setDisable(true);
+
+        Task<Integer> findTask = new Task<>() {
+            @Override
+            protected Integer call() throws Exception {
+                return textFile.find(text, fromLine, () -> closed);
+            }
+        };
+
+        findTask.setOnSucceeded(e -> {
+            findButton.setDisable(false);
+            int line = findTask.getValue();
+
+            if (line >= 0) {
+                linesView.getSelectionModel().clearAndSelect(line);
+                linesView.scrollTo(line);
+            } else {
+                UI.doInfo("Text Not Found", "The text " + text + " was not found after the selected line" + (textFile.isIndexed() ? "":" in the lines indexed so far"));
+            }
+        });
+        findTask.setOnFailed(e -> {
+            findButton.setDisable(false);
+            Throwable ex = findTask.getException();
+            UI.doException(ex instanceof Exception ? (Exception)ex:new Exception(ex), UI.ExceptionType.ERROR, FTPSystem.isDebugEnabled());
+        });
+
+        Thread thread = new Thread(findTask, "LargeFileViewer-search");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Shows this LargeFileViewerWindow
+     */
+    @Override
+    public void show() {
+        stage = new Stage();
+        stage.setTitle("File Viewer - " + (lineEntry.isLocal() ? "":"ftp:/") + lineEntry.getFilePath());
+        stage.setScene(new Scene(this, Properties.FILE_EDITOR_WIDTH.getValue(), Properties.FILE_EDITOR_HEIGHT.getValue()));
+        stage.setOnHidden(e -> release());
+        stage.show();
+        load();
+    }
+
+    /**
+     * Closes the file being viewed and releases its lease if remote
+     */
+    private synchronized void releaseFile() {
+        try {
+            MappedTextFile textFile = this.textFile;
+            if (textFile != null)
+                textFile.close();
+        } catch (IOException ex) {
+            log.warn("Failed to close a file being viewed");
+        }
+
+        RemoteFileCache.Lease lease = this.lease;
+        if (lease != null)
+            lease.close();
+    }
+
+    /**
+     * Releases the file and its lease and closes the file in the UI
+     */
+    private synchronized void release() {
+        if (!closed) {
+            closed = true;
+            releaseFile();
+            PathLockManager.closeFile(lineEntry.getFilePath(), creatingPane.isLocal());
+        }
+    }
+
+    /**
+     * Closes this LargeFileViewerWindow
+     */
+    @Override
+    public void close() {
+        if (stage != null)
+            stage.close();
+
+        release();
+    }
+}
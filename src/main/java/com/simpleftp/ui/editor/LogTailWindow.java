@@ -0,0 +1,437 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ui.editor;
+
+import com.simpleftp.filesystem.interfaces.CommonFile;
+import com.simpleftp.ftp.FTPSystem;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.exceptions.FTPCommandFailedException;
+import com.simpleftp.ftp.exceptions.FTPException;
+import com.simpleftp.properties.Properties;
+import com.simpleftp.ui.UI;
+import com.simpleftp.ui.background.scheduling.PathLockManager;
+import com.simpleftp.ui.directories.DirectoryPane;
+import com.simpleftp.ui.files.LineEntry;
+import com.simpleftp.ui.interfaces.Window;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import javafx.collections.transformation.FilteredList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.*;
+import javafx.scene.paint.Paint;
+import javafx.stage.Stage;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents a read-only Window that follows a growing remote file, such as a log, showing new lines as they are appended.
+ *
+ * The size of the file is polled with the SIZE command, and only the bytes appended since the last poll are downloaded with REST and RETR, so the bandwidth used
+ * is proportional to how much the file grows rather than its size. The file is polled every LOG_TAIL_MIN_INTERVAL milliseconds while it grows, backing off up to
+ * LOG_TAIL_MAX_INTERVAL while it doesn't. The last LOG_TAIL_MAX_LINES lines are kept, and can be filtered to those containing some text
+ */
+@Log4j2
+public class LogTailWindow extends VBox implements Window {
+    /**
+     * The maximum number of bytes downloaded when the file is opened or has grown by more than can be displayed, so the start of a large file isn't downloaded
+     */
+    private static final int MAX_FETCH_BYTES = 1024 * 1024;
+    /**
+     * The file panel that opened this window
+     */
+    private final DirectoryPane creatingPane;
+    /**
+     * The line entry being tailed
+     */
+    private final LineEntry lineEntry;
+    /**
+     * The lines kept from the file
+     */
+    private final TailLines lines;
+    /**
+     * The lines matching the filter
+     */
+    private final FilteredList<String> filteredLines;
+    /**
+     * The list view displaying the filtered lines
+     */
+    private final ListView<String> linesView;
+    /**
+     * The check box to choose if the view scrolls to new lines
+     */
+    private final CheckBox followBox;
+    /**
+     * The label displaying the status of the tail
+     */
+    private final Label statusLabel;
+    /**
+     * The stage that will show this window
+     */
+    private Stage stage;
+    /**
+     * The thread polling the file
+     */
+    private Thread pollThread;
+    /**
+     * The connection the file is polled with
+     */
+    private volatile FTPConnection connection;
+    /**
+     * Set when the window is closed so the polling stops
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructs a LogTailWindow for the specified remote file
+     * @param creatingPane the DirectoryPane opening this window
+     * @param lineEntry the line entry representing the file to tail
+     */
+    public LogTailWindow(DirectoryPane creatingPane, LineEntry lineEntry) {
+        this.creatingPane = creatingPane;
+        this.lineEntry = lineEntry;
+        lines = new TailLines(Properties.LOG_TAIL_MAX_LINES.getValue());
+        filteredLines = new FilteredList<>(lines);
+        linesView = new ListView<>(filteredLines);
+        linesView.setFixedCellSize(20);
+        linesView.setStyle("-fx-font-family: monospace;");
+        VBox.setVgrow(linesView, Priority.ALWAYS);
+
+        TextField filterField = new TextField();
+        filterField.setPromptText("Filter");
+        filterField.textProperty().addListener((observable, oldValue, text) -> {
+            filteredLines.setPredicate(text.isEmpty() ? null:line -> line.contains(text));
+            scrollToEnd();
+        });
+        followBox = new CheckBox("Follow");
+        followBox.setSelected(true);
+        statusLabel = new Label("Connecting...");
+
+        HBox toolBar = new HBox(10, new Label("Read-Only"), filterField, followBox, statusLabel);
+        toolBar.setPadding(new Insets(2));
+        toolBar.setAlignment(Pos.CENTER_LEFT);
+        toolBar.setBorder(new Border(new BorderStroke(Paint.valueOf("BLACK"), BorderStrokeStyle.SOLID, CornerRadii.EMPTY, BorderWidths.DEFAULT)));
+        toolBar.setStyle(UI.GREY_BACKGROUND);
+
+        getChildren().addAll(toolBar, linesView);
+        setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ESCAPE)
+                close();
+        });
+    }
+
+    /**
+     * This class is a ring buffer of the lines kept from the file. When it is full, the oldest lines are dropped as new lines are added
+     */
+    private static class TailLines extends ObservableListBase<String> {
+        /**
+         * The buffer of lines
+         */
+        private final String[] buffer;
+        /**
+         * The index in the buffer of the first line
+         */
+        private int head;
+        /**
+         * The number of lines in the buffer
+         */
+        private int size;
+
+        /**
+         * Constructs the ring buffer
+         * @param capacity the maximum number of lines kept
+         */
+        private TailLines(int capacity) {
+            buffer = new String[capacity];
+        }
+
+        /**
+         * Gets the line at the index, with 0 being the oldest line kept
+         * @param index the index of the line
+         * @return the line
+         */
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+
+            return buffer[(head + index) % buffer.length];
+        }
+
+        /**
+         * Returns the number of lines kept
+         * @return the number of lines
+         */
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Appends the lines, dropping the oldest lines if the buffer is full. Must be called on the JavaFX thread
+         * @param added the lines to append
+         */
+        private void append(List<String> added) {
+            int capacity = buffer.length;
+
+            if (added.size() > capacity)
+                added = added.subList(added.size() - capacity, added.size());
+
+            int drop = Math.max(0, size + added.size() - capacity);
+            beginChange();
+
+            if (drop > 0) {
+                List<String> removed = new ArrayList<>(drop);
+
+                for (int i = 0; i < drop; i++) {
+                    int index = (head + i) % capacity;
+                    removed.add(buffer[index]);
+                    buffer[index] = null;
+                }
+
+                head = (head + drop) % capacity;
+                size -= drop;
+                nextRemove(0, removed);
+            }
+
+            int from = size;
+            for (String line : added)
+                buffer[(head + size++) % capacity] = line;
+
+            nextAdd(from, size);
+            endChange();
+        }
+    }
+
+    /**
+     * This class splits the bytes downloaded from the file into lines, keeping an incomplete last line until the rest of it is downloaded
+     */
+    private static class LineSplitter {
+        /**
+         * The bytes of the incomplete last line
+         */
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        /**
+         * True if the bytes up to the first line separator should be skipped as the download started in the middle of a line
+         */
+        private boolean skipPartialLine;
+
+        /**
+         * Discards the incomplete line and starts again
+         * @param skipPartialLine true if the next bytes start in the middle of a line
+         */
+        private void reset(boolean skipPartialLine) {
+            pending.reset();
+            this.skipPartialLine = skipPartialLine;
+        }
+
+        /**
+         * Splits the bytes into the complete lines they end
+         * @param bytes the bytes downloaded
+         * @param length the number of bytes
+         * @return the complete lines, without line separators
+         */
+        private List<String> split(byte[] bytes, int length) {
+            List<String> lines = new ArrayList<>();
+            int start = 0;
+
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] == '\n') {
+                    if (skipPartialLine) {
+                        skipPartialLine = false;
+                    } else {
+                        pending.write(bytes, start, i - start);
+                        String line = new String(pending.toByteArray(), StandardCharsets.UTF_8);
+                        lines.add(line.endsWith("\r") ? line.substring(0, line.length() - 1):line);
+                    }
+
+                    pending.reset();
+                    start = i + 1;
+                }
+            }
+
+            if (!skipPartialLine)
+                pending.write(bytes, start, length - start);
+
+            return lines;
+        }
+    }
+
+    /**
+     * Connects the connection the file is polled with
+     * @return the connection
+     * @throws FTPException if the connection fails
+     */
+    private FTPConnection connect() throws FTPException {
+        FTPConnection connection = FTPConnection.createTemporaryConnection(creatingPane.getFileSystem().getFTPConnection());
+        this.connection = connection;
+        connection.connect();
+        connection.login();
+        connection.setTextTransferMode(false); // offsets are only supported in binary mode
+
+        return connection;
+    }
+
+    /**
+     * Polls the file until the window is closed, appending the lines added to it
+     */
+    private void poll() {
+        FTPConnection connection = null;
+
+        try {
+            CommonFile file = lineEntry.getFile();
+            String remotePath = file.isSymbolicLink() ? file.getSymbolicLinkTarget():file.getFilePath();
+            connection = connect();
+            LineSplitter splitter = new LineSplitter();
+            ByteArrayOutputStream downloaded = new ByteArrayOutputStream();
+            int minInterval = Properties.LOG_TAIL_MIN_INTERVAL.getValue();
+            int maxInterval = Math.max(minInterval, Properties.LOG_TAIL_MAX_INTERVAL.getValue());
+            long interval = minInterval;
+            long offset = -1;
+
+            while (!closed) {
+                String sizeReply = connection.getFileSize(remotePath);
+
+                if (sizeReply == null)
+                    throw new FTPCommandFailedException("The size of " + remotePath + " could not be retrieved", connection.getReplyString());
+
+                long size = Long.parseLong(sizeReply.trim());
+
+                if (offset < 0 || size < offset || size - offset > MAX_FETCH_BYTES) {
+                    if (offset >= 0 && size < offset)
+                        appendLines(List.of("--- " + remotePath + " was truncated ---"));
+
+                    long start = Math.max(0, size - MAX_FETCH_BYTES);
+                    splitter.reset(start > 0); // started in the middle of the file, so the first line is likely incomplete
+                    offset = start;
+                }
+
+                if (size > offset) {
+                    downloaded.reset();
+                    if (!connection.downloadFile(remotePath, downloaded, offset))
+                        throw new FTPCommandFailedException("The new contents of " + remotePath + " could not be downloaded", connection.getReplyString());
+
+                    offset += downloaded.size();
+                    appendLines(splitter.split(downloaded.toByteArray(), downloaded.size()));
+                    interval = minInterval;
+                } else {
+                    interval = Math.min(interval * 2, maxInterval);
+                }
+
+                long nextInterval = interval;
+                long bytes = offset;
+                Platform.runLater(() -> statusLabel.setText(bytes + " bytes, checking every " + (nextInterval / 1000.0) + "s"));
+
+                Thread.sleep(interval);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt(); // closed
+        } catch (Exception ex) {
+            if (!closed) {
+                Platform.runLater(() -> {
+                    statusLabel.setText("Stopped");
+                    UI.doException(ex, UI.ExceptionType.ERROR, FTPSystem.isDebugEnabled());
+                });
+            }
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.disconnect();
+                } catch (FTPException ex) {
+                    log.warn("Failed to disconnect a connection used to tail a file");
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the lines to the view on the JavaFX thread, scrolling to them if following
+     * @param added the lines to append
+     */
+    private void appendLines(List<String> added) {
+        if (!added.isEmpty()) {
+            Platform.runLater(() -> {
+                lines.append(added);
+                scrollToEnd();
+            });
+        }
+    }
+
+    /**
+     * Scrolls to the last line if following
+     */
+    private void scrollToEnd() {
+        if (followBox.isSelected() && !filteredLines.isEmpty())
+            linesView.scrollTo(filteredLines.size() - 1);
+    }
+
+    /**
+     * Shows this LogTailWindow and starts polling the file
+     */
+    @Override
+    public void show() {
+        stage = new Stage();
+        stage.setTitle("Tail - ftp:/" + lineEntry.getFilePath());
+        stage.setScene(new Scene(this, Properties.FILE_EDITOR_WIDTH.getValue(), Properties.FILE_EDITOR_HEIGHT.getValue()));
+        stage.setOnHidden(e -> release());
+        stage.show();
+
+        pollThread = new Thread(this::poll, "LogTail-poller");
+        pollThread.setDaemon(true);
+        pollThread.start();
+    }
+
+    /**
+     * Stops polling the file and closes the file in the UI
+     */
+    private void release() {
+        if (!closed) {
+            closed = true;
+
+            FTPConnection connection = this.connection;
+            if (connection != null)
+                connection.abortTransfer();
+
+            if (pollThread != null)
+                pollThread.interrupt();
+
+            PathLockManager.closeFile(lineEntry.getFilePath(), creatingPane.isLocal());
+        }
+    }
+
+    /**
+     * Closes this LogTailWindow
+     */
+    @Override
+    public void close() {
+        if (stage != null)
+            stage.close();
+
+        release();
+    }
+}
@@ -19,12 +19,12 @@ package com.simpleftp.ui.editor.tasks;
 
 import com.simpleftp.filesystem.FileUtils;
 import com.simpleftp.filesystem.exceptions.FileSystemException;
-import com.simpleftp.filesystem.interfaces.FileSystem;
 import com.simpleftp.ftp.FTPSystem;
 import com.simpleftp.ftp.connection.FTPConnection;
 import com.simpleftp.ftp.exceptions.FTPException;
 import com.simpleftp.ui.UI;
 import com.simpleftp.ui.background.AbstractDisplayableBackgroundTask;
+import com.simpleftp.ui.background.scheduling.PathLock;
 import com.simpleftp.ui.background.scheduling.TaskScheduler;
 import com.simpleftp.ui.directories.DirectoryPane;
 import com.simpleftp.ui.editor.FileEditorWindow;
@@ -34,13 +34,9 @@ import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import javafx.concurrent.Worker;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
-
 /**
  * The service for uploading the text of a changed file
- * Abstract as uploads differ between file types. E.g local files aren't really uploaded, so their definition of the upload method would be just clean up.
+ * Abstract as uploads differ between file types. E.g local files are just written to disk, while remote files are streamed to the server.
  * This can only be instantiated by calling newInstance which will return the appropriate implementation for that file
  */
 public abstract class FileUploader extends AbstractDisplayableBackgroundTask {
@@ -75,7 +71,7 @@ public abstract class FileUploader extends AbstractDisplayableBackgroundTask {
     /**
      * A scheduler for scheduling this uploader
      */
-    private static final TaskScheduler<FileEditorWindow, FileUploader> scheduler = new TaskScheduler<>();
+    private static final TaskScheduler<FileUploader> scheduler = new TaskScheduler<>();
 
     /**
      * Constructs a file uploader
@@ -121,8 +117,8 @@ public abstract class FileUploader extends AbstractDisplayableBackgroundTask {
             if (FileUtils.pathEquals(parentPath, directoryPane.getCurrentWorkingDirectory(), directoryPane.isLocal())) {
                 try {
                     LineEntry lineEntry = editorWindow.getLineEntry();
-                    if (directoryPane.filesDisplayed().getLineEntries().contains(lineEntry))
-                        editorWindow.getLineEntry().refresh(); // just refresh the line entry. No point refreshing entire FilePanel if this LineEntry is still on it
+                    if (directoryPane.filesDisplayed().contains(lineEntry))
+                        directoryPane.refreshLineEntry(lineEntry); // just refresh the line entry. No point refreshing entire FilePanel if this LineEntry is still on it
                     else {
                         directoryPane.refreshCurrentDirectory(); // the directory pane no longer contains this line entry reference, so refresh file panel to refresh the new instance of this line entry
                     }
@@ -163,17 +159,6 @@ public abstract class FileUploader extends AbstractDisplayableBackgroundTask {
         };
     }
 
-    /**
-     * Writes to the specified file the file contents
-     * @param localFilePath the path of the temp file being edited
-     * @throws IOException if an error occurs
-     */
-    private void writeToFile(String localFilePath) throws IOException {
-        BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(localFilePath));
-        bufferedWriter.write(savedFileContents);
-        bufferedWriter.close();
-    }
-
     /**
      * Gets a new connection with same details to upload the saved file
      * @return the connection to upload the file with
@@ -181,41 +166,12 @@ public abstract class FileUploader extends AbstractDisplayableBackgroundTask {
     abstract FTPConnection getUploadingConnection() throws FTPException;
 
     /**
-     * Gets the backup path
-     * @param filePath the path to backup
-     * @return backup path
-     */
-    abstract String getBackupPath(String filePath) throws Exception;
-
-    /**
-     * Writes a file backup
-     * @param filePath the file path to back up
-     * @param uploadingConnection the connection uploading the file
-     * @return the backup path, null if failure occurs
-     */
-    abstract String writeBackup(String filePath, FTPConnection uploadingConnection);
-
-    /**
-     * Get the location of where the file should be saved. This is the destination for local files, the temp location for remote files
-     * @param filePath the path to the file wanting to be saved
-     * @return the path where the file should be saved
-     */
-    abstract String getSaveFilePath(String filePath);
-
-    /**
-     * Gets the FileSystem to use
-     * @param connection the connection to initialise the file system with
-     * @return the instance of the file system
+     * Saves the contents to the file, backing up the file while it is being saved if the implementation requires one
+     * @param contents the contents to save
+     * @return true if saved, false if a backup of the file could not be created so the file was not saved
+     * @throws Exception if an error occurs saving the file
      */
-    abstract FileSystem getFileSystem(FTPConnection connection) throws FileSystemException;
-
-    /**
-     * Upload the file. For local file, all that needs to be done is clean up. If remote, this filePath is the temp path, The FileUploader.path is the destination
-     * @param filePath the file path to upload.
-     * @param backupPath the path to the backup that was created
-     * @param fileSystem the file system being used
-     */
-    abstract void uploadFile(String filePath, String backupPath, FileSystem fileSystem) throws FileSystemException;
+    abstract boolean saveContents(String contents) throws Exception;
 
     /**
      * Saves the specified file contents in a file specified by filePath.
@@ -223,27 +179,17 @@ public abstract class FileUploader extends AbstractDisplayableBackgroundTask {
     private void saveFile() {
         try {
             updateState(State.RUNNING);
-            String saveFilePath = getSaveFilePath(filePath);
-            FTPConnection uploadingConnection = getUploadingConnection();
-            FileSystem fileSystem = getFileSystem(uploadingConnection);
-
-            String backupPath = writeBackup(filePath, uploadingConnection);
-            boolean backupWritten = backupPath != null;
 
-            if (backupWritten) {
-                writeToFile(saveFilePath);
-                uploadFile(saveFilePath, backupPath, fileSystem);
-            } else {
+            if (!saveContents(savedFileContents)) {
                 Platform.runLater(() -> {
-                    editorWindow.setSave(false);
+                    editorWindow.saveFailed();
                     UI.doError("Save Failed", "Failed to save file " + filePath + " as could not create backup");
                 });
                 errorOccurred = true;
             }
-            // don't need to bother add file to local file system, because write to file would have already added it
         } catch (Exception ex) {
             Platform.runLater(() -> {
-                editorWindow.setSave(false);
+                editorWindow.saveFailed();
                 UI.doException(ex, UI.ExceptionType.ERROR, FTPSystem.isDebugEnabled());
             });
             errorOccurred = true;
@@ -285,7 +231,7 @@ public abstract class FileUploader extends AbstractDisplayableBackgroundTask {
     }
 
     /**
-     * Schedule this uploader to be run by using its editor window as the key, i.e. if another file uploader is used with the same editor window,
+     * Schedule this uploader to be run with an exclusive lock on the file being saved, i.e. if another file uploader is saving the same file,
      * run them one after another.
      *
      * This should be called from the FX thread
@@ -293,7 +239,7 @@ public abstract class FileUploader extends AbstractDisplayableBackgroundTask {
     @Override
     public void schedule() {
         updateState(State.SCHEDULED);
-        scheduler.schedule(editorWindow, this);
+        scheduler.schedule(this, PathLock.exclusive(filePath, editorWindow.getLineEntry().isLocal()));
         displayTask();
     }
 }
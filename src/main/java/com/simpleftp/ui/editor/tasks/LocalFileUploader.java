@@ -19,13 +19,14 @@ package com.simpleftp.ui.editor.tasks;
 
 import com.simpleftp.filesystem.FileUtils;
 import com.simpleftp.filesystem.LocalFile;
-import com.simpleftp.filesystem.LocalFileSystem;
-import com.simpleftp.filesystem.interfaces.FileSystem;
 import com.simpleftp.ftp.connection.FTPConnection;
 import com.simpleftp.ui.editor.FileEditorWindow;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * This is for "uploading" local files, i.e. saving them to the file system,
@@ -56,8 +57,7 @@ final class LocalFileUploader extends FileUploader {
      * @param filePath the path to backup
      * @return backup path
      */
-    @Override
-    String getBackupPath(String filePath) {
+    private String getBackupPath(String filePath) {
         String pathSeparator = FileUtils.PATH_SEPARATOR;
         String backupPath;
         if (filePath.endsWith(pathSeparator)) {
@@ -78,12 +78,10 @@ final class LocalFileUploader extends FileUploader {
     /**
      * Writes a file backup
      *
-     * @param filePath            the file path to back up
-     * @param uploadingConnection the connection uploading the file, not used here
+     * @param filePath the file path to back up
      * @return the backup path, null if failure occurs
      */
-    @Override
-    String writeBackup(String filePath, FTPConnection uploadingConnection) {
+    private String writeBackup(String filePath) {
         LocalFile file = new LocalFile(filePath);
         if (file.exists()) {
             String backupPath = getBackupPath(filePath);
@@ -108,39 +106,37 @@ final class LocalFileUploader extends FileUploader {
     }
 
     /**
-     * Get the location of where the file should be saved. This is the destination for local files, the temp location for remote files
-     *
-     * @param filePath the path to the file wanting to be saved
-     * @return the path where the file should be saved
+     * Writes to the specified file the file contents, in the format the file was opened in
+     * @param localFilePath the path of the file being saved
+     * @param contents the contents to write
+     * @throws IOException if an error occurs
      */
-    @Override
-    String getSaveFilePath(String filePath) {
-        return filePath;
+    private void writeToFile(String localFilePath, String contents) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(localFilePath))) {
+            editorWindow.getTextFormat().write(contents, outputStream);
+        }
     }
 
     /**
-     * Gets the FileSystem to use
+     * Saves the contents to the file on disk, creating a backup while it is written and removing it after
      *
-     * @param connection the connection to initialise the file system with
-     * @return the instance of the file system
+     * @param contents the contents to save
+     * @return true if saved, false if the backup could not be created
+     * @throws IOException if the file can't be written
      */
     @Override
-    FileSystem getFileSystem(FTPConnection connection) {
-        return new LocalFileSystem(connection);
-    }
+    boolean saveContents(String contents) throws IOException {
+        String backupPath = writeBackup(filePath);
 
-    /**
-     * Upload the file. For local file, all that needs to be done is clean up, as writeToFile is called by FileUploader class before doing rest. If remote, this filePath is the temp path, The FileUploader.path is the destination
-     *
-     * @param filePath   the file path to upload.
-     * @param backupPath the path to the backup that was created
-     * @param fileSystem the file system being used
-     */
-    @Override
-    void uploadFile(String filePath, String backupPath, FileSystem fileSystem){
-        boolean deleteBackup = new LocalFile(backupPath).getName().matches(BACKUP_REGEX);
+        if (backupPath == null)
+            return false;
+
+        writeToFile(filePath, contents);
+        boolean deleteBackup = new LocalFile(backupPath).getName().matches(BACKUP_REGEX); // the backup may not have had to be created, so if the backup path is just the file, don't delete it
 
         if (deleteBackup)
             new File(backupPath).delete();
+
+        return true;
     }
 }
@@ -17,21 +17,16 @@
 
 package com.simpleftp.ui.editor.tasks;
 
-import com.simpleftp.filesystem.FileUtils;
-import com.simpleftp.filesystem.LocalFile;
-import com.simpleftp.filesystem.RemoteFileSystem;
-import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.interfaces.FileSystem;
-import com.simpleftp.ftp.FTPSystem;
 import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.connection.RemoteFileReplacer;
 import com.simpleftp.ftp.exceptions.FTPException;
+import com.simpleftp.properties.Properties;
 import com.simpleftp.ui.editor.FileEditorWindow;
 import lombok.extern.log4j.Log4j2;
 
-import java.io.File;
-
 /**
- * This is for uploading remote files to a remote server
+ * This is for uploading remote files to a remote server. The contents are streamed to a temporary file on the server which is then renamed over the file
  */
 @Log4j2
 final class RemoteFileUploader extends FileUploader {
@@ -77,113 +72,29 @@ final class RemoteFileUploader extends FileUploader {
         if (!uploadingConnection.isLoggedIn())
             uploadingConnection.login();
 
-        uploadingConnection.setTextTransferMode(true);
+        uploadingConnection.setTextTransferMode(false); // line endings are converted locally by the file's TextFormat
 
         return uploadingConnection;
     }
 
     /**
-     * Gets the backup path
+     * Saves the contents by streaming them in the file's format to a temporary file next to the file on the server and then renaming it over the file,
+     * so the file is never left partially written. If REMOTE_SAVE_KEEP_BACKUP is true, the previous version is kept as filePath~ on the server, replacing any earlier backup
      *
-     * @param filePath the path to backup
-     * @return backup path
+     * @param contents the contents to save
+     * @return true if saved, false if the backup could not be created
+     * @throws Exception if an error occurs saving the file
+     * @see RemoteFileReplacer
      */
     @Override
-    String getBackupPath(String filePath) throws Exception {
-        String pathSeparator = "/";
-        String backupPath;
-        if (filePath.endsWith(pathSeparator)) {
-            filePath = filePath.substring(0, filePath.length() - 1);
-        }
-
-        backupPath = filePath + "~";
-
-        int index = 1;
+    boolean saveContents(String contents) throws Exception {
         FTPConnection connection = getUploadingConnection();
 
-        while (connection.remotePathExists(backupPath)) {
-            backupPath = filePath + "~." + index++;
-        }
-
-        return backupPath;
-    }
-
-    /**
-     * Writes a file backup
-     *
-     * @param filePath            the file path to back up
-     * @param uploadingConnection the connection uploading the file
-     * @return the backup path, null if failure occurs
-     */
-    @Override
-    String writeBackup(String filePath, FTPConnection uploadingConnection) {
-        try {
-            if (uploadingConnection.remotePathExists(filePath, false)) { // should always be a file
-                String backupPath = getBackupPath(filePath);
-
-                if (uploadingConnection.renameFile(filePath, backupPath)) {
-                    return backupPath;
-                } else {
-                    System.out.println(uploadingConnection.getReplyString());
-                    return null;
-                }
-            }
-
-            return filePath; // act like it has been backed-up but no need to create backup if it has been deleted before saving
-        } catch (Exception ex) {
-            if (FTPSystem.isDebugEnabled())
-                ex.printStackTrace();
-            return null;
-        }
-    }
-
-    /**
-     * Get the location of where the file should be saved. This is the destination for local files, the temp location for remote files
-     *
-     * @param filePath the path to the file wanting to be saved
-     * @return the path where the file should be saved
-     */
-    @Override
-    String getSaveFilePath(String filePath) {
-        return FileUtils.appendPath(FileUtils.TEMP_DIRECTORY, new File(filePath).getName(), true);
-    }
-
-    /**
-     * Gets the FileSystem to use
-     *
-     * @param connection the connection to initialise the file system with
-     * @return the instance of the file system
-     */
-    @Override
-    FileSystem getFileSystem(FTPConnection connection) throws FileSystemException {
-        return new RemoteFileSystem(connection);
-    }
-
-    /**
-     * Upload the file. For local file, all that needs to be done is clean up. If remote, this filePath is the temp path, The FileUploader.path is the destination
-     *
-     * @param filePath   the file path to upload.
-     * @param backupPath the path to the backup that was created
-     * @param fileSystem the file system being used. This method uses it's FTPConnection
-     */
-    @Override
-    void uploadFile(String filePath, String backupPath, FileSystem fileSystem) throws FileSystemException {
-        String parent = new File(super.filePath).getParent();
-        parent = parent == null ? "/" : parent;
-        LocalFile tempFile = new LocalFile(filePath);
-        fileSystem.addFile(tempFile, parent);
-        tempFile.deleteOnExit();
-
-        boolean deleteBackup = new LocalFile(backupPath).getName().matches(BACKUP_REGEX); // the backup may not have had to be created, so if the backup path is just the file, don't delete it
-
         try {
-            FTPConnection uploadingConnection = getUploadingConnection();
-            if (uploadingConnection.remotePathExists(backupPath) && deleteBackup)
-                uploadingConnection.removeFile(backupPath); // after successful upload delete file
-
-            uploadingConnection.disconnect();
-        } catch (FTPException ex) {
-            throw new FileSystemException("An error occurred uploading file", ex);
+            return new RemoteFileReplacer(connection, filePath, Properties.REMOTE_SAVE_KEEP_BACKUP.getValue())
+                    .replace(outputStream -> editorWindow.getTextFormat().write(contents, outputStream));
+        } finally {
+            connection.disconnect();
         }
     }
 }
@@ -18,12 +18,21 @@
 package com.simpleftp.ui.files;
 
 import com.simpleftp.filesystem.FileUtils;
+import com.simpleftp.filesystem.cache.TreeSizeCache;
+import com.simpleftp.filesystem.cache.TreeSizeCache.TreeSize;
 import com.simpleftp.filesystem.exceptions.FileSystemException;
 import com.simpleftp.filesystem.interfaces.CommonFile;
+import com.simpleftp.filesystem.trees.TreeSizeCalculator;
 import com.simpleftp.ftp.FTPSystem;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.properties.Properties;
 import com.simpleftp.ui.UI;
 import com.simpleftp.ui.directories.DirectoryPane;
+import com.simpleftp.ui.directories.RemoteDirectoryPane;
 import com.simpleftp.ui.interfaces.Window;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
@@ -36,6 +45,7 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -89,6 +99,11 @@ public class FilePropertyWindow extends VBox implements Window {
      */
     private static final int MAX_PATH_LENGTH = 25;
 
+    /**
+     * The extra height of the window for a directory, to fit the button to calculate its size
+     */
+    private static final int CALCULATE_SIZE_HEIGHT = 45;
+
     /**
      * Size Units to display file size in
      */
@@ -187,11 +202,13 @@ public class FilePropertyWindow extends VBox implements Window {
         boolean symLink = lineEntry.file.isSymbolicLink();
         int height = displayPermissionsBox ? UI.PROPERTIES_WINDOW_HEIGHT_PERMISSIONS:UI.PROPERTIES_WINDOW_HEIGHT;
         height = symLink ? height + 30:height;
+        height = lineEntry.isDirectory() ? height + CALCULATE_SIZE_HEIGHT:height;
         Scene scene = new Scene(this, UI.PROPERTIES_WINDOW_WIDTH, height);
         stage = new Stage();
         stage.setTitle(lineEntry.file.getName() + " Properties");
         stage.setResizable(false);
         stage.setScene(scene);
+        stage.setOnHidden(e -> propertiesPanel.stopSizeCalculation());
         stage.show();
     }
 
@@ -201,6 +218,8 @@ public class FilePropertyWindow extends VBox implements Window {
      */
     @Override
     public void close() {
+        propertiesPanel.stopSizeCalculation();
+
         if (stage != null)
             stage.close();
     }
@@ -241,6 +260,22 @@ public class FilePropertyWindow extends VBox implements Window {
          * The toggle group containing the radio buttons
          */
         private ToggleGroup toggleGroup;
+        /**
+         * The button to calculate the size of the directory's tree, or stop the calculation in progress
+         */
+        private Button calculateButton;
+        /**
+         * The label displaying the number of files and directories in the directory's tree
+         */
+        private Label contentsLabel;
+        /**
+         * The calculation of the directory's size in progress, null if not calculating
+         */
+        private TreeSizeCalculator calculator;
+        /**
+         * Updates the size and contents labels with the totals of the calculation in progress
+         */
+        private Timeline calculationTimeline;
 
         /**
          * Creates a properties panel
@@ -370,6 +405,136 @@ public class FilePropertyWindow extends VBox implements Window {
             }
 
             getChildren().addAll(permissionsBox, modificationTime, sizeLabel);
+
+            if (lineEntry.isDirectory())
+                initSizeCalculation();
+        }
+
+        /**
+         * Initialises the button to calculate the size of the directory's tree. The size listed for a directory is only the size of its own entry,
+         * so the files inside it have to be walked to find out how much it holds
+         */
+        private void initSizeCalculation() {
+            HBox calculateBox = new HBox();
+            calculateBox.setSpacing(10);
+            calculateBox.setAlignment(Pos.CENTER_LEFT);
+            calculateButton = new Button("Calculate Size");
+            calculateButton.setOnAction(e -> toggleSizeCalculation());
+            contentsLabel = new Label();
+            calculateBox.getChildren().addAll(calculateButton, contentsLabel);
+
+            calculationTimeline = new Timeline(new KeyFrame(Duration.millis(250), e -> {
+                if (calculator != null)
+                    displayCalculatedSize(calculator);
+            }));
+            calculationTimeline.setCycleCount(Timeline.INDEFINITE);
+
+            getChildren().add(calculateBox);
+        }
+
+        /**
+         * Starts calculating the size of the directory's tree, or stops the calculation in progress.
+         * The first calculation reuses the sizes of directories calculated recently and the listings cached by a remote pane, while recalculating lists
+         * the whole tree again
+         */
+        private void toggleSizeCalculation() {
+            if (calculator != null) {
+                calculator.cancel();
+                return;
+            }
+
+            DirectoryPane owningPane = lineEntry.getOwningPane();
+            boolean local = owningPane.isLocal();
+            FTPConnection connectionBasis = local ? null:owningPane.getFileSystem().getFTPConnection();
+            String directory = lineEntry.getFilePath();
+            TreeSizeCache sizeCache = TreeSizeCache.getInstance();
+            boolean recalculating = calculateButton.getText().equals("Recalculate");
+
+            if (recalculating)
+                sizeCache.invalidate(local ? null:connectionBasis.getServer(), directory);
+
+            TreeSizeCalculator calculator = new TreeSizeCalculator(directory, connectionBasis, Properties.SEARCH_PARALLELISM.getValue(), sizeCache);
+
+            if (!recalculating && owningPane instanceof RemoteDirectoryPane)
+                calculator.setListingCache(((RemoteDirectoryPane)owningPane).getListingCache()); // null if the pane doesn't cache listings
+            this.calculator = calculator;
+            calculateButton.setText("Stop");
+            calculationTimeline.play();
+
+            Thread thread = new Thread(() -> {
+                try {
+                    calculator.run();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    Platform.runLater(() -> sizeCalculationFinished(calculator));
+                }
+            }, "FilePropertyWindow-size");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Updates the window once the calculation has finished
+         * @param calculator the calculation that finished
+         */
+        private void sizeCalculationFinished(TreeSizeCalculator calculator) {
+            if (this.calculator == calculator) {
+                this.calculator = null;
+                calculationTimeline.stop();
+                calculateButton.setText("Recalculate");
+                displayCalculatedSize(calculator);
+            }
+        }
+
+        /**
+         * Displays the totals of the calculation in the size and contents labels
+         * @param calculator the calculation to display the totals of
+         */
+        private void displayCalculatedSize(TreeSizeCalculator calculator) {
+            TreeSize size = calculator.getSize();
+            long files = size == null ? calculator.getFiles():size.getFiles();
+            long directories = size == null ? calculator.getDirectories():size.getDirectories();
+            String contents = files + (files == 1 ? " file, ":" files, ") + directories + (directories == 1 ? " directory":" directories");
+
+            fileSize = size == null ? calculator.getBytes():size.getBytes();
+            setSizeUnits(getSelectedSizeUnit());
+
+            if (size != null) {
+                contentsLabel.setText(contents);
+            } else if (this.calculator == calculator) {
+                contentsLabel.setText("Calculating: " + contents);
+            } else if (calculator.isCancelled()) {
+                contentsLabel.setText("Stopped: at least " + contents);
+            } else {
+                long errors = calculator.getErrors();
+                contentsLabel.setText("At least " + contents + " (" + errors + (errors == 1 ? " directory":" directories") + " could not be listed)");
+            }
+        }
+
+        /**
+         * Stops the calculation of the directory's size if one is in progress
+         */
+        private void stopSizeCalculation() {
+            if (calculator != null)
+                calculator.cancel();
+        }
+
+        /**
+         * Gets the size unit of the selected radio button
+         * @return the selected size unit, bytes if none is selected
+         */
+        private SizeUnit getSelectedSizeUnit() {
+            Toggle selectedToggle = toggleGroup.getSelectedToggle();
+
+            if (selectedToggle == kilos)
+                return SizeUnit.KILOBYTES;
+            else if (selectedToggle == mega)
+                return SizeUnit.MEGABYTES;
+            else if (selectedToggle == giga)
+                return SizeUnit.GIGABYTES;
+            else
+                return SizeUnit.BYTES;
         }
 
         /**
@@ -17,34 +17,59 @@
 
 package com.simpleftp.ui.files;
 
-import com.simpleftp.ui.files.LineEntry;
+import com.simpleftp.filesystem.exceptions.FileSystemException;
 import lombok.Getter;
-import lombok.Setter;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
- * This class wraps an ArrayList of line entries and some flags for it
+ * This class wraps an ArrayList of line entries and some flags for it.
+ *
+ * If sorting is enabled, once sort() has been called the list is kept in order: entries are added, removed and updated in place by a binary
+ * search on their precomputed sort keys rather than sorting the whole list again. The order can be changed with setSortOrder, which re-orders
+ * the same entries without recreating them
  */
 public class LineEntries {
+    /**
+     * The minimum number of entries to sort in parallel
+     */
+    private static final int PARALLEL_SORT_THRESHOLD = 8192;
     /**
      * The list of line entries
      */
     @Getter
-    @Setter
     private ArrayList<LineEntry> lineEntries;
     /**
      * A flag to determine if the line entries list should be sorted
      */
     private boolean sort;
+    /**
+     * True once the list has been sorted, after which it is kept in order
+     */
+    private boolean sorted;
+    /**
+     * The column the entries are sorted by
+     */
+    @Getter
+    private SortColumn sortColumn;
+    /**
+     * True if the entries are sorted in ascending order
+     */
+    @Getter
+    private boolean ascending;
+    /**
+     * The comparator of the entries for the current sort column and order
+     */
+    private Comparator<LineEntry> comparator;
 
     /**
      * Constructs a default list of line entries
      */
     public LineEntries() {
         this.lineEntries = new ArrayList<>();
+        setSortOrder(SortColumn.NAME, true);
     }
 
     /**
@@ -53,6 +78,28 @@ public class LineEntries {
      */
     public void setSort(boolean sort) {
         this.sort = sort;
+
+        if (!sort)
+            sorted = false;
+    }
+
+    /**
+     * Sets the column and order the entries are sorted by. If the list is already sorted, it is re-sorted in the new order
+     * @param sortColumn the column to sort by
+     * @param ascending true for ascending order, false for descending
+     */
+    public void setSortOrder(SortColumn sortColumn, boolean ascending) {
+        if (sortColumn != this.sortColumn || ascending != this.ascending) {
+            this.sortColumn = sortColumn;
+            this.ascending = ascending;
+            Comparator<SortKey> keyComparator = SortKey.comparator(sortColumn, ascending);
+            comparator = (entry1, entry2) -> keyComparator.compare(entry1.getSortKey(), entry2.getSortKey());
+
+            if (sorted) {
+                sorted = false;
+                sort();
+            }
+        }
     }
 
     /**
@@ -71,11 +118,21 @@ public class LineEntries {
     }
 
     /**
-     * Adds the provided line entry to this LineEntries object
+     * Adds the provided line entry to this LineEntries object. If the list is sorted, it is inserted in order
      * @param lineEntry the line entry to add
+     * @return the index the entry was added at
      */
-    public void add(LineEntry lineEntry) {
-        lineEntries.add(lineEntry);
+    public int add(LineEntry lineEntry) {
+        if (sorted) {
+            int index = insertionPoint(lineEntry);
+            lineEntries.add(index, lineEntry);
+
+            return index;
+        } else {
+            lineEntries.add(lineEntry);
+
+            return lineEntries.size() - 1;
+        }
     }
 
     /**
@@ -83,30 +140,50 @@ public class LineEntries {
      * @param lineEntry the line entry to remove
      */
     public void remove(LineEntry lineEntry) {
-        lineEntries.remove(lineEntry);
+        int index = indexOf(lineEntry);
+
+        if (index != -1)
+            lineEntries.remove(index);
     }
 
     /**
-     * Sorts the line entries if sort is true and size is greater than 0 with directories first then files
+     * Updates the position of the line entry after it has been refreshed. The entry is found by its old sort key, which is then recomputed
+     * @param lineEntry the line entry to update
+     * @return the new index of the entry, -1 if it is not in this list
+     * @throws FileSystemException if the sort key cannot be recomputed
+     */
+    public int update(LineEntry lineEntry) throws FileSystemException {
+        int index = indexOf(lineEntry);
+
+        if (index == -1)
+            return -1;
+
+        lineEntry.updateSortKey();
+
+        if (sorted) {
+            lineEntries.remove(index);
+            index = insertionPoint(lineEntry);
+            lineEntries.add(index, lineEntry);
+        }
+
+        return index;
+    }
+
+    /**
+     * Sorts the line entries if sort is true and size is greater than 0 with directories first then files. Large lists are sorted in parallel.
+     * Once sorted, the list is kept in order, so calling this again does nothing until the list is replaced
      */
     public void sort() {
-        if (lineEntries.size() > 0 && sort) {
-            ArrayList<LineEntry> directoryEntries = lineEntries.stream()
-                    .filter(LineEntry::isDirectory)
-                    .collect(Collectors.toCollection(ArrayList::new));
-            ArrayList<LineEntry> fileEntries = lineEntries.stream()
-                    .filter(LineEntry::isFile)
-                    .collect(Collectors.toCollection(ArrayList::new));
-
-            // sort the lists
-            Collections.sort(directoryEntries);
-            Collections.sort(fileEntries);
-
-            ArrayList<LineEntry> sorted = new ArrayList<>(directoryEntries.size() + fileEntries.size());
-            sorted.addAll(directoryEntries);
-            sorted.addAll(fileEntries);
-
-            lineEntries = sorted;
+        if (sort && !sorted) {
+            if (lineEntries.size() >= PARALLEL_SORT_THRESHOLD) {
+                LineEntry[] entries = lineEntries.toArray(new LineEntry[0]);
+                Arrays.parallelSort(entries, comparator); // the keys are precomputed, so comparing is safe off the FX thread
+                lineEntries = new ArrayList<>(Arrays.asList(entries));
+            } else {
+                lineEntries.sort(comparator);
+            }
+
+            sorted = true;
         }
     }
 
@@ -116,6 +193,75 @@ public class LineEntries {
      * @return true if contains it or false if not
      */
     public boolean contains(LineEntry lineEntry) {
-        return lineEntries.contains(lineEntry);
+        return indexOf(lineEntry) != -1;
+    }
+
+    /**
+     * Finds the index of the line entry. If the list is sorted, a binary search on the entry's sort key is used
+     * @param lineEntry the line entry to find
+     * @return the index of the entry, -1 if not found
+     */
+    private int indexOf(LineEntry lineEntry) {
+        if (!sorted)
+            return lineEntries.indexOf(lineEntry);
+
+        int low = 0;
+        int high = lineEntries.size() - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = comparator.compare(lineEntries.get(mid), lineEntry);
+
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return findEqual(mid, lineEntry);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the entry equal to the line entry among the entries with the same key around the index
+     * @param index the index of an entry with the same key
+     * @param lineEntry the entry to find
+     * @return the index of the entry, -1 if not found
+     */
+    private int findEqual(int index, LineEntry lineEntry) {
+        for (int i = index; i >= 0 && comparator.compare(lineEntries.get(i), lineEntry) == 0; i--) {
+            if (lineEntries.get(i).equals(lineEntry))
+                return i;
+        }
+
+        for (int i = index + 1; i < lineEntries.size() && comparator.compare(lineEntries.get(i), lineEntry) == 0; i++) {
+            if (lineEntries.get(i).equals(lineEntry))
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the index to insert the line entry at to keep the list sorted, after any entries with the same key
+     * @param lineEntry the entry to insert
+     * @return the index to insert at
+     */
+    private int insertionPoint(LineEntry lineEntry) {
+        int low = 0;
+        int high = lineEntries.size();
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (comparator.compare(lineEntries.get(mid), lineEntry) <= 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return low;
     }
 }
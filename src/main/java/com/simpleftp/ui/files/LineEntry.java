@@ -81,6 +81,10 @@ public abstract class LineEntry extends HBox implements Comparable<LineEntry> {
      * If this file is a symbolic link, store the target on initial resolving, to cache it so we don't have to keep resolving the path
      */
     private String symLinkTarget;
+    /**
+     * The values this entry is sorted by. Only recomputed by updateSortKey, so that a LineEntries list can still find this entry by its old key after a refresh
+     */
+    private SortKey sortKey;
     /**
      * A boolean flag to determine if a drag has been started
      */
@@ -123,6 +127,25 @@ public abstract class LineEntry extends HBox implements Comparable<LineEntry> {
         enableMouseEntry = true;
 
         init();
+        updateSortKey();
+    }
+
+    /**
+     * Gets the values this entry is sorted by
+     * @return the sort key
+     */
+    SortKey getSortKey() {
+        return sortKey;
+    }
+
+    /**
+     * Recomputes the values this entry is sorted by from its file. The size and modification time cached by this entry are used,
+     * so the server is not contacted
+     * @throws FileSystemException if the size cannot be retrieved
+     */
+    void updateSortKey() throws FileSystemException {
+        boolean ignoreCase = owningPane != null && isLocal() && System.getProperty("os.name").toLowerCase().contains("win"); // windows sorts case-insensitively
+        sortKey = new SortKey(isDirectory(), file.getName(), ignoreCase, getSize(), file.getModificationTimeMillis());
     }
 
     /**
@@ -411,12 +434,14 @@ public abstract class LineEntry extends HBox implements Comparable<LineEntry> {
      */
     public abstract boolean isDirectory();
 
+    /**
+     * Compares this entry to the other by name. Names are compared case-insensitively for local files on Windows, otherwise by case
+     * @param other the entry to compare to
+     * @return the result of the comparison
+     */
     @Override
     public int compareTo(LineEntry other) {
-        if (isLocal() && System.getProperty("os.name").toLowerCase().contains("win"))
-            return file.getName().compareToIgnoreCase(other.file.getName()); // windows sorts case-insensitively
-        else
-            return file.getName().compareTo(other.file.getName()); // unix and remote is to be sorted by case
+        return sortKey.compareName(other.sortKey);
     }
 
     /**
@@ -453,7 +478,8 @@ public abstract class LineEntry extends HBox implements Comparable<LineEntry> {
     }
 
     /**
-     * Refreshes this LineEntry. Should be called from the JavaFX thread
+     * Refreshes this LineEntry. Should be called from the JavaFX thread.
+     * The sort key is not updated, so if this entry is displayed, DirectoryPane.refreshLineEntry should be called instead to keep the listing sorted
      * @throws FileSystemException if fails to refresh file or line entry
      */
     public void refresh() throws FileSystemException {
@@ -0,0 +1,62 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ui.files;
+
+/**
+ * This enum represents the columns a listing of line entries can be sorted by. Directories are always listed before files
+ */
+public enum SortColumn {
+    /**
+     * Sort by the name of the file
+     */
+    NAME("Name"),
+    /**
+     * Sort by the size of the file
+     */
+    SIZE("Size"),
+    /**
+     * Sort by the modification time of the file
+     */
+    MODIFIED("Modified"),
+    /**
+     * Sort by the type of the file, i.e. its extension
+     */
+    TYPE("Type");
+
+    /**
+     * The name displayed for this column
+     */
+    private final String displayName;
+
+    /**
+     * Constructs a sort column with the provided display name
+     * @param displayName the name displayed for this column
+     */
+    SortColumn(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Returns the name displayed for this column
+     * @return the display name
+     */
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
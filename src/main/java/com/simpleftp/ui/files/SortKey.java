@@ -0,0 +1,96 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ui.files;
+
+import java.util.Comparator;
+
+/**
+ * This class holds the values a LineEntry is sorted by, computed once when the entry is created or refreshed, so that comparing
+ * two entries never calls back into the file or the server
+ */
+public final class SortKey {
+    /**
+     * True if the entry is a directory. Directories are always sorted before files
+     */
+    private final boolean directory;
+    /**
+     * The name compared by, lower case if names are compared case-insensitively
+     */
+    private final String name;
+    /**
+     * The size of the file in bytes
+     */
+    private final long size;
+    /**
+     * The modification time of the file in epoch milliseconds
+     */
+    private final long modified;
+    /**
+     * The extension of the name compared by, empty if none
+     */
+    private final String type;
+
+    /**
+     * Constructs a sort key
+     * @param directory true if the entry is a directory
+     * @param name the name of the file
+     * @param ignoreCase true to compare names case-insensitively, as on Windows
+     * @param size the size of the file
+     * @param modified the modification time of the file
+     */
+    public SortKey(boolean directory, String name, boolean ignoreCase, long size, long modified) {
+        this.directory = directory;
+        this.name = ignoreCase ? name.toLowerCase():name;
+        this.size = size;
+        this.modified = modified;
+
+        int dot = this.name.lastIndexOf('.');
+        type = dot > 0 ? this.name.substring(dot + 1):"";
+    }
+
+    /**
+     * Compares the names of the keys
+     * @param other the key to compare to
+     * @return the result of the comparison
+     */
+    int compareName(SortKey other) {
+        return name.compareTo(other.name);
+    }
+
+    /**
+     * Creates a comparator of keys that lists directories first, then orders by the column, breaking ties by name
+     * @param column the column to order by
+     * @param ascending true for ascending order, false for descending
+     * @return the comparator
+     */
+    public static Comparator<SortKey> comparator(SortColumn column, boolean ascending) {
+        Comparator<SortKey> order;
+
+        switch (column) {
+            case SIZE: order = Comparator.comparingLong((SortKey key) -> key.size).thenComparing(SortKey::compareName); break;
+            case MODIFIED: order = Comparator.comparingLong((SortKey key) -> key.modified).thenComparing(SortKey::compareName); break;
+            case TYPE: order = Comparator.comparing((SortKey key) -> key.type).thenComparing(SortKey::compareName); break;
+            default: order = SortKey::compareName;
+        }
+
+        if (!ascending)
+            order = order.reversed();
+
+        return Comparator.comparing((SortKey key) -> !key.directory).thenComparing(order);
+    }
+}
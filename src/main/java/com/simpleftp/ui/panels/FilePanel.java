@@ -25,7 +25,9 @@ import com.simpleftp.ui.UI;
 import com.simpleftp.ui.background.FileService;
 import com.simpleftp.ui.directories.DirectoryPane;
 import com.simpleftp.ui.files.LineEntry;
+import com.simpleftp.ui.files.SortColumn;
 import com.simpleftp.ui.views.PanelView;
+import com.simpleftp.ui.background.scheduling.PathLockManager;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.scene.Node;
@@ -96,6 +98,10 @@ public abstract class FilePanel extends VBox {
      * The button used to bring up the mask button
      */
     private Button maskButton;
+    /**
+     * The button to choose the column and order files are sorted by
+     */
+    private MenuButton sortButton;
     /**
      * The button to go to the root directory
      */
@@ -138,7 +144,7 @@ public abstract class FilePanel extends VBox {
         setDirectoryPane(directoryPane);
         initButtons();
 
-        toolBar.getChildren().addAll(new Label("Files: "), comboBox, open, delete, gotoButton, hideHiddenFiles, createButton, maskButton, rootButton, propertiesButton, symLinkDestButton);
+        toolBar.getChildren().addAll(new Label("Files: "), comboBox, open, delete, gotoButton, hideHiddenFiles, createButton, maskButton, sortButton, rootButton, propertiesButton, symLinkDestButton);
         setKeyBindings();
     }
 
@@ -208,6 +214,10 @@ public abstract class FilePanel extends VBox {
         initMaskButton();
         maskButton.setTooltip(new Tooltip("Specify a mask to filter the files displayed"));
 
+        sortButton = new MenuButton("Sort");
+        initSortButton();
+        sortButton.setTooltip(new Tooltip("Choose the column and order the files are sorted by"));
+
         rootButton = new Button(FileUtils.getRootPath(directoryPane.isLocal()));
         rootButton.setTooltip(new Tooltip("Go to the root directory"));
         rootButton.setOnAction(e -> goToRootDirectory());
@@ -293,12 +303,32 @@ public abstract class FilePanel extends VBox {
     private void initMaskButton() {
         maskButton.setOnAction(e -> {
             String currentMask = directoryPane.getFileMask();
-            String fileMask = UI.doInputDialog("File Mask", "Enter a mask to filter files: ", currentMask, "Enter wildcards (*, ?) to check if filename contains, i.e *ile*.txt or no wildcards for exact match");
+            String fileMask = UI.doInputDialog("File Mask", "Enter a mask to filter files: ", currentMask, "Enter wildcards (*, ?) to check if filename contains, i.e *ile*.txt or no wildcards for exact match. Separate multiple patterns with ; and start a pattern with ! to exclude matching files, i.e *.txt;!test*");
             directoryPane.setFileMask(fileMask);
             directoryPane.refreshCurrentDirectory(); // refresh to put the mask in effect
         });
     }
 
+    /**
+     * Initialises the button to choose the sort column and order
+     */
+    private void initSortButton() {
+        ToggleGroup columnGroup = new ToggleGroup();
+        CheckMenuItem descending = new CheckMenuItem("Descending");
+        descending.setSelected(!directoryPane.isSortAscending());
+
+        for (SortColumn column : SortColumn.values()) {
+            RadioMenuItem menuItem = new RadioMenuItem(column.toString());
+            menuItem.setToggleGroup(columnGroup);
+            menuItem.setSelected(column == directoryPane.getSortColumn());
+            menuItem.setOnAction(e -> directoryPane.setSortOrder(column, !descending.isSelected()));
+            sortButton.getItems().add(menuItem);
+        }
+
+        descending.setOnAction(e -> directoryPane.setSortOrder(directoryPane.getSortColumn(), !descending.isSelected()));
+        sortButton.getItems().addAll(new SeparatorMenuItem(), descending);
+    }
+
     /**
      * Sets key shortcut bindings
      * Q - Quit
@@ -486,9 +516,7 @@ public abstract class FilePanel extends VBox {
         CommonFile file = lineEntry.getFile();
         String fileName = file.getName();
 
-        boolean opened = UI.isFileOpened(file.getFilePath(), directoryPane.isLocal());
-        boolean locked = UI.isFileLockedByFileService(file);
-        if (!opened && !locked) {
+        if (PathLockManager.canChange(file.getFilePath(), directoryPane.isLocal())) {
             if (UI.doConfirmation("Confirm file deletion", "Confirm deletion of " + fileName)) {
                 try {
                     if (file.isNormalFile() || file.isSymbolicLink()) {
@@ -505,10 +533,8 @@ public abstract class FilePanel extends VBox {
                     UI.doException(ex, UI.ExceptionType.ERROR, FTPSystem.isDebugEnabled());
                 }
             }
-        } else if (opened) {
-            UI.doError("File Open", "File " + fileName + " is currently opened, file can't be deleted");
         } else {
-            UI.doError("File Locked", "File " + fileName + " is currently locked by a background task, file can't be deleted");
+            UI.doError("File Locked", "File " + fileName + " or a file inside it is currently open or in use by a background task, file can't be deleted");
         }
     }
 
@@ -0,0 +1,130 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ui.search;
+
+import com.simpleftp.filesystem.FileMask;
+import com.simpleftp.filesystem.trees.ContentMatcher;
+import com.simpleftp.filesystem.trees.ContentSearch;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.properties.Properties;
+import com.simpleftp.ui.UI;
+import com.simpleftp.ui.directories.DirectoryPane;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+
+import java.util.Arrays;
+
+/**
+ * This window searches the contents of the files in a local or remote directory tree for text, listing each matching line as it is found.
+ * Several strings can be searched for at once by separating them with |
+ */
+public class ContentSearchWindow extends SearchWindow<ContentSearch.Match, ContentSearch> {
+    /**
+     * The character separating the strings to search for
+     */
+    private static final String STRING_SEPARATOR = "|";
+    /**
+     * The field holding the text to search for
+     */
+    private final TextField textField;
+    /**
+     * The check box to choose if case is ignored
+     */
+    private final CheckBox ignoreCaseBox;
+    /**
+     * The field holding the mask the names of searched files must match
+     */
+    private final TextField maskField;
+    /**
+     * The field holding the maximum size in kilobytes of a file to search
+     */
+    private final TextField maxSizeField;
+
+    /**
+     * Constructs a content search window
+     * @param creatingPane the panel opening this window
+     * @param directory the directory to search initially
+     */
+    public ContentSearchWindow(DirectoryPane creatingPane, String directory) {
+        super(creatingPane, directory, "Find in Files");
+        textField = new TextField();
+        textField.setPromptText("Text");
+        textField.setTooltip(new Tooltip("The text to search for. Separate multiple strings with " + STRING_SEPARATOR));
+        ignoreCaseBox = new CheckBox("Ignore Case");
+        maskField = new TextField();
+        maskField.setPromptText("File Mask");
+        maskField.setTooltip(new Tooltip("Only search files matching this mask, e.g. *.xml;*.conf"));
+        maxSizeField = new TextField(String.valueOf(Properties.CONTENT_SEARCH_MAX_FILE_SIZE.getValue()));
+        maxSizeField.setPrefColumnCount(6);
+
+        initWindow(new Label("Find:"), textField, ignoreCaseBox, maskField, new Label("Max Size (KB):"), maxSizeField);
+    }
+
+    /**
+     * Creates the content search from the options entered
+     * @param directory the directory to search
+     * @param connectionBasis the connection to base the search's connections on, null if the creating pane is local
+     * @return the search, null if the options are invalid
+     */
+    @Override
+    protected ContentSearch createSearch(String directory, FTPConnection connectionBasis) {
+        ContentMatcher matcher = ContentMatcher.compile(Arrays.asList(textField.getText().split("\\" + STRING_SEPARATOR)), ignoreCaseBox.isSelected());
+
+        if (matcher == null) {
+            UI.doError("No Text", "Enter the text to search for");
+            return null;
+        }
+
+        long maxSize;
+        try {
+            maxSize = Long.parseLong(maxSizeField.getText().trim());
+        } catch (NumberFormatException ex) {
+            maxSize = -1;
+        }
+
+        if (maxSize <= 0) {
+            UI.doError("Invalid Size", "The maximum file size must be a positive number of kilobytes");
+            return null;
+        }
+
+        return new ContentSearch(directory, connectionBasis, Properties.SEARCH_PARALLELISM.getValue(), matcher, FileMask.compile(maskField.getText()),
+                maxSize * 1024, this::found);
+    }
+
+    /**
+     * Describes the number of files searched and skipped
+     * @param search the search to describe
+     * @return the description of its progress
+     */
+    @Override
+    protected String describeProgress(ContentSearch search) {
+        return search.getFilesSearched() + " files searched, " + search.getFilesSkipped() + " skipped";
+    }
+
+    /**
+     * Gets the path of the file the match was found in
+     * @param result the match
+     * @return the path of the file
+     */
+    @Override
+    protected String getFilePath(ContentSearch.Match result) {
+        return result.getFilePath();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ui.search;
+
+import com.simpleftp.filesystem.FileMask;
+import com.simpleftp.filesystem.trees.NameSearch;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.properties.Properties;
+import com.simpleftp.ui.UI;
+import com.simpleftp.ui.directories.DirectoryPane;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * This window searches a local or remote directory tree for files and directories by name, listing each one as it is found.
+ * Names are matched against a file mask, or a regular expression if chosen
+ */
+public class NameSearchWindow extends SearchWindow<NameSearch.Hit, NameSearch> {
+    /**
+     * The field holding the mask or regular expression to match names against
+     */
+    private final TextField nameField;
+    /**
+     * The check box to choose if the name is a regular expression
+     */
+    private final CheckBox regexBox;
+    /**
+     * The field holding the maximum depth to search
+     */
+    private final TextField maxDepthField;
+    /**
+     * The field holding the maximum number of entries to visit
+     */
+    private final TextField maxEntriesField;
+
+    /**
+     * Constructs a name search window
+     * @param creatingPane the panel opening this window
+     * @param directory the directory to search initially
+     */
+    public NameSearchWindow(DirectoryPane creatingPane, String directory) {
+        super(creatingPane, directory, "Find Files");
+        nameField = new TextField();
+        nameField.setPromptText("Name");
+        nameField.setTooltip(new Tooltip("A file mask, e.g. *.xml;!test*, or a regular expression if Regex is selected"));
+        regexBox = new CheckBox("Regex");
+        maxDepthField = new TextField(String.valueOf(Properties.NAME_SEARCH_MAX_DEPTH.getValue()));
+        maxDepthField.setPrefColumnCount(4);
+        maxEntriesField = new TextField(String.valueOf(Properties.NAME_SEARCH_MAX_ENTRIES.getValue()));
+        maxEntriesField.setPrefColumnCount(8);
+
+        initWindow(new Label("Find:"), nameField, regexBox, new Label("Max Depth:"), maxDepthField, new Label("Max Entries:"), maxEntriesField);
+    }
+
+    /**
+     * Parses a positive number from the field, showing an error if it is invalid
+     * @param field the field to parse
+     * @param name the name of the option for the error
+     * @return the number, -1 if invalid
+     */
+    private static long parsePositive(TextField field, String name) {
+        long value;
+        try {
+            value = Long.parseLong(field.getText().trim());
+        } catch (NumberFormatException ex) {
+            value = -1;
+        }
+
+        if (value <= 0) {
+            UI.doError("Invalid " + name, "The " + name.toLowerCase() + " must be a positive number");
+            return -1;
+        }
+
+        return value;
+    }
+
+    /**
+     * Creates the name search from the options entered
+     * @param directory the directory to search
+     * @param connectionBasis the connection to base the search's connections on, null if the creating pane is local
+     * @return the search, null if the options are invalid
+     */
+    @Override
+    protected NameSearch createSearch(String directory, FTPConnection connectionBasis) {
+        String name = nameField.getText().trim();
+
+        if (name.isEmpty()) {
+            UI.doError("No Name", "Enter the name to search for");
+            return null;
+        }
+
+        long maxDepth = parsePositive(maxDepthField, "Depth");
+        long maxEntries = maxDepth == -1 ? -1:parsePositive(maxEntriesField, "Entries");
+
+        if (maxEntries == -1)
+            return null;
+
+        int depth = (int)Math.min(maxDepth, Integer.MAX_VALUE);
+        int parallelism = Properties.SEARCH_PARALLELISM.getValue();
+
+        if (regexBox.isSelected()) {
+            try {
+                return new NameSearch(directory, connectionBasis, parallelism, Pattern.compile(name), depth, maxEntries, this::found);
+            } catch (PatternSyntaxException ex) {
+                UI.doError("Invalid Regex", ex.getMessage());
+                return null;
+            }
+        } else {
+            FileMask mask = FileMask.compile(name);
+
+            if (mask == null) {
+                UI.doError("No Name", "Enter the name to search for");
+                return null;
+            }
+
+            return new NameSearch(directory, connectionBasis, parallelism, mask, depth, maxEntries, this::found);
+        }
+    }
+
+    /**
+     * Describes the number of entries visited and if the limit was reached
+     * @param search the search to describe
+     * @return the description of its progress
+     */
+    @Override
+    protected String describeProgress(NameSearch search) {
+        return search.getEntriesVisited() + " entries visited" + (search.isLimitReached() ? " (entry limit reached)":"");
+    }
+
+    /**
+     * Gets the path of the file found
+     * @param result the file found
+     * @return the path of the file
+     */
+    @Override
+    protected String getFilePath(NameSearch.Hit result) {
+        return result.getFilePath();
+    }
+}
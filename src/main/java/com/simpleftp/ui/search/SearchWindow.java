@@ -0,0 +1,396 @@
+/*
+ *  Copyright (C) 2020-2021 Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ui.search;
+
+import com.simpleftp.filesystem.FileUtils;
+import com.simpleftp.filesystem.cache.RemoteListingCache;
+import com.simpleftp.filesystem.interfaces.CommonFile;
+import com.simpleftp.filesystem.trees.TreeWalker;
+import com.simpleftp.ftp.FTPSystem;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.properties.Properties;
+import com.simpleftp.ui.UI;
+import com.simpleftp.ui.directories.DirectoryPane;
+import com.simpleftp.ui.directories.RemoteDirectoryPane;
+import com.simpleftp.ui.interfaces.Window;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.*;
+import javafx.scene.paint.Paint;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class provides the base for a window that searches a local or remote directory tree in the background, showing the results as they are found.
+ *
+ * Results are found on the searching threads and queued, and the queue is drained onto the results list in one go on the JavaFX thread, so a search
+ * finding many results at once doesn't flood the JavaFX thread with an update for each. The search is stopped once SEARCH_MAX_RESULTS results have been found,
+ * so the results list can't grow without bound. Double clicking a result goes to the directory containing it in the panel that opened the window
+ * @param <T> the type of the results
+ * @param <S> the type of the search
+ */
+public abstract class SearchWindow<T, S extends TreeWalker> extends VBox implements Window {
+    /**
+     * The panel that opened this window
+     */
+    protected final DirectoryPane creatingPane;
+    /**
+     * The field holding the directory to search
+     */
+    private final TextField directoryField;
+    /**
+     * The check box to choose if a remote search uses and adds to the creating pane's cache of directory listings
+     */
+    private final CheckBox cacheBox;
+    /**
+     * The button starting and stopping the search
+     */
+    private final Button searchButton;
+    /**
+     * The label displaying the progress of the search
+     */
+    private final Label statusLabel;
+    /**
+     * The results found
+     */
+    private final ObservableList<T> results = FXCollections.observableArrayList();
+    /**
+     * The results found but not yet added to the results list
+     */
+    private final ConcurrentLinkedQueue<T> found = new ConcurrentLinkedQueue<>();
+    /**
+     * True while a drain of found onto results is waiting to run on the JavaFX thread
+     */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    /**
+     * The maximum number of results displayed before the search is stopped
+     */
+    private final int maxResults = Properties.SEARCH_MAX_RESULTS.getValue();
+    /**
+     * The number of results found by the search in progress, including any over the maximum
+     */
+    private final AtomicInteger foundCount = new AtomicInteger();
+    /**
+     * True if the search was stopped as it found the maximum number of results
+     */
+    private volatile boolean limitReached;
+    /**
+     * The timeline updating the status label while searching
+     */
+    private final Timeline statusTimeline;
+    /**
+     * The title of the window
+     */
+    private final String title;
+    /**
+     * The stage that will show this window
+     */
+    private Stage stage;
+    /**
+     * The search in progress, null if not searching
+     */
+    private S search;
+
+    /**
+     * Constructs the window
+     * @param creatingPane the panel opening this window
+     * @param directory the directory to search initially
+     * @param title the title of the window
+     */
+    protected SearchWindow(DirectoryPane creatingPane, String directory, String title) {
+        this.creatingPane = creatingPane;
+        this.title = title;
+        directoryField = new TextField(directory);
+        directoryField.setPrefColumnCount(30);
+        cacheBox = new CheckBox("Use Cached Listings");
+        cacheBox.setTooltip(new Tooltip("Use the directory listings already cached instead of listing them again, and cache the directories listed"));
+        cacheBox.setSelected(true);
+        cacheBox.setVisible(getListingCache() != null);
+        cacheBox.managedProperty().bind(cacheBox.visibleProperty());
+        searchButton = new Button("Search");
+        searchButton.setOnAction(e -> toggleSearch());
+        statusLabel = new Label();
+        statusTimeline = new Timeline(new KeyFrame(Duration.millis(500), e -> updateStatus()));
+        statusTimeline.setCycleCount(Timeline.INDEFINITE);
+
+        setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ESCAPE)
+                close();
+        });
+    }
+
+    /**
+     * Lays out the window with the provided controls for the search options. Implementations call this at the end of their constructor
+     * @param options the controls for the options of the search
+     */
+    protected final void initWindow(Node... options) {
+        HBox directoryBox = createToolBar(new Label("Directory:"), directoryField, cacheBox, searchButton, statusLabel);
+        HBox optionsBox = createToolBar(options);
+
+        ListView<T> resultsView = new ListView<>(results);
+        resultsView.setFixedCellSize(20);
+        resultsView.setStyle("-fx-font-family: monospace;");
+        resultsView.setOnMouseClicked(e -> {
+            T result = resultsView.getSelectionModel().getSelectedItem();
+
+            if (e.getButton() == MouseButton.PRIMARY && e.getClickCount() == 2 && result != null)
+                goToResult(getFilePath(result));
+        });
+        VBox.setVgrow(resultsView, Priority.ALWAYS);
+
+        getChildren().addAll(directoryBox, optionsBox, resultsView);
+    }
+
+    /**
+     * Creates a tool bar containing the nodes
+     * @param nodes the nodes to place in the tool bar
+     * @return the tool bar
+     */
+    private HBox createToolBar(Node... nodes) {
+        HBox toolBar = new HBox(10, nodes);
+        toolBar.setPadding(new Insets(2));
+        toolBar.setAlignment(Pos.CENTER_LEFT);
+        toolBar.setBorder(new Border(new BorderStroke(Paint.valueOf("BLACK"), BorderStrokeStyle.SOLID, CornerRadii.EMPTY, BorderWidths.DEFAULT)));
+        toolBar.setStyle(UI.GREY_BACKGROUND);
+
+        return toolBar;
+    }
+
+    /**
+     * Creates the search to run from the options entered. If the options are invalid, an error should be shown and null returned
+     * @param directory the directory to search
+     * @param connectionBasis the connection to base the search's connections on, null if the creating pane is local
+     * @return the search to run, null if it can't be run
+     */
+    protected abstract S createSearch(String directory, FTPConnection connectionBasis);
+
+    /**
+     * Describes the progress of the search for the status label
+     * @param search the search to describe
+     * @return the description of its progress
+     */
+    protected abstract String describeProgress(S search);
+
+    /**
+     * Gets the path of the file a result was found in
+     * @param result the result
+     * @return the path of the file
+     */
+    protected abstract String getFilePath(T result);
+
+    /**
+     * Gets the cache of directory listings of the creating pane
+     * @return the cache, null if the pane is local or doesn't cache listings
+     */
+    private RemoteListingCache getListingCache() {
+        return creatingPane instanceof RemoteDirectoryPane ? ((RemoteDirectoryPane)creatingPane).getListingCache():null;
+    }
+
+    /**
+     * Queues a result found by the search to be displayed, stopping the search once the maximum number of results has been found. This can be called from any thread
+     * @param result the result found
+     */
+    protected final void found(T result) {
+        int count = foundCount.incrementAndGet();
+
+        if (count > maxResults) {
+            if (count == maxResults + 1) {
+                limitReached = true;
+                Platform.runLater(() -> {
+                    if (search != null)
+                        search.cancel();
+                });
+            }
+
+            return;
+        }
+
+        found.add(result);
+
+        if (drainScheduled.compareAndSet(false, true))
+            Platform.runLater(this::drainFound);
+    }
+
+    /**
+     * Adds the queued results to the results list. Must be called on the JavaFX thread
+     */
+    private void drainFound() {
+        drainScheduled.set(false);
+        List<T> drained = new ArrayList<>();
+
+        for (T result = found.poll(); result != null; result = found.poll())
+            drained.add(result);
+
+        if (!drained.isEmpty())
+            results.addAll(drained);
+    }
+
+    /**
+     * Starts the search if not searching, otherwise stops it
+     */
+    private void toggleSearch() {
+        if (search != null) {
+            search.cancel();
+            return;
+        }
+
+        String directory = directoryField.getText().trim();
+        if (directory.isEmpty()) {
+            UI.doError("No Directory", "Enter the directory to search");
+            return;
+        }
+
+        FTPConnection connectionBasis = creatingPane.isLocal() ? null:creatingPane.getFileSystem().getFTPConnection();
+        S search = createSearch(directory, connectionBasis);
+
+        if (search != null) {
+            if (cacheBox.isSelected())
+                search.setListingCache(getListingCache());
+
+            this.search = search;
+            found.clear();
+            results.clear();
+            foundCount.set(0);
+            limitReached = false;
+            searchButton.setText("Stop");
+            statusTimeline.play();
+
+            Thread thread = new Thread(() -> {
+                try {
+                    search.run();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    Platform.runLater(() -> searchFinished(search));
+                }
+            }, "SearchWindow-search");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Updates the window once the search has finished
+     * @param search the search that finished
+     */
+    private void searchFinished(S search) {
+        if (this.search == search) {
+            this.search = null;
+            statusTimeline.stop();
+            drainFound();
+            searchButton.setText("Search");
+            updateStatus(search);
+        }
+    }
+
+    /**
+     * Updates the status label with the progress of the search in progress
+     */
+    private void updateStatus() {
+        if (search != null)
+            updateStatus(search);
+    }
+
+    /**
+     * Updates the status label with the progress of the search
+     * @param search the search to display the progress of
+     */
+    private void updateStatus(S search) {
+        String state = this.search == search ? "Searching":limitReached ? "Stopped at " + maxResults + " results":search.isCancelled() ? "Stopped":"Finished";
+        long errors = search.getErrors();
+
+        long cached = search.getDirectoriesCached();
+
+        statusLabel.setText(state + ": " + results.size() + " found, " + describeProgress(search) + (cached > 0 ? ", " + cached + " cached directories":"")
+                + (errors > 0 ? ", " + errors + " errors":""));
+    }
+
+    /**
+     * Goes to the directory containing the file in the panel that opened this window
+     * @param filePath the path of the file
+     */
+    private void goToResult(String filePath) {
+        try {
+            String parentPath = FileUtils.getParentPath(filePath, creatingPane.isLocal());
+            CommonFile directory = creatingPane.getFileSystem().getFile(parentPath);
+
+            if (directory == null || !directory.isADirectory()) {
+                UI.doError("Directory Not Found", "The directory " + parentPath + " no longer exists");
+            } else {
+                creatingPane.setDirectory(directory);
+                creatingPane.refresh();
+            }
+        } catch (Exception ex) {
+            UI.doException(ex, UI.ExceptionType.ERROR, FTPSystem.isDebugEnabled());
+        }
+    }
+
+    /**
+     * Shows this window
+     */
+    @Override
+    public void show() {
+        stage = new Stage();
+        stage.setTitle(title + " (" + (creatingPane.isLocal() ? "Local":"Remote") + ")");
+        stage.setScene(new Scene(this, Properties.FILE_EDITOR_WIDTH.getValue(), Properties.FILE_EDITOR_HEIGHT.getValue()));
+        stage.setOnHidden(e -> stopSearch());
+        stage.show();
+    }
+
+    /**
+     * Stops the search in progress, if any
+     */
+    private void stopSearch() {
+        statusTimeline.stop();
+
+        if (search != null)
+            search.cancel();
+    }
+
+    /**
+     * Closes this window, stopping the search in progress
+     */
+    @Override
+    public void close() {
+        if (stage != null)
+            stage.close();
+
+        stopSearch();
+    }
+}
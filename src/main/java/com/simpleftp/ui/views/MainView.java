@@ -29,6 +29,7 @@ import com.simpleftp.sessions.Session;
 import com.simpleftp.sessions.Sessions;
 import com.simpleftp.sessions.exceptions.SessionSaveException;
 import com.simpleftp.ui.UI;
+import com.simpleftp.ui.background.JournalRecovery;
 import com.simpleftp.ui.background.elements.TaskWindow;
 import com.simpleftp.ui.background.interfaces.BackgroundTask;
 import com.simpleftp.ui.dialogs.BackgroundTaskRunningDialog;
@@ -534,6 +535,8 @@ public class MainView extends VBox {
             loggedInProperty.setValue(true);
         else
             loggedInProperty.setValue(panelView.isRemoteConnected());
+
+        Platform.runLater(JournalRecovery::offerResume); // copy/move operations interrupted the last time can be resumed now that we are logged in, offered once the login window has closed
     }
 
     /**
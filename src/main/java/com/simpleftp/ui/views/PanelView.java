@@ -26,6 +26,7 @@ import com.simpleftp.ui.directories.DirectoryPane;
 import com.simpleftp.ui.exceptions.UIException;
 import com.simpleftp.ui.panels.FilePanel;
 import com.simpleftp.ui.views.tasks.ConnectionMonitor;
+import com.simpleftp.ui.background.scheduling.PathLockManager;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.concurrent.Worker;
@@ -188,7 +189,7 @@ public final class PanelView extends VBox {
             DirectoryPane directoryPane = remotePanel.getDirectoryPane();
             directoryPane.removeInstance(); // we are no longer using this directory pane instance. Remove it so mouse events etc. are not propagated to it
             createEmptyRemotePanel();
-            UI.closeAllFiles(false);
+            PathLockManager.closeAllFiles(false);
         }
     }
 
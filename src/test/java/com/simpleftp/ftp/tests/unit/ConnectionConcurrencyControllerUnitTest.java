@@ -0,0 +1,148 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.ftp.connection.ConnectionConcurrencyController;
+import org.apache.commons.net.ftp.FTPReply;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionConcurrencyControllerUnitTest {
+    @Test
+    void shouldOnlyLetLimitConnectionsThrough() throws InterruptedException {
+        ConnectionConcurrencyController controller = new ConnectionConcurrencyController(2, 4);
+
+        assertTrue(controller.acquire(10));
+        assertTrue(controller.acquire(10));
+        assertFalse(controller.acquire(10));
+        assertEquals(2, controller.getInUse());
+
+        controller.release();
+        assertTrue(controller.acquire(10));
+    }
+
+    @Test
+    void shouldHalveLimitOnRefusal() {
+        ConnectionConcurrencyController controller = new ConnectionConcurrencyController(4, 4);
+
+        controller.onRefused();
+        assertEquals(2, controller.getLimit());
+
+        controller.onRefused(); // within the decrease interval so ignored
+        assertEquals(2, controller.getLimit());
+    }
+
+    @Test
+    void shouldNotWaitInTryAcquire() throws InterruptedException {
+        ConnectionConcurrencyController controller = new ConnectionConcurrencyController(1, 1);
+
+        assertTrue(controller.tryAcquire());
+        assertFalse(controller.tryAcquire());
+        assertFalse(controller.acquire(0));
+
+        controller.release();
+        assertTrue(controller.tryAcquire());
+    }
+
+    @Test
+    void shouldBackOffAfterRefusalUntilSuccess() throws InterruptedException {
+        ConnectionConcurrencyController controller = new ConnectionConcurrencyController(4, 4);
+
+        controller.onRefused();
+        assertTrue(controller.getBackoff() > 0);
+        assertFalse(controller.tryAcquire());
+        assertEquals(0, controller.getInUse());
+
+        long start = System.currentTimeMillis();
+        assertTrue(controller.acquire(5000)); // waits out the backoff
+        assertTrue(System.currentTimeMillis() - start >= 400);
+        assertEquals(0, controller.getBackoff());
+
+        controller.onRefused();
+        long secondBackoff = controller.getBackoff();
+        assertTrue(secondBackoff > 500); // doubled as it's the second refusal in a row
+
+        controller.onSuccess(10);
+        controller.onRefused();
+        assertTrue(controller.getBackoff() <= 500); // reset by the success
+    }
+
+    @Test
+    void shouldIncreaseLimitOnHealthySuccesses() {
+        ConnectionConcurrencyController controller = new ConnectionConcurrencyController(1, 3);
+
+        for (int i = 0; i < 10; i++)
+            controller.onSuccess(10);
+
+        assertEquals(3, controller.getLimit());
+    }
+
+    @Test
+    void shouldDecreaseLimitOnRisingLatency() {
+        ConnectionConcurrencyController controller = new ConnectionConcurrencyController(4, 4);
+
+        controller.onSuccess(10);
+        for (int i = 0; i < 10; i++)
+            controller.onSuccess(2000);
+
+        assertEquals(2, controller.getLimit());
+    }
+
+    @Test
+    void shouldLetWaitingConnectionsThroughInOrder() throws InterruptedException {
+        ConnectionConcurrencyController controller = new ConnectionConcurrencyController(1, 1);
+        StringBuffer order = new StringBuffer();
+        assertTrue(controller.acquire(10));
+
+        Thread first = new Thread(() -> acquireAndRecord(controller, order, "1"));
+        first.start();
+        while (first.getState() != Thread.State.TIMED_WAITING)
+            Thread.sleep(5);
+
+        Thread second = new Thread(() -> acquireAndRecord(controller, order, "2"));
+        second.start();
+        while (second.getState() != Thread.State.TIMED_WAITING)
+            Thread.sleep(5);
+
+        controller.release();
+        first.join(5000);
+        second.join(5000);
+
+        assertEquals("12", order.toString());
+    }
+
+    private void acquireAndRecord(ConnectionConcurrencyController controller, StringBuffer order, String id) {
+        try {
+            if (controller.acquire(5000)) {
+                order.append(id);
+                controller.release();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void shouldDetectTooManyConnectionsRefusals() {
+        assertTrue(ConnectionConcurrencyController.isRefusal(FTPReply.SERVICE_NOT_AVAILABLE, "421 Too many connections"));
+        assertTrue(ConnectionConcurrencyController.isRefusal(FTPReply.NOT_LOGGED_IN, "530 Sorry, the maximum number of clients are already connected"));
+        assertFalse(ConnectionConcurrencyController.isRefusal(FTPReply.NOT_LOGGED_IN, "530 Login incorrect"));
+        assertFalse(ConnectionConcurrencyController.isRefusal(FTPReply.COMMAND_OK, "200 OK"));
+    }
+}
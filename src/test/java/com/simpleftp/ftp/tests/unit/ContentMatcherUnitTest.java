@@ -0,0 +1,95 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.FileMask;
+import com.simpleftp.filesystem.trees.ContentMatcher;
+import com.simpleftp.filesystem.trees.ContentSearch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentMatcherUnitTest {
+    private static List<String> scan(ContentMatcher matcher, String contents) {
+        List<String> matches = new ArrayList<>();
+        ContentMatcher.Scanner scanner = matcher.newScanner((lineNumber, line, stringIndex) ->
+                matches.add(lineNumber + ":" + matcher.getStrings().get(stringIndex) + ":" + line));
+
+        for (byte b : contents.getBytes(StandardCharsets.UTF_8))
+            scanner.write(b); // split the strings across writes
+        scanner.close();
+
+        return matches;
+    }
+
+    @Test
+    void shouldMatchAllStringsInOnePass() {
+        ContentMatcher matcher = ContentMatcher.compile(List.of("she", "he", "hers", "port=8080"), false);
+
+        List<String> matches = scan(matcher, "ushers\r\nnothing here\nport=80\nhost:port=8080");
+
+        assertEquals(List.of("1:she:ushers", "2:he:nothing here", "4:port=8080:host:port=8080"), matches);
+    }
+
+    @Test
+    void shouldIgnoreCaseAndSkipBinaryFiles() {
+        ContentMatcher matcher = ContentMatcher.compile(List.of("Error", ""), true);
+
+        assertEquals(List.of("Error"), matcher.getStrings());
+        assertEquals(List.of("2:Error:an ERROR occurred"), scan(matcher, "fine\nan ERROR occurred\n"));
+        assertTrue(scan(matcher, "error\u0000error\nerror").isEmpty());
+        assertNull(ContentMatcher.compile(List.of(""), true));
+    }
+
+    @Test
+    void shouldNotReportLinesBeforeALaterNulByte() {
+        ContentMatcher matcher = ContentMatcher.compile(List.of("error"), false);
+        String padding = "x".repeat(ContentMatcher.BINARY_CHECK_LENGTH - 21); // the NUL byte is the last byte checked
+
+        assertTrue(scan(matcher, "error one\nerror two\n" + padding + "\u0000error").isEmpty());
+        assertEquals(List.of("1:error:error one", "4:error:error three"),
+                scan(matcher, "error one\n" + padding + "\n" + padding + "\u0000\nerror three"));
+    }
+
+    @Test
+    void shouldSearchLocalTree(@TempDir Path directory) throws Exception {
+        Files.createDirectories(directory.resolve("a/b"));
+        Files.writeString(directory.resolve("a/b/app.conf"), "name=app\nport=8080\n");
+        Files.writeString(directory.resolve("a/other.conf"), "port=9090\n");
+        Files.writeString(directory.resolve("a/b/app.log"), "port=8080\n");
+        Files.writeString(directory.resolve("large.conf"), "port=8080\n" + "x".repeat(2048));
+
+        List<String> matches = Collections.synchronizedList(new ArrayList<>());
+        ContentSearch search = new ContentSearch(directory.toString(), null, 2, ContentMatcher.compile(List.of("port=8080"), false),
+                FileMask.compile("*.conf"), 1024, match -> matches.add(directory.relativize(Path.of(match.getFilePath())) + ":" + match.getLineNumber()));
+        search.run();
+
+        assertEquals(List.of(Path.of("a", "b", "app.conf") + ":2"), matches);
+        assertEquals(2, search.getFilesSearched());
+        assertEquals(1, search.getFilesSkipped());
+        assertEquals(0, search.getErrors());
+    }
+}
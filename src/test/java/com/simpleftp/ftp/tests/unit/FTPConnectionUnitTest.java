@@ -683,6 +683,90 @@ class FTPConnectionUnitTest {
         verify(ftpClient).storeFile(eq(TEST_FTP_FILE), any(FileInputStream.class));
     }
 
+    @Test
+    void shouldStreamContentsWhenUploadingFile() throws FTPConnectionFailedException, FTPError, FTPNotConnectedException, FTPCommandFailedException, IOException {
+        ftpConnection.setConnected(true);
+        ftpConnection.setLoggedIn(true);
+
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        given(ftpClient.storeFileStream(TEST_FTP_FILE))
+                .willReturn(stored);
+        given(ftpClient.completePendingCommand())
+                .willReturn(true);
+
+        boolean result = ftpConnection.uploadFile(TEST_FTP_FILE, outputStream -> outputStream.write("contents".getBytes()));
+
+        assertTrue(result);
+        assertEquals("contents", stored.toString());
+        verify(ftpClient).storeFileStream(TEST_FTP_FILE);
+        verify(ftpClient).completePendingCommand();
+    }
+
+    @Test
+    void shouldReadOnlyTheHeadOfFile() throws FTPConnectionFailedException, FTPNotConnectedException, FTPCommandFailedException, IOException {
+        ftpConnection.setConnected(true);
+        ftpConnection.setLoggedIn(true);
+
+        given(ftpClient.retrieveFileStream(TEST_FTP_FILE))
+                .willReturn(new ByteArrayInputStream("head of the file".getBytes()));
+
+        given(ftpClient.pwd())
+                .willReturn(FTPReply.PATHNAME_CREATED);
+
+        byte[] head = ftpConnection.readFileHead(TEST_FTP_FILE, 4);
+
+        assertEquals("head", new String(head));
+        verify(ftpClient).retrieveFileStream(TEST_FTP_FILE);
+        verify(ftpClient).abort();
+        verify(ftpClient, never()).completePendingCommand();
+        assertTrue(ftpConnection.isConnected());
+    }
+
+    @Test
+    void shouldCompleteReadOfFileShorterThanHead() throws FTPConnectionFailedException, FTPNotConnectedException, FTPCommandFailedException, IOException {
+        ftpConnection.setConnected(true);
+        ftpConnection.setLoggedIn(true);
+
+        given(ftpClient.retrieveFileStream(TEST_FTP_FILE))
+                .willReturn(new ByteArrayInputStream("head".getBytes()));
+
+        byte[] head = ftpConnection.readFileHead(TEST_FTP_FILE, 4);
+
+        assertEquals("head", new String(head));
+        verify(ftpClient).completePendingCommand();
+        verify(ftpClient, never()).abort();
+    }
+
+    @Test
+    void shouldDownloadFromOffsetInBinaryMode() throws Exception {
+        ftpConnection.setConnected(true);
+        ftpConnection.setLoggedIn(true);
+        given(ftpClient.setFileType(FTPClient.BINARY_FILE_TYPE))
+                .willReturn(true);
+        given(ftpClient.retrieveFile(eq(TEST_FTP_FILE), any(OutputStream.class)))
+                .willReturn(true);
+
+        ftpConnection.setTextTransferMode(false);
+        boolean result = ftpConnection.downloadFile(TEST_FTP_FILE, new ByteArrayOutputStream(), 100);
+
+        assertTrue(result);
+        verify(ftpClient).setRestartOffset(100);
+        verify(ftpClient).retrieveFile(eq(TEST_FTP_FILE), any(OutputStream.class));
+    }
+
+    @Test
+    void shouldThrowIfDownloadingFromOffsetInTextMode() throws Exception {
+        ftpConnection.setConnected(true);
+        ftpConnection.setLoggedIn(true);
+        given(ftpClient.setFileType(FTPClient.ASCII_FILE_TYPE))
+                .willReturn(true);
+
+        ftpConnection.setTextTransferMode(true);
+
+        assertThrows(FTPError.class, () -> ftpConnection.downloadFile(TEST_FTP_FILE, new ByteArrayOutputStream(), 100));
+        verifyNoInteractions(ftpLookup);
+    }
+
     @Test
     void shouldThrowIfNotConnectedWhenUploadingFile() {
         ftpConnection.setLoggedIn(true);
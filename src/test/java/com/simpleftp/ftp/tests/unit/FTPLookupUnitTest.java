@@ -24,6 +24,8 @@ import com.simpleftp.ftp.tests.testable.FTPSystemTestable;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPConnectionClosedException;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPListParseEngine;
+import org.apache.commons.net.ftp.FTPReply;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -32,6 +34,8 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.BDDMockito.given;
@@ -168,6 +172,64 @@ public class FTPLookupUnitTest {
         verify(ftpClient).hasFeature("MLSD");
     }
 
+    @Test
+    void shouldStreamFTPFilesUsingMListParsingSuccessfully() throws IOException {
+        FTPFile file = getTestFTPFile();
+        FTPListParseEngine engine = mock(FTPListParseEngine.class);
+        given(ftpClient.hasFeature("MLSD"))
+                .willReturn(true);
+        given(ftpClient.initiateMListParsing(TEST_PATH))
+                .willReturn(engine);
+        given(engine.hasNext())
+                .willReturn(true, false);
+        given(engine.getNext(anyInt()))
+                .willReturn(new FTPFile[]{file});
+        given(ftpClient.getReplyCode())
+                .willReturn(FTPReply.CLOSING_DATA_CONNECTION);
+        List<FTPFile> listed = new ArrayList<>();
+
+        assertTrue(ftpLookup.listFTPFiles(TEST_PATH, null, listed::add));
+        assertEquals(List.of(file), listed);
+        verify(ftpClient).initiateMListParsing(TEST_PATH);
+    }
+
+    @Test
+    void shouldReportRefusedListingWhenStreamingFTPFiles() throws IOException {
+        FTPListParseEngine engine = mock(FTPListParseEngine.class);
+        given(ftpClient.initiateListParsing(TEST_PATH + "/*.txt"))
+                .willReturn(engine);
+        given(ftpClient.getReplyCode())
+                .willReturn(FTPReply.FILE_UNAVAILABLE);
+        List<FTPFile> listed = new ArrayList<>();
+
+        assertFalse(ftpLookup.listFTPFiles(TEST_PATH, "*.txt", listed::add));
+        assertTrue(listed.isEmpty());
+        verify(ftpClient, times(0)).hasFeature("MLSD");
+    }
+
+    @Test
+    void shouldListNoFTPFilesIfNoneMatchPattern() throws IOException {
+        given(ftpClient.listFiles(TEST_PATH + "/*.txt"))
+                .willReturn(new FTPFile[0]);
+        given(ftpClient.getReplyCode())
+                .willReturn(FTPReply.CLOSING_DATA_CONNECTION);
+
+        FTPFile[] result = ftpLookup.listFTPFiles(TEST_PATH, "*.txt");
+
+        assertNotNull(result);
+        assertEquals(0, result.length);
+    }
+
+    @Test
+    void shouldNotListFTPFilesIfPatternRefused() throws IOException {
+        given(ftpClient.listFiles(TEST_PATH + "/*.txt"))
+                .willReturn(new FTPFile[0]);
+        given(ftpClient.getReplyCode())
+                .willReturn(FTPReply.FILE_UNAVAILABLE);
+
+        assertNull(ftpLookup.listFTPFiles(TEST_PATH, "*.txt"));
+    }
+
     @Test
     void shouldThrowOnConnectionErrorOnListFTPFiles() throws IOException {
         doThrow(FTPConnectionClosedException.class).when(ftpClient).listFiles(TEST_PATH);
@@ -0,0 +1,78 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.FileMask;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileMaskUnitTest {
+    @Test
+    void shouldMatchWildcards() {
+        FileMask mask = FileMask.compile("*ile*.txt");
+
+        assertTrue(mask.matches("file.txt"));
+        assertTrue(mask.matches("a_file_1.txt"));
+        assertFalse(mask.matches("file.txt.bak"));
+        assertFalse(mask.matches("fle.txt"));
+
+        FileMask single = FileMask.compile("file?.log");
+        assertTrue(single.matches("file1.log"));
+        assertFalse(single.matches("file.log"));
+        assertFalse(single.matches("file12.log"));
+        assertTrue(FileMask.compile("exact").matches("exact"));
+        assertFalse(FileMask.compile("exact").matches("exactly"));
+        assertTrue(FileMask.compile("a**b*").matches("ab"));
+    }
+
+    @Test
+    void shouldApplyIncludesAndExcludes() {
+        FileMask mask = FileMask.compile("*.txt; *.log;!debug*");
+
+        assertTrue(mask.matches("notes.txt"));
+        assertTrue(mask.matches("server.log"));
+        assertFalse(mask.matches("debug.log"));
+        assertFalse(mask.matches("image.png"));
+
+        FileMask excludeOnly = FileMask.compile("!*.tmp");
+        assertTrue(excludeOnly.matches("file.txt"));
+        assertFalse(excludeOnly.matches("file.tmp"));
+    }
+
+    @Test
+    void shouldMatchRegionOfSequence() {
+        FileMask mask = FileMask.compile("b*");
+        String arena = "abcbd";
+
+        assertTrue(mask.matches(arena, 1, 3));
+        assertFalse(mask.matches(arena, 0, 3));
+        assertTrue(mask.matches(arena, 3, 5));
+    }
+
+    @Test
+    void shouldOnlyPushDownSimplePatterns() {
+        assertEquals("*.txt", FileMask.compile("*.txt").getServerPattern());
+        assertNull(FileMask.compile("file.txt").getServerPattern());
+        assertNull(FileMask.compile("*.txt;*.log").getServerPattern());
+        assertNull(FileMask.compile("*.txt;!a*").getServerPattern());
+        assertNull(FileMask.compile("my file*").getServerPattern());
+        assertNull(FileMask.compile("-la*").getServerPattern());
+        assertNull(FileMask.compile(" ; ;"));
+        assertNull(FileMask.compile(null));
+    }
+}
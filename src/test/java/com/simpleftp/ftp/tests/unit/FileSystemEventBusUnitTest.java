@@ -0,0 +1,85 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.events.FileSystemEvent;
+import com.simpleftp.filesystem.events.FileSystemEventBus;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileSystemEventBusUnitTest {
+    @Test
+    void shouldDeliverEventsInPublishedOrder() throws InterruptedException {
+        FileSystemEventBus bus = new FileSystemEventBus();
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(100);
+
+        bus.subscribe(event -> {
+            received.add(event.getBytes());
+            latch.countDown();
+        });
+
+        for (long i = 0; i < 100; i++)
+            bus.publish(FileSystemEvent.progress("source", "destination", i));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++)
+            assertEquals(i, received.get(i));
+    }
+
+    @Test
+    void shouldDeliverEventsPublishedBeforeSubscribing() throws InterruptedException {
+        FileSystemEventBus bus = new FileSystemEventBus();
+        bus.publish(FileSystemEvent.completed("source", null, true));
+
+        CountDownLatch latch = new CountDownLatch(1);
+        bus.subscribe(event -> {
+            assertEquals(FileSystemEvent.Type.COMPLETED, event.getType());
+            assertTrue(event.isSucceeded());
+            latch.countDown();
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldOnlyHoldLatestEventsWithoutSubscribers() throws InterruptedException {
+        FileSystemEventBus bus = new FileSystemEventBus();
+        for (long i = 0; i < 5000; i++)
+            bus.publish(FileSystemEvent.progress("source", "destination", i));
+
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1);
+        bus.subscribe(event -> {
+            received.add(event.getBytes());
+            if (event.getBytes() == 4999)
+                latch.countDown();
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1024, received.size());
+        assertEquals(5000 - 1024, received.get(0));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.LocalFile;
+import com.simpleftp.filesystem.LocalFileSystem;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalFileUnitTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldListFilesWithAttributes() throws Exception {
+        Files.writeString(tempDir.resolve("file.txt"), "hello");
+        Files.createDirectory(tempDir.resolve("dir"));
+
+        LocalFile[] files = new LocalFileSystem().listFiles(tempDir.toString());
+
+        assertNotNull(files);
+        assertEquals(2, files.length);
+        Arrays.sort(files, Comparator.comparing(LocalFile::getName));
+
+        assertEquals("dir", files[0].getName());
+        assertTrue(files[0].isADirectory());
+        assertFalse(files[0].isNormalFile());
+        assertTrue(files[0].getPermissions().startsWith("d"));
+
+        assertEquals("file.txt", files[1].getName());
+        assertTrue(files[1].isNormalFile());
+        assertEquals(5, files[1].getSize());
+        assertTrue(files[1].getPermissions().startsWith("-"));
+        assertEquals(Files.getLastModifiedTime(tempDir.resolve("file.txt")).toMillis(), files[1].getModificationTimeMillis());
+    }
+
+    @Test
+    void shouldRefreshAttributesAfterChanges() throws Exception {
+        LocalFile file = new LocalFile(tempDir.resolve("file.txt").toString());
+
+        assertFalse(file.exists());
+        assertTrue(file.createNewFile());
+        assertTrue(file.isNormalFile());
+        assertEquals(0, file.getSize());
+
+        Files.writeString(file.toPath(), "hello");
+        assertEquals(0, file.getSize()); // still served from the snapshot
+        file.refresh();
+        assertEquals(5, file.getSize());
+
+        assertTrue(file.delete());
+        assertFalse(file.isNormalFile());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void shouldFollowSymbolicLinks() throws Exception {
+        Path target = Files.writeString(tempDir.resolve("target.txt"), "hello");
+        Path link;
+
+        try {
+            link = Files.createSymbolicLink(tempDir.resolve("link"), target);
+        } catch (UnsupportedOperationException | IOException ex) {
+            return; // the file system does not support symbolic links
+        }
+
+        LocalFile file = new LocalFile(link.toString());
+
+        assertTrue(file.isSymbolicLink());
+        assertTrue(file.isNormalFile());
+        assertEquals(5, file.getSize());
+        assertEquals(target.toString(), file.getSymbolicLinkTarget());
+        assertTrue(file.getPermissions().startsWith("l"));
+    }
+
+    @Test
+    void shouldCopyDirectoryTree() throws Exception {
+        Path source = Files.createDirectories(tempDir.resolve("source/sub/nested"));
+        source = source.getParent().getParent();
+        Files.writeString(source.resolve("a.txt"), "a");
+        Files.writeString(source.resolve("sub/b.txt"), "bb");
+        Files.writeString(source.resolve("sub/nested/c.txt"), "ccc");
+        Files.createDirectory(source.resolve("empty"));
+        Path destination = Files.createDirectory(tempDir.resolve("destination"));
+
+        assertTrue(new LocalFileSystem().copyFiles(new LocalFile(source.toString()), new LocalFile(destination.toString())));
+
+        Path copied = destination.resolve("source");
+        assertEquals("a", Files.readString(copied.resolve("a.txt")));
+        assertEquals("bb", Files.readString(copied.resolve("sub/b.txt")));
+        assertEquals("ccc", Files.readString(copied.resolve("sub/nested/c.txt")));
+        assertTrue(Files.isDirectory(copied.resolve("empty")));
+        assertTrue(Files.exists(source.resolve("sub/nested/c.txt")));
+    }
+}
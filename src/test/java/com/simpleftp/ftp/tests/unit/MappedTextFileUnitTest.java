@@ -0,0 +1,96 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.MappedTextFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedTextFileUnitTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldIndexAndReadLines() throws Exception {
+        Path path = Files.writeString(tempDir.resolve("file.txt"), "first\r\nsecond\n\nlast");
+
+        try (MappedTextFile textFile = new MappedTextFile(path, StandardCharsets.UTF_8)) {
+            textFile.buildIndex(() -> false, null);
+
+            assertTrue(textFile.isIndexed());
+            assertEquals(4, textFile.getLineCount());
+            assertEquals("first", textFile.getLine(0));
+            assertEquals("second", textFile.getLine(1));
+            assertEquals("", textFile.getLine(2));
+            assertEquals("last", textFile.getLine(3));
+            assertThrows(IndexOutOfBoundsException.class, () -> textFile.getLine(4));
+        }
+    }
+
+    @Test
+    void shouldNotAddLineAfterTrailingLineEnding() throws Exception {
+        Path path = Files.writeString(tempDir.resolve("file.txt"), "one\ntwo\n");
+
+        try (MappedTextFile textFile = new MappedTextFile(path, StandardCharsets.UTF_8)) {
+            textFile.buildIndex(() -> false, null);
+
+            assertEquals(2, textFile.getLineCount());
+            assertEquals("two", textFile.getLine(1));
+        }
+    }
+
+    @Test
+    void shouldFindLinesContainingText() throws Exception {
+        Path path = Files.writeString(tempDir.resolve("file.txt"), "alpha\nbeta gamma\ndelta\ngamma ray\n");
+
+        try (MappedTextFile textFile = new MappedTextFile(path, StandardCharsets.UTF_8)) {
+            textFile.buildIndex(() -> false, null);
+
+            assertEquals(1, textFile.find("gamma", 0, () -> false));
+            assertEquals(3, textFile.find("gamma", 2, () -> false));
+            assertEquals(-1, textFile.find("omega", 0, () -> false));
+        }
+    }
+
+    @Test
+    void shouldDetectUtf16AndSplitOnEncodedLineFeeds() throws Exception {
+        byte[] text = "\u010Aone\r\ntwo \u010A\nthree".getBytes(StandardCharsets.UTF_16LE); // \u010A has the byte of a line feed in its low byte
+        byte[] bytes = new byte[text.length + 2];
+        bytes[0] = (byte)0xFF;
+        bytes[1] = (byte)0xFE;
+        System.arraycopy(text, 0, bytes, 2, text.length);
+        Path path = Files.write(tempDir.resolve("file.txt"), bytes);
+
+        try (MappedTextFile textFile = new MappedTextFile(path)) {
+            textFile.buildIndex(() -> false, null);
+
+            assertEquals(StandardCharsets.UTF_16LE, textFile.getCharset());
+            assertEquals(3, textFile.getLineCount());
+            assertEquals("\u010Aone", textFile.getLine(0));
+            assertEquals("two \u010A", textFile.getLine(1));
+            assertEquals("three", textFile.getLine(2));
+            assertEquals(2, textFile.find("three", 0, () -> false));
+        }
+    }
+}
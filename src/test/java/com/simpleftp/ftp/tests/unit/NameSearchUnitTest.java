@@ -0,0 +1,65 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.FileMask;
+import com.simpleftp.filesystem.trees.NameSearch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NameSearchUnitTest {
+    private static Set<String> search(Path directory, NameSearchFactory factory) throws InterruptedException {
+        List<String> hits = Collections.synchronizedList(new ArrayList<>());
+        NameSearch search = factory.create(hit -> hits.add(directory.relativize(Path.of(hit.getFilePath())).toString().replace('\\', '/')));
+        search.run();
+
+        assertEquals(0, search.getErrors());
+        return new TreeSet<>(hits);
+    }
+
+    private interface NameSearchFactory {
+        NameSearch create(Consumer<NameSearch.Hit> consumer);
+    }
+
+    @Test
+    void shouldMatchNamesWithinDepth(@TempDir Path directory) throws Exception {
+        Files.createDirectories(directory.resolve("config/app/nested"));
+        Files.writeString(directory.resolve("config/server.xml"), "");
+        Files.writeString(directory.resolve("config/app/app.xml"), "");
+        Files.writeString(directory.resolve("config/app/nested/deep.xml"), "");
+        Files.writeString(directory.resolve("config/app/readme.txt"), "");
+        String root = directory.toString();
+
+        assertEquals(Set.of("config/server.xml", "config/app/app.xml"),
+                search(directory, consumer -> new NameSearch(root, null, 2, FileMask.compile("*.xml"), 3, 1000, consumer)));
+        assertEquals(Set.of("config/app", "config/app/app.xml"),
+                search(directory, consumer -> new NameSearch(root, null, 2, Pattern.compile("^app"), 10, 1000, consumer)));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.ui.background.scheduling.PathLockManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PathLockManagerUnitTest {
+    @AfterEach
+    void closeFiles() {
+        PathLockManager.closeAllFiles(false);
+        PathLockManager.closeAllFiles(true);
+    }
+
+    @Test
+    void shouldNotChangeParentOfOpenedFile() {
+        PathLockManager.openFile("/a/b/file.txt", false);
+
+        assertTrue(PathLockManager.isFileOpened("/a/b/file.txt/", false));
+        assertFalse(PathLockManager.isFileOpened("/a/b", false));
+        assertFalse(PathLockManager.canChange("/a", false));
+        assertFalse(PathLockManager.canChange("/a/b/file.txt", false));
+        assertTrue(PathLockManager.canChange("/a/c", false));
+        assertTrue(PathLockManager.canChange("/a", true));
+        assertTrue(PathLockManager.canOpen("/a/b/file.txt", false));
+
+        PathLockManager.closeFile("/a/b/file.txt", false);
+        assertTrue(PathLockManager.canChange("/a", false));
+    }
+
+    @Test
+    void shouldChangeFilesInsideOpenedDirectory() {
+        PathLockManager.openFile("/a", false);
+        PathLockManager.openFile("/a", false);
+
+        assertTrue(PathLockManager.canChange("/a/b", false));
+        assertFalse(PathLockManager.canChange("/a", false));
+        assertFalse(PathLockManager.canChange("/", false));
+
+        PathLockManager.closeFile("/a", false); // opening twice only opens once
+        assertTrue(PathLockManager.canChange("/a", false));
+    }
+}
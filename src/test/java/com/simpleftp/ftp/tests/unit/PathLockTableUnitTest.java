@@ -0,0 +1,95 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.ui.background.scheduling.PathLock;
+import com.simpleftp.ui.background.scheduling.PathLockTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PathLockTableUnitTest {
+    private final PathLockTable lockTable = new PathLockTable();
+
+    @Test
+    void shouldShareLocksButNotExclusiveLocksOnSamePath() {
+        lockTable.acquire(PathLock.shared("/a", false));
+
+        assertTrue(lockTable.canAcquire(PathLock.shared("/a", false)));
+        assertFalse(lockTable.canAcquire(PathLock.exclusive("/a", false)));
+
+        lockTable.release(PathLock.shared("/a", false));
+        lockTable.acquire(PathLock.exclusive("/a", false));
+
+        assertFalse(lockTable.canAcquire(PathLock.shared("/a", false)));
+        assertFalse(lockTable.canAcquire(PathLock.exclusive("/a", false)));
+        assertFalse(lockTable.canAcquire(PathLock.open("/a", false)));
+    }
+
+    @Test
+    void shouldBlockDescendantsOfExclusiveLock() {
+        lockTable.acquire(PathLock.exclusive("/a/b", false));
+
+        assertFalse(lockTable.canAcquire(PathLock.shared("/a/b/c", false)));
+        assertFalse(lockTable.canAcquire(PathLock.exclusive("/a/b/c/d", false)));
+        assertFalse(lockTable.canAcquire(PathLock.open("/a/b/c", false)));
+        assertTrue(lockTable.canAcquire(PathLock.exclusive("/a/bc", false)));
+        assertTrue(lockTable.canAcquire(PathLock.exclusive("/a/c", false)));
+    }
+
+    @Test
+    void shouldBlockAncestorsOfHeldLock() {
+        lockTable.acquire(PathLock.shared("/a/b/c", false));
+
+        assertFalse(lockTable.canAcquire(PathLock.exclusive("/a/b", false)));
+        assertFalse(lockTable.canAcquire(PathLock.exclusive("/", false)));
+        assertTrue(lockTable.canAcquire(PathLock.shared("/a", false)));
+        assertTrue(lockTable.canAcquire(PathLock.exclusive("/a/b/d", false)));
+
+        lockTable.acquire(PathLock.exclusive("/x/y", false));
+        assertFalse(lockTable.canAcquire(PathLock.shared("/x", false)));
+        assertTrue(lockTable.canAcquire(PathLock.open("/x", false))); // an open lock only covers the path itself
+    }
+
+    @Test
+    void shouldReleaseNestedLocksIndependently() {
+        PathLock outer = PathLock.shared("/a", false);
+        PathLock inner = PathLock.shared("/a/b", false);
+        lockTable.acquire(outer);
+        lockTable.acquire(inner);
+
+        lockTable.release(outer);
+        assertFalse(lockTable.canAcquire(PathLock.exclusive("/a", false)));
+        assertTrue(lockTable.canAcquire(PathLock.exclusive("/a/c", false)));
+
+        lockTable.release(inner);
+        assertTrue(lockTable.canAcquire(PathLock.exclusive("/a", false)));
+        assertTrue(lockTable.canAcquire(PathLock.exclusive("/", false)));
+    }
+
+    @Test
+    void shouldKeepLocalAndRemotePathsApart() {
+        lockTable.acquire(PathLock.exclusive("/a", false));
+
+        assertTrue(lockTable.canAcquire(PathLock.exclusive("/a", true)));
+        assertFalse(lockTable.canAcquireAll(List.of(PathLock.shared("/b", false), PathLock.shared("/a/b", false))));
+        assertTrue(lockTable.canAcquireAll(List.of(PathLock.shared("/b", false), PathLock.shared("/a/b", true))));
+    }
+}
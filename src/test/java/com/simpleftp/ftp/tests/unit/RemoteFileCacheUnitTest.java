@@ -0,0 +1,232 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.LocalFile;
+import com.simpleftp.filesystem.cache.RemoteFileCache;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.connection.Server;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Calendar;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class RemoteFileCacheUnitTest {
+    @TempDir
+    Path cacheDirectory;
+
+    private FTPConnection connection;
+
+    @BeforeEach
+    void init() throws Exception {
+        connection = mock(FTPConnection.class);
+        when(connection.getServer()).thenReturn(new Server("localhost", "user", "password", 21, 300));
+        when(connection.isBinaryTransfer()).thenReturn(true);
+        when(connection.downloadFile(anyString(), anyString())).thenAnswer(invocation -> {
+            String remotePath = invocation.getArgument(0);
+            Path downloaded = Path.of(invocation.<String>getArgument(1), Path.of(remotePath).getFileName().toString());
+            Files.writeString(downloaded, remotePath);
+
+            return new LocalFile(downloaded.toString());
+        });
+    }
+
+    private void setRemoteFile(String path, long size, long timestamp) throws Exception {
+        FTPFile file = new FTPFile();
+        file.setName(Path.of(path).getFileName().toString());
+        file.setType(FTPFile.FILE_TYPE);
+        file.setSize(size);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timestamp);
+        file.setTimestamp(calendar);
+
+        when(connection.getFTPFile(path)).thenReturn(file);
+    }
+
+    @Test
+    void shouldReuseCachedFileIfUnchanged() throws Exception {
+        RemoteFileCache cache = new RemoteFileCache(cacheDirectory, 1024);
+        setRemoteFile("/dir/file.txt", 13, 1000);
+
+        try (RemoteFileCache.Lease lease = cache.fetch("/dir/file.txt", connection)) {
+            assertTrue(lease.isCached());
+            assertEquals("file.txt", lease.getFile().getName());
+        }
+
+        try (RemoteFileCache.Lease lease = cache.fetch("/dir/file.txt", connection)) {
+            assertEquals("/dir/file.txt", Files.readString(lease.getFile().toPath()));
+        }
+
+        verify(connection, times(1)).downloadFile(eq("/dir/file.txt"), anyString());
+    }
+
+    @Test
+    void shouldDownloadAgainIfChanged() throws Exception {
+        RemoteFileCache cache = new RemoteFileCache(cacheDirectory, 1024);
+        setRemoteFile("/dir/file.txt", 13, 1000);
+        cache.fetch("/dir/file.txt", connection).close();
+
+        setRemoteFile("/dir/file.txt", 13, 2000);
+        cache.fetch("/dir/file.txt", connection).close();
+
+        verify(connection, times(2)).downloadFile(eq("/dir/file.txt"), anyString());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedButNotLeasedFiles() throws Exception {
+        RemoteFileCache cache = new RemoteFileCache(cacheDirectory, 20);
+        setRemoteFile("/a.txt", 6, 1000);
+        setRemoteFile("/b.txt", 6, 1000);
+        setRemoteFile("/c.txt", 6, 1000);
+        setRemoteFile("/d.txt", 6, 1000);
+
+        RemoteFileCache.Lease leased = cache.fetch("/a.txt", connection);
+        cache.fetch("/b.txt", connection).close();
+        cache.fetch("/c.txt", connection).close();
+        cache.fetch("/d.txt", connection).close(); // over the quota, b is the least recently used file that isn't leased
+
+        assertTrue(leased.getFile().exists());
+        leased.close();
+
+        cache.fetch("/c.txt", connection).close();
+        cache.fetch("/b.txt", connection).close();
+
+        verify(connection, times(1)).downloadFile(eq("/c.txt"), anyString());
+        verify(connection, times(2)).downloadFile(eq("/b.txt"), anyString());
+    }
+
+    @Test
+    void shouldDeleteUncachedFilesOnClose() throws Exception {
+        RemoteFileCache cache = new RemoteFileCache(cacheDirectory, 0);
+        setRemoteFile("/dir/file.txt", 13, 1000);
+
+        RemoteFileCache.Lease lease = cache.fetch("/dir/file.txt", connection);
+        LocalFile file = lease.getFile();
+        assertFalse(lease.isCached());
+        assertTrue(file.exists());
+
+        lease.close();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void shouldKeepUncachedFileUntilLeaseClosed() throws Exception {
+        RemoteFileCache cache = new RemoteFileCache(cacheDirectory, 5);
+        setRemoteFile("/dir/large.txt", 14, 1000);
+        setRemoteFile("/dir/small.txt", 4, 1000);
+
+        try (RemoteFileCache.Lease uncached = cache.fetch("/dir/large.txt", connection)) {
+            assertFalse(uncached.isCached());
+
+            try (RemoteFileCache.Lease cached = cache.fetch("/dir/small.txt", connection)) {
+                assertTrue(cached.isCached());
+            }
+
+            assertTrue(uncached.getFile().exists());
+        }
+    }
+
+    @Test
+    void shouldDownloadAgainIfExactModificationTimeChanged() throws Exception {
+        RemoteFileCache cache = new RemoteFileCache(cacheDirectory, 1024);
+        setRemoteFile("/dir/file.txt", 13, 1000); // the listing time stays the same, as if only precise to the minute
+        when(connection.getModificationTime("/dir/file.txt")).thenReturn("20260101120000");
+        cache.fetch("/dir/file.txt", connection).close();
+
+        when(connection.getModificationTime("/dir/file.txt")).thenReturn("20260101120030");
+        cache.fetch("/dir/file.txt", connection).close();
+
+        verify(connection, times(2)).downloadFile(eq("/dir/file.txt"), anyString());
+    }
+
+    @Test
+    void shouldDownloadAgainIfInvalidated() throws Exception {
+        RemoteFileCache cache = new RemoteFileCache(cacheDirectory, 1024);
+        setRemoteFile("/dir/file.txt", 13, 1000);
+        setRemoteFile("/other.txt", 10, 1000);
+        cache.fetch("/dir/file.txt", connection).close();
+        cache.fetch("/other.txt", connection).close();
+
+        cache.invalidate(connection.getServer(), "/dir");
+        cache.fetch("/dir/file.txt", connection).close();
+        cache.fetch("/other.txt", connection).close();
+
+        verify(connection, times(2)).downloadFile(eq("/dir/file.txt"), anyString());
+        verify(connection, times(1)).downloadFile(eq("/other.txt"), anyString());
+    }
+
+    @Test
+    void shouldKeepInvalidatedFileUntilLeaseClosed() throws Exception {
+        RemoteFileCache cache = new RemoteFileCache(cacheDirectory, 1024);
+        setRemoteFile("/dir/file.txt", 13, 1000);
+
+        RemoteFileCache.Lease lease = cache.fetch("/dir/file.txt", connection);
+        cache.invalidate(connection.getServer(), "/dir/file.txt");
+        assertTrue(lease.getFile().exists());
+        assertNull(cache.lookup("/dir/file.txt", connection));
+
+        lease.close();
+        assertFalse(lease.getFile().exists());
+    }
+
+    @Test
+    void shouldCacheFileAsItIsStreamed() throws Exception {
+        RemoteFileCache cache = new RemoteFileCache(cacheDirectory, 1024);
+        setRemoteFile("/dir/file.txt", 13, 1000);
+        when(connection.downloadFile(eq("/dir/file.txt"), any(OutputStream.class), eq(0L))).thenAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write("/dir/file.txt".getBytes(StandardCharsets.UTF_8));
+            return true;
+        });
+
+        ByteArrayOutputStream downloaded = new ByteArrayOutputStream();
+        assertTrue(cache.stream("/dir/file.txt", connection, downloaded));
+        ByteArrayOutputStream cached = new ByteArrayOutputStream();
+        assertTrue(cache.stream("/dir/file.txt", connection, cached));
+
+        assertEquals("/dir/file.txt", downloaded.toString(StandardCharsets.UTF_8));
+        assertEquals("/dir/file.txt", cached.toString(StandardCharsets.UTF_8));
+        verify(connection, times(1)).downloadFile(eq("/dir/file.txt"), any(OutputStream.class), eq(0L));
+    }
+
+    @Test
+    void shouldNotCacheIncompleteStream() throws Exception {
+        RemoteFileCache cache = new RemoteFileCache(cacheDirectory, 1024);
+        setRemoteFile("/dir/file.txt", 13, 1000);
+        when(connection.downloadFile(eq("/dir/file.txt"), any(OutputStream.class), eq(0L))).thenAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write("/dir/".getBytes(StandardCharsets.UTF_8)); // shorter than the listed size, e.g. changed while downloading
+            return true;
+        });
+
+        cache.stream("/dir/file.txt", connection, new ByteArrayOutputStream());
+
+        assertNull(cache.lookup("/dir/file.txt", connection));
+    }
+}
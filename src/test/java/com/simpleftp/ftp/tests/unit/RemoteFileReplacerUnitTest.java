@@ -0,0 +1,76 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.ftp.connection.ContentWriter;
+import com.simpleftp.ftp.connection.FTPConnection;
+import com.simpleftp.ftp.connection.RemoteFileReplacer;
+import com.simpleftp.ftp.exceptions.FTPError;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class RemoteFileReplacerUnitTest {
+    private static final String FILE_PATH = "/dir/file.txt";
+    private static final String BACKUP_PATH = FILE_PATH + "~";
+    private static final String TEMPORARY_PREFIX = "/dir/.file.txt.";
+
+    private FTPConnection connection;
+
+    @BeforeEach
+    void init() throws Exception {
+        connection = mock(FTPConnection.class);
+        when(connection.uploadFile(startsWith(TEMPORARY_PREFIX), any(ContentWriter.class))).thenReturn(true);
+        when(connection.renameFile(FILE_PATH, BACKUP_PATH)).thenReturn(true);
+    }
+
+    @Test
+    void shouldKeepBackupWhenReplaced() throws Exception {
+        when(connection.renameFile(startsWith(TEMPORARY_PREFIX), eq(FILE_PATH))).thenReturn(true);
+
+        assertTrue(new RemoteFileReplacer(connection, FILE_PATH, true).replace(outputStream -> {}));
+
+        verify(connection).renameFile(FILE_PATH, BACKUP_PATH);
+        verify(connection, never()).renameFile(BACKUP_PATH, FILE_PATH);
+        verify(connection, never()).removeFile(startsWith(TEMPORARY_PREFIX));
+    }
+
+    @Test
+    void shouldRestoreBackupIfNewVersionCannotBeRenamed() throws Exception {
+        when(connection.renameFile(startsWith(TEMPORARY_PREFIX), eq(FILE_PATH))).thenReturn(false);
+
+        assertThrows(FTPError.class, () -> new RemoteFileReplacer(connection, FILE_PATH, true).replace(outputStream -> {}));
+
+        verify(connection).renameFile(BACKUP_PATH, FILE_PATH);
+        verify(connection).removeFile(startsWith(TEMPORARY_PREFIX));
+    }
+
+    @Test
+    void shouldPutFileBackIfReplacingAsideFails() throws Exception {
+        when(connection.renameFile(startsWith(TEMPORARY_PREFIX), eq(FILE_PATH))).thenReturn(false);
+        when(connection.renameFile(eq(FILE_PATH), startsWith(TEMPORARY_PREFIX))).thenReturn(true);
+
+        assertThrows(FTPError.class, () -> new RemoteFileReplacer(connection, FILE_PATH, false).replace(outputStream -> {}));
+
+        verify(connection, times(3)).renameFile(startsWith(TEMPORARY_PREFIX), eq(FILE_PATH)); // the temporary file twice, then the file moved aside back
+        verify(connection, never()).renameFile(eq(FILE_PATH), eq(BACKUP_PATH));
+    }
+}
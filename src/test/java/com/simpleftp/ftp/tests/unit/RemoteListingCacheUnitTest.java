@@ -0,0 +1,80 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.RemoteListing;
+import com.simpleftp.filesystem.cache.RemoteListingCache;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.jupiter.api.Test;
+
+import java.util.Calendar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RemoteListingCacheUnitTest {
+    private static RemoteListing createListing(String directory, int files) {
+        RemoteListing.Builder builder = RemoteListing.builder(directory, null, null);
+
+        for (int i = 0; i < files; i++) {
+            FTPFile file = new FTPFile();
+            file.setName("file" + i);
+            file.setType(FTPFile.FILE_TYPE);
+            file.setTimestamp(Calendar.getInstance());
+            builder.add(file);
+        }
+
+        return builder.build();
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedListingsOverMaxFiles() {
+        RemoteListingCache cache = new RemoteListingCache(60000, 10);
+        RemoteListing first = createListing("/first", 4);
+        RemoteListing second = createListing("/second", 4);
+
+        cache.put("/first", first);
+        cache.put("/second", second);
+        assertSame(first, cache.get("/first")); // /second is now the least recently used
+        cache.put("/third", createListing("/third", 4));
+
+        assertSame(first, cache.get("/first"));
+        assertNull(cache.get("/second"));
+        assertNotNull(cache.get("/third"));
+
+        RemoteListing large = createListing("/large", 20);
+        cache.put("/large", large);
+
+        assertSame(large, cache.get("/large")); // the listing just cached is kept even if larger than the cache
+        assertNull(cache.get("/first"));
+        assertNull(cache.get("/third"));
+    }
+
+    @Test
+    void shouldExpireOldListingsAndNotCacheFailedListings() throws InterruptedException {
+        RemoteListingCache cache = new RemoteListingCache(50, 100);
+
+        cache.put("/dir", createListing("/dir", 1));
+        assertNotNull(cache.getComplete("/dir"));
+        Thread.sleep(100);
+        assertNull(cache.get("/dir"));
+
+        cache.put("/dir", createListing("/dir", 1));
+        cache.put("/dir", null);
+        assertNull(cache.get("/dir"));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.FileUtils;
+import com.simpleftp.filesystem.RemoteListing;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.jupiter.api.Test;
+
+import java.util.Calendar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RemoteListingUnitTest {
+    private static FTPFile createFile(String name, int type, long size) {
+        FTPFile file = new FTPFile();
+        file.setName(name);
+        file.setType(type);
+        file.setSize(size);
+        file.setPermission(FTPFile.USER_ACCESS, FTPFile.READ_PERMISSION, true);
+        file.setPermission(FTPFile.USER_ACCESS, FTPFile.WRITE_PERMISSION, true);
+        file.setPermission(FTPFile.GROUP_ACCESS, FTPFile.READ_PERMISSION, true);
+        file.setPermission(FTPFile.WORLD_ACCESS, FTPFile.EXECUTE_PERMISSION, true);
+
+        Calendar timestamp = Calendar.getInstance();
+        timestamp.set(2021, Calendar.JANUARY, 1, 12, 50, 0);
+        file.setTimestamp(timestamp);
+
+        return file;
+    }
+
+    @Test
+    void shouldPackEntriesSkippingCurrentAndParentDirectories() {
+        FTPFile[] files = {
+                createFile(".", FTPFile.DIRECTORY_TYPE, 0),
+                createFile("..", FTPFile.DIRECTORY_TYPE, 0),
+                createFile("file.txt", FTPFile.FILE_TYPE, 100),
+                null,
+                createFile(".hidden", FTPFile.DIRECTORY_TYPE, 4096)
+        };
+
+        RemoteListing listing = RemoteListing.of("/test", null, files);
+
+        assertEquals(2, listing.size());
+        assertEquals("file.txt", listing.getName(0));
+        assertEquals("/test/file.txt", listing.getFilePath(0));
+        assertEquals(100, listing.getSize(0));
+        assertTrue(listing.isFile(0));
+        assertFalse(listing.nameStartsWith(0, "."));
+        assertEquals(".hidden", listing.getName(1));
+        assertTrue(listing.isDirectory(1));
+        assertTrue(listing.nameStartsWith(1, "."));
+        assertFalse(listing.nameStartsWith(1, ".."));
+        assertThrows(IndexOutOfBoundsException.class, () -> listing.getName(2));
+    }
+
+    @Test
+    void shouldStorePermissionsAndModificationTime() {
+        FTPFile file = createFile("dir", FTPFile.DIRECTORY_TYPE, 4096);
+        RemoteListing listing = RemoteListing.of("/", null, new FTPFile[]{file});
+
+        assertEquals("drw-r----x", listing.getPermissions(0));
+        assertTrue(listing.hasPermission(0, FTPFile.WORLD_ACCESS, FTPFile.EXECUTE_PERMISSION));
+        assertFalse(listing.hasPermission(0, FTPFile.GROUP_ACCESS, FTPFile.WRITE_PERMISSION));
+        assertEquals(FileUtils.parseCalendarToFormattedDate(file.getTimestamp()), listing.getModificationTime(0));
+        assertEquals("/dir", listing.getFilePath(0));
+    }
+
+    @Test
+    void shouldRecreateFTPFileWithLink() {
+        FTPFile link = createFile("link", FTPFile.SYMBOLIC_LINK_TYPE, 10);
+        link.setLink("/target");
+        FTPFile[] files = {createFile("file", FTPFile.FILE_TYPE, 1), link};
+
+        RemoteListing listing = RemoteListing.of("/test", null, files);
+
+        assertNull(listing.getLink(0));
+        assertEquals("/target", listing.getLink(1));
+        assertTrue(listing.isSymbolicLink(1));
+        assertEquals("lrw-r----x", listing.getPermissions(1));
+
+        FTPFile recreated = listing.toFTPFile(1);
+        assertEquals("link", recreated.getName());
+        assertEquals("/target", recreated.getLink());
+        assertEquals(10, recreated.getSize());
+        assertTrue(recreated.isSymbolicLink());
+        assertTrue(recreated.hasPermission(FTPFile.USER_ACCESS, FTPFile.WRITE_PERMISSION));
+        assertFalse(recreated.hasPermission(FTPFile.USER_ACCESS, FTPFile.EXECUTE_PERMISSION));
+        assertEquals(link.getTimestamp().getTimeInMillis(), recreated.getTimestamp().getTimeInMillis());
+    }
+
+    @Test
+    void shouldGrowBuilderAsFilesAreAdded() {
+        RemoteListing.Builder builder = RemoteListing.builder("/test", null, null);
+
+        for (int i = 0; i < 100; i++) {
+            FTPFile file = createFile("file" + i, i % 10 == 0 ? FTPFile.SYMBOLIC_LINK_TYPE:FTPFile.FILE_TYPE, i);
+            file.setLink(i % 10 == 0 ? "/target" + i:null);
+            builder.add(file);
+        }
+
+        builder.add(createFile("..", FTPFile.DIRECTORY_TYPE, 0));
+        RemoteListing listing = builder.build();
+
+        assertEquals(100, listing.size());
+        assertEquals("file99", listing.getName(99));
+        assertEquals("/test/file50", listing.getFilePath(50));
+        assertEquals(50, listing.getSize(50));
+        assertEquals("/target90", listing.getLink(90));
+        assertNull(listing.getLink(91));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.FileUtils;
+import com.simpleftp.filesystem.paths.RemotePath;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RemotePathUnitTest {
+    @Test
+    void shouldIgnoreExtraSeparators() {
+        RemotePath path = RemotePath.of("/path//to/file/");
+
+        assertEquals(List.of("path", "to", "file"), path.getComponents());
+        assertEquals("/path/to/file", path.toString());
+        assertEquals(RemotePath.of("/path/to/file"), path);
+        assertEquals(RemotePath.of("/path/to/file").hashCode(), path.hashCode());
+        assertTrue(FileUtils.pathEquals("/path/to/file", "/path/to/file/", false));
+    }
+
+    @Test
+    void shouldNotEqualPathsWithSameCharactersInDifferentComponents() {
+        assertNotEquals(RemotePath.of("/a/bc"), RemotePath.of("/ab/c"));
+        assertFalse(FileUtils.pathEquals("/a/bc", "/ab/c", false));
+    }
+
+    @Test
+    void shouldGetParentAndResolveChildren() {
+        RemotePath path = RemotePath.of("/path/to");
+        RemotePath child = path.resolve("sub/file");
+
+        assertEquals("/path/to/sub/file", child.toString());
+        assertEquals("file", child.getFileName());
+        assertEquals(path, child.getParent().getParent());
+        assertEquals(RemotePath.ROOT_PATH, path.getParent().getParent());
+        assertEquals(RemotePath.ROOT_PATH, RemotePath.ROOT_PATH.getParent());
+        assertEquals("/", RemotePath.ROOT_PATH.toString());
+        assertEquals(RemotePath.of("/other"), path.resolve("/other"));
+    }
+
+    @Test
+    void shouldCheckIfPathStartsWithParent() {
+        assertTrue(RemotePath.of("/path/to/file").startsWith(RemotePath.of("/path")));
+        assertTrue(RemotePath.of("/path").startsWith(RemotePath.of("/path/")));
+        assertFalse(RemotePath.of("/pathname").startsWith(RemotePath.of("/path")));
+        assertFalse(RemotePath.of("/test/path").startsWith(RemotePath.of("/path")));
+        assertTrue(FileUtils.startsWith("/path/to/../file", "/path/file", false));
+        assertFalse(FileUtils.startsWith("/path/to/../file", "/path/to", false));
+    }
+
+    @Test
+    void shouldNormalizePaths() {
+        assertEquals("/path/file", RemotePath.of("/path/./to/../file").normalize().toString());
+        assertEquals("/", RemotePath.of("/..").normalize().toString());
+        assertEquals("../file", RemotePath.of("../to/../file").normalize().toString());
+        assertTrue(RemotePath.of("/path/to").isNormalized());
+        assertFalse(RemotePath.of("/path/../to").isNormalized());
+    }
+
+    @Test
+    void shouldResolveNamesAndParentPaths() {
+        RemotePath directory = RemotePath.of("/path/to");
+        RemotePath child = directory.resolveName("file");
+
+        assertEquals("/path/to/file", child.toString());
+        assertEquals(directory, child.getParent());
+        assertEquals("/path/to", directory.toString()); // the child doesn't share components with its parent
+        assertEquals("/path", FileUtils.getParentPath("/path/to/", false));
+        assertEquals("/", FileUtils.getParentPath("/path", false));
+        assertEquals("/", FileUtils.getParentPath("/", false));
+        assertEquals("/", FileUtils.getParentPath("path", false));
+        assertEquals("path", FileUtils.getParentPath("path/to", false));
+        assertNotEquals(RemotePath.of("/path"), RemotePath.of("path"));
+    }
+}
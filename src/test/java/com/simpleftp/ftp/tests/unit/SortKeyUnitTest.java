@@ -0,0 +1,116 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.ui.files.SortColumn;
+import com.simpleftp.ui.files.SortKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SortKeyUnitTest {
+    /**
+     * The keys being sorted, mapped to the names they were created with so the order can be asserted
+     */
+    private final Map<SortKey, String> names = new LinkedHashMap<>();
+
+    private void addKey(boolean directory, String name, boolean ignoreCase, long size, long modified) {
+        names.put(new SortKey(directory, name, ignoreCase, size, modified), name);
+    }
+
+    private List<String> sort(SortColumn column, boolean ascending) {
+        List<SortKey> keys = new ArrayList<>(names.keySet());
+        Comparator<SortKey> comparator = SortKey.comparator(column, ascending);
+        keys.sort(comparator);
+
+        List<String> sorted = new ArrayList<>();
+        keys.forEach(key -> sorted.add(names.get(key)));
+
+        return sorted;
+    }
+
+    @Test
+    void shouldSortDirectoriesFirstInEitherOrder() {
+        addKey(false, "a.txt", false, 10, 1000);
+        addKey(true, "z", false, 4096, 2000);
+        addKey(false, "b.txt", false, 20, 3000);
+        addKey(true, "y", false, 4096, 4000);
+
+        assertEquals(Arrays.asList("y", "z", "a.txt", "b.txt"), sort(SortColumn.NAME, true));
+        assertEquals(Arrays.asList("z", "y", "b.txt", "a.txt"), sort(SortColumn.NAME, false));
+        assertEquals(Arrays.asList("y", "z", "b.txt", "a.txt"), sort(SortColumn.MODIFIED, false));
+    }
+
+    @Test
+    void shouldSortNamesCaseSensitively() {
+        addKey(false, "beta", false, 0, 0);
+        addKey(false, "Alpha", false, 0, 0);
+        addKey(false, "Gamma", false, 0, 0);
+
+        assertEquals(Arrays.asList("Alpha", "Gamma", "beta"), sort(SortColumn.NAME, true));
+    }
+
+    @Test
+    void shouldSortNamesIgnoringCase() {
+        addKey(false, "beta", true, 0, 0);
+        addKey(false, "Alpha", true, 0, 0);
+        addKey(false, "Gamma", true, 0, 0);
+
+        assertEquals(Arrays.asList("Alpha", "beta", "Gamma"), sort(SortColumn.NAME, true));
+    }
+
+    @Test
+    void shouldSortBySizeBreakingTiesByName() {
+        addKey(false, "large", false, 3000, 0);
+        addKey(false, "empty-b", false, 0, 0);
+        addKey(false, "empty-a", false, 0, 0);
+        addKey(false, "small", false, 10, 0);
+
+        assertEquals(Arrays.asList("empty-a", "empty-b", "small", "large"), sort(SortColumn.SIZE, true));
+        assertEquals(Arrays.asList("large", "small", "empty-b", "empty-a"), sort(SortColumn.SIZE, false));
+    }
+
+    @Test
+    void shouldSortMissingModificationTimesAsOldest() {
+        addKey(false, "new", false, 0, 5000);
+        addKey(false, "unknown-b", false, 0, -1); // the time a listing without one reports
+        addKey(false, "old", false, 0, 1000);
+        addKey(false, "unknown-a", false, 0, -1);
+
+        assertEquals(Arrays.asList("unknown-a", "unknown-b", "old", "new"), sort(SortColumn.MODIFIED, true));
+        assertEquals(Arrays.asList("new", "old", "unknown-b", "unknown-a"), sort(SortColumn.MODIFIED, false));
+    }
+
+    @Test
+    void shouldSortByExtensionWithFilesWithoutOneFirst() {
+        addKey(false, "notes.txt", false, 0, 0);
+        addKey(false, "Makefile", false, 0, 0);
+        addKey(false, "archive.tar.gz", false, 0, 0);
+        addKey(false, ".hidden", false, 0, 0);
+        addKey(false, "image.PNG", true, 0, 0);
+
+        assertEquals(Arrays.asList(".hidden", "Makefile", "archive.tar.gz", "image.PNG", "notes.txt"), sort(SortColumn.TYPE, true));
+    }
+}
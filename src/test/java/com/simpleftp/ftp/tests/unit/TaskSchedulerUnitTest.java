@@ -0,0 +1,130 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.ui.background.interfaces.DisplayableBackgroundTask;
+import com.simpleftp.ui.background.scheduling.PathLock;
+import com.simpleftp.ui.background.scheduling.TaskScheduler;
+import javafx.beans.property.SimpleBooleanProperty;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TaskSchedulerUnitTest {
+    /**
+     * The tasks in the order they were started
+     */
+    private final List<DisplayableBackgroundTask> started = new ArrayList<>();
+    /**
+     * Tasks are started straight away rather than on the JavaFX thread
+     */
+    private final TaskScheduler<DisplayableBackgroundTask> scheduler = new TaskScheduler<>(2, Runnable::run);
+    /**
+     * The removable properties of the tasks created, set once a test ends so no locks are left held in the PathLockManager
+     */
+    private final List<SimpleBooleanProperty> removableProperties = new ArrayList<>();
+
+    @AfterEach
+    void finishTasks() {
+        removableProperties.forEach(removable -> removable.set(true));
+    }
+
+    private DisplayableBackgroundTask mockTask(SimpleBooleanProperty removable) {
+        removableProperties.add(removable);
+        DisplayableBackgroundTask task = mock(DisplayableBackgroundTask.class);
+        when(task.getRemovableProperty()).thenReturn(removable);
+        when(task.isReady()).thenReturn(true);
+        when(task.isFinished()).thenAnswer(invocation -> removable.get());
+        doAnswer(invocation -> started.add(task)).when(task).start();
+
+        return task;
+    }
+
+    @Test
+    void shouldWaitForConflictingTaskToFinish() {
+        SimpleBooleanProperty copyFinished = new SimpleBooleanProperty();
+        DisplayableBackgroundTask copy = mockTask(copyFinished);
+        DisplayableBackgroundTask remove = mockTask(new SimpleBooleanProperty());
+        DisplayableBackgroundTask unrelated = mockTask(new SimpleBooleanProperty());
+
+        scheduler.schedule(copy, PathLock.shared("/a", false), PathLock.exclusive("/b", false));
+        scheduler.schedule(remove, PathLock.exclusive("/a/file", false));
+        scheduler.schedule(unrelated, PathLock.shared("/a/file", true));
+
+        assertEquals(List.of(copy, unrelated), started);
+
+        copyFinished.set(true);
+        assertEquals(List.of(copy, unrelated, remove), started);
+    }
+
+    @Test
+    void shouldNotLetLaterTaskOvertakeConflictingWaitingTask() {
+        SimpleBooleanProperty readFinished = new SimpleBooleanProperty();
+        DisplayableBackgroundTask read = mockTask(readFinished);
+        DisplayableBackgroundTask move = mockTask(new SimpleBooleanProperty());
+        DisplayableBackgroundTask laterRead = mockTask(new SimpleBooleanProperty());
+
+        scheduler.schedule(read, PathLock.shared("/a", false));
+        scheduler.schedule(move, PathLock.exclusive("/a", false));
+        scheduler.schedule(laterRead, PathLock.shared("/a/b", false)); // doesn't conflict with read, but would starve the move
+
+        assertEquals(List.of(read), started);
+
+        readFinished.set(true);
+        assertEquals(List.of(read, move), started);
+    }
+
+    @Test
+    void shouldLimitRunningTasksToParallelism() {
+        SimpleBooleanProperty firstFinished = new SimpleBooleanProperty();
+        DisplayableBackgroundTask first = mockTask(firstFinished);
+        DisplayableBackgroundTask second = mockTask(new SimpleBooleanProperty());
+        DisplayableBackgroundTask third = mockTask(new SimpleBooleanProperty());
+
+        scheduler.schedule(first, PathLock.shared("/a", false));
+        scheduler.schedule(second, PathLock.shared("/b", false));
+        scheduler.schedule(third, PathLock.shared("/c", false));
+
+        assertEquals(List.of(first, second), started);
+
+        firstFinished.set(true);
+        assertEquals(List.of(first, second, third), started);
+    }
+
+    @Test
+    void shouldNotStartTaskCancelledWhileWaiting() {
+        SimpleBooleanProperty moveFinished = new SimpleBooleanProperty();
+        SimpleBooleanProperty copyFinished = new SimpleBooleanProperty();
+        DisplayableBackgroundTask move = mockTask(moveFinished);
+        DisplayableBackgroundTask copy = mockTask(copyFinished);
+
+        scheduler.schedule(move, PathLock.exclusive("/a", false));
+        scheduler.schedule(copy, PathLock.shared("/a", false));
+
+        copyFinished.set(true);
+        moveFinished.set(true);
+
+        assertEquals(List.of(move), started);
+        verify(copy, never()).start();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.TextDecodingOutputStream;
+import com.simpleftp.filesystem.TextFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TextDecodingOutputStreamUnitTest {
+    @Test
+    void shouldDecodeUtf8AndNormaliseLineEndings() throws Exception {
+        StringBuilder text = new StringBuilder();
+        byte[] bytes = "caf\u00e9\r\nna\u00efve\rend\r".getBytes(StandardCharsets.UTF_8);
+        TextDecodingOutputStream decoder = new TextDecodingOutputStream(text::append, StandardCharsets.ISO_8859_1);
+
+        for (byte b : bytes)
+            decoder.write(b); // split multi-byte characters and CRLF across writes
+        decoder.close();
+
+        assertEquals(StandardCharsets.UTF_8, decoder.getCharset());
+        assertEquals("caf\u00e9\nna\u00efve\nend\n", text.toString());
+    }
+
+    @Test
+    void shouldDetectByteOrderMarkAndFallback() throws Exception {
+        StringBuilder text = new StringBuilder();
+        TextDecodingOutputStream decoder = new TextDecodingOutputStream(text::append, StandardCharsets.ISO_8859_1);
+        decoder.write(new byte[]{(byte)0xFF, (byte)0xFE, 'h', 0, 'i', 0});
+        decoder.close();
+
+        assertEquals(StandardCharsets.UTF_16LE, decoder.getCharset());
+        assertEquals("hi", text.toString());
+
+        StringBuilder latin = new StringBuilder();
+        decoder = new TextDecodingOutputStream(latin::append, StandardCharsets.ISO_8859_1);
+        decoder.write(new byte[]{'c', 'a', 'f', (byte)0xE9});
+        decoder.close();
+
+        assertEquals(StandardCharsets.ISO_8859_1, decoder.getCharset());
+        assertEquals("caf\u00e9", latin.toString());
+    }
+
+    @Test
+    void shouldPreserveFormatWhenWritingBack() throws Exception {
+        byte[] bytes = {(byte)0xEF, (byte)0xBB, (byte)0xBF, 'a', '\r', '\n', 'b', '\r', '\n'};
+        StringBuilder text = new StringBuilder();
+        TextDecodingOutputStream decoder = new TextDecodingOutputStream(text::append, StandardCharsets.ISO_8859_1);
+        decoder.write(bytes);
+        decoder.close();
+
+        TextFormat format = decoder.getTextFormat();
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        format.write(text.toString(), written);
+
+        assertEquals("a\nb\n", text.toString());
+        assertEquals("\r\n", format.getLineSeparator());
+        assertTrue(format.isByteOrderMark());
+        assertArrayEquals(bytes, written.toByteArray());
+    }
+
+    @Test
+    void shouldFallbackToSingleByteCharsetIfFallbackIsMultiByte() throws Exception {
+        byte[] bytes = {'c', 'a', 'f', (byte)0xE9, (byte)0x80};
+        StringBuilder text = new StringBuilder();
+        TextDecodingOutputStream decoder = new TextDecodingOutputStream(text::append, StandardCharsets.UTF_8);
+        decoder.write(bytes);
+        decoder.close();
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        decoder.getTextFormat().write(text.toString(), written);
+
+        assertEquals(StandardCharsets.ISO_8859_1, decoder.getCharset());
+        assertFalse(decoder.isLossy());
+        assertArrayEquals(bytes, written.toByteArray());
+    }
+
+    @Test
+    void shouldReportLossIfInvalidAfterDetection() throws Exception {
+        StringBuilder text = new StringBuilder();
+        TextDecodingOutputStream decoder = new TextDecodingOutputStream(text::append, StandardCharsets.ISO_8859_1);
+        byte[] valid = new byte[TextDecodingOutputStream.DETECTION_LENGTH];
+        Arrays.fill(valid, (byte)'a');
+        decoder.write(valid);
+        assertFalse(decoder.isLossy());
+
+        decoder.write(new byte[]{'b', (byte)0xE9, 'c'});
+        decoder.close();
+
+        assertEquals(StandardCharsets.UTF_8, decoder.getCharset());
+        assertTrue(decoder.isLossy());
+        assertTrue(text.toString().endsWith("b\uFFFDc"));
+    }
+}
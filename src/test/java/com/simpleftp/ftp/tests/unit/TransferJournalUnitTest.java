@@ -0,0 +1,203 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.interfaces.CommonFile;
+import com.simpleftp.filesystem.journal.TransferJournal;
+import com.simpleftp.ftp.connection.FTPLookup;
+import com.simpleftp.ftp.connection.Server;
+import com.simpleftp.ftp.tests.testable.FTPConnectionTestable;
+import com.simpleftp.ftp.tests.testable.FTPSystemTestable;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class TransferJournalUnitTest {
+    @TempDir
+    Path tempDir;
+
+    private final List<TransferJournal> journals = new ArrayList<>();
+
+    private static final String REMOTE_DIR = "/remote/directory";
+    private static final String COMPLETED_FILE = REMOTE_DIR + "/completed-file";
+    private static final String PARTIAL_FILE = REMOTE_DIR + "/partial-file";
+    private static final String UNTOUCHED_FILE = REMOTE_DIR + "/untouched-file";
+    private static final Server SERVER = new Server("localhost", "user", "password", 21, 300);
+
+    @BeforeEach
+    void init() {
+        FTPSystemTestable.setSystemTesting(true);
+    }
+
+    @AfterEach
+    void clean() {
+        journals.forEach(TransferJournal::delete);
+    }
+
+    private CommonFile mockFile(String path, boolean local) {
+        CommonFile file = mock(CommonFile.class);
+        when(file.getFilePath()).thenReturn(path);
+        when(file.isLocal()).thenReturn(local);
+
+        return file;
+    }
+
+    private TransferJournal createJournal() {
+        TransferJournal journal = TransferJournal.create(true, mockFile(REMOTE_DIR, false), mockFile(tempDir.toString(), true), SERVER);
+        journals.add(journal);
+
+        return journal;
+    }
+
+    private TransferJournal reload(TransferJournal journal) {
+        TransferJournal reloaded = null;
+
+        for (TransferJournal unfinished : TransferJournal.loadUnfinished()) {
+            if (unfinished.getId().equals(journal.getId()))
+                reloaded = unfinished;
+            else
+                unfinished.close(); // left behind by something else, so leave it on disk
+        }
+
+        if (reloaded != null)
+            journals.add(reloaded);
+
+        return reloaded;
+    }
+
+    /**
+     * Simulates an interrupted download, writing the journal records and a partial copy of the file at the destination
+     * @param journal the journal to record the download in
+     * @param partialBytes the number of bytes of the partial file to write
+     * @return the path of the partial file at the destination
+     */
+    private Path interruptDownload(TransferJournal journal, int partialBytes) throws Exception {
+        journal.planned(COMPLETED_FILE, tempDir.resolve("completed-file").toString());
+        journal.completed(COMPLETED_FILE);
+
+        Path partial = tempDir.resolve("partial-file");
+        journal.planned(PARTIAL_FILE, partial.toString());
+        Files.write(partial, new byte[partialBytes]);
+        journal.finish(true);
+
+        return partial;
+    }
+
+    @Test
+    void shouldReloadInterruptedJournal() throws Exception {
+        TransferJournal journal = createJournal();
+        interruptDownload(journal, 5);
+
+        TransferJournal reloaded = reload(journal);
+
+        assertNotNull(reloaded);
+        assertTrue(reloaded.isResumed());
+        assertTrue(reloaded.isCopy());
+        assertEquals(REMOTE_DIR, reloaded.getSourcePath());
+        assertFalse(reloaded.isSourceLocal());
+        assertEquals(tempDir.toString(), reloaded.getDestinationPath());
+        assertTrue(reloaded.isDestinationLocal());
+        assertTrue(reloaded.isResumableWith(SERVER));
+        assertFalse(reloaded.isResumableWith(new Server("otherhost", "user", "password", 21, 300)));
+        assertEquals(1, reloaded.getCompletedCount());
+        assertTrue(reloaded.isCompleted(COMPLETED_FILE));
+        assertFalse(reloaded.isPartial(COMPLETED_FILE));
+        assertTrue(reloaded.isPartial(PARTIAL_FILE));
+        assertFalse(reloaded.isPartial(UNTOUCHED_FILE));
+        assertFalse(reloaded.isCompleted(UNTOUCHED_FILE));
+    }
+
+    @Test
+    void shouldResumePartialDownloadFromLocalFileLength() throws Exception {
+        TransferJournal journal = createJournal();
+        interruptDownload(journal, 5);
+        TransferJournal reloaded = reload(journal);
+
+        FTPClient ftpClient = mock(FTPClient.class);
+        FTPLookup ftpLookup = mock(FTPLookup.class);
+        FTPConnectionTestable connection = new FTPConnectionTestable(ftpClient, SERVER, ftpLookup);
+        connection.setConnected(true);
+        connection.setLoggedIn(true);
+
+        for (String path : new String[]{PARTIAL_FILE, UNTOUCHED_FILE}) {
+            FTPFile file = new FTPFile();
+            file.setName(path);
+            when(ftpLookup.getFTPFile(path)).thenReturn(file);
+            when(ftpClient.retrieveFile(eq(path), any(FileOutputStream.class))).thenReturn(true);
+        }
+
+        Files.write(tempDir.resolve("untouched-file"), new byte[3]); // a file at the destination not written by the operation is downloaded again
+
+        assertNotNull(connection.downloadFile(PARTIAL_FILE, tempDir.toString(), reloaded.isPartial(PARTIAL_FILE)));
+        assertNotNull(connection.downloadFile(UNTOUCHED_FILE, tempDir.toString(), reloaded.isPartial(UNTOUCHED_FILE)));
+
+        verify(ftpClient).setRestartOffset(5);
+        verify(ftpClient, never()).setRestartOffset(3);
+    }
+
+    @Test
+    void shouldRecordDownloadsAfterResuming() throws Exception {
+        TransferJournal journal = createJournal();
+        interruptDownload(journal, 5);
+        TransferJournal reloaded = reload(journal);
+
+        reloaded.planned(PARTIAL_FILE, tempDir.resolve("partial-file").toString());
+        reloaded.completed(PARTIAL_FILE);
+        reloaded.finish(true);
+
+        TransferJournal resumedAgain = reload(reloaded);
+
+        assertNotNull(resumedAgain);
+        assertEquals(2, resumedAgain.getCompletedCount());
+        assertTrue(resumedAgain.isCompleted(COMPLETED_FILE));
+        assertTrue(resumedAgain.isCompleted(PARTIAL_FILE));
+    }
+
+    @Test
+    void shouldDeleteJournalOfCompletedOrCancelledOperation() throws Exception {
+        TransferJournal journal = createJournal();
+        interruptDownload(journal, 5);
+        TransferJournal reloaded = reload(journal);
+
+        reloaded.finish(false);
+
+        assertNull(reload(reloaded));
+    }
+
+    @Test
+    void shouldNotWriteJournalIfNothingPlanned() {
+        TransferJournal journal = createJournal();
+        journal.finish(true);
+
+        assertNull(reload(journal));
+    }
+}
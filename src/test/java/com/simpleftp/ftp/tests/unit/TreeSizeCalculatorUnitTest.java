@@ -0,0 +1,69 @@
+/*
+ *  Copyright (C) 2020  Edward Lynch-Milner
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.simpleftp.ftp.tests.unit;
+
+import com.simpleftp.filesystem.cache.TreeSizeCache;
+import com.simpleftp.filesystem.trees.TreeSizeCalculator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeSizeCalculatorUnitTest {
+    private static TreeSizeCalculator calculate(Path directory, TreeSizeCache sizeCache) throws InterruptedException {
+        TreeSizeCalculator calculator = new TreeSizeCalculator(directory.toString(), null, 3, sizeCache);
+        calculator.run();
+
+        assertEquals(0, calculator.getErrors());
+        assertNotNull(calculator.getSize());
+        return calculator;
+    }
+
+    @Test
+    void shouldCalculateTreeSizeAndReuseCachedSubtrees(@TempDir Path directory) throws Exception {
+        Files.createDirectories(directory.resolve("a/nested"));
+        Files.createDirectories(directory.resolve("b"));
+        Files.write(directory.resolve("root.bin"), new byte[10]);
+        Files.write(directory.resolve("a/one.bin"), new byte[100]);
+        Files.write(directory.resolve("a/nested/two.bin"), new byte[1000]);
+        Files.write(directory.resolve("b/three.bin"), new byte[5]);
+        TreeSizeCache sizeCache = new TreeSizeCache(60000);
+
+        TreeSizeCalculator subtree = calculate(directory.resolve("a"), sizeCache);
+        assertEquals(1100, subtree.getSize().getBytes());
+        assertEquals(2, subtree.getSize().getFiles());
+        assertEquals(1, subtree.getSize().getDirectories());
+        assertEquals(0, subtree.getDirectoriesReused());
+
+        TreeSizeCalculator whole = calculate(directory, sizeCache);
+        assertEquals(1115, whole.getSize().getBytes());
+        assertEquals(4, whole.getSize().getFiles());
+        assertEquals(3, whole.getSize().getDirectories());
+        assertEquals(1115, whole.getBytes());
+        assertEquals(1, whole.getDirectoriesReused()); // a was cached, so a/nested wasn't walked again
+
+        Files.write(directory.resolve("a/nested/four.bin"), new byte[1]);
+        sizeCache.invalidate(null, directory.resolve("a/nested").toString());
+        assertNull(sizeCache.get(null, directory.toString()));
+        assertNotNull(sizeCache.get(null, directory.resolve("b").toString()));
+        assertEquals(1116, calculate(directory, sizeCache).getSize().getBytes());
+    }
+}